@@ -105,6 +105,7 @@ import com.android.intentresolver.contentpreview.HeadlineGeneratorImpl;
 import com.android.intentresolver.data.model.ChooserRequest;
 import com.android.intentresolver.data.repository.ActivityModelRepository;
 import com.android.intentresolver.data.repository.DevicePolicyResources;
+import com.android.intentresolver.data.repository.UserScopedContext;
 import com.android.intentresolver.domain.interactor.UserInteractor;
 import com.android.intentresolver.emptystate.CompositeEmptyStateProvider;
 import com.android.intentresolver.emptystate.CrossProfileIntentsChecker;
@@ -132,6 +133,7 @@ import com.android.intentresolver.profiles.TabConfig;
 import com.android.intentresolver.shared.model.ActivityModel;
 import com.android.intentresolver.shared.model.Profile;
 import com.android.intentresolver.shortcuts.AppPredictorFactory;
+import com.android.intentresolver.shortcuts.AppPredictorLatencyTracker;
 import com.android.intentresolver.shortcuts.ShortcutLoader;
 import com.android.intentresolver.ui.ActionTitle;
 import com.android.intentresolver.ui.ProfilePagerResources;
@@ -158,7 +160,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -236,14 +237,6 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
     //////////////////////////////////////////////////////////////////////////////////////////////
 
 
-    // TODO: these data structures are for one-time use in shuttling data from where they're
-    // populated in `ShortcutToChooserTargetConverter` to where they're consumed in
-    // `ShortcutSelectionLogic` which packs the appropriate elements into the final `TargetInfo`.
-    // That flow should be refactored so that `ChooserActivity` isn't responsible for holding their
-    // intermediate data, and then these members can be removed.
-    private final Map<ChooserTarget, AppTarget> mDirectShareAppTargetCache = new HashMap<>();
-    private final Map<ChooserTarget, ShortcutInfo> mDirectShareShortcutInfoCache = new HashMap<>();
-
     static final int TARGET_TYPE_DEFAULT = 0;
     static final int TARGET_TYPE_CHOOSER_TARGET = 1;
     static final int TARGET_TYPE_SHORTCUTS_FROM_SHORTCUT_MANAGER = 2;
@@ -271,6 +264,8 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
     @Inject public IntentForwarding mIntentForwarding;
     @Inject public ShareResultSenderFactory mShareResultSenderFactory;
     @Inject public ActivityModelRepository mActivityModelRepository;
+    @Inject public AppPredictorLatencyTracker mAppPredictorLatencyTracker;
+    @Inject public UserScopedContext mUserScopedContext;
 
     private ActivityModel mActivityModel;
     private ChooserRequest mRequest;
@@ -308,6 +303,8 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
             new EnterTransitionAnimationDelegate(this, () -> mResolverDrawerLayout);
 
     private final Map<Integer, ProfileRecord> mProfileRecords = new LinkedHashMap<>();
+    @Nullable
+    private AppPredictorFactory mAppPredictorFactory;
 
     private boolean mExcludeSharedText = false;
     /**
@@ -453,6 +450,17 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
         mChooserMultiProfilePagerAdapter.getActiveListAdapter().handlePackagesChanged();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (mViewModel != null) {
+            mViewModel.onTrimMemory(level);
+        }
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            SimpleIconFactory.trimPool();
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
@@ -504,15 +512,8 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
                 shouldDisplayLandscape(getResources().getConfiguration().orientation);
 
         setRetainInOnStop(mRequest.shouldRetainInOnStop());
-        createProfileRecords(
-                new AppPredictorFactory(
-                        this,
-                        Objects.toString(mRequest.getSharedText(), null),
-                        mRequest.getShareTargetFilter(),
-                        mAppPredictionAvailable
-                ),
-                mRequest.getShareTargetFilter()
-        );
+        mAppPredictorFactory = createAppPredictorFactory();
+        createProfileRecords(mAppPredictorFactory, mRequest.getShareTargetFilter());
 
 
         mChooserMultiProfilePagerAdapter = createMultiProfilePagerAdapter(
@@ -650,12 +651,10 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
                 mEnterTransitionAnimationDelegate,
                 new HeadlineGeneratorImpl(this),
                 mRequest.getContentTypeHint(),
-                mRequest.getMetadataText());
+                mRequest.getMetadataText(),
+                /* resolvePreviewTypeAsync = */ true);
         updateStickyContentPreview();
-        if (shouldShowStickyContentPreview()) {
-            getEventLog().logActionShareWithPreview(
-                    mChooserContentPreviewUi.getPreferredContentPreview());
-        }
+        final boolean showsStickyContentPreview = shouldShowStickyContentPreview();
         mChooserShownTime = System.currentTimeMillis();
         final long systemCost = mChooserShownTime - mIntentReceivedTime.get();
         getEventLog().logChooserActivityShown(
@@ -672,17 +671,25 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
         if (DEBUG) {
             Log.d(TAG, "System Time Cost is " + systemCost);
         }
-        getEventLog().logShareStarted(
-                mRequest.getReferrerPackage(),
-                mRequest.getTargetType(),
-                mRequest.getCallerChooserTargets().size(),
-                mRequest.getInitialIntents().size(),
-                isWorkProfile(),
-                mChooserContentPreviewUi.getPreferredContentPreview(),
-                mRequest.getTargetAction(),
-                mRequest.getChooserActions().size(),
-                mRequest.getModifyShareAction() != null
-        );
+        // The preview type may still be resolving; log the actual type rather than the fall-back.
+        final ChooserRequest request = mRequest;
+        final boolean isWorkProfile = isWorkProfile();
+        mChooserContentPreviewUi.getPreferredContentPreview(previewType -> {
+            if (showsStickyContentPreview) {
+                getEventLog().logActionShareWithPreview(previewType);
+            }
+            getEventLog().logShareStarted(
+                    request.getReferrerPackage(),
+                    request.getTargetType(),
+                    request.getCallerChooserTargets().size(),
+                    request.getInitialIntents().size(),
+                    isWorkProfile,
+                    previewType,
+                    request.getTargetAction(),
+                    request.getChooserActions().size(),
+                    request.getModifyShareAction() != null
+            );
+        });
         mEnterTransitionAnimationDelegate.postponeTransition();
         mInitialProfile = findSelectedProfile();
         Tracer.INSTANCE.markLaunched();
@@ -767,16 +774,17 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
     }
 
     private void recreatePagerAdapter() {
-        destroyProfileRecords();
-        createProfileRecords(
-                new AppPredictorFactory(
-                        this,
-                        Objects.toString(mRequest.getSharedText(), null),
-                        mRequest.getShareTargetFilter(),
-                        mAppPredictionAvailable
-                ),
-                mRequest.getShareTargetFilter()
-        );
+        AppPredictorFactory appPredictorFactory = createAppPredictorFactory();
+        if (mAppPredictorFactory != null
+                && mAppPredictorFactory.isCompatibleWith(appPredictorFactory)) {
+            // Keep the existing AppPredictor sessions and shortcut loaders, only reload shortcuts
+            // for the new target intent.
+            resetProfileRecords(mRequest.getShareTargetFilter());
+        } else {
+            destroyProfileRecords();
+        }
+        mAppPredictorFactory = appPredictorFactory;
+        createProfileRecords(appPredictorFactory, mRequest.getShareTargetFilter());
 
         int currentPage = mChooserMultiProfilePagerAdapter.getCurrentPage();
         if (mChooserMultiProfilePagerAdapter != null) {
@@ -1382,6 +1390,17 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
     //////////////////////////////////////////////////////////////////////////////////////////////
     //////////////////////////////////////////////////////////////////////////////////////////////
 
+    private AppPredictorFactory createAppPredictorFactory() {
+        return new AppPredictorFactory(
+                this,
+                Objects.toString(mRequest.getSharedText(), null),
+                mRequest.getShareTargetFilter(),
+                mAppPredictionAvailable);
+    }
+
+    /**
+     * Create profile records for the profiles that do not have them yet.
+     */
     private void createProfileRecords(
             AppPredictorFactory factory, IntentFilter targetIntentFilter) {
 
@@ -1391,6 +1410,9 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
                     && !mProfileAvailability.isAvailable(profile)) {
                 continue;
             }
+            if (getProfileRecord(profile.getPrimary().getHandle()) != null) {
+                continue;
+            }
             ProfileRecord record = createProfileRecord(
                     profile,
                     targetIntentFilter,
@@ -1443,7 +1465,9 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
                 appPredictor,
                 userHandle,
                 targetIntentFilter,
-                callback);
+                callback,
+                mAppPredictorLatencyTracker,
+                mUserScopedContext);
     }
 
     static SharedPreferences getPinnedSharedPrefs(Context context) {
@@ -1672,6 +1696,18 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
         mProfileRecords.clear();
     }
 
+    private void resetProfileRecords(@Nullable IntentFilter targetIntentFilter) {
+        Profile launchedAsProfile = mProfiles.getLaunchedAsProfile();
+        for (ProfileRecord record : mProfileRecords.values()) {
+            record.callerTargets = launchedAsProfile.equals(record.profile)
+                    ? mRequest.getCallerChooserTargets()
+                    : Collections.emptyList();
+            if (record.shortcutLoader != null) {
+                record.shortcutLoader.reset(targetIntentFilter);
+            }
+        }
+    }
+
     @Override // ResolverListCommunicator
     public Intent getReplacementIntent(ActivityInfo aInfo, Intent defIntent) {
         Intent result = defIntent;
@@ -1717,7 +1753,6 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
                     /* origTarget */ null,
                     new ArrayList<>(mRequest.getCallerChooserTargets()),
                     TARGET_TYPE_DEFAULT,
-                    /* directShareShortcutInfoCache */ Collections.emptyMap(),
                     /* directShareAppTargetCache */ Collections.emptyMap());
         }
     }
@@ -2488,8 +2523,6 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
         if (DEBUG) {
             Log.d(TAG, "onShortcutsLoaded for user: " + userHandle);
         }
-        mDirectShareShortcutInfoCache.putAll(result.getDirectShareShortcutInfoCache());
-        mDirectShareAppTargetCache.putAll(result.getDirectShareAppTargetCache());
         ChooserListAdapter adapter =
                 mChooserMultiProfilePagerAdapter.getListAdapterForUserHandle(userHandle);
         if (adapter != null) {
@@ -2498,14 +2531,12 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
                 addCallerChooserTargets(adapter);
             }
             for (ShortcutLoader.ShortcutResultInfo resultInfo : result.getShortcutsByApp()) {
-                adapter.addServiceResults(
+                adapter.addShortcutResults(
                         resultInfo.getAppTarget(),
                         resultInfo.getShortcuts(),
                         result.isFromAppPredictor()
                                 ? TARGET_TYPE_SHORTCUTS_FROM_PREDICTION_SERVICE
-                                : TARGET_TYPE_SHORTCUTS_FROM_SHORTCUT_MANAGER,
-                        mDirectShareShortcutInfoCache,
-                        mDirectShareAppTargetCache);
+                                : TARGET_TYPE_SHORTCUTS_FROM_SHORTCUT_MANAGER);
             }
             adapter.completeServiceTargetLoading();
         }
@@ -2748,7 +2779,7 @@ public class ChooserActivity extends Hilt_ChooserActivity implements
          */
         @Nullable
         public final ShortcutLoader shortcutLoader;
-        public final List<ChooserTarget> callerTargets;
+        public List<ChooserTarget> callerTargets;
         public long loadingStartTime;
 
         private ProfileRecord(
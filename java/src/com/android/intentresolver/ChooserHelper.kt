@@ -163,7 +163,7 @@ constructor(
                 val hasSelectionFlow =
                     if (
                         unselectFinalItem() &&
-                            viewModel.previewDataProvider.previewType ==
+                            viewModel.previewDataProvider.resolvePreviewType() ==
                                 CONTENT_PREVIEW_PAYLOAD_SELECTION
                     ) {
                         viewModel.shareouselViewModel.hasSelectedItems.stateIn(scope = this).also {
@@ -29,7 +29,6 @@ import android.content.pm.ActivityInfo;
 import android.content.pm.LabeledIntent;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.content.pm.ShortcutInfo;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
 import android.os.Trace;
@@ -54,8 +53,10 @@ import com.android.intentresolver.chooser.MultiDisplayResolveInfo;
 import com.android.intentresolver.chooser.NotSelectableTargetInfo;
 import com.android.intentresolver.chooser.SelectableTargetInfo;
 import com.android.intentresolver.chooser.TargetInfo;
+import com.android.intentresolver.icons.LoadPriority;
 import com.android.intentresolver.icons.TargetDataLoader;
 import com.android.intentresolver.logging.EventLog;
+import com.android.intentresolver.shortcuts.ShortcutCandidate;
 import com.android.intentresolver.widget.BadgeTextView;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.config.sysui.SystemUiDeviceConfigFlags;
@@ -386,6 +387,7 @@ public class ChooserListAdapter extends ResolverListAdapter {
         final boolean isEnabled = !isDestroyed() && mTargetsEnabled;
         view.setEnabled(isEnabled);
         final ViewHolder holder = (ViewHolder) view.getTag();
+        onTargetBound(holder, info);
 
         resetViewHolder(holder);
         // Always remove the spacing listener, attach as needed to direct share targets below.
@@ -505,12 +507,51 @@ public class ChooserListAdapter extends ResolverListAdapter {
         }
     }
 
+    @Override
+    protected void cancelIconLoad(TargetInfo info) {
+        if (!info.isSelectableTargetInfo()) {
+            super.cancelIconLoad(info);
+        } else if (!info.hasDisplayIcon() && mRequestedIcons.remove(info)) {
+            mTargetDataLoader.cancelIconLoad(info);
+        }
+    }
+
+    /**
+     * Adjusts the icon load priority of the target bound to the view when the view is shown or
+     * hidden: shown targets are loaded first, followed by the direct share targets.
+     */
+    public void onBoundViewVisibilityChanged(View view, boolean isVisible) {
+        if (!(view.getTag() instanceof ViewHolder)) {
+            return;
+        }
+        final TargetInfo info = ((ViewHolder) view.getTag()).boundTarget;
+        if (info == null || info.hasDisplayIcon()) {
+            return;
+        }
+        final LoadPriority priority;
+        if (!isVisible) {
+            priority = LoadPriority.OFF_SCREEN;
+        } else if (info.isSelectableTargetInfo()) {
+            priority = LoadPriority.DIRECT_SHARE;
+        } else {
+            priority = LoadPriority.VISIBLE;
+        }
+        mTargetDataLoader.setIconLoadPriority(info, priority);
+    }
+
+    /** Cancels the pending icon load of the target bound to the recycled view. */
+    public void onBoundViewRecycled(View view) {
+        if (view.getTag() instanceof ViewHolder) {
+            onTargetBound((ViewHolder) view.getTag(), null);
+        }
+    }
+
     private void onDirectShareIconLoaded(
             SelectableTargetInfo mTargetInfo, @Nullable Drawable icon, boolean notify) {
         if (icon != null && !mTargetInfo.hasDisplayIcon()) {
             mTargetInfo.getDisplayIconHolder().setDisplayIcon(icon);
             if (notify) {
-                notifyDataSetChanged();
+                notifyTargetChanged(mTargetInfo);
             }
         }
     }
@@ -774,20 +815,15 @@ public class ChooserListAdapter extends ResolverListAdapter {
             @Nullable DisplayResolveInfo origTarget,
             List<ChooserTarget> targets,
             int targetType,
-            Map<ChooserTarget, ShortcutInfo> directShareToShortcutInfos,
             Map<ChooserTarget, AppTarget> directShareToAppTargets) {
         // Avoid inserting any potentially late results.
         if (isDirectTargetRowEmptyState()) {
             return;
         }
-        boolean isShortcutResult = targetType == TARGET_TYPE_SHORTCUTS_FROM_SHORTCUT_MANAGER
-                || targetType == TARGET_TYPE_SHORTCUTS_FROM_PREDICTION_SERVICE;
         boolean isUpdated = mShortcutSelectionLogic.addServiceResults(
                 origTarget,
                 getBaseScore(origTarget, targetType),
                 targets,
-                isShortcutResult,
-                directShareToShortcutInfos,
                 directShareToAppTargets,
                 mContext.createContextAsUser(getUserHandle(), 0),
                 getTargetIntent(),
@@ -799,6 +835,30 @@ public class ChooserListAdapter extends ResolverListAdapter {
         }
     }
 
+    /**
+     * Evaluate an app's shortcuts for inclusion in the direct share area. May not be included
+     * if score is too low.
+     */
+    public void addShortcutResults(
+            DisplayResolveInfo origTarget,
+            List<ShortcutCandidate> shortcuts,
+            int targetType) {
+        // Avoid inserting any potentially late results.
+        if (isDirectTargetRowEmptyState()) {
+            return;
+        }
+        boolean isUpdated = mShortcutSelectionLogic.addShortcutResults(
+                origTarget,
+                getBaseScore(origTarget, targetType),
+                shortcuts,
+                mReferrerFillInIntent,
+                mMaxRankedTargets,
+                mServiceTargets);
+        if (isUpdated) {
+            notifyDataSetChanged();
+        }
+    }
+
     /**
      * Copy direct targets from another ChooserListAdapter instance
      */
@@ -848,9 +908,24 @@ public class ChooserListAdapter extends ResolverListAdapter {
             mServiceTargets.add(NotSelectableTargetInfo.newEmptyTargetInfo());
             mEventLog.logSharesheetEmptyDirectShareRow();
         }
+        prefetchDirectShareIcons();
         notifyDataSetChanged();
     }
 
+    /**
+     * Start loading icons for the direct share targets that are going to be displayed without
+     * waiting for them to be bound, so the direct share row is rendered fully populated as soon
+     * as possible.
+     */
+    private void prefetchDirectShareIcons() {
+        for (int i = 0, count = getServiceTargetCount(); i < count; i++) {
+            TargetInfo info = mServiceTargets.get(i);
+            if (info.isSelectableTargetInfo() && !info.hasDisplayIcon()) {
+                loadDirectShareIcon((SelectableTargetInfo) info);
+            }
+        }
+    }
+
     /**
      * Rather than fully sorting the input list, this sorting task will put the top k elements
      * in the head of input list and fill the tail with other elements in undetermined order.
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.os.UserHandle;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the {@link Resources} and the substitute permission state of target packages, per package
+ * and user, so that the labels, sub-labels and icons of all activities of one app share a single
+ * resource load. Meant to live as long as a Chooser session.
+ */
+final class PackageResourcesCache {
+    private final PackageManager mPackageManager;
+    private final ConcurrentHashMap<Key, PackageResources> mPackages = new ConcurrentHashMap<>();
+
+    PackageResourcesCache(PackageManager packageManager) {
+        mPackageManager = packageManager;
+    }
+
+    /** Returns the shared state of the package of the given application. */
+    PackageResources get(ApplicationInfo appInfo) {
+        Key key = new Key(appInfo.packageName, UserHandle.getUserId(appInfo.uid));
+        return mPackages.compute(
+                key,
+                (k, resources) ->
+                        resources != null && resources.isFor(appInfo)
+                                ? resources
+                                : new PackageResources(k.mPackageName, appInfo));
+    }
+
+    /**
+     * Returns the shared state of the given package, for the same user as the given application.
+     */
+    PackageResources get(String packageName, ApplicationInfo userAppInfo) {
+        if (packageName.equals(userAppInfo.packageName)) {
+            return get(userAppInfo);
+        }
+        Key key = new Key(packageName, UserHandle.getUserId(userAppInfo.uid));
+        return mPackages.computeIfAbsent(key, k -> new PackageResources(k.mPackageName, null));
+    }
+
+    /** Resources and permission state of a single package, loaded on the first use. */
+    final class PackageResources {
+        @Nullable
+        private final String mPackageName;
+        @Nullable
+        private final ApplicationInfo mAppInfo;
+        @GuardedBy("this")
+        private boolean mIsResourcesLoaded;
+        @GuardedBy("this")
+        @Nullable
+        private Resources mResources;
+        @GuardedBy("this")
+        @Nullable
+        private Boolean mHasSubstitutePermission;
+
+        private PackageResources(@Nullable String packageName, @Nullable ApplicationInfo appInfo) {
+            mPackageName = packageName;
+            mAppInfo = appInfo;
+        }
+
+        /** Returns the package's resources, or null if the package could not be found. */
+        @Nullable
+        synchronized Resources getResources() {
+            if (!mIsResourcesLoaded) {
+                mIsResourcesLoaded = true;
+                try {
+                    mResources = mAppInfo == null
+                            ? mPackageManager.getResourcesForApplication(mPackageName)
+                            : mPackageManager.getResourcesForApplication(mAppInfo);
+                } catch (PackageManager.NameNotFoundException ignore) { }
+            }
+            return mResources;
+        }
+
+        /** Whether the package may substitute its app name and icon with the activity ones. */
+        synchronized boolean hasSubstitutePermission() {
+            if (mHasSubstitutePermission == null) {
+                mHasSubstitutePermission = PackageManager.PERMISSION_GRANTED
+                        == mPackageManager.checkPermission(
+                                android.Manifest.permission
+                                        .SUBSTITUTE_SHARE_TARGET_APP_NAME_AND_ICON,
+                                mPackageName);
+            }
+            return mHasSubstitutePermission;
+        }
+
+        private boolean isFor(ApplicationInfo appInfo) {
+            return mAppInfo != null
+                    && mAppInfo.longVersionCode == appInfo.longVersionCode
+                    && Objects.equals(mAppInfo.sourceDir, appInfo.sourceDir);
+        }
+    }
+
+    private static final class Key {
+        @Nullable
+        private final String mPackageName;
+        private final int mUserId;
+
+        Key(@Nullable String packageName, int userId) {
+            mPackageName = packageName;
+            mUserId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return mUserId == other.mUserId && Objects.equals(mPackageName, other.mPackageName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mPackageName, mUserId);
+        }
+    }
+}
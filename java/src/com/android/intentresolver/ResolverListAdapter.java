@@ -33,6 +33,7 @@ import android.os.UserHandle;
 import android.os.UserManager;
 import android.text.TextUtils;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -55,8 +56,10 @@ import com.android.internal.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -79,6 +82,16 @@ public class ResolverListAdapter extends BaseAdapter {
 
     private final Set<DisplayResolveInfo> mRequestedIcons = new HashSet<>();
     private final Set<DisplayResolveInfo> mRequestedLabels = new HashSet<>();
+    /** Number of views each target is bound to. */
+    private final Map<TargetInfo, Integer> mBoundViewCounts = new HashMap<>();
+    /** Targets whose icon or label arrived since the last frame. */
+    private final Set<TargetInfo> mChangedTargets = new HashSet<>();
+    private final Choreographer.FrameCallback mChangedTargetsCallback =
+            frameTimeNanos -> dispatchChangedTargets();
+    private boolean mIsChangedTargetsDispatchScheduled;
+    private boolean mIsDispatchingChangedTargets;
+    @Nullable
+    private TargetsChangedListener mTargetsChangedListener;
     private final Executor mBgExecutor;
     private final Executor mCallbackExecutor;
     private final AtomicBoolean mDestroyed = new AtomicBoolean();
@@ -725,6 +738,7 @@ public class ResolverListAdapter extends BaseAdapter {
 
     protected void onBindView(View view, TargetInfo info, int position) {
         final ViewHolder holder = (ViewHolder) view.getTag();
+        onTargetBound(holder, info);
         if (info == null) {
             holder.icon.setImageDrawable(loadIconPlaceholder());
             holder.bindLabel("", "");
@@ -755,7 +769,7 @@ public class ResolverListAdapter extends BaseAdapter {
                     getUserHandle(),
                     (drawable) -> {
                         onIconLoaded(info, drawable);
-                        notifyDataSetChanged();
+                        notifyTargetChanged(info);
                     });
             if (icon != null) {
                 onIconLoaded(info, icon);
@@ -763,6 +777,36 @@ public class ResolverListAdapter extends BaseAdapter {
         }
     }
 
+    /**
+     * Keeps track of the target bound to the view. The pending icon load of the target previously
+     * bound to the view gets cancelled if that target is no longer bound to any view.
+     */
+    protected final void onTargetBound(ViewHolder holder, @Nullable TargetInfo info) {
+        final TargetInfo previous = holder.boundTarget;
+        if (previous == info) {
+            return;
+        }
+        holder.boundTarget = info;
+        if (info != null) {
+            mBoundViewCounts.merge(info, 1, Integer::sum);
+        }
+        if (previous != null
+                && mBoundViewCounts.computeIfPresent(
+                        previous, (target, count) -> count > 1 ? count - 1 : null) == null) {
+            cancelIconLoad(previous);
+        }
+    }
+
+    /**
+     * Cancels the pending icon load of the target, if there is one. The icon is requested again
+     * when the target is bound next time.
+     */
+    protected void cancelIconLoad(TargetInfo info) {
+        if (!info.hasDisplayIcon() && mRequestedIcons.remove(info)) {
+            mTargetDataLoader.cancelIconLoad(info);
+        }
+    }
+
     private void onIconLoaded(DisplayResolveInfo displayResolveInfo, Drawable drawable) {
         if (!displayResolveInfo.hasDisplayIcon()) {
             displayResolveInfo.getDisplayIconHolder().setDisplayIcon(drawable);
@@ -782,7 +826,65 @@ public class ResolverListAdapter extends BaseAdapter {
         }
         displayResolveInfo.setDisplayLabel(result.getLabel());
         displayResolveInfo.setExtendedInfo(result.getSubLabel());
-        notifyDataSetChanged();
+        notifyTargetChanged(displayResolveInfo);
+    }
+
+    /**
+     * Sets the listener to be notified of the targets whose icon or label has arrived. The data set
+     * observers are notified right after the listener; see {@link #isDispatchingChangedTargets()}.
+     */
+    public void setTargetsChangedListener(@Nullable TargetsChangedListener listener) {
+        mTargetsChangedListener = listener;
+    }
+
+    /**
+     * Whether the ongoing data set change notification only reports targets whose icon or label
+     * has arrived. Those targets have already been passed to the {@link TargetsChangedListener}.
+     */
+    public boolean isDispatchingChangedTargets() {
+        return mIsDispatchingChangedTargets;
+    }
+
+    /**
+     * Notifies that the target's icon or label has arrived. The notifications are coalesced and
+     * dispatched once per frame.
+     */
+    @MainThread
+    protected final void notifyTargetChanged(TargetInfo info) {
+        mChangedTargets.add(info);
+        if (!mIsChangedTargetsDispatchScheduled) {
+            mIsChangedTargetsDispatchScheduled = true;
+            postFrameCallback(mChangedTargetsCallback);
+        }
+    }
+
+    private void dispatchChangedTargets() {
+        mIsChangedTargetsDispatchScheduled = false;
+        if (mChangedTargets.isEmpty() || isDestroyed()) {
+            mChangedTargets.clear();
+            return;
+        }
+        Set<TargetInfo> changedTargets = new HashSet<>(mChangedTargets);
+        mChangedTargets.clear();
+        mIsDispatchingChangedTargets = true;
+        try {
+            if (mTargetsChangedListener != null) {
+                mTargetsChangedListener.onTargetsChanged(changedTargets);
+            }
+            notifyDataSetChanged();
+        } finally {
+            mIsDispatchingChangedTargets = false;
+        }
+    }
+
+    @VisibleForTesting
+    protected void postFrameCallback(Choreographer.FrameCallback callback) {
+        Choreographer.getInstance().postFrameCallback(callback);
+    }
+
+    @VisibleForTesting
+    protected void removeFrameCallback(Choreographer.FrameCallback callback) {
+        Choreographer.getInstance().removeFrameCallback(callback);
     }
 
     public void onDestroy() {
@@ -793,6 +895,12 @@ public class ResolverListAdapter extends BaseAdapter {
         }
         mRequestedIcons.clear();
         mRequestedLabels.clear();
+        mBoundViewCounts.clear();
+        mChangedTargets.clear();
+        if (mIsChangedTargetsDispatchScheduled) {
+            mIsChangedTargetsDispatchScheduled = false;
+            removeFrameCallback(mChangedTargetsCallback);
+        }
     }
 
     public final boolean isDestroyed() {
@@ -884,6 +992,12 @@ public class ResolverListAdapter extends BaseAdapter {
                 pOrigIntent != null ? pOrigIntent : replacementIntent);
     }
 
+    /** Receives the targets whose icon or label has arrived, once per frame. */
+    public interface TargetsChangedListener {
+        /** Called with the targets whose icon or label has arrived since the last call. */
+        void onTargetsChanged(Set<TargetInfo> targets);
+    }
+
     /**
      * Necessary methods to communicate between {@link ResolverListAdapter}
      * and {@link ResolverActivity}.
@@ -931,6 +1045,10 @@ public class ResolverListAdapter extends BaseAdapter {
         public TextView text2;
         public ImageView icon;
 
+        /** The target currently bound to the view. */
+        @Nullable
+        TargetInfo boundTarget;
+
         public final void reset() {
             text.setText("");
             text.setMaxLines(2);
@@ -23,7 +23,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.content.pm.ShortcutInfo;
 import android.service.chooser.ChooserTarget;
 import android.util.Log;
 
@@ -32,6 +31,7 @@ import androidx.annotation.Nullable;
 import com.android.intentresolver.chooser.DisplayResolveInfo;
 import com.android.intentresolver.chooser.SelectableTargetInfo;
 import com.android.intentresolver.chooser.TargetInfo;
+import com.android.intentresolver.shortcuts.ShortcutCandidate;
 import com.android.intentresolver.ui.AppShortcutLimit;
 import com.android.intentresolver.ui.EnforceShortcutLimit;
 
@@ -39,6 +39,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -56,6 +58,8 @@ public class ShortcutSelectionLogic {
     // Descending order
     private final Comparator<ChooserTarget> mBaseTargetComparator =
             (lhs, rhs) -> Float.compare(rhs.getScore(), lhs.getScore());
+    private final Comparator<ShortcutCandidate> mBaseCandidateComparator =
+            (lhs, rhs) -> Float.compare(rhs.getScore(), lhs.getScore());
 
     @Inject
     public ShortcutSelectionLogic(
@@ -66,15 +70,13 @@ public class ShortcutSelectionLogic {
     }
 
     /**
-     * Evaluate targets for inclusion in the direct share area. May not be included
-     * if score is too low.
+     * Evaluate caller-provided targets for inclusion in the direct share area. May not be included
+     * if score is too low. Shortcuts are evaluated by {@link #addShortcutResults}.
      */
     public boolean addServiceResults(
             @Nullable DisplayResolveInfo origTarget,
             float origTargetScore,
             List<ChooserTarget> targets,
-            boolean isShortcutResult,
-            Map<ChooserTarget, ShortcutInfo> directShareToShortcutInfos,
             Map<ChooserTarget, AppTarget> directShareToAppTargets,
             Context userContext,
             Intent targetIntent,
@@ -91,28 +93,15 @@ public class ShortcutSelectionLogic {
             return false;
         }
         Collections.sort(targets, mBaseTargetComparator);
-        final int maxTargets = isShortcutResult ? mMaxShortcutTargetsPerApp
-                : MAX_CHOOSER_TARGETS_PER_APP;
-        final int targetsLimit = mApplySharingAppLimits ? Math.min(targets.size(), maxTargets)
+        final int targetsLimit = mApplySharingAppLimits
+                ? Math.min(targets.size(), MAX_CHOOSER_TARGETS_PER_APP)
                 : targets.size();
         float lastScore = 0;
         boolean shouldNotify = false;
         for (int i = 0, count = targetsLimit; i < count; i++) {
             final ChooserTarget target = targets.get(i);
-            float targetScore = target.getScore();
-            if (mApplySharingAppLimits) {
-                targetScore *= origTargetScore;
-                if (i > 0 && targetScore >= lastScore) {
-                    // Apply a decay so that the top app can't crowd out everything else.
-                    // This incents ChooserTargetServices to define what's truly better.
-                    targetScore = lastScore * 0.95f;
-                }
-            }
-            ShortcutInfo shortcutInfo = isShortcutResult ? directShareToShortcutInfos.get(target)
-                    : null;
-            if ((shortcutInfo != null) && shortcutInfo.isPinned()) {
-                targetScore += PINNED_SHORTCUT_TARGET_SCORE_BOOST;
-            }
+            final float targetScore = getModifiedScore(
+                    i, target.getScore(), origTargetScore, lastScore, /* isPinned = */ false);
             ResolveInfo backupResolveInfo;
             Intent resolvedIntent;
             if (origTarget == null) {
@@ -125,16 +114,20 @@ public class ShortcutSelectionLogic {
                 resolvedIntent = origTarget.getResolvedIntent();
                 backupResolveInfo = null;
             }
+            TargetInfo targetInfo = SelectableTargetInfo.newSelectableTargetInfo(
+                    origTarget,
+                    backupResolveInfo,
+                    resolvedIntent,
+                    target,
+                    targetScore,
+                    /* shortcutInfo = */ null,
+                    directShareToAppTargets.get(target),
+                    referrerFillInIntent);
             boolean isInserted = insertServiceTarget(
-                    SelectableTargetInfo.newSelectableTargetInfo(
-                            origTarget,
-                            backupResolveInfo,
-                            resolvedIntent,
-                            target,
-                            targetScore,
-                            shortcutInfo,
-                            directShareToAppTargets.get(target),
-                            referrerFillInIntent),
+                    targetInfo::isSimilar,
+                    targetInfo.isPinned(),
+                    targetInfo.getModifiedScore(),
+                    () -> targetInfo,
                     maxRankedTargets,
                     serviceTargets);
 
@@ -154,6 +147,82 @@ public class ShortcutSelectionLogic {
         return shouldNotify;
     }
 
+    /**
+     * Evaluate shortcuts of an app for inclusion in the direct share area. Unlike
+     * {@link #addServiceResults}, a {@link TargetInfo} is only created for the shortcuts that are
+     * actually included.
+     */
+    public boolean addShortcutResults(
+            DisplayResolveInfo origTarget,
+            float origTargetScore,
+            List<ShortcutCandidate> candidates,
+            Intent referrerFillInIntent,
+            int maxRankedTargets,
+            List<TargetInfo> serviceTargets) {
+        if (DEBUG) {
+            Log.d(TAG, "addShortcutResults "
+                    + origTarget.getResolvedComponentName() + ", "
+                    + candidates.size()
+                    + " candidates");
+        }
+        if (candidates.isEmpty()) {
+            return false;
+        }
+        Collections.sort(candidates, mBaseCandidateComparator);
+        final int candidatesLimit = mApplySharingAppLimits
+                ? Math.min(candidates.size(), mMaxShortcutTargetsPerApp)
+                : candidates.size();
+        float lastScore = 0;
+        boolean shouldNotify = false;
+        for (int i = 0; i < candidatesLimit; i++) {
+            final ShortcutCandidate candidate = candidates.get(i);
+            final float targetScore = getModifiedScore(
+                    i, candidate.getScore(), origTargetScore, lastScore, candidate.isPinned());
+            boolean isInserted = insertServiceTarget(
+                    candidate::isSimilar,
+                    candidate.isPinned(),
+                    targetScore,
+                    () -> candidate.toTargetInfo(origTarget, targetScore, referrerFillInIntent),
+                    maxRankedTargets,
+                    serviceTargets);
+
+            shouldNotify |= isInserted;
+
+            if (DEBUG) {
+                Log.d(TAG, " => " + candidate.getComponentName() + " score=" + targetScore
+                        + " base=" + candidate.getScore()
+                        + " lastScore=" + lastScore
+                        + " baseScore=" + origTargetScore
+                        + " applyAppLimit=" + mApplySharingAppLimits);
+            }
+
+            lastScore = targetScore;
+        }
+
+        return shouldNotify;
+    }
+
+    /**
+     * Computes the score of an app's target at the given {@code index} in the app's targets, sorted
+     * by their scores, given the score of the previous one.
+     */
+    private float getModifiedScore(
+            int index, float score, float origTargetScore, float lastScore, boolean isPinned) {
+        float targetScore = score;
+        if (mApplySharingAppLimits) {
+            targetScore *= origTargetScore;
+            if (index > 0 && targetScore >= lastScore) {
+                // Apply a decay so that the top app can't crowd out everything else.
+                // This incents ChooserTargetServices to define what's truly better.
+                targetScore = lastScore * 0.95f;
+            }
+        }
+        if (isPinned) {
+            targetScore += PINNED_SHORTCUT_TARGET_SCORE_BOOST;
+        }
+        return targetScore;
+    }
+
     /**
      * Creates a resolved intent for a caller-specified target.
      * @param target, a caller-specified target.
@@ -167,18 +236,24 @@ public class ShortcutSelectionLogic {
         return resolvedIntent;
     }
 
+    /**
+     * Inserts a new target into the service targets, if it is not a duplicate and its score is high
+     * enough. The target is only created, with the {@code targetFactory}, when it is inserted.
+     */
     private boolean insertServiceTarget(
-            TargetInfo chooserTargetInfo,
+            Predicate<TargetInfo> isSimilar,
+            boolean isPinned,
+            float newScore,
+            Supplier<TargetInfo> targetFactory,
             int maxRankedTargets,
             List<TargetInfo> serviceTargets) {
 
         // Check for duplicates and abort if found
         for (int i = 0; i < serviceTargets.size(); i++) {
             TargetInfo otherTargetInfo = serviceTargets.get(i);
-            if (chooserTargetInfo.isSimilar(otherTargetInfo)) {
-                if (rebuildAdaptersOnTargetPinning()
-                        && chooserTargetInfo.isPinned() != otherTargetInfo.isPinned()) {
-                    serviceTargets.set(i, chooserTargetInfo);
+            if (isSimilar.test(otherTargetInfo)) {
+                if (rebuildAdaptersOnTargetPinning() && isPinned != otherTargetInfo.isPinned()) {
+                    serviceTargets.set(i, targetFactory.get());
                     return true;
                 }
                 return false;
@@ -186,20 +261,19 @@ public class ShortcutSelectionLogic {
         }
 
         int currentSize = serviceTargets.size();
-        final float newScore = chooserTargetInfo.getModifiedScore();
         for (int i = 0; i < Math.min(currentSize, maxRankedTargets); i++) {
             final TargetInfo serviceTarget = serviceTargets.get(i);
             if (serviceTarget == null) {
-                serviceTargets.set(i, chooserTargetInfo);
+                serviceTargets.set(i, targetFactory.get());
                 return true;
             } else if (newScore > serviceTarget.getModifiedScore()) {
-                serviceTargets.add(i, chooserTargetInfo);
+                serviceTargets.add(i, targetFactory.get());
                 return true;
             }
         }
 
         if (currentSize < maxRankedTargets) {
-            serviceTargets.add(chooserTargetInfo);
+            serviceTargets.add(targetFactory.get());
             return true;
         }
 
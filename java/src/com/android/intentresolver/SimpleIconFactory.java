@@ -45,9 +45,11 @@ import android.graphics.drawable.DrawableWrapper;
 import android.os.UserHandle;
 import android.util.AttributeSet;
 import android.util.Pools.SynchronizedPool;
+import android.util.SparseArray;
 import android.util.TypedValue;
 
 import androidx.annotation.AttrRes;
+import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -56,12 +58,14 @@ import com.android.internal.annotations.VisibleForTesting;
 import org.xmlpull.v1.XmlPullParser;
 
 import java.nio.ByteBuffer;
-import java.util.Optional;
 
 /**
  * @deprecated Use the Launcher3 Iconloaderlib at packages/apps/Launcher3/iconloaderlib. This class
  * is a temporary fork of Iconloader. It combines all necessary methods to render app icons that are
  * possibly badged. It is intended to be used only by Sharesheet for the Q release with custom code.
+ *
+ * <p>An instance is confined to a single thread at a time, from {@link #obtain} until
+ * {@link #recycle}, and reuses its scratch bitmaps and paints between the icons it renders.
  */
 @Deprecated
 public class SimpleIconFactory implements AutoCloseable {
@@ -70,6 +74,10 @@ public class SimpleIconFactory implements AutoCloseable {
     private static final SynchronizedPool<SimpleIconFactory> sPool =
             new SynchronizedPool<>(Runtime.getRuntime().availableProcessors());
     private static boolean sPoolEnabled = true;
+    private static boolean sScratchBuffersEnabled = true;
+    /** Shadow blur filters by icon size. */
+    @GuardedBy("sBlurMaskFilters")
+    private static final SparseArray<BlurMaskFilter> sBlurMaskFilters = new SparseArray<>();
 
     private static final int DEFAULT_WRAPPER_BACKGROUND = Color.WHITE;
     private static final float BLUR_FACTOR = 1.5f / 48;
@@ -85,6 +93,23 @@ public class SimpleIconFactory implements AutoCloseable {
 
     private Drawable mWrapperIcon;
     private final Rect mOldBounds = new Rect();
+    private final Rect mTmpBounds = new Rect();
+    private final Rect mTmpChildBounds = new Rect();
+    private final float[] mTmpScale = new float[1];
+
+    // Scratch buffers for the intermediate rendering steps, allocated on the first use: two
+    // ARGB_8888 and one ALPHA_8 icon sized bitmaps, i.e. 9 bytes per icon pixel. They are kept
+    // while the instance is pooled, until trimPool() drops it.
+    private Bitmap mScratchBitmap;
+    private Bitmap mMaskedBitmap;
+    private BitmapDrawable mMaskedDrawable;
+    private Bitmap mCircleMask;
+    private final Canvas mMaskCanvas = new Canvas();
+    private final Paint mMaskPaint =
+            new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private final PorterDuffXfermode mSrcInXfermode =
+            new PorterDuffXfermode(PorterDuff.Mode.SRC_IN);
+    private final Paint mBadgePaint = new Paint();
 
     /**
      * Obtain a SimpleIconFactory from a pool objects.
@@ -118,6 +143,26 @@ public class SimpleIconFactory implements AutoCloseable {
         sPoolEnabled = poolEnabled;
     }
 
+    /**
+     * Drops the pooled instances along with their scratch buffers, see
+     * {@link android.content.ComponentCallbacks2#onTrimMemory}.
+     */
+    public static void trimPool() {
+        while (sPool.acquire() != null) {
+            // Dropped instances are garbage collected
+        }
+    }
+
+    /**
+     * Enables or disables the reuse of scratch buffers between rendered icons. It is enabled in
+     * production; disabling it allows to compare against fresh allocations for every icon, e.g.
+     * in benchmarks. Please ensure that you reset this value back after finishing the test.
+     */
+    @VisibleForTesting
+    public static void setScratchBuffersEnabled(boolean scratchBuffersEnabled) {
+        sScratchBuffersEnabled = scratchBuffersEnabled;
+    }
+
     private static int getAttrDimFromContext(Context ctx, @AttrRes int attrId, String errorMsg) {
         final Resources res = ctx.getResources();
         TypedValue outVal = new TypedValue();
@@ -172,6 +217,7 @@ public class SimpleIconFactory implements AutoCloseable {
 
         mCanvas = new Canvas();
         mCanvas.setDrawFilter(new PaintFlagsDrawFilter(DITHER_FLAG, FILTER_BITMAP_FLAG));
+        mBadgePaint.setFilterBitmap(false);
 
         // Normalizer init
         // Use twice the icon size as maximum size to avoid scaling down twice.
@@ -179,15 +225,27 @@ public class SimpleIconFactory implements AutoCloseable {
         mBitmap = Bitmap.createBitmap(mMaxSize, mMaxSize, Bitmap.Config.ALPHA_8);
         mScaleCheckCanvas = new Canvas(mBitmap);
         mPixels = new byte[mMaxSize * mMaxSize];
+        mPixelBuffer = ByteBuffer.wrap(mPixels);
         mLeftBorder = new float[mMaxSize];
         mRightBorder = new float[mMaxSize];
+        mAngles = new float[mMaxSize - 1];
         mBounds = new Rect();
         mAdaptiveIconBounds = new Rect();
         mAdaptiveIconScale = SCALE_NOT_INITIALIZED;
 
         // Shadow generator init
-        mDefaultBlurMaskFilter = new BlurMaskFilter(iconBitmapSize * BLUR_FACTOR,
-                Blur.NORMAL);
+        mDefaultBlurMaskFilter = getBlurMaskFilter(iconBitmapSize);
+    }
+
+    private static BlurMaskFilter getBlurMaskFilter(int iconBitmapSize) {
+        synchronized (sBlurMaskFilters) {
+            BlurMaskFilter filter = sBlurMaskFilters.get(iconBitmapSize);
+            if (filter == null) {
+                filter = new BlurMaskFilter(iconBitmapSize * BLUR_FACTOR, Blur.NORMAL);
+                sBlurMaskFilters.put(iconBitmapSize, filter);
+            }
+            return filter;
+        }
     }
 
     /**
@@ -214,7 +272,7 @@ public class SimpleIconFactory implements AutoCloseable {
      */
     @Deprecated
     Bitmap createUserBadgedIconBitmap(@Nullable Drawable icon, @Nullable UserHandle user) {
-        float [] scale = new float[1];
+        float[] scale = sScratchBuffersEnabled ? mTmpScale : new float[1];
 
         // If no icon is provided use the system default
         if (icon == null) {
@@ -224,7 +282,7 @@ public class SimpleIconFactory implements AutoCloseable {
         Bitmap bitmap = createIconBitmap(icon, scale[0]);
         if (icon instanceof AdaptiveIconDrawable) {
             mCanvas.setBitmap(bitmap);
-            recreateIcon(Bitmap.createBitmap(bitmap), mCanvas);
+            recreateIcon(copyToScratchBitmap(bitmap), mCanvas);
             mCanvas.setBitmap(null);
         }
 
@@ -273,57 +331,105 @@ public class SimpleIconFactory implements AutoCloseable {
         } else if (w > h && h > 0) {
             scale = (float) w / h;
         }
-        Bitmap bitmap = createIconBitmapNoInsetOrMask(icon, scale);
-        bitmap = maskBitmapToCircle(bitmap);
-        icon = new BitmapDrawable(mContext.getResources(), bitmap);
+        Bitmap bitmap = getScratchBitmap();
+        drawIconBitmap(icon, scale, bitmap, false, true);
+        icon = maskBitmapToCircle(bitmap);
 
         // We now have a circular masked and scaled icon, inset and apply shadow
         scale = getScale(icon, null);
         bitmap = createIconBitmap(icon, scale);
 
         mCanvas.setBitmap(bitmap);
-        recreateIcon(Bitmap.createBitmap(bitmap), mCanvas);
+        recreateIcon(copyToScratchBitmap(bitmap), mCanvas);
 
-        if (renderedAppIcon != null) {
-            // Now scale down and apply the badge to the bottom right corner of the flattened icon
-            renderedAppIcon = Bitmap.createScaledBitmap(renderedAppIcon, mBadgeBitmapSize,
-                    mBadgeBitmapSize, false);
+        mCanvas.setBitmap(null);
 
-            // Paint the provided badge on top of the flattened icon
-            mCanvas.drawBitmap(renderedAppIcon, mIconBitmapSize - mBadgeBitmapSize,
-                    mIconBitmapSize - mBadgeBitmapSize, null);
+        if (renderedAppIcon != null) {
+            drawBadge(renderedAppIcon, bitmap);
         }
 
-        mCanvas.setBitmap(null);
-
         return bitmap;
     }
 
-    private Bitmap maskBitmapToCircle(Bitmap bitmap) {
-        final Bitmap output = Bitmap.createBitmap(bitmap.getWidth(),
-                bitmap.getHeight(), Bitmap.Config.ARGB_8888);
-        final Canvas canvas = new Canvas(output);
-        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG
-                | Paint.FILTER_BITMAP_FLAG);
+    /**
+     * Scales down and paints the badge to the bottom right corner of the flattened icon. The badge
+     * is scaled without filtering, as {@code Bitmap.createScaledBitmap(badge, size, size, false)}
+     * does; mCanvas is not used because its draw filter enables bitmap filtering.
+     */
+    private void drawBadge(Bitmap badge, Bitmap icon) {
+        final int badgeOffset = mIconBitmapSize - mBadgeBitmapSize;
+        if (!sScratchBuffersEnabled) {
+            badge = Bitmap.createScaledBitmap(badge, mBadgeBitmapSize, mBadgeBitmapSize, false);
+            mCanvas.setBitmap(icon);
+            mCanvas.drawBitmap(badge, badgeOffset, badgeOffset, null);
+            mCanvas.setBitmap(null);
+            return;
+        }
+        mTmpBounds.set(badgeOffset, badgeOffset, mIconBitmapSize, mIconBitmapSize);
+        mMaskCanvas.setBitmap(icon);
+        mMaskCanvas.drawBitmap(badge, null, mTmpBounds, mBadgePaint);
+        mMaskCanvas.setBitmap(null);
+    }
 
-        // Apply an offset to enable shadow to be drawn
-        final int size = bitmap.getWidth();
-        int offset = Math.max((int) Math.ceil(BLUR_FACTOR * size), 1);
+    /** Masks the icon sized bitmap to a circle; the returned drawable is a scratch buffer. */
+    private BitmapDrawable maskBitmapToCircle(Bitmap bitmap) {
+        if (!sScratchBuffersEnabled || mMaskedDrawable == null) {
+            mMaskedBitmap = Bitmap.createBitmap(mIconBitmapSize, mIconBitmapSize,
+                    Bitmap.Config.ARGB_8888);
+            mMaskedDrawable = new BitmapDrawable(mContext.getResources(), mMaskedBitmap);
+        }
+        final Bitmap output = mMaskedBitmap;
+        output.eraseColor(Color.TRANSPARENT);
+        mMaskCanvas.setBitmap(output);
 
         // Draw mask
-        paint.setColor(0xffffffff);
-        canvas.drawARGB(0, 0, 0, 0);
-        canvas.drawCircle(bitmap.getWidth() / 2f,
-                bitmap.getHeight() / 2f,
-                bitmap.getWidth() / 2f - offset,
-                paint);
+        mMaskPaint.setXfermode(null);
+        mMaskCanvas.drawBitmap(getCircleMask(), 0, 0, mMaskPaint);
 
         // Draw masked bitmap
-        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
-        final Rect rect = new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight());
-        canvas.drawBitmap(bitmap, rect, rect, paint);
+        mMaskPaint.setXfermode(mSrcInXfermode);
+        mMaskCanvas.drawBitmap(bitmap, 0, 0, mMaskPaint);
+        mMaskCanvas.setBitmap(null);
+
+        return mMaskedDrawable;
+    }
+
+    private Bitmap getCircleMask() {
+        if (!sScratchBuffersEnabled || mCircleMask == null) {
+            final int size = mIconBitmapSize;
+            mCircleMask = Bitmap.createBitmap(size, size, Bitmap.Config.ALPHA_8);
+            // Apply an offset to enable shadow to be drawn
+            final int offset = Math.max((int) Math.ceil(BLUR_FACTOR * size), 1);
+            final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG
+                    | Paint.FILTER_BITMAP_FLAG);
+            paint.setColor(0xffffffff);
+            mMaskCanvas.setBitmap(mCircleMask);
+            mMaskCanvas.drawCircle(size / 2f, size / 2f, size / 2f - offset, paint);
+            mMaskCanvas.setBitmap(null);
+        }
+        return mCircleMask;
+    }
+
+    /** Returns an icon sized scratch bitmap; its content is undefined. */
+    private Bitmap getScratchBitmap() {
+        if (!sScratchBuffersEnabled || mScratchBitmap == null) {
+            mScratchBitmap = Bitmap.createBitmap(mIconBitmapSize, mIconBitmapSize,
+                    Bitmap.Config.ARGB_8888);
+        }
+        return mScratchBitmap;
+    }
 
-        return output;
+    /** Copies the icon sized bitmap to the scratch bitmap. */
+    private Bitmap copyToScratchBitmap(Bitmap bitmap) {
+        if (!sScratchBuffersEnabled) {
+            return Bitmap.createBitmap(bitmap);
+        }
+        final Bitmap copy = getScratchBitmap();
+        copy.eraseColor(Color.TRANSPARENT);
+        mMaskCanvas.setBitmap(copy);
+        mMaskCanvas.drawBitmap(bitmap, 0, 0, null);
+        mMaskCanvas.setBitmap(null);
+        return copy;
     }
 
     private static Drawable getFullResDefaultActivityIcon(int iconDpi) {
@@ -335,19 +441,24 @@ public class SimpleIconFactory implements AutoCloseable {
         return createIconBitmap(icon, scale, mIconBitmapSize, true, false);
     }
 
-    private Bitmap createIconBitmapNoInsetOrMask(Drawable icon, float scale) {
-        return createIconBitmap(icon, scale, mIconBitmapSize, false, true);
+    private Bitmap createIconBitmap(Drawable icon, float scale, int size, boolean insetAdiForShadow,
+            boolean ignoreAdiMask) {
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        drawIconBitmap(icon, scale, bitmap, insetAdiForShadow, ignoreAdiMask);
+        return bitmap;
     }
 
     /**
      * @param icon drawable that should be flattened to a bitmap
      * @param scale the scale to apply before drawing {@param icon} on the canvas
+     * @param bitmap the square bitmap to draw to, any previous content is erased
      * @param insetAdiForShadow when rendering AdaptiveIconDrawables inset to make room for a shadow
      * @param ignoreAdiMask when rendering AdaptiveIconDrawables ignore the current system mask
      */
-    private Bitmap createIconBitmap(Drawable icon, float scale, int size, boolean insetAdiForShadow,
-            boolean ignoreAdiMask) {
-        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+    private void drawIconBitmap(Drawable icon, float scale, Bitmap bitmap,
+            boolean insetAdiForShadow, boolean ignoreAdiMask) {
+        final int size = bitmap.getWidth();
+        bitmap.eraseColor(Color.TRANSPARENT);
 
         mCanvas.setBitmap(bitmap);
         mOldBounds.set(icon.getBounds());
@@ -362,7 +473,8 @@ public class SimpleIconFactory implements AutoCloseable {
             if (insetAdiForShadow) {
                 offset = Math.max((int) Math.ceil(BLUR_FACTOR * size), offset);
             }
-            Rect bounds = new Rect(offset, offset, size - offset, size - offset);
+            Rect bounds = mTmpBounds;
+            bounds.set(offset, offset, size - offset, size - offset);
 
             // AdaptiveIconDrawables are by default masked by the user's icon shape selection.
             // If further masking is to be done, directly render to avoid the system masking.
@@ -373,16 +485,19 @@ public class SimpleIconFactory implements AutoCloseable {
                 final int insetWidth = (int) (bounds.width() / (portScale * 2));
                 final int insetHeight = (int) (bounds.height() / (portScale * 2));
 
-                Rect childRect = new Rect(cX - insetWidth, cY - insetHeight, cX + insetWidth,
+                Rect childRect = mTmpChildBounds;
+                childRect.set(cX - insetWidth, cY - insetHeight, cX + insetWidth,
                         cY + insetHeight);
-                Optional.ofNullable(adi.getBackground()).ifPresent(drawable -> {
-                    drawable.setBounds(childRect);
-                    drawable.draw(mCanvas);
-                });
-                Optional.ofNullable(adi.getForeground()).ifPresent(drawable -> {
-                    drawable.setBounds(childRect);
-                    drawable.draw(mCanvas);
-                });
+                Drawable background = adi.getBackground();
+                if (background != null) {
+                    background.setBounds(childRect);
+                    background.draw(mCanvas);
+                }
+                Drawable foreground = adi.getForeground();
+                if (foreground != null) {
+                    foreground.setBounds(childRect);
+                    foreground.draw(mCanvas);
+                }
             } else {
                 adi.setBounds(bounds);
                 adi.draw(mCanvas);
@@ -421,7 +536,6 @@ public class SimpleIconFactory implements AutoCloseable {
 
         icon.setBounds(mOldBounds);
         mCanvas.setBitmap(null);
-        return bitmap;
     }
 
     private Drawable normalizeAndWrapToAdaptiveIcon(Drawable icon, RectF outIconBounds,
@@ -472,6 +586,8 @@ public class SimpleIconFactory implements AutoCloseable {
     private final Rect mBounds;
     private final int mMaxSize;
     private final byte[] mPixels;
+    private final ByteBuffer mPixelBuffer;
+    private final float[] mAngles;
     private final float[] mLeftBorder;
     private final float[] mRightBorder;
     private final Bitmap mBitmap;
@@ -491,7 +607,7 @@ public class SimpleIconFactory implements AutoCloseable {
      *
      * @param outBounds optional rect to receive the fraction distance from each edge.
      */
-    private synchronized float getScale(@NonNull Drawable d, @Nullable RectF outBounds) {
+    private float getScale(@NonNull Drawable d, @Nullable RectF outBounds) {
         if (d instanceof AdaptiveIconDrawable) {
             if (mAdaptiveIconScale != SCALE_NOT_INITIALIZED) {
                 if (outBounds != null) {
@@ -515,7 +631,7 @@ public class SimpleIconFactory implements AutoCloseable {
         d.setBounds(0, 0, width, height);
         d.draw(mScaleCheckCanvas);
 
-        ByteBuffer buffer = ByteBuffer.wrap(mPixels);
+        ByteBuffer buffer = mPixelBuffer;
         buffer.rewind();
         mBitmap.copyPixelsToBuffer(buffer);
 
@@ -569,8 +685,8 @@ public class SimpleIconFactory implements AutoCloseable {
             return 1;
         }
 
-        convertToConvexArray(mLeftBorder, 1, topY, bottomY);
-        convertToConvexArray(mRightBorder, -1, topY, bottomY);
+        convertToConvexArray(mLeftBorder, 1, topY, bottomY, mAngles);
+        convertToConvexArray(mRightBorder, -1, topY, bottomY, mAngles);
 
         // Area of the convex hull
         float area = 0;
@@ -619,12 +735,11 @@ public class SimpleIconFactory implements AutoCloseable {
      * @param direction 1 for left border and -1 for right border.
      * @param topY the first Y position (inclusive) with a valid value.
      * @param bottomY the last Y position (inclusive) with a valid value.
+     * @param angles scratch array to receive the tangent at each pixel, one shorter than
+     *               {@param xCoordinates}.
      */
     private static void convertToConvexArray(
-            float[] xCoordinates, int direction, int topY, int bottomY) {
-        int total = xCoordinates.length;
-        // The tangent at each pixel.
-        float[] angles = new float[total - 1];
+            float[] xCoordinates, int direction, int topY, int bottomY, float[] angles) {
 
         int first = topY; // First valid y coordinate
         int last = -1;    // Last valid y coordinate which didn't have a missing value
@@ -675,14 +790,15 @@ public class SimpleIconFactory implements AutoCloseable {
     private Paint mBlurPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
     private Paint mDrawPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
     private BlurMaskFilter mDefaultBlurMaskFilter;
+    private final int[] mShadowOffset = new int[2];
 
-    private synchronized void recreateIcon(Bitmap icon, Canvas out) {
+    private void recreateIcon(Bitmap icon, Canvas out) {
         recreateIcon(icon, mDefaultBlurMaskFilter, AMBIENT_SHADOW_ALPHA, KEY_SHADOW_ALPHA, out);
     }
 
-    private synchronized void recreateIcon(Bitmap icon, BlurMaskFilter blurMaskFilter,
+    private void recreateIcon(Bitmap icon, BlurMaskFilter blurMaskFilter,
             int ambientAlpha, int keyAlpha, Canvas out) {
-        int[] offset = new int[2];
+        int[] offset = mShadowOffset;
         mBlurPaint.setMaskFilter(blurMaskFilter);
         Bitmap shadow = icon.extractAlpha(mBlurPaint, offset);
 
@@ -18,6 +18,8 @@ package com.android.intentresolver;
 
 import android.content.pm.ActivityInfo;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.ComponentInfo;
+import android.content.pm.PackageItemInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.res.Resources;
@@ -52,6 +54,7 @@ public abstract class TargetPresentationGetter {
         private final Provider<SimpleIconFactory> mIconFactoryProvider;
         private final PackageManager mPackageManager;
         private final int mIconDpi;
+        private final PackageResourcesCache mPackageResourcesCache;
 
         public Factory(
                 Provider<SimpleIconFactory> iconfactoryProvider,
@@ -60,18 +63,27 @@ public abstract class TargetPresentationGetter {
             mIconFactoryProvider = iconfactoryProvider;
             mPackageManager = packageManager;
             mIconDpi = iconDpi;
+            mPackageResourcesCache = new PackageResourcesCache(packageManager);
         }
 
         /** Make a {@link TargetPresentationGetter} for an {@link ActivityInfo}. */
         public TargetPresentationGetter makePresentationGetter(ActivityInfo activityInfo) {
             return new ActivityInfoPresentationGetter(
-                    mIconFactoryProvider, mPackageManager, mIconDpi, activityInfo);
+                    mIconFactoryProvider,
+                    mPackageManager,
+                    mPackageResourcesCache,
+                    mIconDpi,
+                    activityInfo);
         }
 
         /** Make a {@link TargetPresentationGetter} for a {@link ResolveInfo}. */
         public TargetPresentationGetter makePresentationGetter(ResolveInfo resolveInfo) {
             return new ResolveInfoPresentationGetter(
-                    mIconFactoryProvider, mPackageManager, mIconDpi, resolveInfo);
+                    mIconFactoryProvider,
+                    mPackageManager,
+                    mPackageResourcesCache,
+                    mIconDpi,
+                    resolveInfo);
         }
     }
 
@@ -88,6 +100,7 @@ public abstract class TargetPresentationGetter {
     private final int mIconDpi;
     private final boolean mHasSubstitutePermission;
     private final ApplicationInfo mAppInfo;
+    private final PackageResourcesCache mPackageResourcesCache;
 
     protected PackageManager mPm;
 
@@ -101,13 +114,11 @@ public abstract class TargetPresentationGetter {
             drawable = getIconSubstituteInternal();
         }
 
-        if (drawable == null) {
-            try {
-                if (mAppInfo.icon != 0) {
-                    drawable = loadIconFromResource(
-                            mPm.getResourcesForApplication(mAppInfo), mAppInfo.icon);
-                }
-            } catch (PackageManager.NameNotFoundException ignore) { }
+        if (drawable == null && mAppInfo.icon != 0) {
+            Resources res = getPackageResources(mAppInfo).getResources();
+            if (res != null) {
+                drawable = loadIconFromResource(res, mAppInfo.icon);
+            }
         }
 
         // Fall back to ApplicationInfo#loadIcon if nothing has been loaded
@@ -133,7 +144,7 @@ public abstract class TargetPresentationGetter {
         }
 
         if (label == null) {
-            label = (String) mAppInfo.loadLabel(mPm);
+            label = loadLabel(mAppInfo);
         }
 
         return label;
@@ -163,6 +174,56 @@ public abstract class TargetPresentationGetter {
         return res.getString(resId);
     }
 
+    /** Returns the shared resources and permission state of the given application's package. */
+    private PackageResourcesCache.PackageResources getPackageResources(ApplicationInfo appInfo) {
+        return mPackageResourcesCache.get(appInfo);
+    }
+
+    /**
+     * Loads the label of the given item from its package's shared resources, the same way as
+     * {@link PackageItemInfo#loadLabel} does otherwise.
+     */
+    @Nullable
+    private String loadLabel(PackageItemInfo info) {
+        ApplicationInfo appInfo = info instanceof ComponentInfo
+                ? ((ComponentInfo) info).applicationInfo
+                : info instanceof ApplicationInfo ? (ApplicationInfo) info : null;
+        if (appInfo != null) {
+            String label = loadOwnLabel(info, appInfo);
+            if (label == null && info.labelRes == 0 && info != appInfo) {
+                // Components without a label of their own are labeled after their application
+                label = loadOwnLabel(appInfo, appInfo);
+            }
+            if (label != null) {
+                return label;
+            }
+        }
+        CharSequence label = info.loadLabel(mPm);
+        return label == null ? null : label.toString();
+    }
+
+    @Nullable
+    private String loadOwnLabel(PackageItemInfo info, ApplicationInfo appInfo) {
+        if (info.nonLocalizedLabel != null) {
+            return info.nonLocalizedLabel.toString();
+        }
+        return info.labelRes == 0 ? null : loadLabel(getPackageResources(appInfo), info.labelRes);
+    }
+
+    @Nullable
+    private String loadLabel(PackageResourcesCache.PackageResources packageResources, int resId) {
+        Resources res = packageResources.getResources();
+        if (res == null) {
+            return null;
+        }
+        try {
+            String label = loadLabelFromResource(res, resId);
+            return label == null ? null : label.trim();
+        } catch (Resources.NotFoundException e) {
+            return null;
+        }
+    }
+
     @Nullable
     protected Drawable loadIconFromResource(Resources res, int resId) {
         return res.getDrawableForDensity(resId, mIconDpi);
@@ -171,15 +232,15 @@ public abstract class TargetPresentationGetter {
     private TargetPresentationGetter(
             Provider<SimpleIconFactory> iconfactoryProvider,
             PackageManager packageManager,
+            PackageResourcesCache packageResourcesCache,
             int iconDpi,
             ApplicationInfo appInfo) {
         mIconFactoryProvider = iconfactoryProvider;
         mPm = packageManager;
+        mPackageResourcesCache = packageResourcesCache;
         mAppInfo = appInfo;
         mIconDpi = iconDpi;
-        mHasSubstitutePermission = (PackageManager.PERMISSION_GRANTED == mPm.checkPermission(
-                android.Manifest.permission.SUBSTITUTE_SHARE_TARGET_APP_NAME_AND_ICON,
-                mAppInfo.packageName));
+        mHasSubstitutePermission = getPackageResources(appInfo).hasSubstitutePermission();
     }
 
     /** Loads the icon and label for the provided ResolveInfo. */
@@ -189,25 +250,33 @@ public abstract class TargetPresentationGetter {
         ResolveInfoPresentationGetter(
                 Provider<SimpleIconFactory> iconfactoryProvider,
                 PackageManager packageManager,
+                PackageResourcesCache packageResourcesCache,
                 int iconDpi,
                 ResolveInfo resolveInfo) {
-            super(iconfactoryProvider, packageManager, iconDpi, resolveInfo.activityInfo);
+            super(
+                    iconfactoryProvider,
+                    packageManager,
+                    packageResourcesCache,
+                    iconDpi,
+                    resolveInfo.activityInfo);
             mResolveInfo = resolveInfo;
         }
 
         @Override
         protected Drawable getIconSubstituteInternal() {
             Drawable drawable = null;
-            try {
-                // Do not use ResolveInfo#getIconResource() as it defaults to the app
-                if (mResolveInfo.resolvePackageName != null && mResolveInfo.icon != 0) {
-                    drawable = loadIconFromResource(
-                            mPm.getResourcesForApplication(mResolveInfo.resolvePackageName),
-                            mResolveInfo.icon);
+            // Do not use ResolveInfo#getIconResource() as it defaults to the app
+            if (mResolveInfo.resolvePackageName != null && mResolveInfo.icon != 0) {
+                Resources res = mPackageResourcesCache
+                        .get(mResolveInfo.resolvePackageName, getComponentAppInfo())
+                        .getResources();
+                if (res != null) {
+                    drawable = loadIconFromResource(res, mResolveInfo.icon);
+                } else {
+                    Log.e(TAG, "SUBSTITUTE_SHARE_TARGET_APP_NAME_AND_ICON permission granted but "
+                            + "couldn't find resources for package "
+                            + mResolveInfo.resolvePackageName);
                 }
-            } catch (PackageManager.NameNotFoundException e) {
-                Log.e(TAG, "SUBSTITUTE_SHARE_TARGET_APP_NAME_AND_ICON permission granted but "
-                        + "couldn't find resources for package", e);
             }
 
             // Fall back to ActivityInfo if no icon is found via ResolveInfo
@@ -222,13 +291,38 @@ public abstract class TargetPresentationGetter {
         protected String getAppSubLabelInternal() {
             // Will default to app name if no intent filter or activity label set, make sure to
             // check if subLabel matches label before final display
-            return mResolveInfo.loadLabel(mPm).toString();
+            // Mirrors ResolveInfo#loadLabel, on top of the shared package resources
+            if (mResolveInfo.nonLocalizedLabel != null) {
+                return mResolveInfo.nonLocalizedLabel.toString();
+            }
+            if (mResolveInfo.labelRes != 0) {
+                String label = null;
+                if (mResolveInfo.resolvePackageName != null) {
+                    label = loadLabel(
+                            mPackageResourcesCache.get(
+                                    mResolveInfo.resolvePackageName, getComponentAppInfo()),
+                            mResolveInfo.labelRes);
+                }
+                if (label == null) {
+                    label = loadLabel(
+                            getPackageResources(getComponentAppInfo()), mResolveInfo.labelRes);
+                }
+                if (label != null) {
+                    return label;
+                }
+            }
+            String label = loadLabel(mResolveInfo.getComponentInfo());
+            return label == null ? mResolveInfo.loadLabel(mPm).toString() : label;
         }
 
         @Override
         protected String getAppLabelForSubstitutePermission() {
             // Will default to app name if no activity label set
-            return mResolveInfo.getComponentInfo().loadLabel(mPm).toString();
+            return loadLabel(mResolveInfo.getComponentInfo());
+        }
+
+        private ApplicationInfo getComponentAppInfo() {
+            return mResolveInfo.getComponentInfo().applicationInfo;
         }
     }
 
@@ -239,25 +333,31 @@ public abstract class TargetPresentationGetter {
         ActivityInfoPresentationGetter(
                 Provider<SimpleIconFactory> iconfactoryProvider,
                 PackageManager packageManager,
+                PackageResourcesCache packageResourcesCache,
                 int iconDpi,
                 ActivityInfo activityInfo) {
-            super(iconfactoryProvider, packageManager, iconDpi, activityInfo.applicationInfo);
+            super(
+                    iconfactoryProvider,
+                    packageManager,
+                    packageResourcesCache,
+                    iconDpi,
+                    activityInfo.applicationInfo);
             mActivityInfo = activityInfo;
         }
 
         @Override
         protected Drawable getIconSubstituteInternal() {
             Drawable drawable = null;
-            try {
-                // Do not use ActivityInfo#getIconResource() as it defaults to the app
-                if (mActivityInfo.icon != 0) {
-                    drawable = loadIconFromResource(
-                            mPm.getResourcesForApplication(mActivityInfo.applicationInfo),
-                            mActivityInfo.icon);
+            // Do not use ActivityInfo#getIconResource() as it defaults to the app
+            if (mActivityInfo.icon != 0) {
+                Resources res = getPackageResources(mActivityInfo.applicationInfo).getResources();
+                if (res != null) {
+                    drawable = loadIconFromResource(res, mActivityInfo.icon);
+                } else {
+                    Log.e(TAG, "SUBSTITUTE_SHARE_TARGET_APP_NAME_AND_ICON permission granted but "
+                            + "couldn't find resources for package "
+                            + mActivityInfo.packageName);
                 }
-            } catch (PackageManager.NameNotFoundException e) {
-                Log.e(TAG, "SUBSTITUTE_SHARE_TARGET_APP_NAME_AND_ICON permission granted but "
-                        + "couldn't find resources for package", e);
             }
 
             return drawable;
@@ -267,7 +367,7 @@ public abstract class TargetPresentationGetter {
         protected String getAppSubLabelInternal() {
             // Will default to app name if no activity label set, make sure to check if subLabel
             // matches label before final display
-            return (String) mActivityInfo.loadLabel(mPm);
+            return loadLabel(mActivityInfo);
         }
 
         @Override
@@ -46,6 +46,10 @@ annotation class PreviewMaxConcurrency
  * Allows for cached or uncached loading of images and limits the number of concurrent requests.
  * Requests are automatically cancelled when they are evicted from the cache. If image loading fails
  * or the request is cancelled (e.g. by eviction), the returned [Bitmap] will be null.
+ *
+ * Images are loaded in the requested size, limited by the thumbnail size. A cached image serves
+ * the requests of the same or a smaller size and is only replaced when a larger size is requested;
+ * a loaded image stays cached until the larger one is loaded.
  */
 class CachingImagePreviewImageLoader
 @Inject
@@ -55,39 +59,44 @@ constructor(
     private val thumbnailLoader: ThumbnailLoader,
     @PreviewCacheSize cacheSize: Int,
     @PreviewMaxConcurrency maxConcurrency: Int,
+    @ThumbnailSize thumbnailSize: Int,
 ) : ImageLoader {
 
     private val semaphore = Semaphore(maxConcurrency)
 
+    private val maxSize = Size(thumbnailSize, thumbnailSize)
+
     private val cache =
-        lruCache(
+        lruCache<Uri, SizedRequest>(
             maxSize = cacheSize,
-            create = { uri: Uri -> scope.async { loadUncachedImage(uri) } },
-            onEntryRemoved = { evicted: Boolean, _, oldValue: Deferred<Bitmap?>, _ ->
+            onEntryRemoved = { evicted: Boolean, _, oldValue: SizedRequest, _ ->
                 // If removed due to eviction, cancel the coroutine, otherwise it is the
                 // responsibility
                 // of the caller of [cache.remove] to cancel the removed entry when done with it.
                 if (evicted) {
-                    oldValue.cancel()
+                    oldValue.deferred.cancel()
                 }
             }
         )
 
+    /** Larger size requests for the cached loaded images, guarded by the [cache] lock. */
+    private val pendingRequests = HashMap<Uri, SizedRequest>()
+
     override fun prePopulate(uriSizePairs: List<Pair<Uri, Size>>) {
-        uriSizePairs.take(cache.maxSize()).map { cache[it.first] }
+        uriSizePairs.take(cache.maxSize()).forEach { (uri, size) -> getCachedRequest(uri, size) }
     }
 
     override suspend fun invoke(uri: Uri, size: Size, caching: Boolean): Bitmap? {
         return if (caching) {
-            loadCachedImage(uri)
+            loadCachedImage(uri, size)
         } else {
-            loadUncachedImage(uri)
+            loadUncachedImage(uri, sanitize(size))
         }
     }
 
-    private suspend fun loadUncachedImage(uri: Uri): Bitmap? =
+    private suspend fun loadUncachedImage(uri: Uri, size: Size): Bitmap? =
         withContext(bgDispatcher) {
-            runCatching { semaphore.withPermit { thumbnailLoader.loadThumbnail(uri) } }
+            runCatching { semaphore.withPermit { thumbnailLoader.loadThumbnail(uri, size) } }
                 .onFailure {
                     ensureActive()
                     Log.d(TAG, "Failed to load preview for $uri", it)
@@ -95,14 +104,65 @@ constructor(
                 .getOrNull()
         }
 
-    private suspend fun loadCachedImage(uri: Uri): Bitmap? =
+    private suspend fun loadCachedImage(uri: Uri, size: Size): Bitmap? =
         // [Deferred#await] is called in a [runCatching] block to catch
         // [CancellationExceptions]s so that they don't cancel the calling coroutine/scope.
-        runCatching { cache[uri].await() }.getOrNull()
+        runCatching { getCachedRequest(uri, size).await() }.getOrNull()
+
+    /**
+     * Returns the cached or pending request for the [uri] if it is for the same or a larger size,
+     * otherwise starts a new one. A replaced smaller request is not cancelled, its callers still
+     * get its result; if it has already completed, it is only replaced once the new one completes
+     * with an image.
+     */
+    private fun getCachedRequest(uri: Uri, size: Size): Deferred<Bitmap?> {
+        val loadSize = sanitize(size)
+        val request =
+            synchronized(cache) {
+                val cached = cache[uri]
+                cached?.takeIf { it.size.covers(loadSize) }
+                    ?: pendingRequests[uri]?.takeIf { it.size.covers(loadSize) }
+                    ?: SizedRequest(loadSize, scope.async { loadUncachedImage(uri, loadSize) })
+                        .also { request ->
+                            if (cached?.deferred?.isCompleted == true) {
+                                pendingRequests[uri] = request
+                                request.deferred.invokeOnCompletion {
+                                    onPendingRequestCompleted(uri, request)
+                                }
+                            } else {
+                                cache.put(uri, request)
+                            }
+                        }
+            }
+        return request.deferred
+    }
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private fun onPendingRequestCompleted(uri: Uri, request: SizedRequest) {
+        synchronized(cache) {
+            if (pendingRequests[uri] !== request) return
+            pendingRequests.remove(uri)
+            val bitmap = runCatching { request.deferred.getCompleted() }.getOrNull()
+            if (bitmap != null && cache[uri]?.size?.covers(request.size) != true) {
+                cache.put(uri, request)
+            }
+        }
+    }
 
     @OptIn(ExperimentalCoroutinesApi::class)
     override fun getCachedBitmap(uri: Uri): Bitmap? =
-        kotlin.runCatching { cache[uri].getCompleted() }.getOrNull()
+        kotlin.runCatching { cache[uri]?.deferred?.getCompleted() }.getOrNull()
+
+    override fun onTrimMemory(level: Int) {
+        // evicted requests are cancelled, their callers get null
+        synchronized(cache) { cache.trimToSize(trimmedCacheSize(cache.maxSize(), level)) }
+    }
+
+    /** Limits the requested size by the thumbnail size; non-positive sizes mean the maximum. */
+    private fun sanitize(size: Size): Size =
+        if (size.width > 0 && size.height > 0) size.coerceAtMost(maxSize) else maxSize
+
+    private class SizedRequest(val size: Size, val deferred: Deferred<Bitmap?>)
 
     companion object {
         private const val TAG = "CachingImgPrevLoader"
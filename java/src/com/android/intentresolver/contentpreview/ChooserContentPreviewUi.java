@@ -39,6 +39,7 @@ import com.android.intentresolver.widget.ImagePreviewView.TransitionElementStatu
 
 import kotlinx.coroutines.CoroutineScope;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -97,6 +98,9 @@ public final class ChooserContentPreviewUi {
     final ContentPreviewUi mContentPreviewUi;
     private final Supplier</*@Nullable*/ActionRow.Action> mModifyShareActionFactory;
     private View mHeadlineParent;
+    /** Callbacks waiting for the preview type to be resolved, null once it is. */
+    @Nullable
+    private List<Consumer<Integer>> mPreviewTypeCallbacks;
 
     public ChooserContentPreviewUi(
             CoroutineScope scope,
@@ -109,9 +113,70 @@ public final class ChooserContentPreviewUi {
             HeadlineGenerator headlineGenerator,
             ContentTypeHint contentTypeHint,
             @Nullable CharSequence metadata) {
+        this(
+                scope,
+                previewData,
+                chooserRequest,
+                imageLoader,
+                actionFactory,
+                modifyShareActionFactory,
+                transitionElementStatusCallback,
+                headlineGenerator,
+                contentTypeHint,
+                metadata,
+                /* resolvePreviewTypeAsync = */ false);
+    }
+
+    /**
+     * @param resolvePreviewTypeAsync if the preview type is not known yet, whether to display a
+     * placeholder until it is resolved, instead of waiting for it.
+     */
+    public ChooserContentPreviewUi(
+            CoroutineScope scope,
+            PreviewDataProvider previewData,
+            ChooserRequest chooserRequest,
+            ImageLoader imageLoader,
+            ActionFactory actionFactory,
+            Supplier</*@Nullable*/ActionRow.Action> modifyShareActionFactory,
+            TransitionElementStatusCallback transitionElementStatusCallback,
+            HeadlineGenerator headlineGenerator,
+            ContentTypeHint contentTypeHint,
+            @Nullable CharSequence metadata,
+            boolean resolvePreviewTypeAsync) {
         mScope = scope;
         mModifyShareActionFactory = modifyShareActionFactory;
+        if (resolvePreviewTypeAsync && !previewData.isPreviewTypeResolved()) {
+            PendingContentPreviewUi pendingPreviewUi = new PendingContentPreviewUi();
+            mContentPreviewUi = pendingPreviewUi;
+            mPreviewTypeCallbacks = new ArrayList<>();
+            previewData.resolvePreviewType(mScope, previewType -> {
+                Consumer<FileInfo> onResolved = firstFileInfo -> onPreviewResolved(
+                        pendingPreviewUi,
+                        createContentPreview(
+                                previewType,
+                                firstFileInfo,
+                                previewData,
+                                chooserRequest,
+                                DefaultMimeTypeClassifier.INSTANCE,
+                                imageLoader,
+                                actionFactory,
+                                transitionElementStatusCallback,
+                                headlineGenerator,
+                                contentTypeHint,
+                                metadata),
+                        transitionElementStatusCallback);
+                if (previewType == CONTENT_PREVIEW_IMAGE) {
+                    previewData.resolveFirstFileInfo(mScope, onResolved);
+                } else {
+                    onResolved.accept(null);
+                }
+            });
+            return;
+        }
+        int previewType = previewData.getPreviewType();
         mContentPreviewUi = createContentPreview(
+                previewType,
+                previewType == CONTENT_PREVIEW_IMAGE ? previewData.getFirstFileInfo() : null,
                 previewData,
                 chooserRequest,
                 DefaultMimeTypeClassifier.INSTANCE,
@@ -127,7 +192,28 @@ public final class ChooserContentPreviewUi {
         }
     }
 
+    private void onPreviewResolved(
+            PendingContentPreviewUi pendingPreviewUi,
+            ContentPreviewUi contentPreviewUi,
+            TransitionElementStatusCallback transitionElementStatusCallback) {
+        pendingPreviewUi.setContentPreviewUi(contentPreviewUi);
+        // the headline row is inflated along with the actual preview
+        updateModifyShareAction();
+        if (contentPreviewUi.getType() != CONTENT_PREVIEW_IMAGE) {
+            transitionElementStatusCallback.onAllTransitionElementsReady();
+        }
+        List<Consumer<Integer>> callbacks = mPreviewTypeCallbacks;
+        mPreviewTypeCallbacks = null;
+        if (callbacks != null) {
+            for (Consumer<Integer> callback : callbacks) {
+                callback.accept(contentPreviewUi.getType());
+            }
+        }
+    }
+
     private ContentPreviewUi createContentPreview(
+            @ContentPreviewType int previewType,
+            @Nullable FileInfo firstFileInfo,
             PreviewDataProvider previewData,
             ChooserRequest chooserRequest,
             MimeTypeClassifier typeClassifier,
@@ -138,7 +224,6 @@ public final class ChooserContentPreviewUi {
             ContentTypeHint contentTypeHint,
             @Nullable CharSequence metadata
     ) {
-        int previewType = previewData.getPreviewType();
         if (previewType == CONTENT_PREVIEW_TEXT) {
             return createTextPreview(
                     mScope,
@@ -171,7 +256,8 @@ public final class ChooserContentPreviewUi {
         }
 
         boolean isSingleImageShare = previewData.getUriCount() == 1
-                && typeClassifier.isImageType(previewData.getFirstFileInfo().getMimeType());
+                && firstFileInfo != null
+                && typeClassifier.isImageType(firstFileInfo.getMimeType());
         if (!TextUtils.isEmpty(chooserRequest.getSharedText())) {
             FilesPlusTextContentPreviewUi previewUi =
                     new FilesPlusTextContentPreviewUi(
@@ -204,16 +290,34 @@ public final class ChooserContentPreviewUi {
                 typeClassifier,
                 transitionElementStatusCallback,
                 previewData.getImagePreviewFileInfoFlow(),
+                previewData.getMimeTypeFileInfoFlow(),
                 previewData.getUriCount(),
                 headlineGenerator,
                 metadata
         );
     }
 
+    /**
+     * Returns the type of the displayed preview or, while it is being resolved, the fall-back
+     * {@link ContentPreviewType#CONTENT_PREVIEW_FILE} type; see
+     * {@link #getPreferredContentPreview(Consumer)} for the resolved type.
+     */
     public int getPreferredContentPreview() {
         return mContentPreviewUi.getType();
     }
 
+    /**
+     * Delivers the type of the displayed preview to the {@code callback} once it is resolved,
+     * immediately if it already is.
+     */
+    public void getPreferredContentPreview(Consumer<Integer> callback) {
+        if (mPreviewTypeCallbacks != null) {
+            mPreviewTypeCallbacks.add(callback);
+        } else {
+            callback.accept(mContentPreviewUi.getType());
+        }
+    }
+
     /**
      * Display a content preview of the specified {@code previewType} to preview the content of the
      * specified {@code intent}.
@@ -16,9 +16,17 @@
 package com.android.intentresolver.contentpreview
 
 import android.net.Uri
+import android.util.Size
 import androidx.annotation.VisibleForTesting
 
-class FileInfo private constructor(val uri: Uri, val previewUri: Uri?, val mimeType: String?) {
+class FileInfo
+private constructor(
+    val uri: Uri,
+    val previewUri: Uri?,
+    val mimeType: String?,
+    /** The size of the preview, if it is known without an additional query. */
+    val previewSize: Size?,
+) {
     @VisibleForTesting(otherwise = VisibleForTesting.PACKAGE_PRIVATE)
     class Builder(val uri: Uri) {
         var previewUri: Uri? = null
@@ -29,11 +37,17 @@ class FileInfo private constructor(val uri: Uri, val previewUri: Uri?, val mimeT
             @Synchronized get
             private set
 
+        var previewSize: Size? = null
+            @Synchronized get
+            private set
+
         @Synchronized fun withPreviewUri(uri: Uri?): Builder = apply { previewUri = uri }
 
         @Synchronized
         fun withMimeType(mimeType: String?): Builder = apply { this.mimeType = mimeType }
 
-        @Synchronized fun build(): FileInfo = FileInfo(uri, previewUri, mimeType)
+        @Synchronized fun withPreviewSize(size: Size?): Builder = apply { previewSize = size }
+
+        @Synchronized fun build(): FileInfo = FileInfo(uri, previewUri, mimeType, previewSize)
     }
 }
@@ -16,11 +16,14 @@
 
 package com.android.intentresolver.contentpreview
 
+import android.content.ComponentCallbacks2
 import android.graphics.Bitmap
 import android.net.Uri
 import android.util.Size
 import java.util.function.Consumer
 import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 
@@ -43,12 +46,21 @@ interface ImageLoader : suspend (Uri, Size) -> Bitmap?, suspend (Uri, Size, Bool
         }
     }
 
+    /**
+     * Load preview image progressively; caching is allowed. A loader may emit lower resolution
+     * versions of the image before the requested one, which is always the last value.
+     */
+    fun loadProgressively(uri: Uri, size: Size): Flow<Bitmap?> = flow { emit(invoke(uri, size)) }
+
     /** Prepopulate the image loader cache. */
     fun prePopulate(uriSizePairs: List<Pair<Uri, Size>>)
 
     /** Returns a bitmap for the given URI if it's already cached, otherwise null */
     fun getCachedBitmap(uri: Uri): Bitmap? = null
 
+    /** Shrinks the cache, if any, see [ComponentCallbacks2.onTrimMemory] */
+    fun onTrimMemory(level: Int) {}
+
     /** Load preview image; caching is allowed. */
     override suspend fun invoke(uri: Uri, size: Size) = invoke(uri, size, true)
 
@@ -60,3 +72,15 @@ interface ImageLoader : suspend (Uri, Size) -> Bitmap?, suspend (Uri, Size, Bool
      */
     override suspend fun invoke(uri: Uri, size: Size, caching: Boolean): Bitmap?
 }
+
+/**
+ * Returns the number of entries a preview cache of the [maxSize] should keep on the given
+ * [ComponentCallbacks2.onTrimMemory] level.
+ */
+internal fun trimmedCacheSize(maxSize: Int, level: Int): Int =
+    when {
+        level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND ||
+            level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL -> 0
+        level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW -> maxSize / 2
+        else -> maxSize
+    }
@@ -16,6 +16,7 @@
 
 package com.android.intentresolver.contentpreview
 
+import android.app.ActivityManager
 import android.content.res.Resources
 import com.android.intentresolver.Flags
 import com.android.intentresolver.R
@@ -27,6 +28,11 @@ import dagger.hilt.InstallIn
 import dagger.hilt.android.components.ViewModelComponent
 import javax.inject.Provider
 
+private const val MB = 1024 * 1024
+private const val BYTES_PER_PIXEL = 4
+private const val MIN_CACHE_SIZE = 4
+private const val MAX_CACHE_SIZE = 64
+
 @Module
 @InstallIn(ViewModelComponent::class)
 interface ImageLoaderModule {
@@ -49,8 +55,22 @@ interface ImageLoaderModule {
         fun thumbnailSize(@ApplicationOwned resources: Resources): Int =
             resources.getDimensionPixelSize(R.dimen.chooser_preview_image_max_dimen)
 
-        @Provides @PreviewCacheSize fun cacheSize() = 16
+        /**
+         * The number of cached previews: a byte budget derived from the device memory class, in
+         * units of the largest preview allocation size (loaded images are limited by the
+         * thumbnail size).
+         */
+        @Provides
+        @PreviewCacheSize
+        fun cacheSize(activityManager: ActivityManager, @ThumbnailSize thumbnailSize: Int): Int {
+            val maxBytes =
+                activityManager.memoryClass * MB / if (activityManager.isLowRamDevice) 16 else 8
+            val entryBytes = thumbnailSize * thumbnailSize * BYTES_PER_PIXEL
+            return (maxBytes / entryBytes.coerceAtLeast(1)).coerceIn(MIN_CACHE_SIZE, MAX_CACHE_SIZE)
+        }
 
         @Provides @PreviewMaxConcurrency fun maxConcurrency() = 4
+
+        @Provides @ProgressivePreviews fun progressivePreviews() = true
     }
 }
@@ -33,7 +33,8 @@ import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.CoroutineExceptionHandler
 import kotlinx.coroutines.CoroutineName
 import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.sync.Semaphore
@@ -50,6 +51,12 @@ annotation class PreviewCacheSize
 /**
  * Implements preview image loading for the content preview UI. Provides requests deduplication,
  * image caching, and a limit on the number of parallel loadings.
+ *
+ * Images are loaded in the requested size, limited by the thumbnail size, and a cached image is
+ * reused for any request of the same or a smaller size; an image is only loaded again when a larger
+ * size is requested. A load is cancelled, in the provider too, once no request waits for it, and
+ * times out if the provider doesn't respond, so that a stuck provider doesn't hold up the parallel
+ * loading slots.
  */
 @VisibleForTesting(otherwise = VisibleForTesting.PACKAGE_PRIVATE)
 class ImagePreviewImageLoader
@@ -92,58 +99,76 @@ constructor(
         maxSimultaneousRequests: Int = 4
     ) : this(scope, thumbnailSize, contentResolver, cacheSize, Semaphore(maxSimultaneousRequests))
 
-    private val thumbnailSize: Size = Size(thumbnailSize, thumbnailSize)
+    private val maxSize: Size = Size(thumbnailSize, thumbnailSize)
 
     private val lock = Any()
     @GuardedBy("lock") private val cache = LruCache<Uri, RequestRecord>(cacheSize)
     @GuardedBy("lock") private val runningRequests = HashMap<Uri, RequestRecord>()
 
     override suspend fun invoke(uri: Uri, size: Size, caching: Boolean): Bitmap? =
-        loadImageAsync(uri, caching)
+        loadImageAsync(uri, size, caching)
 
     override fun prePopulate(uriSizePairs: List<Pair<Uri, Size>>) {
-        uriSizePairs.asSequence().take(cache.maxSize()).forEach { (uri, _) ->
-            scope.launch { loadImageAsync(uri, caching = true) }
+        uriSizePairs.asSequence().take(cache.maxSize()).forEach { (uri, size) ->
+            scope.launch { loadImageAsync(uri, size, caching = true) }
         }
     }
 
-    private suspend fun loadImageAsync(uri: Uri, caching: Boolean): Bitmap? {
-        return getRequestDeferred(uri, caching).await()
+    override fun onTrimMemory(level: Int) {
+        synchronized(lock) { cache.trimToSize(trimmedCacheSize(cache.maxSize(), level)) }
+    }
+
+    private suspend fun loadImageAsync(uri: Uri, size: Size, caching: Boolean): Bitmap? {
+        val request = getRequest(uri, sanitize(size), caching)
+        return try {
+            request.deferred.await()
+        } finally {
+            request.release()
+        }
     }
 
-    private fun getRequestDeferred(uri: Uri, caching: Boolean): Deferred<Bitmap?> {
-        var shouldLaunchImageLoading = false
+    /** Returns a cached or running request for the [uri], or starts a new one, and waits for it. */
+    private fun getRequest(uri: Uri, size: Size, caching: Boolean): RequestRecord {
+        var newJob: Job? = null
         val request =
             synchronized(lock) {
-                cache[uri]
-                    ?: runningRequests
-                        .getOrPut(uri) {
-                            shouldLaunchImageLoading = true
-                            RequestRecord(uri, CompletableDeferred(), caching)
+                val request =
+                    cache[uri]?.takeIf { it.size.covers(size) }
+                        ?: runningRequests[uri]
+                            ?.takeIf { it.size.covers(size) }
+                            ?.apply { this.caching = this.caching || caching }
+                        ?: RequestRecord(uri, size, CompletableDeferred(), caching).also {
+                            // a running smaller request for the URI, if any, completes on its own
+                            runningRequests[uri] = it
+                            newJob = it.createLoadingJob()
                         }
-                        .apply { this.caching = this.caching || caching }
+                request.waiterCount++
+                request
             }
-        if (shouldLaunchImageLoading) {
-            request.loadBitmapAsync()
-        }
-        return request.deferred
+        newJob?.start()
+        return request
     }
 
-    private fun RequestRecord.loadBitmapAsync() {
+    @GuardedBy("lock")
+    private fun RequestRecord.createLoadingJob(): Job =
         scope
-            .launch { loadBitmap() }
-            .invokeOnCompletion { cause ->
-                if (cause is CancellationException) {
-                    cancel()
+            .launch(start = CoroutineStart.LAZY) { loadBitmap() }
+            .also { job ->
+                loadingJob = job
+                job.invokeOnCompletion { cause ->
+                    if (cause is CancellationException) {
+                        cancel()
+                    }
                 }
             }
-    }
 
     private suspend fun RequestRecord.loadBitmap() {
         contentResolverSemaphore.acquire()
         val bitmap =
             try {
-                contentResolver.loadThumbnail(uri, thumbnailSize, null)
+                contentResolver.loadThumbnailCancellable(uri, size)
+            } catch (e: CancellationException) {
+                throw e
             } catch (t: Throwable) {
                 Log.d(TAG, "failed to load $uri preview", t)
                 null
@@ -153,9 +178,21 @@ constructor(
         complete(bitmap)
     }
 
+    /** Cancels the load once no request waits for it anymore. */
+    private fun RequestRecord.release() {
+        synchronized(lock) {
+            waiterCount--
+            if (waiterCount <= 0 && !deferred.isCompleted) {
+                // the next request for the URI starts a new load
+                runningRequests.remove(uri, this)
+                loadingJob?.cancel()
+            }
+        }
+    }
+
     private fun RequestRecord.cancel() {
         synchronized(lock) {
-            runningRequests.remove(uri)
+            runningRequests.remove(uri, this)
             deferred.cancel()
         }
     }
@@ -163,16 +200,24 @@ constructor(
     private fun RequestRecord.complete(bitmap: Bitmap?) {
         deferred.complete(bitmap)
         synchronized(lock) {
-            runningRequests.remove(uri)
-            if (bitmap != null && caching) {
+            runningRequests.remove(uri, this)
+            if (bitmap != null && caching && cache[uri]?.size?.covers(size) != true) {
                 cache.put(uri, this)
             }
         }
     }
 
+    /** Limits the requested size by the thumbnail size; non-positive sizes mean the maximum. */
+    private fun sanitize(size: Size): Size =
+        if (size.width > 0 && size.height > 0) size.coerceAtMost(maxSize) else maxSize
+
     private class RequestRecord(
         val uri: Uri,
+        val size: Size,
         val deferred: CompletableDeferred<Bitmap?>,
         @GuardedBy("lock") var caching: Boolean
-    )
+    ) {
+        @GuardedBy("lock") var waiterCount = 0
+        @GuardedBy("lock") var loadingJob: Job? = null
+    }
 }
@@ -24,6 +24,7 @@ import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.filter
 import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.take
 import kotlinx.coroutines.flow.toList
 import kotlinx.coroutines.launch
 
@@ -38,7 +39,8 @@ internal fun mapFileIntoToPreview(
             Preview(
                 ContentPreviewUi.getPreviewType(typeClassifier, fileInfo.mimeType),
                 requireNotNull(fileInfo.previewUri),
-                editAction
+                editAction,
+                fileInfo.previewSize,
             )
         }
 
@@ -49,3 +51,12 @@ internal fun <T> collectToList(
 ) {
     clientScope.launch { callback.accept(flow.toList()) }
 }
+
+internal fun <T> collectToList(
+    clientScope: CoroutineScope,
+    flow: Flow<T>,
+    maxCount: Int,
+    callback: Consumer<List<T>>
+) {
+    clientScope.launch { callback.accept(flow.take(maxCount).toList()) }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.contentpreview;
+
+import android.content.res.Resources;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.intentresolver.R;
+
+/**
+ * Shows a neutral placeholder while the preview type is being resolved and then displays the
+ * actual content preview in its place, see {@link #setContentPreviewUi}.
+ */
+class PendingContentPreviewUi extends ContentPreviewUi {
+    @Nullable
+    private ContentPreviewUi mContentPreviewUi;
+    @Nullable
+    private ViewGroup mContentPreview;
+    @Nullable
+    private Resources mResources;
+    @Nullable
+    private LayoutInflater mLayoutInflater;
+    @Nullable
+    private View mHeadlineViewParent;
+
+    /**
+     * Returns the type of the actual preview or, while the type is being resolved, the fall-back
+     * {@link ContentPreviewType#CONTENT_PREVIEW_FILE} type.
+     */
+    @Override
+    public int getType() {
+        return mContentPreviewUi == null
+                ? ContentPreviewType.CONTENT_PREVIEW_FILE
+                : mContentPreviewUi.getType();
+    }
+
+    @VisibleForTesting
+    @Nullable
+    ContentPreviewUi getContentPreviewUi() {
+        return mContentPreviewUi;
+    }
+
+    /** Sets the actual preview and displays it in place of the placeholder, if shown. */
+    void setContentPreviewUi(ContentPreviewUi contentPreviewUi) {
+        mContentPreviewUi = contentPreviewUi;
+        if (mContentPreview != null) {
+            showContentPreview(mContentPreview);
+        }
+    }
+
+    @Override
+    public ViewGroup display(
+            Resources resources,
+            LayoutInflater layoutInflater,
+            ViewGroup parent,
+            View headlineViewParent) {
+        mResources = resources;
+        mLayoutInflater = layoutInflater;
+        mHeadlineViewParent = headlineViewParent;
+        mContentPreview = (ViewGroup) layoutInflater.inflate(
+                R.layout.chooser_grid_preview_pending, parent, false);
+        if (mContentPreviewUi != null) {
+            showContentPreview(mContentPreview);
+        }
+        return mContentPreview;
+    }
+
+    private void showContentPreview(ViewGroup container) {
+        ViewGroup layout = mContentPreviewUi.display(
+                mResources, mLayoutInflater, container, mHeadlineViewParent);
+        container.removeAllViews();
+        container.setMinimumHeight(0);
+        container.setBackground(null);
+        if (layout != null) {
+            container.addView(layout);
+        }
+    }
+}
@@ -26,6 +26,7 @@ import android.provider.Downloads
 import android.provider.OpenableColumns
 import android.text.TextUtils
 import android.util.Log
+import android.util.Size
 import androidx.annotation.OpenForTesting
 import androidx.annotation.VisibleForTesting
 import com.android.intentresolver.Flags.individualMetadataTitleRead
@@ -34,21 +35,27 @@ import com.android.intentresolver.contentpreview.ContentPreviewType.CONTENT_PREV
 import com.android.intentresolver.contentpreview.ContentPreviewType.CONTENT_PREVIEW_PAYLOAD_SELECTION
 import com.android.intentresolver.contentpreview.ContentPreviewType.CONTENT_PREVIEW_TEXT
 import com.android.intentresolver.measurements.runTracing
+import com.android.intentresolver.util.mapParallelOrdered
 import com.android.intentresolver.util.ownedByCurrentUser
 import java.util.concurrent.atomic.AtomicInteger
 import java.util.function.Consumer
 import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CompletableDeferred
 import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
 import kotlinx.coroutines.async
 import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.flow.Flow
-import kotlinx.coroutines.flow.MutableSharedFlow
-import kotlinx.coroutines.flow.SharedFlow
-import kotlinx.coroutines.flow.take
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import kotlinx.coroutines.withTimeoutOrNull
 
 /**
@@ -66,9 +73,13 @@ private val METADATA_COLUMNS =
 /** Preview-related metadata columns. */
 @VisibleForTesting
 val ICON_METADATA_COLUMNS =
-    arrayOf(DocumentsContract.Document.COLUMN_FLAGS, MediaMetadata.METADATA_KEY_DISPLAY_ICON_URI)
+    arrayOf(
+        DocumentsContract.Document.COLUMN_FLAGS,
+        MediaMetadata.METADATA_KEY_DISPLAY_ICON_URI,
+    )
 
 private const val TIMEOUT_MS = 1_000L
+private const val METADATA_READ_PARALLELISM = 4
 
 /**
  * Asynchronously loads and stores shared URI metadata (see [Intent.EXTRA_STREAM]) such as mime
@@ -87,20 +98,8 @@ constructor(
 
     private val records = targetIntent.contentUris.map { UriRecord(it) }
 
-    private val fileInfoSharedFlow: SharedFlow<FileInfo> by lazy {
-        // Alternatively, we could just use [shareIn()] on a [flow] -- and it would be, arguably,
-        //  cleaner -- but we'd lost the ability to trace the traverse as [runTracing] does not
-        //  generally work over suspend function invocations.
-        MutableSharedFlow<FileInfo>(replay = records.size).apply {
-            scope.launch {
-                runTracing("image-preview-metadata") {
-                    for (record in records) {
-                        tryEmit(FileInfo.Builder(record.uri).readFromRecord(record).build())
-                    }
-                }
-            }
-        }
-    }
+    // Serializes the [ContentInterface.getType] calls, see [loadPreviewType] on why.
+    private val getTypeMutex = Mutex()
 
     /** returns number of shared URIs, see [Intent.EXTRA_STREAM] */
     @get:OpenForTesting
@@ -111,34 +110,47 @@ constructor(
         get() = records.map { it.uri }
 
     /**
-     * Returns a [Flow] of [FileInfo], for each shared URI in order, with [FileInfo.mimeType] and
-     * [FileInfo.previewUri] set (a data projection tailored for the image preview UI).
+     * Returns a [Flow] of [FileInfo], for each shared URI in order, with [FileInfo.mimeType],
+     * [FileInfo.previewUri], and, for MediaStore images, [FileInfo.previewSize] set (a data
+     * projection tailored for the image preview UI). The metadata is read as the flow is collected
+     * and is reused by the subsequent collections.
      */
     @get:OpenForTesting
     open val imagePreviewFileInfoFlow: Flow<FileInfo>
-        get() = fileInfoSharedFlow.take(records.size)
+        get() =
+            records
+                .mapParallelOrdered(METADATA_READ_PARALLELISM) { it.imagePreviewFileInfo.await() }
+                // Without a buffer, the records are only read a few ahead of the collector; the
+                // preview UI, in turn, only collects the records near its viewport.
+                .buffer(Channel.RENDEZVOUS)
+
+    /**
+     * Returns a [Flow] of [FileInfo], for each shared URI in order, with only [FileInfo.mimeType]
+     * set (a data projection for the preview headline). Unlike [imagePreviewFileInfoFlow], no URI
+     * metadata is queried.
+     */
+    @get:OpenForTesting
+    open val mimeTypeFileInfoFlow: Flow<FileInfo>
+        get() = flow {
+            for (record in records) {
+                val mimeType = record.mimeTypeDeferred.await()
+                emit(FileInfo.Builder(record.uri).withMimeType(mimeType).build())
+            }
+        }
 
     /**
      * Preview type to use. The type is determined asynchronously with a timeout; the fall-back
-     * values is [ContentPreviewType.CONTENT_PREVIEW_FILE]
+     * values is [ContentPreviewType.CONTENT_PREVIEW_FILE]. Blocks the calling thread until the type
+     * is determined, see [resolvePreviewType] for a non-blocking alternative.
      */
     @get:OpenForTesting
     @get:ContentPreviewType
     open val previewType: Int by lazy {
         runTracing("preview-type") {
-            /* In [android.content.Intent#getType], the app may specify a very general mime type
-             * that broadly covers all data being shared, such as '*' when sending an image
-             * and text. We therefore should inspect each item for the preferred type, in order:
-             * IMAGE, FILE, TEXT. */
-            if (!targetIntent.isSend || records.isEmpty()) {
-                CONTENT_PREVIEW_TEXT
-            } else if (shouldShowPayloadSelection()) {
-                // TODO: replace with the proper flags injection
-                CONTENT_PREVIEW_PAYLOAD_SELECTION
-            } else {
-                try {
+            immediatePreviewType
+                ?: try {
                     runBlocking(scope.coroutineContext) {
-                        withTimeoutOrNull(TIMEOUT_MS) { scope.async { loadPreviewType() }.await() }
+                        withTimeoutOrNull(TIMEOUT_MS) { previewTypeDeferred.await() }
                             ?: CONTENT_PREVIEW_FILE
                     }
                 } catch (e: CancellationException) {
@@ -149,10 +161,61 @@ constructor(
                     )
                     CONTENT_PREVIEW_FILE
                 }
-            }
         }
     }
 
+    /** Whether the preview type is known, that is, [previewType] would not block. */
+    @get:OpenForTesting
+    open val isPreviewTypeResolved: Boolean
+        get() = immediatePreviewType != null || previewTypeDeferred.isCompleted
+
+    /** The preview type if it does not depend on the shared URIs metadata, null otherwise. */
+    @get:ContentPreviewType
+    private val immediatePreviewType: Int? by lazy {
+        /* In [android.content.Intent#getType], the app may specify a very general mime type
+         * that broadly covers all data being shared, such as '*' when sending an image
+         * and text. We therefore should inspect each item for the preferred type, in order:
+         * IMAGE, FILE, TEXT. */
+        if (!targetIntent.isSend || records.isEmpty()) {
+            CONTENT_PREVIEW_TEXT
+        } else if (shouldShowPayloadSelection()) {
+            // TODO: replace with the proper flags injection
+            CONTENT_PREVIEW_PAYLOAD_SELECTION
+        } else {
+            null
+        }
+    }
+
+    private val previewTypeDeferred: Deferred<Int> by lazy {
+        scope.async { withTimeoutOrNull(TIMEOUT_MS) { loadPreviewType() } ?: CONTENT_PREVIEW_FILE }
+    }
+
+    /**
+     * Resolves the preview type, see [previewType], without blocking the calling thread; the type
+     * is delivered to the [callback] in the [callerScope].
+     */
+    @OpenForTesting
+    open fun resolvePreviewType(callerScope: CoroutineScope, callback: Consumer<Int>) {
+        callerScope.launch { callback.accept(resolvePreviewType()) }
+    }
+
+    /** Resolves the preview type, see [previewType], without blocking the calling thread. */
+    @ContentPreviewType
+    @OpenForTesting
+    open suspend fun resolvePreviewType(): Int =
+        immediatePreviewType
+            ?: try {
+                previewTypeDeferred.await()
+            } catch (e: CancellationException) {
+                currentCoroutineContext().ensureActive()
+                Log.w(
+                    ContentPreviewUi.TAG,
+                    "An attempt to read preview type from a cancelled scope",
+                    e,
+                )
+                CONTENT_PREVIEW_FILE
+            }
+
     private fun shouldShowPayloadSelection(): Boolean {
         val extraContentUri = additionalContentUri ?: return false
         return runCatching {
@@ -171,30 +234,67 @@ constructor(
 
     /**
      * The first shared URI's metadata. This call wait's for the data to be loaded and falls back to
-     * a crude value if the data is not loaded within a time limit.
+     * a crude value if the data is not loaded within a time limit. See [resolveFirstFileInfo] for a
+     * non-blocking alternative.
      */
     open val firstFileInfo: FileInfo? by lazy {
         runTracing("first-uri-metadata") {
             records.firstOrNull()?.let { record ->
-                val builder = FileInfo.Builder(record.uri)
                 try {
-                    runBlocking(scope.coroutineContext) {
-                        withTimeoutOrNull(TIMEOUT_MS) {
-                            scope.async { builder.readFromRecord(record) }.await()
-                        }
-                    }
+                    runBlocking(scope.coroutineContext) { firstFileInfoDeferred.await() }
                 } catch (e: CancellationException) {
                     Log.w(
                         ContentPreviewUi.TAG,
                         "An attempt to read first file info from a cancelled scope",
                         e,
                     )
+                    null
+                } ?: FileInfo.Builder(record.uri).build()
+            }
+        }
+    }
+
+    private val firstFileInfoDeferred: Deferred<FileInfo?> by lazy {
+        scope.async {
+            records.firstOrNull()?.let { record ->
+                val builder = FileInfo.Builder(record.uri)
+                withTimeoutOrNull(TIMEOUT_MS) {
+                    scope.async { builder.readFromRecord(record) }.await()
                 }
                 builder.build()
             }
         }
     }
 
+    /**
+     * Resolves the first shared URI's metadata, see [firstFileInfo], without blocking the calling
+     * thread; the metadata is delivered to the [callback] in the [callerScope].
+     */
+    @OpenForTesting
+    open fun resolveFirstFileInfo(callerScope: CoroutineScope, callback: Consumer<FileInfo?>) {
+        callerScope.launch { callback.accept(resolveFirstFileInfo()) }
+    }
+
+    /**
+     * Resolves the first shared URI's metadata, see [firstFileInfo], without blocking the calling
+     * thread.
+     */
+    @OpenForTesting
+    open suspend fun resolveFirstFileInfo(): FileInfo? {
+        val record = records.firstOrNull() ?: return null
+        return try {
+            firstFileInfoDeferred.await()
+        } catch (e: CancellationException) {
+            currentCoroutineContext().ensureActive()
+            Log.w(
+                ContentPreviewUi.TAG,
+                "An attempt to read first file info from a cancelled scope",
+                e,
+            )
+            null
+        } ?: FileInfo.Builder(record.uri).build()
+    }
+
     private fun FileInfo.Builder.readFromRecord(record: UriRecord): FileInfo.Builder {
         withMimeType(record.mimeType)
         val previewUri =
@@ -253,7 +353,7 @@ constructor(
             val job = launch {
                 coroutineScope {
                     val nextIndex = AtomicInteger(0)
-                    repeat(4) {
+                    repeat(METADATA_READ_PARALLELISM) {
                         launch {
                             while (isActive) {
                                 val i = nextIndex.getAndIncrement()
@@ -282,6 +382,29 @@ constructor(
      */
     private inner class UriRecord(val uri: Uri) {
         val mimeType: String? by lazy { contentResolver.getTypeSafe(uri) }
+
+        /** [mimeType] read in the [scope], one record at a time. */
+        val mimeTypeDeferred: Deferred<String?> by lazy {
+            scope.async { getTypeMutex.withLock { mimeType } }
+        }
+
+        /** The [imagePreviewFileInfoFlow] item, read in the [scope]. */
+        val imagePreviewFileInfo: Deferred<FileInfo> by lazy {
+            scope.async {
+                mimeTypeDeferred.await()
+                runTracing("image-preview-metadata") {
+                    FileInfo.Builder(uri)
+                        .readFromRecord(this@UriRecord)
+                        .apply {
+                            // lets the preview UI lay out images before they are loaded
+                            if (isImageType) {
+                                withPreviewSize(previewSize)
+                            }
+                        }
+                        .build()
+                }
+            }
+        }
         val isImageType: Boolean
             get() = typeClassifier.isImageType(mimeType)
 
@@ -297,10 +420,13 @@ constructor(
         val iconUri: Uri?
             get() = query.iconUri
 
+        val previewSize: Size?
+            get() = if (uri.isMediaStoreUri) query.previewSize else null
+
         private val query by lazy {
-            readQueryResult(
+            val columns =
                 if (individualMetadataTitleRead()) ICON_METADATA_COLUMNS else METADATA_COLUMNS
-            )
+            readQueryResult(if (uri.isMediaStoreUri) columns + SIZE_COLUMNS else columns)
         }
 
         private val titleFromQuery by lazy {
@@ -344,7 +470,7 @@ constructor(
                         null
                     }
 
-                QueryResult(supportsThumbnail, title, iconUri)
+                QueryResult(supportsThumbnail, title, iconUri, cursor.readSize())
             } ?: QueryResult()
 
         private fun readTitleFromQuery(): String = readStringColumn(Downloads.Impl.COLUMN_TITLE)
@@ -363,6 +489,7 @@ constructor(
         val supportsThumbnail: Boolean = false,
         val title: String = "",
         val iconUri: Uri? = null,
+        val previewSize: Size? = null,
     )
 }
 
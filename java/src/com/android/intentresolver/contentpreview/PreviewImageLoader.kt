@@ -23,28 +23,51 @@ import android.util.Size
 import androidx.collection.lruCache
 import com.android.intentresolver.inject.Background
 import com.android.intentresolver.inject.ViewModelOwned
+import com.android.intentresolver.util.AdaptiveConcurrencyLimiter
 import javax.annotation.concurrent.GuardedBy
 import javax.inject.Inject
+import javax.inject.Qualifier
 import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.Job
+import kotlinx.coroutines.async
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.emitAll
 import kotlinx.coroutines.flow.filter
 import kotlinx.coroutines.flow.filterNotNull
 import kotlinx.coroutines.flow.firstOrNull
-import kotlinx.coroutines.flow.mapLatest
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.transformLatest
+import kotlinx.coroutines.flow.transformWhile
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.sync.Semaphore
-import kotlinx.coroutines.sync.withPermit
 
 private const val TAG = "PayloadSelImageLoader"
+/** How much smaller than the requested size the preliminary image of a progressive load is. */
+private const val PRELIMINARY_SCALE = 8
+/** A full-size image loaded within this time, e.g. a cached one, is shown without a preliminary. */
+private const val PRELIMINARY_LOAD_DELAY_MS = 50L
+
+@Qualifier
+@MustBeDocumented
+@Retention(AnnotationRetention.BINARY)
+annotation class ProgressivePreviews
 
 /**
  * Implements preview image loading for the payload selection UI. Cancels preview loading for items
  * that has been evicted from the cache at the expense of a possible request duplication (deemed
  * unlikely).
+ *
+ * In the [progressive] mode, if the first load of an image is not quick, a tiny version of it is
+ * loaded too and is available to [loadProgressively] callers while the full-size image is loading.
+ *
+ * The number of parallel loads is limited by the [loadLimiter] that is shared with the preview
+ * metadata reads.
  */
 class PreviewImageLoader
 @Inject
@@ -54,11 +77,12 @@ constructor(
     @ThumbnailSize private val defaultPreviewSize: Int,
     private val thumbnailLoader: ThumbnailLoader,
     @Background private val bgDispatcher: CoroutineDispatcher,
-    @PreviewMaxConcurrency maxSimultaneousRequests: Int = 4,
+    @PreviewLoadLimiter
+    private val loadLimiter: AdaptiveConcurrencyLimiter =
+        AdaptiveConcurrencyLimiter(initialLimit = 4),
+    @ProgressivePreviews private val progressive: Boolean = false,
 ) : ImageLoader {
 
-    private val contentResolverSemaphore = Semaphore(maxSimultaneousRequests)
-
     private val lock = Any()
     @GuardedBy("lock") private val runningRequests = hashMapOf<Uri, RequestRecord>()
     @GuardedBy("lock")
@@ -81,31 +105,59 @@ constructor(
         }
     }
 
+    override fun onTrimMemory(level: Int) {
+        synchronized(lock) { cache.trimToSize(trimmedCacheSize(cache.maxSize(), level)) }
+    }
+
+    override fun loadProgressively(uri: Uri, size: Size): Flow<Bitmap?> = flow {
+        withRequestRecord(uri, caching = true) { record ->
+            val newSize = sanitize(size)
+            emitAll(
+                record
+                    .request(newSize)
+                    .output
+                    // emit any lower resolution bitmap until the requested one is loaded
+                    .transformWhile { state ->
+                        val isRequested =
+                            state is BitmapLoadingState.Loaded &&
+                                newSize.metric <= state.size.metric
+                        val bitmap = state.bitmap
+                        if (isRequested || bitmap != null) {
+                            emit(bitmap)
+                        }
+                        !isRequested
+                    }
+            )
+        }
+    }
+
     private suspend fun loadImageInternal(uri: Uri, size: Size, caching: Boolean): Bitmap? {
         return withRequestRecord(uri, caching) { record ->
             val newSize = sanitize(size)
             val newMetric = newSize.metric
             record
-                .also {
-                    // set the requested size to the max of the new and the previous value; input
-                    // will emit if the resulted value is greater than the old one
-                    it.input.update { oldSize ->
-                        if (oldSize == null || oldSize.metric < newSize.metric) newSize else oldSize
-                    }
-                }
+                .request(newSize)
                 .output
                 // filter out bitmaps of a lower resolution than that we're requesting
                 .filter { it is BitmapLoadingState.Loaded && newMetric <= it.size.metric }
                 .firstOrNull()
-                ?.let { (it as BitmapLoadingState.Loaded).bitmap }
+                ?.bitmap
         }
     }
 
-    private suspend fun withRequestRecord(
+    private fun RequestRecord.request(size: Size): RequestRecord = apply {
+        // set the requested size to the max of the new and the previous value; input will emit if
+        // the resulted value is greater than the old one
+        input.update { oldSize ->
+            if (oldSize == null || oldSize.metric < size.metric) size else oldSize
+        }
+    }
+
+    private suspend fun <T> withRequestRecord(
         uri: Uri,
         caching: Boolean,
-        block: suspend (RequestRecord) -> Bitmap?
-    ): Bitmap? {
+        block: suspend (RequestRecord) -> T,
+    ): T {
         val record = trackRecordRunning(uri, caching)
         return try {
             block(record)
@@ -159,18 +211,45 @@ constructor(
                 // the image loading pipeline: input -- a desired image size, output -- a bitmap
                 input
                     .filterNotNull()
-                    .mapLatest { size -> BitmapLoadingState.Loaded(size, loadBitmap(uri, size)) }
+                    .transformLatest { size ->
+                        val bitmap =
+                            if (progressive && output.value.bitmap == null) {
+                                loadBitmapProgressively(uri, size, output)
+                            } else {
+                                loadBitmap(uri, size, PreviewLoadOperation.Thumbnail)
+                            }
+                        emit(BitmapLoadingState.Loaded(size, bitmap))
+                    }
                     .collect { output.tryEmit(it) }
             }
         return RequestRecord(input, output, job, clientCount = 0)
     }
 
-    private suspend fun loadBitmap(uri: Uri, size: Size): Bitmap? =
-        contentResolverSemaphore.withPermit {
-            runCatching { thumbnailLoader.loadThumbnail(uri, size) }
-                .onFailure { Log.d(TAG, "failed to load $uri preview", it) }
-                .getOrNull()
+    /**
+     * Loads the [size] image; if it takes longer than [PRELIMINARY_LOAD_DELAY_MS], a preliminary
+     * image is loaded and published to the [output] while the requested one is loading.
+     */
+    private suspend fun loadBitmapProgressively(
+        uri: Uri,
+        size: Size,
+        output: MutableStateFlow<BitmapLoadingState>,
+    ): Bitmap? = coroutineScope {
+        val bitmap = async { loadBitmap(uri, size, PreviewLoadOperation.Thumbnail) }
+        val preliminaryJob = launch {
+            delay(PRELIMINARY_LOAD_DELAY_MS)
+            loadBitmap(uri, size.preliminary, PreviewLoadOperation.PreliminaryThumbnail)?.let {
+                output.value = BitmapLoadingState.Preliminary(it)
+            }
         }
+        bitmap.await().also { preliminaryJob.cancelAndJoin() }
+    }
+
+    private suspend fun loadBitmap(uri: Uri, size: Size, operation: PreviewLoadOperation): Bitmap? =
+        runCatching {
+                loadLimiter.withPermit(operation) { thumbnailLoader.loadThumbnail(uri, size) }
+            }
+            .onFailure { Log.d(TAG, "failed to load $uri preview", it) }
+            .getOrNull()
 
     private class RequestRecord(
         /** The image loading pipeline input: desired preview size */
@@ -183,9 +262,15 @@ constructor(
     )
 
     private sealed interface BitmapLoadingState {
+        val bitmap: Bitmap?
+            get() = null
+
         data object Loading : BitmapLoadingState
 
-        data class Loaded(val size: Size, val bitmap: Bitmap?) : BitmapLoadingState
+        /** A low-resolution image shown while the requested one is being loaded. */
+        data class Preliminary(override val bitmap: Bitmap) : BitmapLoadingState
+
+        data class Loaded(val size: Size, override val bitmap: Bitmap?) : BitmapLoadingState
     }
 
     private fun sanitize(size: Size?): Size =
@@ -195,3 +280,6 @@ constructor(
 
 private val Size.metric
     get() = maxOf(width, height)
+
+private val Size.preliminary
+    get() = Size(maxOf(1, width / PRELIMINARY_SCALE), maxOf(1, height / PRELIMINARY_SCALE))
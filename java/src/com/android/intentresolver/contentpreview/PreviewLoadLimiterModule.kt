@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.contentpreview
+
+import com.android.intentresolver.util.AdaptiveConcurrencyLimiter
+import dagger.Module
+import dagger.Provides
+import dagger.hilt.InstallIn
+import dagger.hilt.android.components.ViewModelComponent
+import dagger.hilt.android.scopes.ViewModelScoped
+import javax.inject.Qualifier
+
+/** Limits the concurrent preview thumbnail and metadata loads, which share the same providers. */
+@Qualifier
+@MustBeDocumented
+@Retention(AnnotationRetention.BINARY)
+annotation class PreviewLoadLimiter
+
+/** The preview load kinds, each with its own latency baseline in the [PreviewLoadLimiter]. */
+enum class PreviewLoadOperation {
+    Metadata,
+    PreviewSize,
+    Thumbnail,
+    PreliminaryThumbnail,
+}
+
+@Module
+@InstallIn(ViewModelComponent::class)
+object PreviewLoadLimiterModule {
+    @Provides
+    @ViewModelScoped
+    @PreviewLoadLimiter
+    fun previewLoadLimiter(@PreviewMaxConcurrency initialLimit: Int) =
+        AdaptiveConcurrencyLimiter(initialLimit)
+}
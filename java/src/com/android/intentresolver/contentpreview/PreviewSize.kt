@@ -0,0 +1,33 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.contentpreview
+
+import android.util.Size
+
+/**
+ * Whether a thumbnail loaded for this size can be shown in place of the one of the [other] size,
+ * i.e. scaled down by the view at the draw time instead of being loaded again.
+ */
+internal fun Size.covers(other: Size): Boolean = width >= other.width && height >= other.height
+
+/** Returns this size with each dimension limited by the corresponding one of the [maxSize]. */
+internal fun Size.coerceAtMost(maxSize: Size): Size =
+    if (maxSize.covers(this)) {
+        this
+    } else {
+        Size(minOf(width, maxSize.width), minOf(height, maxSize.height))
+    }
@@ -19,9 +19,17 @@ package com.android.intentresolver.contentpreview
 import android.content.ContentResolver
 import android.graphics.Bitmap
 import android.net.Uri
+import android.os.OperationCanceledException
+import android.util.Log
 import android.util.Size
 import com.android.intentresolver.util.withCancellationSignal
 import javax.inject.Inject
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.withTimeoutOrNull
+
+private const val TAG = "ThumbnailLoader"
+private const val THUMBNAIL_LOAD_TIMEOUT_MS = 5_000L
 
 /** Interface for objects that can attempt load a [Bitmap] from a [Uri]. */
 interface ThumbnailLoader {
@@ -50,11 +58,32 @@ constructor(
 
     private val size = Size(thumbnailSize, thumbnailSize)
 
-    override suspend fun loadThumbnail(uri: Uri): Bitmap =
-        contentResolver.loadThumbnail(uri, size, /* signal= */ null)
+    override suspend fun loadThumbnail(uri: Uri): Bitmap? = loadThumbnail(uri, size)
+
+    override suspend fun loadThumbnail(uri: Uri, size: Size): Bitmap? =
+        contentResolver.loadThumbnailCancellable(uri, size)
+}
 
-    override suspend fun loadThumbnail(uri: Uri, size: Size): Bitmap =
+/**
+ * Loads a thumbnail with [ContentResolver.loadThumbnail] that is cancelled in the provider along
+ * with the calling coroutine or once it takes longer than [timeoutMs]; returns null on a timeout.
+ */
+internal suspend fun ContentResolver.loadThumbnailCancellable(
+    uri: Uri,
+    size: Size,
+    timeoutMs: Long = THUMBNAIL_LOAD_TIMEOUT_MS,
+): Bitmap? =
+    withTimeoutOrNull(timeoutMs) {
         withCancellationSignal { signal ->
-            contentResolver.loadThumbnail(uri, size, signal)
+            try {
+                loadThumbnail(uri, size, signal)
+            } catch (e: OperationCanceledException) {
+                // report the coroutine cancellation (or the timeout) instead, if that's the cause
+                currentCoroutineContext().ensureActive()
+                throw e
+            }
         }
-}
+    } ?: run {
+        Log.w(TAG, "Timed out loading a thumbnail for $uri")
+        null
+    }
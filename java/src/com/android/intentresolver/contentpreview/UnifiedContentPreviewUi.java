@@ -69,6 +69,7 @@ class UnifiedContentPreviewUi extends ContentPreviewUi {
             MimeTypeClassifier typeClassifier,
             TransitionElementStatusCallback transitionElementStatusCallback,
             Flow<FileInfo> fileInfoFlow,
+            Flow<FileInfo> mimeTypeFileInfoFlow,
             int itemCount,
             HeadlineGenerator headlineGenerator,
             @Nullable CharSequence metadata) {
@@ -83,7 +84,14 @@ class UnifiedContentPreviewUi extends ContentPreviewUi {
         mHeadlineGenerator = headlineGenerator;
         mMetadata = metadata;
 
-        JavaFlowHelper.collectToList(scope, fileInfoFlow, this::setFiles);
+        // The headline needs the type of every file while the preview only reads the metadata of
+        // the files near its viewport.
+        JavaFlowHelper.collectToList(scope, mimeTypeFileInfoFlow, this::setFiles);
+        JavaFlowHelper.collectToList(
+                scope,
+                fileInfoFlow,
+                ScrollableImagePreviewView.PREVIEW_LOAD_WINDOW_SIZE,
+                this::prePopulate);
     }
 
     @Override
@@ -101,7 +109,7 @@ class UnifiedContentPreviewUi extends ContentPreviewUi {
         return displayInternal(layoutInflater, parent, headlineViewParent);
     }
 
-    private void setFiles(List<FileInfo> files) {
+    private void prePopulate(List<FileInfo> files) {
         Size previewSize = new Size(mPreviewSize, mPreviewSize);
         mImageLoader.prePopulate(
                 files.stream()
@@ -109,6 +117,9 @@ class UnifiedContentPreviewUi extends ContentPreviewUi {
                         .filter(Objects::nonNull)
                         .map((uri -> new Pair<>(uri, previewSize)))
                         .toList());
+    }
+
+    private void setFiles(List<FileInfo> files) {
         mFiles = files;
         if (mContentPreviewView != null) {
             updatePreviewWithFiles(mContentPreviewView, mHeadlineView, files);
@@ -131,6 +142,7 @@ class UnifiedContentPreviewUi extends ContentPreviewUi {
                 mContentPreviewView.requireViewById(R.id.scrollable_image_preview);
         imagePreview.setPreviewHeight(mPreviewSize);
         imagePreview.setImageLoader(mImageLoader);
+        imagePreview.setProgressiveImageLoader(mImageLoader::loadProgressively);
         imagePreview.setOnNoPreviewCallback(() -> imagePreview.setVisibility(View.GONE));
         imagePreview.setTransitionElementStatusCallback(mTransitionElementStatusCallback);
         imagePreview.setPreviews(
@@ -22,12 +22,20 @@ import android.media.MediaMetadata
 import android.net.Uri
 import android.provider.DocumentsContract
 import android.provider.DocumentsContract.Document.FLAG_SUPPORTS_THUMBNAIL
+import android.provider.MediaStore
 import android.provider.MediaStore.MediaColumns.HEIGHT
 import android.provider.MediaStore.MediaColumns.WIDTH
 import android.util.Log
 import android.util.Size
 import com.android.intentresolver.measurements.runTracing
 
+/** Image size columns; only read from MediaStore, which keeps them in its database. */
+internal val SIZE_COLUMNS = arrayOf(WIDTH, HEIGHT)
+
+/** Whether the URI is a MediaStore one; the host, unlike the authority, omits the user id. */
+internal val Uri.isMediaStoreUri: Boolean
+    get() = host == MediaStore.AUTHORITY
+
 internal fun ContentInterface.getTypeSafe(uri: Uri): String? =
     runTracing("getType") {
         try {
@@ -67,6 +75,16 @@ internal fun ContentInterface.querySafe(uri: Uri, columns: Array<String>): Curso
         }
     }
 
+/** Reads the [WIDTH] and [HEIGHT] metadata of the [uri], if the provider reports them. */
+internal fun ContentInterface.readPreviewSize(uri: Uri): Size? =
+    querySafe(uri, arrayOf(WIDTH, HEIGHT))?.use { cursor ->
+        if (cursor.moveToFirst()) {
+            cursor.readSize()
+        } else {
+            null
+        }
+    }
+
 internal fun Cursor.readSupportsThumbnail(): Boolean =
     runCatching {
             val flagColIdx = columnNames.indexOf(DocumentsContract.Document.COLUMN_FLAGS)
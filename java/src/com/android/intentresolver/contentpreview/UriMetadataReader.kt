@@ -20,7 +20,6 @@ import android.content.ContentInterface
 import android.media.MediaMetadata
 import android.net.Uri
 import android.provider.DocumentsContract
-import android.provider.MediaStore.MediaColumns
 import android.util.Size
 import dagger.Binds
 import dagger.Module
@@ -29,6 +28,16 @@ import dagger.hilt.InstallIn
 import dagger.hilt.components.SingletonComponent
 import javax.inject.Inject
 
+/**
+ * The metadata read with one query when the URI itself is not an image; MediaStore is also asked
+ * for the [SIZE_COLUMNS].
+ */
+private val PREVIEW_METADATA_COLUMNS =
+    arrayOf(
+        DocumentsContract.Document.COLUMN_FLAGS,
+        MediaMetadata.METADATA_KEY_DISPLAY_ICON_URI,
+    )
+
 fun interface UriMetadataReader {
     fun getMetadata(uri: Uri): FileInfo
     fun readPreviewSize(uri: Uri): Size? = null
@@ -44,17 +53,26 @@ constructor(
         val builder = FileInfo.Builder(uri)
         val mimeType = contentResolver.getTypeSafe(uri)
         builder.withMimeType(mimeType)
-        if (
-            typeClassifier.isImageType(mimeType) ||
-                contentResolver.supportsImageType(uri) ||
-                contentResolver.supportsThumbnail(uri)
-        ) {
+        if (typeClassifier.isImageType(mimeType) || contentResolver.supportsImageType(uri)) {
             builder.withPreviewUri(uri)
             return builder.build()
         }
-        val previewUri = contentResolver.readPreviewUri(uri)
-        if (previewUri != null) {
-            builder.withPreviewUri(previewUri)
+        // Read the thumbnail support, the icon URI, and the size in one query; collection queries
+        // are not an option as the URI permission grants only cover the shared items.
+        val columns =
+            if (uri.isMediaStoreUri) {
+                PREVIEW_METADATA_COLUMNS + SIZE_COLUMNS
+            } else {
+                PREVIEW_METADATA_COLUMNS
+            }
+        contentResolver.querySafe(uri, columns)?.use { cursor ->
+            if (cursor.moveToFirst()) {
+                if (cursor.readSupportsThumbnail()) {
+                    builder.withPreviewUri(uri).withPreviewSize(cursor.readSize())
+                } else {
+                    builder.withPreviewUri(cursor.readPreviewUri())
+                }
+            }
         }
         return builder.build()
     }
@@ -63,30 +81,6 @@ constructor(
 
     private fun ContentInterface.supportsImageType(uri: Uri): Boolean =
         getStreamTypesSafe(uri).firstOrNull { typeClassifier.isImageType(it) } != null
-
-    private fun ContentInterface.supportsThumbnail(uri: Uri): Boolean =
-        querySafe(uri, arrayOf(DocumentsContract.Document.COLUMN_FLAGS))?.use { cursor ->
-            cursor.moveToFirst() && cursor.readSupportsThumbnail()
-        }
-            ?: false
-
-    private fun ContentInterface.readPreviewUri(uri: Uri): Uri? =
-        querySafe(uri, arrayOf(MediaMetadata.METADATA_KEY_DISPLAY_ICON_URI))?.use { cursor ->
-            if (cursor.moveToFirst()) {
-                cursor.readPreviewUri()
-            } else {
-                null
-            }
-        }
-
-    private fun ContentInterface.readPreviewSize(uri: Uri): Size? =
-        querySafe(uri, arrayOf(MediaColumns.WIDTH, MediaColumns.HEIGHT))?.use { cursor ->
-            if (cursor.moveToFirst()) {
-                cursor.readSize()
-            } else {
-                null
-            }
-        }
 }
 
 @Module
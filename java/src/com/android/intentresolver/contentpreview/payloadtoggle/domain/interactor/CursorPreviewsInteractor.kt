@@ -21,6 +21,8 @@ package com.android.intentresolver.contentpreview.payloadtoggle.domain.interacto
 import android.net.Uri
 import android.service.chooser.AdditionalContentContract.CursorExtraKeys.POSITION
 import android.util.Log
+import com.android.intentresolver.contentpreview.PreviewLoadLimiter
+import com.android.intentresolver.contentpreview.PreviewLoadOperation
 import com.android.intentresolver.contentpreview.UriMetadataReader
 import com.android.intentresolver.contentpreview.payloadtoggle.domain.model.CursorRow
 import com.android.intentresolver.contentpreview.payloadtoggle.domain.model.LoadDirection
@@ -37,6 +39,7 @@ import com.android.intentresolver.util.cursor.CursorView
 import com.android.intentresolver.util.cursor.PagedCursor
 import com.android.intentresolver.util.cursor.get
 import com.android.intentresolver.util.cursor.paged
+import com.android.intentresolver.util.AdaptiveConcurrencyLimiter
 import com.android.intentresolver.util.mapParallel
 import dagger.Module
 import dagger.Provides
@@ -65,6 +68,7 @@ constructor(
     private val uriMetadataReader: UriMetadataReader,
     @PageSize private val pageSize: Int,
     @MaxLoadedPages private val maxLoadedPages: Int,
+    @PreviewLoadLimiter private val loadLimiter: AdaptiveConcurrencyLimiter,
 ) {
 
     init {
@@ -306,33 +310,36 @@ constructor(
         destination: M,
         unclaimedRecords: MutableUnclaimedMap,
     ): M =
-        // Restrict parallelism so as to not overload the metadata reader; anecdotally, too
-        // many parallel queries causes failures.
-        mapParallel(parallelism = 4) { row ->
-                createPreviewModel(startPosition, row, unclaimedRecords)
-            }
+        // Restrict parallelism so as to not overload the metadata reader; the limit adapts to
+        // the provider latency and failures.
+        mapParallel { row -> createPreviewModel(startPosition, row, unclaimedRecords) }
             .associateByTo(destination) { it.key }
 
-    private fun createPreviewModel(
+    private suspend fun createPreviewModel(
         startPosition: Int,
         row: CursorRow,
         unclaimedRecords: MutableUnclaimedMap,
-    ): PreviewModel =
-        uriMetadataReader
-            .getMetadata(row.uri)
-            .let { metadata ->
-                val size =
-                    row.previewSize
-                        ?: metadata.previewUri?.let { uriMetadataReader.readPreviewSize(it) }
-                PreviewModel(
-                    key = PreviewKey.final(row.position - startPosition),
-                    uri = row.uri,
-                    previewUri = metadata.previewUri,
-                    mimeType = metadata.mimeType,
-                    aspectRatio = size.aspectRatioOrDefault(1f),
-                    order = row.position,
-                )
+    ): PreviewModel {
+        val metadata =
+            loadLimiter.withPermit(PreviewLoadOperation.Metadata) {
+                uriMetadataReader.getMetadata(row.uri)
             }
+        val size =
+            row.previewSize
+                ?: metadata.previewSize
+                ?: metadata.previewUri?.let {
+                    loadLimiter.withPermit(PreviewLoadOperation.PreviewSize) {
+                        uriMetadataReader.readPreviewSize(it)
+                    }
+                }
+        return PreviewModel(
+                key = PreviewKey.final(row.position - startPosition),
+                uri = row.uri,
+                previewUri = metadata.previewUri,
+                mimeType = metadata.mimeType,
+                aspectRatio = size.aspectRatioOrDefault(1f),
+                order = row.position,
+            )
             .also { updated ->
                 if (unclaimedRecords.remove(row.uri) != null) {
                     // unclaimedRecords contains initially shared (and thus selected) items with
@@ -342,6 +349,7 @@ constructor(
                     selectionInteractor.updateSelection(updated)
                 }
             }
+    }
 
     private fun <M : MutablePreviewMap> M.putAllUnclaimedRight(unclaimed: UnclaimedMap): M =
         putAllUnclaimedWhere(unclaimed) { it >= focusedItemIdx }
@@ -17,6 +17,8 @@
 package com.android.intentresolver.contentpreview.payloadtoggle.domain.interactor
 
 import android.net.Uri
+import com.android.intentresolver.contentpreview.PreviewLoadLimiter
+import com.android.intentresolver.contentpreview.PreviewLoadOperation
 import com.android.intentresolver.contentpreview.UriMetadataReader
 import com.android.intentresolver.contentpreview.payloadtoggle.data.repository.PreviewSelectionsRepository
 import com.android.intentresolver.contentpreview.payloadtoggle.domain.cursor.CursorResolver
@@ -26,6 +28,7 @@ import com.android.intentresolver.contentpreview.payloadtoggle.shared.model.Prev
 import com.android.intentresolver.contentpreview.payloadtoggle.shared.model.PreviewModel
 import com.android.intentresolver.inject.ContentUris
 import com.android.intentresolver.inject.FocusedItemIndex
+import com.android.intentresolver.util.AdaptiveConcurrencyLimiter
 import com.android.intentresolver.util.mapParallelIndexed
 import javax.inject.Inject
 import kotlinx.coroutines.async
@@ -41,6 +44,7 @@ constructor(
     @FocusedItemIndex private val focusedItemIdx: Int,
     @ContentUris private val selectedItems: List<@JvmSuppressWildcards Uri>,
     private val uriMetadataReader: UriMetadataReader,
+    @PreviewLoadLimiter private val loadLimiter: AdaptiveConcurrencyLimiter,
     @PayloadToggle private val cursorResolver: CursorResolver<@JvmSuppressWildcards CursorRow?>,
 ) {
     suspend fun activate() = coroutineScope {
@@ -60,10 +64,13 @@ constructor(
 
     private suspend fun getInitialPreviews(): List<PreviewModel> =
         selectedItems
-            // Restrict parallelism so as to not overload the metadata reader; anecdotally, too
-            // many parallel queries causes failures.
-            .mapParallelIndexed(parallelism = 4) { index, uri ->
-                val metadata = uriMetadataReader.getMetadata(uri)
+            // Restrict parallelism so as to not overload the metadata reader; the limit adapts to
+            // the provider latency and failures.
+            .mapParallelIndexed { index, uri ->
+                val metadata =
+                    loadLimiter.withPermit(PreviewLoadOperation.Metadata) {
+                        uriMetadataReader.getMetadata(uri)
+                    }
                 PreviewModel(
                     key =
                         if (index == focusedItemIdx) {
@@ -76,7 +83,11 @@ constructor(
                     mimeType = metadata.mimeType,
                     aspectRatio =
                         metadata.previewUri?.let {
-                            uriMetadataReader.readPreviewSize(it).aspectRatioOrDefault(1f)
+                            (metadata.previewSize
+                                    ?: loadLimiter.withPermit(PreviewLoadOperation.PreviewSize) {
+                                        uriMetadataReader.readPreviewSize(it)
+                                    })
+                                .aspectRatioOrDefault(1f)
                         } ?: 1f,
                     order =
                         when {
@@ -15,6 +15,7 @@
  */
 package com.android.intentresolver.contentpreview.payloadtoggle.ui.viewmodel
 
+import android.graphics.Bitmap
 import android.util.Size
 import com.android.intentresolver.Flags
 import com.android.intentresolver.Flags.unselectFinalItem
@@ -37,11 +38,13 @@ import dagger.Module
 import dagger.Provides
 import dagger.hilt.InstallIn
 import dagger.hilt.android.components.ViewModelComponent
+import dagger.hilt.android.scopes.ViewModelScoped
 import javax.inject.Provider
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.emitAll
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.stateIn
@@ -75,6 +78,7 @@ object ShareouselViewModelModule {
 
     @Provides
     @PayloadToggle
+    @ViewModelScoped
     fun imageLoader(
         cachingImageLoader: Provider<CachingImagePreviewImageLoader>,
         previewImageLoader: Provider<PreviewImageLoader>
@@ -153,7 +157,7 @@ object ShareouselViewModelModule {
                     } ?: ValueUpdate.Absent
                 ShareouselPreviewViewModel(
                     bitmapLoadState =
-                        flow {
+                        flow<ValueUpdate<Bitmap?>> {
                                 val previewWidth =
                                     if (key.aspectRatio > 0) {
                                             previewHeight.toFloat() / key.aspectRatio
@@ -161,13 +165,20 @@ object ShareouselViewModelModule {
                                             previewHeight
                                         }
                                         .toInt()
-                                emit(
-                                    key.previewUri?.let {
-                                        ValueUpdate.Value(
-                                            imageLoader(it, Size(previewWidth, previewHeight))
-                                        )
-                                    } ?: ValueUpdate.Absent
-                                )
+                                val previewUri = key.previewUri
+                                if (previewUri == null) {
+                                    emit(ValueUpdate.Absent)
+                                } else {
+                                    // a low-resolution image may come first
+                                    emitAll(
+                                        imageLoader
+                                            .loadProgressively(
+                                                previewUri,
+                                                Size(previewWidth, previewHeight),
+                                            )
+                                            .map { ValueUpdate.Value(it) }
+                                    )
+                                }
                             }
                             .stateIn(previewScope, SharingStarted.Eagerly, initialBitmapValue),
                     contentType = contentType,
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.data.repository
+
+import android.content.Context
+import android.os.UserHandle
+import androidx.annotation.GuardedBy
+
+/**
+ * Provides [the context of a specified user][Context.createContextAsUser].
+ *
+ * Each created context has its own [android.content.pm.PackageManager] and system service
+ * instances; sharing a single instance of this class lets multiple clients reuse those.
+ */
+fun interface UserScopedContext {
+    /** Returns a context for the given user. */
+    fun forUser(user: UserHandle): Context
+}
+
+/** A [UserScopedContext] that creates a context for each user only once. */
+class UserScopedContextImpl(private val context: Context) : UserScopedContext {
+    @GuardedBy("self") private val userContexts = HashMap<UserHandle, Context>()
+
+    override fun forUser(user: UserHandle): Context =
+        if (context.user == user) {
+            context
+        } else {
+            synchronized(userContexts) {
+                userContexts.getOrPut(user) { context.createContextAsUser(user, 0) }
+            }
+        }
+}
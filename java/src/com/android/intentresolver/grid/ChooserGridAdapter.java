@@ -40,9 +40,13 @@ import com.android.intentresolver.ChooserListAdapter;
 import com.android.intentresolver.FeatureFlags;
 import com.android.intentresolver.R;
 import com.android.intentresolver.ResolverListAdapter.ViewHolder;
+import com.android.intentresolver.chooser.TargetInfo;
 
 import com.google.android.collect.Lists;
 
+import java.util.Set;
+import java.util.function.Consumer;
+
 /**
  * Adapter for all types of items and targets in ShareSheet.
  * Note that ranked sections like Direct Share - while appearing grid-like - are handled on the
@@ -124,7 +128,10 @@ public final class ChooserGridAdapter extends RecyclerView.Adapter<RecyclerView.
             @Override
             public void onChanged() {
                 super.onChanged();
-                notifyDataSetChanged();
+                // Changed targets have already been rebound by onTargetsChanged.
+                if (!wrappedAdapter.isDispatchingChangedTargets()) {
+                    notifyDataSetChanged();
+                }
             }
 
             @Override
@@ -133,6 +140,31 @@ public final class ChooserGridAdapter extends RecyclerView.Adapter<RecyclerView.
                 notifyDataSetChanged();
             }
         });
+        wrappedAdapter.setTargetsChangedListener(this::onTargetsChanged);
+    }
+
+    /** Rebinds only the rows that show any of the given targets. */
+    private void onTargetsChanged(Set<TargetInfo> targets) {
+        int first = -1;
+        int last = -1;
+        int count = mChooserListAdapter.getServiceTargetCount()
+                + mChooserListAdapter.getCallerTargetCount()
+                + mChooserListAdapter.getRankedTargetCount()
+                + mChooserListAdapter.getAlphaTargetCount();
+        for (int listPosition = 0; listPosition < count; listPosition++) {
+            if (!targets.contains(mChooserListAdapter.getItem(listPosition))) {
+                continue;
+            }
+            int position = getItemPosition(listPosition);
+            if (position < 0) {
+                continue;
+            }
+            first = first < 0 ? position : Math.min(first, position);
+            last = Math.max(last, position);
+        }
+        if (first >= 0) {
+            notifyItemRangeChanged(first, last - first + 1);
+        }
     }
 
     @Override
@@ -300,6 +332,34 @@ public final class ChooserGridAdapter extends RecyclerView.Adapter<RecyclerView.
         }
     }
 
+    @Override
+    public void onViewAttachedToWindow(@NonNull RecyclerView.ViewHolder holder) {
+        forEachTargetView(
+                holder, view -> mChooserListAdapter.onBoundViewVisibilityChanged(view, true));
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(@NonNull RecyclerView.ViewHolder holder) {
+        forEachTargetView(
+                holder, view -> mChooserListAdapter.onBoundViewVisibilityChanged(view, false));
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull RecyclerView.ViewHolder holder) {
+        forEachTargetView(holder, mChooserListAdapter::onBoundViewRecycled);
+    }
+
+    private void forEachTargetView(RecyclerView.ViewHolder holder, Consumer<View> action) {
+        if (holder instanceof ItemGroupViewHolder) {
+            ItemGroupViewHolder groupHolder = (ItemGroupViewHolder) holder;
+            for (int i = 0; i < groupHolder.getColumnCount(); i++) {
+                action.accept(groupHolder.getView(i));
+            }
+        } else if (holder instanceof ItemViewHolder) {
+            action.accept(holder.itemView);
+        }
+    }
+
     @Override
     public int getItemViewType(int position) {
         int count = 0;
@@ -521,6 +581,30 @@ public final class ChooserGridAdapter extends RecyclerView.Adapter<RecyclerView.
         return callerAndRankedCount + serviceCount + position;
     }
 
+    /**
+     * Returns the position of the row that shows the target at the given list position, or -1 if
+     * the target is not shown.
+     */
+    int getItemPosition(int listPosition) {
+        final int serviceCount = mChooserListAdapter.getServiceTargetCount();
+        final int serviceRows = getServiceTargetRowCount();
+        if (listPosition < serviceCount) {
+            return serviceRows > 0 ? 0 : -1;
+        }
+        listPosition -= serviceCount;
+
+        final int callerAndRankedCount =
+                mChooserListAdapter.getCallerTargetCount()
+                + mChooserListAdapter.getRankedTargetCount();
+        if (listPosition < callerAndRankedCount) {
+            return serviceRows + listPosition / mMaxTargetsPerRow;
+        }
+        listPosition -= callerAndRankedCount;
+
+        return serviceRows + getCallerAndRankedTargetRowCount() + getAzLabelRowCount()
+                + listPosition;
+    }
+
     public ChooserListAdapter getListAdapter() {
         return mChooserListAdapter;
     }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import android.content.ComponentName
+import android.content.Context
+import android.content.pm.ActivityInfo
+import android.content.pm.PackageManager
+import android.graphics.Bitmap
+import android.os.UserHandle
+import android.util.Log
+import androidx.annotation.WorkerThread
+import com.android.intentresolver.TargetPresentationGetter
+import dagger.hilt.android.scopes.ActivityScoped
+import java.util.Optional
+import java.util.concurrent.ConcurrentHashMap
+import javax.inject.Inject
+
+private const val TAG = "AppIconBadgeCache"
+private const val BADGE_QUALIFIER = "badge"
+
+/**
+ * Keeps the unbadged app icons that direct share icons are badged with, along with the activity
+ * lookups behind them, so all shortcuts of an app share a single app icon render.
+ *
+ * Activity lookups are kept for the session; the icons are kept in the shared [IconMemoryCache],
+ * next to the target icons of [CachingTargetDataLoader].
+ */
+@ActivityScoped
+class AppIconBadgeCache
+@Inject
+constructor(
+    private val iconCache: IconMemoryCache,
+    private val presentationFactory: TargetPresentationGetter.Factory,
+) {
+    private val activityInfos = ConcurrentHashMap<Key, Optional<ActivityInfo>>()
+    /** Per-component locks; shortcuts of the same app are loaded in parallel. */
+    private val badgeLocks = ConcurrentHashMap<Key, Any>()
+
+    /** Returns the info of the activity for the user of the given context, if it exists. */
+    @WorkerThread
+    fun getActivityInfo(userContext: Context, component: ComponentName): ActivityInfo? =
+        activityInfos
+            .getOrPut(Key(userContext.user, component)) {
+                try {
+                    Optional.of(userContext.packageManager.getActivityInfo(component, 0))
+                } catch (e: PackageManager.NameNotFoundException) {
+                    Log.e(TAG, "Could not find activity $component")
+                    Optional.empty()
+                }
+            }
+            .orElse(null)
+
+    /**
+     * Returns the app icon of the activity, with no profile badge, rendering it if needed. The icon
+     * is a software bitmap, whatever the [IconStorageMode], as it is drawn into other icons.
+     */
+    @WorkerThread
+    fun getAppIcon(user: UserHandle, info: ActivityInfo): Bitmap {
+        val component = ComponentName(info.packageName, info.name)
+        synchronized(badgeLocks.getOrPut(Key(user, component)) { Any() }) {
+            iconCache.get(user, component, BADGE_QUALIFIER)?.let {
+                return it
+            }
+            return presentationFactory.makePresentationGetter(info).getIconBitmap(null).also {
+                iconCache.put(user, component, it, BADGE_QUALIFIER)
+            }
+        }
+    }
+
+    private data class Key(val user: UserHandle, val component: ComponentName)
+}
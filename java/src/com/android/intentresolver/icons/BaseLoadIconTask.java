@@ -18,30 +18,23 @@ package com.android.intentresolver.icons;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.os.AsyncTask;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 import com.android.intentresolver.TargetPresentationGetter;
 
-import java.util.function.Consumer;
-
-abstract class BaseLoadIconTask extends AsyncTask<Void, Void, Bitmap> {
+abstract class BaseLoadIconTask {
     protected final Context mContext;
     protected final TargetPresentationGetter.Factory mPresentationFactory;
-    private final Consumer<Bitmap> mCallback;
 
-    BaseLoadIconTask(
-            Context context,
-            TargetPresentationGetter.Factory presentationFactory,
-            Consumer<Bitmap> callback) {
+    BaseLoadIconTask(Context context, TargetPresentationGetter.Factory presentationFactory) {
         mContext = context;
         mPresentationFactory = presentationFactory;
-        mCallback = callback;
     }
 
-    @Override
-    protected final void onPostExecute(@Nullable Bitmap d) {
-        mCallback.accept(d);
-    }
+    /** Loads the icon. */
+    @WorkerThread
+    @Nullable
+    abstract Bitmap load();
 }
@@ -18,86 +18,214 @@ package com.android.intentresolver.icons
 
 import android.content.ComponentName
 import android.content.Context
+import android.content.pm.ResolveInfo
 import android.graphics.Bitmap
 import android.graphics.drawable.BitmapDrawable
 import android.graphics.drawable.Drawable
 import android.os.UserHandle
-import androidx.collection.LruCache
 import com.android.intentresolver.Flags.targetHoverAndKeyboardFocusStates
 import com.android.intentresolver.chooser.DisplayResolveInfo
 import com.android.intentresolver.chooser.SelectableTargetInfo
+import com.android.intentresolver.chooser.TargetInfo
+import com.android.intentresolver.data.repository.UserScopedContext
 import java.util.function.Consumer
 import javax.annotation.concurrent.GuardedBy
 import javax.inject.Qualifier
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.MainScope
+import kotlinx.coroutines.launch
 
 @Qualifier @MustBeDocumented @Retention(AnnotationRetention.BINARY) annotation class Caching
 
-private typealias IconCache = LruCache<String, Bitmap>
+/** The size of the icon cache used when no shared one is provided, in bytes. */
+private const val DEFAULT_ICON_CACHE_BYTES = 4 * 1024 * 1024
 
 class CachingTargetDataLoader(
     private val context: Context,
     private val targetDataLoader: TargetDataLoader,
-    private val cacheSize: Int = 100,
+    /** The cache of loaded icons, usually the process-wide one. */
+    private val iconCache: IconMemoryCache = IconMemoryCache(DEFAULT_ICON_CACHE_BYTES),
+    /** An optional persistent app icon cache, consulted before loading an icon. */
+    private val iconDiskCache: IconDiskCache? = null,
+    /** How the icons restored from the [iconDiskCache] are held. */
+    private val iconStorageMode: IconStorageMode = IconStorageMode.SOFTWARE,
+    private val userScopedContext: UserScopedContext = UserScopedContext { context },
+    private val scope: CoroutineScope = MainScope(),
 ) : TargetDataLoader {
-    @GuardedBy("self") private val perProfileIconCache = HashMap<UserHandle, IconCache>()
+    /** Icon loads in progress; concurrent requests of the same icon share a single load. */
+    @GuardedBy("self") private val inFlightIconLoads = HashMap<IconLoadKey, IconLoad>()
+    /** Label loads in progress, keyed by the ResolveInfo the label is loaded from. */
+    @GuardedBy("self") private val inFlightLabelLoads = HashMap<ResolveInfo, LabelLoad>()
 
     override fun getOrLoadAppTargetIcon(
         info: DisplayResolveInfo,
         userHandle: UserHandle,
         callback: Consumer<Drawable>,
     ): Drawable? {
-        val cacheKey = info.toCacheKey()
-        return getCachedAppIcon(cacheKey, userHandle)?.toDrawable()
-            ?: targetDataLoader.getOrLoadAppTargetIcon(info, userHandle) { drawable ->
-                drawable.extractBitmap()?.let { getProfileIconCache(userHandle).put(cacheKey, it) }
-                callback.accept(drawable)
+        val component = info.toComponentName()
+        iconCache.get(userHandle, component)?.let {
+            return it.toDrawable()
+        }
+        val loadKey = IconLoadKey(userHandle, component, qualifier = "")
+        val onLoaded = joinIconLoad(loadKey, info, callback) ?: return null
+        if (iconDiskCache == null) {
+            return loadAppTargetIcon(info, userHandle, component, onLoaded)
+                ?.also { abandonIconLoad(loadKey) }
+        }
+        val load = synchronized(inFlightIconLoads) { inFlightIconLoads[loadKey] }
+        scope.launch {
+            val bitmap =
+                iconDiskCache.get(
+                    userScopedContext.forUser(userHandle),
+                    component,
+                    iconStorageMode.config,
+                )
+            if (bitmap != null) {
+                iconCache.put(userHandle, component, bitmap)
+                onLoaded.accept(bitmap.toDrawable())
+            } else if (isIconLoadPending(loadKey, load)) {
+                loadAppTargetIcon(info, userHandle, component, onLoaded)?.let(onLoaded::accept)
             }
+        }
+        return null
     }
 
+    private fun loadAppTargetIcon(
+        info: DisplayResolveInfo,
+        userHandle: UserHandle,
+        component: ComponentName,
+        callback: Consumer<Drawable>,
+    ): Drawable? =
+        targetDataLoader.getOrLoadAppTargetIcon(info, userHandle) { drawable ->
+            drawable.extractBitmap()?.let {
+                iconCache.put(userHandle, component, it)
+                iconDiskCache?.put(userScopedContext.forUser(userHandle), component, it)
+            }
+            callback.accept(drawable)
+        }
+
     override fun getOrLoadDirectShareIcon(
         info: SelectableTargetInfo,
         userHandle: UserHandle,
         callback: Consumer<Drawable>,
     ): Drawable? {
-        val cacheKey = info.toCacheKey()
-        return cacheKey?.let { getCachedAppIcon(it, userHandle) }?.toDrawable()
-            ?: targetDataLoader.getOrLoadDirectShareIcon(info, userHandle) { drawable ->
-                if (cacheKey != null) {
-                    drawable.extractBitmap()?.let {
-                        getProfileIconCache(userHandle).put(cacheKey, it)
-                    }
+        val component = info.chooserTargetComponentName
+        val qualifier = info.toCacheQualifier()
+        if (component == null || qualifier == null) {
+            return targetDataLoader.getOrLoadDirectShareIcon(info, userHandle, callback)
+        }
+        iconCache.get(userHandle, component, qualifier)?.let {
+            return it.toDrawable()
+        }
+        val loadKey = IconLoadKey(userHandle, component, qualifier)
+        val onLoaded = joinIconLoad(loadKey, info, callback) ?: return null
+        return targetDataLoader
+            .getOrLoadDirectShareIcon(info, userHandle) { drawable ->
+                drawable.extractBitmap()?.let {
+                    iconCache.put(userHandle, component, it, qualifier)
                 }
-                callback.accept(drawable)
+                onLoaded.accept(drawable)
             }
+            ?.also { abandonIconLoad(loadKey) }
     }
 
-    override fun loadLabel(info: DisplayResolveInfo, callback: Consumer<LabelInfo>) =
-        targetDataLoader.loadLabel(info, callback)
+    override fun loadLabel(info: DisplayResolveInfo, callback: Consumer<LabelInfo>) {
+        val resolveInfo = info.resolveInfo
+        synchronized(inFlightLabelLoads) {
+            val load = inFlightLabelLoads[resolveInfo]
+            if (load != null) {
+                load.callbacks.add(callback)
+                return
+            }
+            inFlightLabelLoads[resolveInfo] = LabelLoad().also { it.callbacks.add(callback) }
+        }
+        targetDataLoader.loadLabel(info) { result ->
+            val callbacks =
+                synchronized(inFlightLabelLoads) { inFlightLabelLoads.remove(resolveInfo) }
+                    ?.callbacks
+            callbacks?.forEach { it.accept(result) }
+        }
+    }
 
     override fun getOrLoadLabel(info: DisplayResolveInfo) = targetDataLoader.getOrLoadLabel(info)
 
-    private fun getCachedAppIcon(component: String, userHandle: UserHandle): Bitmap? =
-        getProfileIconCache(userHandle)[component]
+    override fun setIconLoadPriority(info: TargetInfo, priority: LoadPriority) {
+        val loadTarget =
+            synchronized(inFlightIconLoads) {
+                inFlightIconLoads.values.firstOrNull { load -> load.hasWaiter(info) }?.target
+            }
+        targetDataLoader.setIconLoadPriority(loadTarget ?: info, priority)
+    }
 
-    private fun getProfileIconCache(userHandle: UserHandle): IconCache =
-        synchronized(perProfileIconCache) {
-            perProfileIconCache.getOrPut(userHandle) { IconCache(cacheSize) }
+    override fun cancelIconLoad(info: TargetInfo) {
+        val loadTarget =
+            synchronized(inFlightIconLoads) {
+                val entry =
+                    inFlightIconLoads.entries.firstOrNull { (_, load) -> load.hasWaiter(info) }
+                        ?: return@synchronized info
+                val load = entry.value
+                load.waiters.removeAll { (target, _) -> target === info }
+                if (load.waiters.isEmpty()) {
+                    inFlightIconLoads.remove(entry.key)
+                    load.target
+                } else {
+                    // other requests still wait for the load
+                    null
+                }
+            }
+        loadTarget?.let(targetDataLoader::cancelIconLoad)
+    }
+
+    /**
+     * Registers an icon request. Returns the callback the new load should deliver the icon to, or
+     * null if the same icon is being loaded already; the request then gets the icon of that load.
+     */
+    private fun joinIconLoad(
+        key: IconLoadKey,
+        info: TargetInfo,
+        callback: Consumer<Drawable>,
+    ): Consumer<Drawable>? {
+        synchronized(inFlightIconLoads) {
+            val load = inFlightIconLoads[key]
+            if (load != null) {
+                load.waiters.add(info to callback)
+                return null
+            }
+            inFlightIconLoads[key] = IconLoad(info).also { it.waiters.add(info to callback) }
         }
+        return Consumer { drawable -> completeIconLoad(key, drawable) }
+    }
+
+    private fun completeIconLoad(key: IconLoadKey, drawable: Drawable) {
+        val waiters =
+            synchronized(inFlightIconLoads) { inFlightIconLoads.remove(key) }?.waiters ?: return
+        val bitmap = drawable.extractBitmap()
+        waiters.forEachIndexed { i, (_, callback) ->
+            // each request gets its own drawable instance of the shared bitmap
+            callback.accept(if (i == 0 || bitmap == null) drawable else bitmap.toDrawable())
+        }
+    }
+
+    /** Whether the [load] still has requests waiting for it, i.e. it has not been cancelled. */
+    private fun isIconLoadPending(key: IconLoadKey, load: IconLoad?): Boolean =
+        synchronized(inFlightIconLoads) { load != null && inFlightIconLoads[key] === load }
 
-    private fun DisplayResolveInfo.toCacheKey() =
+    /** Forgets an icon load that has completed synchronously. */
+    private fun abandonIconLoad(key: IconLoadKey) {
+        synchronized(inFlightIconLoads) { inFlightIconLoads.remove(key) }
+    }
+
+    private fun DisplayResolveInfo.toComponentName() =
         ComponentName(resolveInfo.activityInfo.packageName, resolveInfo.activityInfo.name)
-            .flattenToString()
 
-    private fun SelectableTargetInfo.toCacheKey(): String? =
+    private fun SelectableTargetInfo.toCacheQualifier(): String? =
         if (chooserTargetIcon != null) {
             // do not cache icons for caller-provided targets
             null
         } else {
-            buildString {
-                append(chooserTargetComponentName?.flattenToString() ?: "")
-                append("|")
-                append(directShareShortcutInfo?.id ?: "")
-            }
+            // the icon cache outlives the session, tell apart updated shortcuts
+            val shortcutInfo = directShareShortcutInfo
+            "shortcut|${shortcutInfo?.id ?: ""}|${shortcutInfo?.lastChangedTimestamp ?: 0}"
         }
 
     private fun Bitmap.toDrawable(): Drawable {
@@ -108,6 +236,23 @@ class CachingTargetDataLoader(
         }
     }
 
+    private data class IconLoadKey(
+        val userHandle: UserHandle,
+        val component: ComponentName,
+        val qualifier: String,
+    )
+
+    /** An icon load started for the [target] and the requests waiting for it. */
+    private class IconLoad(val target: TargetInfo) {
+        val waiters = ArrayList<Pair<TargetInfo, Consumer<Drawable>>>()
+
+        fun hasWaiter(info: TargetInfo) = waiters.any { (target, _) -> target === info }
+    }
+
+    private class LabelLoad {
+        val callbacks = ArrayList<Consumer<LabelInfo>>()
+    }
+
     private fun Drawable.extractBitmap(): Bitmap? {
         return when (this) {
             is BitmapDrawable -> bitmap
@@ -20,68 +20,58 @@ import android.content.Context
 import android.graphics.Bitmap
 import android.graphics.drawable.BitmapDrawable
 import android.graphics.drawable.Drawable
-import android.os.AsyncTask
+import android.os.LocaleList
 import android.os.UserHandle
-import android.util.SparseArray
-import androidx.annotation.GuardedBy
-import androidx.lifecycle.DefaultLifecycleObserver
 import androidx.lifecycle.Lifecycle
-import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.coroutineScope
 import com.android.intentresolver.Flags.targetHoverAndKeyboardFocusStates
 import com.android.intentresolver.R
 import com.android.intentresolver.SimpleIconFactory
 import com.android.intentresolver.TargetPresentationGetter
 import com.android.intentresolver.chooser.DisplayResolveInfo
 import com.android.intentresolver.chooser.SelectableTargetInfo
+import com.android.intentresolver.chooser.TargetInfo
+import com.android.intentresolver.data.repository.UserScopedContext
 import com.android.intentresolver.inject.ActivityOwned
 import dagger.assisted.Assisted
 import dagger.assisted.AssistedFactory
 import dagger.assisted.AssistedInject
 import dagger.hilt.android.qualifiers.ActivityContext
-import java.util.concurrent.atomic.AtomicInteger
 import java.util.function.Consumer
 import javax.inject.Provider
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.asExecutor
 
-/** An actual [TargetDataLoader] implementation. */
-// TODO: replace async tasks with coroutines.
+/**
+ * An actual [TargetDataLoader] implementation. Loads are run on background coroutines, ordered by
+ * [LoadPriority], and are cancelled when the activity is destroyed.
+ */
 class DefaultTargetDataLoader
 @AssistedInject
 constructor(
     @ActivityContext private val context: Context,
-    @ActivityOwned private val lifecycle: Lifecycle,
+    @ActivityOwned lifecycle: Lifecycle,
     private val iconFactoryProvider: Provider<SimpleIconFactory>,
     private val presentationFactory: TargetPresentationGetter.Factory,
+    private val userScopedContext: UserScopedContext,
+    private val labelStore: LabelStore,
+    private val appIconBadgeCache: AppIconBadgeCache,
+    private val iconStorageMode: IconStorageMode,
     @Assisted private val isAudioCaptureDevice: Boolean,
 ) : TargetDataLoader {
-    private val nextTaskId = AtomicInteger(0)
-    @GuardedBy("self") private val activeTasks = SparseArray<AsyncTask<*, *, *>>()
-    private val executor = Dispatchers.IO.asExecutor()
-
-    init {
-        lifecycle.addObserver(
-            object : DefaultLifecycleObserver {
-                override fun onDestroy(owner: LifecycleOwner) {
-                    lifecycle.removeObserver(this)
-                    destroy()
-                }
-            }
-        )
-    }
+    private val scheduler = LoadScheduler(lifecycle.coroutineScope, Dispatchers.IO)
 
     override fun getOrLoadAppTargetIcon(
         info: DisplayResolveInfo,
         userHandle: UserHandle,
         callback: Consumer<Drawable>,
     ): Drawable? {
-        val taskId = nextTaskId.getAndIncrement()
-        LoadIconTask(context, info, presentationFactory) { bitmap ->
-                removeTask(taskId)
-                callback.accept(bitmap?.toDrawable() ?: loadIconPlaceholder())
-            }
-            .also { addTask(taskId, it) }
-            .executeOnExecutor(executor)
+        val task = LoadIconTask(context, info, presentationFactory)
+        scheduler.schedule(
+            info,
+            LoadPriority.VISIBLE,
+            load = { task.load()?.toStoredIcon() },
+            callback = { bitmap -> callback.accept(bitmap?.toDrawable() ?: loadIconPlaceholder()) },
+        )
         return null
     }
 
@@ -90,59 +80,74 @@ constructor(
         userHandle: UserHandle,
         callback: Consumer<Drawable>,
     ): Drawable? {
-        val taskId = nextTaskId.getAndIncrement()
-        LoadDirectShareIconTask(
-                context.createContextAsUser(userHandle, 0),
+        val task =
+            LoadDirectShareIconTask(
+                userScopedContext.forUser(userHandle),
                 info,
                 presentationFactory,
                 iconFactoryProvider,
-            ) { bitmap ->
-                removeTask(taskId)
-                callback.accept(bitmap?.toDrawable() ?: loadIconPlaceholder())
-            }
-            .also { addTask(taskId, it) }
-            .executeOnExecutor(executor)
+                appIconBadgeCache,
+            )
+        scheduler.schedule(
+            info,
+            LoadPriority.DIRECT_SHARE,
+            load = { task.load()?.toStoredIcon() },
+            callback = { bitmap -> callback.accept(bitmap?.toDrawable() ?: loadIconPlaceholder()) },
+        )
         return null
     }
 
     override fun loadLabel(info: DisplayResolveInfo, callback: Consumer<LabelInfo>) {
-        val taskId = nextTaskId.getAndIncrement()
-        LoadLabelTask(context, info, isAudioCaptureDevice, presentationFactory) { result ->
-                removeTask(taskId)
-                callback.accept(result)
-            }
-            .also { addTask(taskId, it) }
-            .executeOnExecutor(executor)
+        val task = LoadLabelTask(context, info, isAudioCaptureDevice, presentationFactory)
+        scheduler.schedule(
+            key = null,
+            LoadPriority.VISIBLE,
+            load = { getStoredLabel(info) ?: task.load().also { storeLabel(info, it) } },
+            callback = { label ->
+                // fall back to the package name if the label could not be loaded
+                callback.accept(label ?: LabelInfo(info.resolvedComponentName.packageName, null))
+            },
+        )
     }
 
     override fun getOrLoadLabel(info: DisplayResolveInfo) {
         if (!info.hasDisplayLabel()) {
             val result =
-                LoadLabelTask.loadLabel(context, info, isAudioCaptureDevice, presentationFactory)
+                getStoredLabel(info)
+                    ?: LoadLabelTask.loadLabel(
+                            context,
+                            info,
+                            isAudioCaptureDevice,
+                            presentationFactory,
+                        )
+                        .also { storeLabel(info, it) }
             info.displayLabel = result.label
             info.extendedInfo = result.subLabel
         }
     }
 
-    private fun addTask(id: Int, task: AsyncTask<*, *, *>) {
-        synchronized(activeTasks) { activeTasks.put(id, task) }
-    }
+    override fun setIconLoadPriority(info: TargetInfo, priority: LoadPriority) =
+        scheduler.setPriority(info, priority)
 
-    private fun removeTask(id: Int) {
-        synchronized(activeTasks) { activeTasks.remove(id) }
+    override fun cancelIconLoad(info: TargetInfo) = scheduler.cancel(info)
+
+    // Sublabels of audio capture devices depend on the record permission, these are not stored.
+    private fun getStoredLabel(info: DisplayResolveInfo): LabelInfo? =
+        if (isAudioCaptureDevice) null else labelStore.get(info.resolveInfo, locales)
+
+    private fun storeLabel(info: DisplayResolveInfo, label: LabelInfo) {
+        if (!isAudioCaptureDevice) {
+            labelStore.put(info.resolveInfo, locales, label)
+        }
     }
 
+    private val locales: LocaleList
+        get() = context.resources.configuration.locales
+
     private fun loadIconPlaceholder(): Drawable =
         requireNotNull(context.getDrawable(R.drawable.resolver_icon_placeholder))
 
-    private fun destroy() {
-        synchronized(activeTasks) {
-            for (i in 0 until activeTasks.size()) {
-                activeTasks.valueAt(i).cancel(false)
-            }
-            activeTasks.clear()
-        }
-    }
+    private fun Bitmap.toStoredIcon(): Bitmap = iconStorageMode.toStoredIcon(this)
 
     private fun Bitmap.toDrawable(): Drawable {
         return if (targetHoverAndKeyboardFocusStates()) {
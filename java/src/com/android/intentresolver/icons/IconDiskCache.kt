@@ -0,0 +1,177 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import android.content.ComponentName
+import android.content.Context
+import android.content.pm.PackageManager
+import android.content.res.Configuration
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import androidx.annotation.VisibleForTesting
+import com.android.intentresolver.data.BroadcastSubscriber
+import com.android.intentresolver.inject.Background
+import com.android.intentresolver.inject.Main
+import dagger.hilt.android.qualifiers.ApplicationContext
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+
+private const val CACHE_DIR = "target_icons"
+private const val MAX_ENTRIES = 200
+
+/**
+ * A persistent store of app target icons that outlives Chooser sessions and the process.
+ *
+ * Icons are stored in one compact file per profile whose index is read sequentially, off the main
+ * thread, on the first access; the icons themselves are only read when requested (see
+ * [PersistentProfileStore]). Entries are keyed by the component, the display density and the night
+ * mode, and are only served while the package's last update time matches the stored one. All
+ * entries of a package are dropped whenever the package is changed.
+ */
+@Singleton
+class IconDiskCache
+@VisibleForTesting
+constructor(
+    directory: File,
+    packageChanges: Flow<PackageChange>,
+    private val scope: CoroutineScope,
+    private val backgroundDispatcher: CoroutineDispatcher,
+) {
+    @Inject
+    constructor(
+        @ApplicationContext context: Context,
+        broadcastSubscriber: BroadcastSubscriber,
+        @Main scope: CoroutineScope,
+        @Background backgroundDispatcher: CoroutineDispatcher,
+    ) : this(
+        File(context.cacheDir, CACHE_DIR),
+        broadcastSubscriber.createPackageChangeFlow(),
+        scope,
+        backgroundDispatcher,
+    )
+
+    private val store =
+        PersistentProfileStore(
+            directory,
+            IconEntryCodec,
+            MAX_ENTRIES,
+            packageChanges,
+            scope,
+            backgroundDispatcher,
+        )
+
+    /**
+     * Returns the stored icon of the [component] for the user of the given context, if there is an
+     * up-to-date one, decoded in the given [config].
+     */
+    suspend fun get(
+        userContext: Context,
+        component: ComponentName,
+        config: Bitmap.Config = Bitmap.Config.ARGB_8888,
+    ): Bitmap? =
+        withContext(backgroundDispatcher) {
+            val lastUpdateTime =
+                userContext.getLastUpdateTime(component.packageName) ?: return@withContext null
+            val key = IconKey(component, userContext.resources.configuration)
+            val data =
+                store.getBlob(userContext.user, key) { it.lastUpdateTime == lastUpdateTime }
+            data?.let {
+                val options = BitmapFactory.Options().apply { inPreferredConfig = config }
+                BitmapFactory.decodeByteArray(it, 0, it.size, options)
+            }
+        }
+
+    /** Stores the [component] icon for the user of the given context. */
+    fun put(userContext: Context, component: ComponentName, icon: Bitmap) {
+        scope.launch(backgroundDispatcher) {
+            val lastUpdateTime =
+                userContext.getLastUpdateTime(component.packageName) ?: return@launch
+            val key = IconKey(component, userContext.resources.configuration)
+            // hardware icons are read back into a temporary software copy
+            val pixels =
+                if (icon.config == Bitmap.Config.HARDWARE) {
+                    icon.copy(Bitmap.Config.ARGB_8888, /* isMutable= */ false) ?: return@launch
+                } else {
+                    icon
+                }
+            val data =
+                ByteArrayOutputStream().use { out ->
+                    if (!pixels.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                        return@launch
+                    }
+                    out.toByteArray()
+                }
+            store.put(userContext.user, key, Entry(lastUpdateTime), data)
+        }
+    }
+
+    private fun Context.getLastUpdateTime(packageName: String): Long? =
+        try {
+            packageManager
+                .getPackageInfo(packageName, PackageManager.PackageInfoFlags.of(0))
+                .lastUpdateTime
+        } catch (e: PackageManager.NameNotFoundException) {
+            null
+        }
+
+    private data class IconKey(val component: ComponentName, val density: Int, val nightMode: Int) {
+        constructor(
+            component: ComponentName,
+            configuration: Configuration,
+        ) : this(
+            component,
+            configuration.densityDpi,
+            configuration.uiMode and Configuration.UI_MODE_NIGHT_MASK,
+        )
+    }
+
+    /** The icon data itself is the blob of the entry and is only read from the file on demand. */
+    private class Entry(val lastUpdateTime: Long)
+
+    private object IconEntryCodec : PersistentProfileStore.EntryCodec<IconKey, Entry> {
+        override val name = "icons"
+        override val fileMagic = 0x49434f4e // "ICON"
+        override val fileVersion = 2
+
+        override fun packageName(key: IconKey): String = key.component.packageName
+
+        override fun read(input: DataInputStream): Pair<IconKey, Entry> {
+            val component =
+                ComponentName.unflattenFromString(input.readUTF())
+                    ?: throw IOException("Malformed component name")
+            val key = IconKey(component, input.readInt(), input.readInt())
+            return key to Entry(input.readLong())
+        }
+
+        override fun write(output: DataOutputStream, key: IconKey, value: Entry) {
+            output.writeUTF(key.component.flattenToString())
+            output.writeInt(key.density)
+            output.writeInt(key.nightMode)
+            output.writeLong(value.lastUpdateTime)
+        }
+    }
+}
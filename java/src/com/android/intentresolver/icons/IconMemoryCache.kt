@@ -0,0 +1,134 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import android.app.ActivityManager
+import android.content.ComponentCallbacks2
+import android.content.ComponentName
+import android.content.Context
+import android.content.res.Configuration
+import android.graphics.Bitmap
+import android.os.UserHandle
+import androidx.annotation.GuardedBy
+import androidx.annotation.VisibleForTesting
+import androidx.collection.LruCache
+import com.android.intentresolver.data.BroadcastSubscriber
+import com.android.intentresolver.inject.Main
+import dagger.hilt.android.qualifiers.ApplicationContext
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.launch
+
+private const val MB = 1024 * 1024
+
+/**
+ * A process-wide in-memory cache of target icons, shared by all Chooser sessions and profiles.
+ *
+ * The cache is bounded by the total allocation size of the icons rather than their number; the
+ * budget is derived from the device memory class. The cache shrinks on memory pressure and drops
+ * the icons of a package whenever the package is changed.
+ */
+@Singleton
+class IconMemoryCache @VisibleForTesting constructor(maxBytes: Int) : ComponentCallbacks2 {
+    @Inject
+    constructor(
+        @ApplicationContext context: Context,
+        activityManager: ActivityManager,
+        broadcastSubscriber: BroadcastSubscriber,
+        @Main scope: CoroutineScope,
+    ) : this(getMaxBytes(activityManager)) {
+        onConfigurationChanged(context.resources.configuration)
+        context.registerComponentCallbacks(this)
+        scope.launch {
+            broadcastSubscriber.createPackageChangeFlow().collect {
+                invalidate(it.packageName, it.user)
+            }
+        }
+    }
+
+    private val cache =
+        object : LruCache<Key, Bitmap>(maxBytes) {
+            override fun sizeOf(key: Key, value: Bitmap): Int = value.allocationByteCount
+        }
+    private val lock = Any()
+    @GuardedBy("lock") private var density = Configuration.DENSITY_DPI_UNDEFINED
+    @GuardedBy("lock") private var nightMode = Configuration.UI_MODE_NIGHT_UNDEFINED
+
+    /**
+     * Returns the cached icon of the [component] for the given user. The [qualifier] tells apart
+     * different icons of the same component, e.g. those of shortcuts.
+     */
+    fun get(user: UserHandle, component: ComponentName, qualifier: String = ""): Bitmap? =
+        cache[Key(user, component, qualifier)]
+
+    /** Caches the [icon] of the [component] for the given user, see [get]. */
+    fun put(user: UserHandle, component: ComponentName, icon: Bitmap, qualifier: String = "") {
+        cache.put(Key(user, component, qualifier), icon)
+    }
+
+    /** Drops the icons of the package for the given user, or for all users if the user is null. */
+    fun invalidate(packageName: String, user: UserHandle?) {
+        for (key in cache.snapshot().keys) {
+            if (key.component.packageName == packageName && (user == null || key.user == user)) {
+                cache.remove(key)
+            }
+        }
+    }
+
+    override fun onTrimMemory(level: Int) {
+        when {
+            level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND ||
+                level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL -> cache.evictAll()
+            level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW ->
+                cache.trimToSize(cache.maxSize() / 2)
+        }
+    }
+
+    @Deprecated("Deprecated in Java")
+    override fun onLowMemory() {
+        cache.evictAll()
+    }
+
+    override fun onConfigurationChanged(newConfig: Configuration) {
+        // icons are loaded for the current display density and night mode
+        val newNightMode = newConfig.uiMode and Configuration.UI_MODE_NIGHT_MASK
+        val isChanged =
+            synchronized(lock) {
+                val isChanged =
+                    (density != Configuration.DENSITY_DPI_UNDEFINED &&
+                        density != newConfig.densityDpi) ||
+                        (nightMode != Configuration.UI_MODE_NIGHT_UNDEFINED &&
+                            nightMode != newNightMode)
+                density = newConfig.densityDpi
+                nightMode = newNightMode
+                isChanged
+            }
+        if (isChanged) {
+            cache.evictAll()
+        }
+    }
+
+    private data class Key(
+        val user: UserHandle,
+        val component: ComponentName,
+        val qualifier: String,
+    )
+}
+
+private fun getMaxBytes(activityManager: ActivityManager): Int =
+    activityManager.memoryClass * MB / if (activityManager.isLowRamDevice) 32 else 16
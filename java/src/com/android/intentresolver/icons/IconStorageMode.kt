@@ -0,0 +1,46 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import android.graphics.Bitmap
+import androidx.annotation.WorkerThread
+
+/** How finished target icons are held in memory. */
+enum class IconStorageMode(
+    /** The config the stored icons are decoded in. */
+    val config: Bitmap.Config,
+) {
+    /** Icons are kept in the software bitmaps they are rendered into. */
+    SOFTWARE(Bitmap.Config.ARGB_8888),
+
+    /**
+     * Icons are uploaded to [Bitmap.Config.HARDWARE] bitmaps, which take no heap memory but whose
+     * pixels can't be read nor drawn in software. Icons that are drawn into other icons, such as
+     * direct share badges, are kept in software.
+     */
+    HARDWARE(Bitmap.Config.HARDWARE);
+
+    /** Returns the bitmap to store and display the rendered [icon] in. */
+    @WorkerThread
+    fun toStoredIcon(icon: Bitmap): Bitmap =
+        if (icon.config == config) {
+            icon
+        } else {
+            // falls back to the rendered icon if the upload fails
+            icon.copy(config, /* isMutable= */ false) ?: icon
+        }
+}
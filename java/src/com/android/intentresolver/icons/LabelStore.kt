@@ -0,0 +1,178 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import android.content.ComponentName
+import android.content.Context
+import android.content.pm.ResolveInfo
+import android.os.LocaleList
+import androidx.annotation.VisibleForTesting
+import androidx.annotation.WorkerThread
+import com.android.intentresolver.data.BroadcastSubscriber
+import com.android.intentresolver.inject.Background
+import com.android.intentresolver.inject.Main
+import dagger.hilt.android.qualifiers.ApplicationContext
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.flow.Flow
+
+private const val STORE_DIR = "target_labels"
+private const val MAX_ENTRIES = 500
+
+/**
+ * A persistent store of target labels that outlives Chooser sessions and the process, so the
+ * targets can be labeled and sorted without loading the resources of their apps.
+ *
+ * Labels are stored in one file per profile that is read on the first access (see
+ * [PersistentProfileStore]). Entries are keyed by the component and the label source of the matched
+ * intent filter, and are only served while the package's version code and the locales match the
+ * stored ones. All entries of a package are dropped whenever the package is changed.
+ */
+@Singleton
+class LabelStore
+@VisibleForTesting
+constructor(
+    directory: File,
+    packageChanges: Flow<PackageChange>,
+    scope: CoroutineScope,
+    backgroundDispatcher: CoroutineDispatcher,
+) {
+    @Inject
+    constructor(
+        @ApplicationContext context: Context,
+        broadcastSubscriber: BroadcastSubscriber,
+        @Main scope: CoroutineScope,
+        @Background backgroundDispatcher: CoroutineDispatcher,
+    ) : this(
+        File(context.cacheDir, STORE_DIR),
+        broadcastSubscriber.createPackageChangeFlow(),
+        scope,
+        backgroundDispatcher,
+    )
+
+    private val store =
+        PersistentProfileStore(
+            directory,
+            LabelEntryCodec,
+            MAX_ENTRIES,
+            packageChanges,
+            scope,
+            backgroundDispatcher,
+        )
+
+    /** Returns the stored label of the target, if there is an up-to-date one for the [locales]. */
+    @WorkerThread
+    fun get(resolveInfo: ResolveInfo, locales: LocaleList): LabelInfo? {
+        val user = resolveInfo.userHandle ?: return null
+        val languageTags = locales.toLanguageTags()
+        return store
+            .get(user, LabelKey(resolveInfo)) {
+                it.versionCode == resolveInfo.versionCode && it.locales == languageTags
+            }
+            ?.let { LabelInfo(it.label, it.subLabel) }
+    }
+
+    /** Stores the label of the target loaded for the [locales]. */
+    @WorkerThread
+    fun put(resolveInfo: ResolveInfo, locales: LocaleList, label: LabelInfo) {
+        val user = resolveInfo.userHandle ?: return
+        val entry =
+            Entry(
+                resolveInfo.versionCode,
+                locales.toLanguageTags(),
+                label.label?.toString(),
+                label.subLabel?.toString(),
+            )
+        store.put(user, LabelKey(resolveInfo), entry)
+    }
+
+    /**
+     * A target's labels key. Besides the component, the sublabel depends on the label of the
+     * matched intent filter.
+     */
+    private data class LabelKey(
+        val component: ComponentName,
+        val labelRes: Int,
+        val nonLocalizedLabel: String?,
+    ) {
+        constructor(
+            resolveInfo: ResolveInfo
+        ) : this(
+            ComponentName(resolveInfo.componentInfo.packageName, resolveInfo.componentInfo.name),
+            resolveInfo.labelRes,
+            resolveInfo.nonLocalizedLabel?.toString(),
+        )
+    }
+
+    private class Entry(
+        val versionCode: Long,
+        val locales: String,
+        val label: String?,
+        val subLabel: String?,
+    )
+
+    private object LabelEntryCodec : PersistentProfileStore.EntryCodec<LabelKey, Entry> {
+        override val name = "labels"
+        override val fileMagic = 0x4c41424c // "LABL"
+        override val fileVersion = 2
+
+        override fun packageName(key: LabelKey): String = key.component.packageName
+
+        override fun read(input: DataInputStream): Pair<LabelKey, Entry> {
+            val component =
+                ComponentName.unflattenFromString(input.readUTF())
+                    ?: throw IOException("Malformed component name")
+            val key = LabelKey(component, input.readInt(), input.readNullableUTF())
+            val entry =
+                Entry(
+                    input.readLong(),
+                    input.readUTF(),
+                    input.readNullableUTF(),
+                    input.readNullableUTF(),
+                )
+            return key to entry
+        }
+
+        override fun write(output: DataOutputStream, key: LabelKey, value: Entry) {
+            output.writeUTF(key.component.flattenToString())
+            output.writeInt(key.labelRes)
+            output.writeNullableUTF(key.nonLocalizedLabel)
+            output.writeLong(value.versionCode)
+            output.writeUTF(value.locales)
+            output.writeNullableUTF(value.label)
+            output.writeNullableUTF(value.subLabel)
+        }
+    }
+}
+
+private val ResolveInfo.versionCode: Long
+    get() = componentInfo.applicationInfo.longVersionCode
+
+private fun DataInputStream.readNullableUTF(): String? = if (readBoolean()) readUTF() else null
+
+private fun DataOutputStream.writeNullableUTF(value: String?) {
+    writeBoolean(value != null)
+    if (value != null) {
+        writeUTF(value)
+    }
+}
@@ -20,7 +20,6 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.pm.ActivityInfo;
 import android.content.pm.LauncherApps;
-import android.content.pm.PackageManager;
 import android.content.pm.ShortcutInfo;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
@@ -36,8 +35,6 @@ import com.android.intentresolver.TargetPresentationGetter;
 import com.android.intentresolver.chooser.SelectableTargetInfo;
 import com.android.intentresolver.util.UriFilters;
 
-import java.util.function.Consumer;
-
 import javax.inject.Provider;
 
 /**
@@ -47,21 +44,23 @@ class LoadDirectShareIconTask extends BaseLoadIconTask {
     private static final String TAG = "DirectShareIconTask";
     private final SelectableTargetInfo mTargetInfo;
     private final Provider<SimpleIconFactory> mIconFactoryProvider;
+    private final AppIconBadgeCache mBadgeCache;
 
     LoadDirectShareIconTask(
             Context context,
             SelectableTargetInfo targetInfo,
             TargetPresentationGetter.Factory presentationFactory,
             Provider<SimpleIconFactory> iconFactoryProvider,
-            Consumer<Bitmap> callback) {
-        super(context, presentationFactory, callback);
+            AppIconBadgeCache badgeCache) {
+        super(context, presentationFactory);
         mIconFactoryProvider = iconFactoryProvider;
         mTargetInfo = targetInfo;
+        mBadgeCache = badgeCache;
     }
 
     @Override
     @Nullable
-    protected Bitmap doInBackground(Void... voids) {
+    Bitmap load() {
         Bitmap iconBitmap = null;
         Trace.beginSection("shortcut-icon");
         try {
@@ -111,19 +110,13 @@ class LoadDirectShareIconTask extends BaseLoadIconTask {
             return null;
         }
 
-        ActivityInfo info = null;
-        try {
-            info = context.getPackageManager().getActivityInfo(targetComponentName, 0);
-        } catch (PackageManager.NameNotFoundException error) {
-            Log.e(TAG, "Could not find activity associated with ChooserTarget");
-        }
-
+        ActivityInfo info = mBadgeCache.getActivityInfo(context, targetComponentName);
         if (info == null) {
             return null;
         }
 
-        // Now fetch app icon and raster with no badging even in work profile
-        Bitmap appIcon = mPresentationFactory.makePresentationGetter(info).getIconBitmap(null);
+        // Now fetch app icon, rastered with no badging even in work profile
+        Bitmap appIcon = mBadgeCache.getAppIcon(context.getUser(), info);
 
         // Raster target drawable with appIcon as a badge
         Bitmap directShareBadgedIcon;
@@ -28,8 +28,6 @@ import androidx.annotation.Nullable;
 import com.android.intentresolver.TargetPresentationGetter;
 import com.android.intentresolver.chooser.DisplayResolveInfo;
 
-import java.util.function.Consumer;
-
 class LoadIconTask extends BaseLoadIconTask {
     private static final String TAG = "IconTask";
     protected final DisplayResolveInfo mDisplayResolveInfo;
@@ -37,16 +35,15 @@ class LoadIconTask extends BaseLoadIconTask {
 
     LoadIconTask(
             Context context, DisplayResolveInfo dri,
-            TargetPresentationGetter.Factory presentationFactory,
-            Consumer<Bitmap> callback) {
-        super(context, presentationFactory, callback);
+            TargetPresentationGetter.Factory presentationFactory) {
+        super(context, presentationFactory);
         mDisplayResolveInfo = dri;
         mResolveInfo = dri.getResolveInfo();
     }
 
     @Override
     @Nullable
-    protected Bitmap doInBackground(Void... params) {
+    Bitmap load() {
         Trace.beginSection("app-icon");
         try {
             return loadIconForResolveInfo(mResolveInfo);
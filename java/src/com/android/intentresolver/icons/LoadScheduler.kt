@@ -0,0 +1,140 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import android.util.Log
+import androidx.annotation.GuardedBy
+import androidx.annotation.MainThread
+import java.util.PriorityQueue
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+
+private const val TAG = "LoadScheduler"
+private const val MAX_PARALLEL_LOADS = 4
+
+/**
+ * Runs loading requests on a limited number of background coroutines, the requests with the
+ * highest [LoadPriority] first and in the order they were scheduled otherwise. Results are
+ * delivered in the [scope]; once the scope is cancelled, nothing is delivered and the pending
+ * requests are dropped. A failed load delivers a null result.
+ */
+internal class LoadScheduler(
+    private val scope: CoroutineScope,
+    private val backgroundDispatcher: CoroutineDispatcher,
+    private val maxParallelLoads: Int = MAX_PARALLEL_LOADS,
+) {
+    private val lock = Any()
+    @GuardedBy("lock")
+    private val queue =
+        PriorityQueue<Request<*>>(
+            compareByDescending<Request<*>> { it.priority }.thenBy { it.sequenceNumber }
+        )
+    /** All requests that were scheduled and not yet delivered nor cancelled. */
+    @GuardedBy("lock") private val activeRequests = HashSet<Request<*>>()
+    @GuardedBy("lock") private var workerCount = 0
+    @GuardedBy("lock") private var nextSequenceNumber = 0L
+
+    /**
+     * Schedules the [load] and the delivery of its result to the [callback]. The request can be
+     * referenced later by its [key], if provided.
+     */
+    fun <T> schedule(key: Any?, priority: LoadPriority, load: () -> T, callback: (T?) -> Unit) {
+        if (!scope.isActive) return
+        synchronized(lock) {
+            val request = Request(key, priority, nextSequenceNumber++, load, callback)
+            activeRequests.add(request)
+            queue.add(request)
+            if (workerCount < maxParallelLoads) {
+                workerCount++
+                scope.launch(backgroundDispatcher) { runRequests() }
+            }
+        }
+    }
+
+    /** Changes the priority of the not yet started requests with the given key. */
+    fun setPriority(key: Any, priority: LoadPriority) {
+        synchronized(lock) {
+            for (request in activeRequests) {
+                if (request.key == key && request.priority != priority && queue.remove(request)) {
+                    request.priority = priority
+                    queue.add(request)
+                }
+            }
+        }
+    }
+
+    /** Cancels the requests with the given key, their results won't be delivered. */
+    fun cancel(key: Any) {
+        synchronized(lock) {
+            val iterator = activeRequests.iterator()
+            while (iterator.hasNext()) {
+                val request = iterator.next()
+                if (request.key == key) {
+                    queue.remove(request)
+                    iterator.remove()
+                }
+            }
+        }
+    }
+
+    private fun runRequests() {
+        while (true) {
+            val request =
+                synchronized(lock) {
+                    if (!scope.isActive) {
+                        queue.clear()
+                        activeRequests.clear()
+                    }
+                    queue.poll()
+                        ?: run {
+                            workerCount--
+                            null
+                        }
+                } ?: return
+            request.execute()
+        }
+    }
+
+    private fun <T> Request<T>.execute() {
+        val result =
+            try {
+                load()
+            } catch (e: Exception) {
+                Log.w(TAG, "Failed to load $key", e)
+                null
+            }
+        scope.launch { deliver(result) }
+    }
+
+    @MainThread
+    private fun <T> Request<T>.deliver(result: T?) {
+        val isActive = synchronized(lock) { activeRequests.remove(this) }
+        if (isActive) {
+            callback(result)
+        }
+    }
+
+    private class Request<T>(
+        val key: Any?,
+        var priority: LoadPriority,
+        val sequenceNumber: Long,
+        val load: () -> T,
+        val callback: (T?) -> Unit,
+    )
+}
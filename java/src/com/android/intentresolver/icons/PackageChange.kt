@@ -0,0 +1,45 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import android.content.Intent
+import android.content.IntentFilter
+import android.os.UserHandle
+import com.android.intentresolver.data.BroadcastSubscriber
+import kotlinx.coroutines.flow.Flow
+
+/** A package that was changed (updated, removed, etc.) for the given user, if known. */
+class PackageChange(val packageName: String, val user: UserHandle?)
+
+/** Returns a flow of package changes for all users. */
+fun BroadcastSubscriber.createPackageChangeFlow(): Flow<PackageChange> =
+    createFlow(createPackageChangeFilter(), UserHandle.ALL, Intent::toPackageChange)
+
+private fun createPackageChangeFilter() =
+    IntentFilter().apply {
+        addAction(Intent.ACTION_PACKAGE_ADDED)
+        addAction(Intent.ACTION_PACKAGE_CHANGED)
+        addAction(Intent.ACTION_PACKAGE_REMOVED)
+        addAction(Intent.ACTION_PACKAGE_REPLACED)
+        addDataScheme("package")
+    }
+
+private fun Intent.toPackageChange(): PackageChange? {
+    val packageName = data?.schemeSpecificPart ?: return null
+    val uid = getIntExtra(Intent.EXTRA_UID, -1)
+    return PackageChange(packageName, if (uid >= 0) UserHandle.getUserHandleForUid(uid) else null)
+}
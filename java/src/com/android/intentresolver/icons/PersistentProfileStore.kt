@@ -0,0 +1,347 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import android.os.UserHandle
+import android.util.AtomicFile
+import android.util.Log
+import androidx.annotation.GuardedBy
+import androidx.annotation.WorkerThread
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.launch
+
+private const val TAG = "PersistentProfileStore"
+private const val FLUSH_DELAY_MS = 1_000L
+private const val COPY_BUFFER_SIZE = 8 * 1024
+
+/**
+ * A persistent map of per-app entries that outlives Chooser sessions and the process.
+ *
+ * Entries are stored in one file per profile that is read sequentially on the first access to the
+ * profile; the file starts with the [codec]'s magic number and version, and files in another format
+ * are discarded. An entry may carry a blob, which is stored after all the entries and only read
+ * from the file on demand, so that only the entries themselves are kept in memory. Changes are
+ * written back after a short delay, together with any other changes made in the meantime. Only the
+ * [maxEntries] most recently used entries of a profile are kept, and all entries of a package are
+ * dropped whenever the package is changed.
+ */
+internal class PersistentProfileStore<K : Any, V : Any>(
+    private val directory: File,
+    private val codec: EntryCodec<K, V>,
+    private val maxEntries: Int,
+    packageChanges: Flow<PackageChange>,
+    private val scope: CoroutineScope,
+    private val backgroundDispatcher: CoroutineDispatcher,
+) {
+    /** Reads and writes the entries of a store file. */
+    interface EntryCodec<K, V> {
+        /** The name of the store, used for its files and in the logs. */
+        val name: String
+        val fileMagic: Int
+        val fileVersion: Int
+
+        /** The package the entry with the [key] belongs to. */
+        fun packageName(key: K): String
+
+        @Throws(IOException::class) fun read(input: DataInputStream): Pair<K, V>
+
+        @Throws(IOException::class) fun write(output: DataOutputStream, key: K, value: V)
+    }
+
+    @GuardedBy("self") private val perProfileFiles = HashMap<Int, ProfileFile<K, V>>()
+
+    init {
+        scope.launch(backgroundDispatcher) {
+            packageChanges.collect { invalidate(it.packageName, it.user) }
+        }
+    }
+
+    /**
+     * Returns the [user]'s entry for the [key], if there is one and it passes the [isValid] check.
+     * An entry that does not pass the check is dropped.
+     */
+    @WorkerThread
+    fun get(user: UserHandle, key: K, isValid: (V) -> Boolean): V? {
+        val file = getFile(user)
+        return synchronized(file) { getRecord(file, key, isValid)?.value }
+    }
+
+    /**
+     * Returns the blob of the [user]'s entry for the [key], if there is one and the entry passes
+     * the [isValid] check. An entry that does not pass the check is dropped.
+     */
+    @WorkerThread
+    fun getBlob(user: UserHandle, key: K, isValid: (V) -> Boolean): ByteArray? {
+        val file = getFile(user)
+        return synchronized(file) {
+            when (val blob = getRecord(file, key, isValid)?.blob) {
+                null -> null
+                is PendingBlob -> blob.data
+                is StoredBlob -> readBlob(file, blob)
+            }
+        }
+    }
+
+    /**
+     * Stores the [user]'s entry for the [key], with an optional [blob], dropping the least recently
+     * used entries if needed.
+     */
+    @WorkerThread
+    fun put(user: UserHandle, key: K, value: V, blob: ByteArray? = null) {
+        val file = getFile(user)
+        synchronized(file) {
+            file.entries[key] = Record(value, blob?.let { PendingBlob(it) })
+            val iterator = file.entries.values.iterator()
+            while (file.entries.size > maxEntries && iterator.hasNext()) {
+                iterator.next()
+                iterator.remove()
+            }
+            scheduleFlush(file)
+        }
+    }
+
+    private fun invalidate(packageName: String, user: UserHandle?) {
+        val files =
+            synchronized(perProfileFiles) {
+                if (user == null) {
+                    perProfileFiles.values.toList()
+                } else {
+                    listOfNotNull(perProfileFiles[user.identifier])
+                }
+            }
+        for (file in files) {
+            synchronized(file) {
+                if (file.entries.keys.removeIf { codec.packageName(it) == packageName }) {
+                    scheduleFlush(file)
+                }
+            }
+        }
+    }
+
+    @GuardedBy("file")
+    private fun getRecord(file: ProfileFile<K, V>, key: K, isValid: (V) -> Boolean): Record<V>? {
+        val record = file.entries[key] ?: return null
+        if (!isValid(record.value)) {
+            file.entries.remove(key)
+            scheduleFlush(file)
+            return null
+        }
+        return record
+    }
+
+    private fun getFile(user: UserHandle): ProfileFile<K, V> {
+        val file =
+            synchronized(perProfileFiles) {
+                perProfileFiles.getOrPut(user.identifier) {
+                    ProfileFile(
+                        AtomicFile(File(directory, "${codec.name}_${user.identifier}.bin"))
+                    )
+                }
+            }
+        synchronized(file) {
+            if (!file.isLoaded) {
+                file.isLoaded = true
+                read(file)
+            }
+        }
+        return file
+    }
+
+    @GuardedBy("file")
+    private fun scheduleFlush(file: ProfileFile<K, V>) {
+        file.generation++
+        if (file.flushJob?.isActive != true) {
+            launchFlush(file)
+        }
+    }
+
+    @GuardedBy("file")
+    private fun launchFlush(file: ProfileFile<K, V>) {
+        file.flushJob =
+            scope.launch(backgroundDispatcher) {
+                delay(FLUSH_DELAY_MS)
+                val writtenGeneration = write(file)
+                // changes made while writing are not in the file yet
+                synchronized(file) {
+                    if (file.generation != writtenGeneration) {
+                        launchFlush(file)
+                    }
+                }
+            }
+    }
+
+    @GuardedBy("file")
+    private fun read(file: ProfileFile<K, V>) {
+        if (!file.atomicFile.baseFile.exists()) return
+        try {
+            DataInputStream(BufferedInputStream(file.atomicFile.openRead())).use { input ->
+                if (input.readInt() != codec.fileMagic || input.readInt() != codec.fileVersion) {
+                    Log.w(TAG, "Unsupported ${codec.name} store file format, discarding")
+                    file.atomicFile.delete()
+                    return
+                }
+                val blobRecords = ArrayList<Pair<Record<V>, Int>>()
+                repeat(input.readInt()) {
+                    val (key, value) = codec.read(input)
+                    val record = Record(value)
+                    val blobLength = input.readInt()
+                    if (blobLength >= 0) {
+                        blobRecords.add(record to blobLength)
+                    }
+                    file.entries[key] = record
+                }
+                // the blobs take up the rest of the file
+                var offset =
+                    file.atomicFile.baseFile.length() - blobRecords.sumOf { it.second.toLong() }
+                if (offset < 0) throw IOException("Truncated blobs")
+                for ((record, length) in blobRecords) {
+                    record.blob = StoredBlob(offset, length)
+                    offset += length
+                }
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Failed to read ${codec.name} store file, discarding", e)
+            file.entries.clear()
+            file.atomicFile.delete()
+        }
+    }
+
+    @GuardedBy("file")
+    private fun readBlob(file: ProfileFile<K, V>, blob: StoredBlob): ByteArray? =
+        try {
+            RandomAccessFile(file.atomicFile.baseFile, "r").use { input ->
+                ByteArray(blob.length).also {
+                    input.seek(blob.offset)
+                    input.readFully(it)
+                }
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Failed to read ${codec.name} store blob", e)
+            null
+        }
+
+    /** Writes the entries to the file and returns the generation of the written entries. */
+    private fun write(file: ProfileFile<K, V>): Long {
+        val (generation, entries) =
+            synchronized(file) {
+                file.generation to
+                    file.entries.map { (key, record) -> Triple(key, record, record.blob) }
+            }
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Failed to create ${codec.name} store directory")
+            return generation
+        }
+        // stored blobs are copied from the current file, which is kept open while it is replaced
+        val source =
+            try {
+                if (entries.any { it.third is StoredBlob }) {
+                    RandomAccessFile(file.atomicFile.baseFile, "r")
+                } else {
+                    null
+                }
+            } catch (e: IOException) {
+                Log.w(TAG, "Failed to read ${codec.name} store file", e)
+                return generation
+            }
+        source.use {
+            val stream =
+                try {
+                    file.atomicFile.startWrite()
+                } catch (e: IOException) {
+                    Log.w(TAG, "Failed to write ${codec.name} store file", e)
+                    return generation
+                }
+            try {
+                val output = DataOutputStream(BufferedOutputStream(stream))
+                output.writeInt(codec.fileMagic)
+                output.writeInt(codec.fileVersion)
+                output.writeInt(entries.size)
+                for ((key, record, blob) in entries) {
+                    codec.write(output, key, record.value)
+                    output.writeInt(blob?.length ?: -1)
+                }
+                val writtenBlobs = ArrayList<Pair<Record<V>, StoredBlob>>()
+                for ((_, record, blob) in entries) {
+                    if (blob == null) continue
+                    writtenBlobs.add(record to StoredBlob(output.size().toLong(), blob.length))
+                    when (blob) {
+                        is PendingBlob -> output.write(blob.data)
+                        is StoredBlob -> checkNotNull(source).copyTo(output, blob)
+                    }
+                }
+                output.flush()
+                synchronized(file) {
+                    file.atomicFile.finishWrite(stream)
+                    for ((record, blob) in writtenBlobs) {
+                        record.blob = blob
+                    }
+                }
+            } catch (e: IOException) {
+                Log.w(TAG, "Failed to write ${codec.name} store file", e)
+                file.atomicFile.failWrite(stream)
+            }
+        }
+        return generation
+    }
+
+    private fun RandomAccessFile.copyTo(output: DataOutputStream, blob: StoredBlob) {
+        seek(blob.offset)
+        val buffer = ByteArray(minOf(blob.length, COPY_BUFFER_SIZE))
+        var remaining = blob.length
+        while (remaining > 0) {
+            val count = minOf(remaining, buffer.size)
+            readFully(buffer, 0, count)
+            output.write(buffer, 0, count)
+            remaining -= count
+        }
+    }
+
+    /** Where the blob of an entry is; pending blobs are only in memory until they are written. */
+    private sealed interface Blob {
+        val length: Int
+    }
+
+    private class PendingBlob(val data: ByteArray) : Blob {
+        override val length: Int
+            get() = data.size
+    }
+
+    private class StoredBlob(val offset: Long, override val length: Int) : Blob
+
+    /** An entry value and its blob, which is guarded by the lock of the file holding the entry. */
+    private class Record<V>(val value: V, var blob: Blob? = null)
+
+    private class ProfileFile<K, V>(val atomicFile: AtomicFile) {
+        /** Entries in the least-recently-used order. */
+        val entries = LinkedHashMap<K, Record<V>>(16, 0.75f, true)
+        var isLoaded = false
+        var flushJob: Job? = null
+        /** Incremented on every change, to tell whether the changes have been written. */
+        var generation = 0L
+    }
+}
@@ -20,8 +20,19 @@ import android.graphics.drawable.Drawable
 import android.os.UserHandle
 import com.android.intentresolver.chooser.DisplayResolveInfo
 import com.android.intentresolver.chooser.SelectableTargetInfo
+import com.android.intentresolver.chooser.TargetInfo
 import java.util.function.Consumer
 
+/** Priority of target data loading requests, in ascending order. */
+enum class LoadPriority {
+    /** Data of targets that are not shown yet, e.g. prefetched direct share icons. */
+    OFF_SCREEN,
+    /** Direct share row targets. */
+    DIRECT_SHARE,
+    /** Targets bound to a view. */
+    VISIBLE,
+}
+
 /** A target data loader contract. Added to support testing. */
 interface TargetDataLoader {
     /** Load an app target icon */
@@ -43,4 +54,12 @@ interface TargetDataLoader {
 
     /** Loads DisplayResolveInfo's display label synchronously, if needed */
     fun getOrLoadLabel(info: DisplayResolveInfo)
+
+    /** Changes the priority of the pending icon load of the target, if there is one. */
+    fun setIconLoadPriority(info: TargetInfo, priority: LoadPriority)
+
+    /**
+     * Cancels the pending icon load of the target, if there is one; its callback won't be invoked.
+     */
+    fun cancelIconLoad(info: TargetInfo)
 }
@@ -21,6 +21,8 @@ import android.content.Context
 import android.content.pm.PackageManager
 import com.android.intentresolver.SimpleIconFactory
 import com.android.intentresolver.TargetPresentationGetter
+import com.android.intentresolver.data.repository.UserScopedContext
+import com.android.intentresolver.inject.ActivityOwned
 import dagger.Module
 import dagger.Provides
 import dagger.hilt.InstallIn
@@ -28,6 +30,7 @@ import dagger.hilt.android.components.ActivityComponent
 import dagger.hilt.android.qualifiers.ActivityContext
 import dagger.hilt.android.scopes.ActivityScoped
 import javax.inject.Provider
+import kotlinx.coroutines.CoroutineScope
 
 @Module
 @InstallIn(ActivityComponent::class)
@@ -37,6 +40,7 @@ object TargetDataLoaderModule {
         SimpleIconFactory.obtain(context)
 
     @Provides
+    @ActivityScoped
     fun presentationGetterFactory(
         iconFactoryProvider: Provider<SimpleIconFactory>,
         packageManager: PackageManager,
@@ -48,13 +52,28 @@ object TargetDataLoaderModule {
             activityManager.launcherLargeIconDensity,
         )
 
+    @Provides fun iconStorageMode(): IconStorageMode = IconStorageMode.HARDWARE
+
     @Provides
     @ActivityScoped
     @Caching
     fun cachingTargetDataLoader(
         @ActivityContext context: Context,
         dataLoaderFactory: DefaultTargetDataLoader.Factory,
+        iconCache: IconMemoryCache,
+        iconDiskCache: IconDiskCache,
+        iconStorageMode: IconStorageMode,
+        userScopedContext: UserScopedContext,
+        @ActivityOwned scope: CoroutineScope,
     ): TargetDataLoader =
         // Intended to be used in Chooser only thus the hardcoded isAudioCaptureDevice value.
-        CachingTargetDataLoader(context, dataLoaderFactory.create(isAudioCaptureDevice = false))
+        CachingTargetDataLoader(
+            context,
+            dataLoaderFactory.create(isAudioCaptureDevice = false),
+            iconCache = iconCache,
+            iconDiskCache = iconDiskCache,
+            iconStorageMode = iconStorageMode,
+            userScopedContext = userScopedContext,
+            scope = scope,
+        )
 }
@@ -17,13 +17,18 @@
 package com.android.intentresolver.inject
 
 import android.app.Activity
+import android.content.Context
 import androidx.lifecycle.Lifecycle
 import androidx.lifecycle.LifecycleOwner
 import androidx.lifecycle.lifecycleScope
+import com.android.intentresolver.data.repository.UserScopedContext
+import com.android.intentresolver.data.repository.UserScopedContextImpl
 import dagger.Module
 import dagger.Provides
 import dagger.hilt.InstallIn
 import dagger.hilt.android.components.ActivityComponent
+import dagger.hilt.android.qualifiers.ActivityContext
+import dagger.hilt.android.scopes.ActivityScoped
 import kotlinx.coroutines.CoroutineScope
 
 @Module
@@ -43,4 +48,9 @@ object ActivityModule {
         check(activity is LifecycleOwner) { "activity must implement LifecycleOwner" }
         return activity.lifecycleScope
     }
+
+    @Provides
+    @ActivityScoped
+    fun userScopedContext(@ActivityContext context: Context): UserScopedContext =
+        UserScopedContextImpl(context)
 }
@@ -66,4 +66,20 @@ class AppPredictorFactory(
             .getSystemService(AppPredictionManager::class.java)
             ?.createAppPredictionSession(appPredictionContext)
     }
+
+    /**
+     * Whether AppPredictor sessions created by this factory are interchangeable with the ones
+     * created by the [other] factory. Share targets are matched against the actions and the data
+     * types of the intent filter, so the rest of the filter, e.g. the shared URIs, is ignored.
+     */
+    fun isCompatibleWith(other: AppPredictorFactory): Boolean =
+        appPredictionAvailable == other.appPredictionAvailable &&
+            sharedText == other.sharedText &&
+            targetIntentFilter.actionSet() == other.targetIntentFilter.actionSet() &&
+            targetIntentFilter.dataTypeSet() == other.targetIntentFilter.dataTypeSet()
 }
+
+private fun IntentFilter?.actionSet(): Set<String>? =
+    this?.actionsIterator()?.asSequence()?.toSet()
+
+private fun IntentFilter?.dataTypeSet(): Set<String>? = this?.typesIterator()?.asSequence()?.toSet()
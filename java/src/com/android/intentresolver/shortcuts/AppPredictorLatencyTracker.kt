@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.shortcuts
+
+import android.os.UserHandle
+import android.util.SparseArray
+import androidx.annotation.GuardedBy
+import androidx.annotation.VisibleForTesting
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlin.math.ceil
+
+private const val WINDOW_SIZE = 32
+private const val MIN_SAMPLE_COUNT = 5
+private const val TIMEOUT_PERCENTILE = 0.9
+private const val TIMEOUT_HEADROOM = 1.5
+private const val MIN_RESPONSE_TIMEOUT_MS = 500L
+private const val SLOW_RESPONSE_THRESHOLD = 3
+private const val PROBE_INTERVAL = 4
+
+/**
+ * Keeps a per-profile rolling window of AppPredictor response latencies that survives Chooser
+ * sessions. The collected latencies are used to derive the AppPredictor response timeout, see
+ * [getResponseTimeout], and to skip querying an AppPredictor that is consistently too slow, see
+ * [shouldSkipAppPredictor].
+ */
+@Singleton
+class AppPredictorLatencyTracker
+@VisibleForTesting
+constructor(
+    private val minTimeoutMs: Long,
+    private val maxTimeoutMs: Long,
+) {
+    @Inject
+    constructor() :
+        this(MIN_RESPONSE_TIMEOUT_MS, ShortcutLoader.APP_PREDICTOR_RESPONSE_TIMEOUT_MS)
+
+    @GuardedBy("self") private val perUserRecords = SparseArray<LatencyRecord>()
+
+    /** Records an AppPredictor response that took [durationMs] for the given profile. */
+    fun onResponse(userHandle: UserHandle, durationMs: Long) {
+        val record = getRecord(userHandle)
+        synchronized(record) {
+            record.add(durationMs)
+            if (durationMs < maxTimeoutMs) {
+                record.consecutiveSlowResponses = 0
+            } else {
+                record.consecutiveSlowResponses++
+            }
+        }
+    }
+
+    /**
+     * Records an AppPredictor request that was not responded within [timeoutMs]. The timeout is not
+     * a latency sample, a late response is reported through [onResponse]. As with [onResponse],
+     * only a timeout at the maximum counts as a slow response.
+     */
+    fun onTimeout(userHandle: UserHandle, timeoutMs: Long) {
+        if (timeoutMs < maxTimeoutMs) return
+        val record = getRecord(userHandle)
+        synchronized(record) { record.consecutiveSlowResponses++ }
+    }
+
+    /**
+     * Returns AppPredictor response timeout for the given profile: a high percentile of the
+     * recently observed response latencies with some headroom, clamped to the configured bounds.
+     * The maximum timeout is used until enough latencies are collected.
+     */
+    fun getResponseTimeout(userHandle: UserHandle): Long {
+        val record = getRecord(userHandle)
+        val latency =
+            synchronized(record) {
+                if (record.size < MIN_SAMPLE_COUNT) {
+                    return maxTimeoutMs
+                }
+                record.percentile(TIMEOUT_PERCENTILE)
+            }
+        return (latency * TIMEOUT_HEADROOM).toLong().coerceIn(minTimeoutMs, maxTimeoutMs)
+    }
+
+    /**
+     * Whether AppPredictor should not be queried for the given profile as it has been consistently
+     * slow to respond. AppPredictor is still periodically queried to detect its recovery.
+     */
+    fun shouldSkipAppPredictor(userHandle: UserHandle): Boolean {
+        val record = getRecord(userHandle)
+        synchronized(record) {
+            if (record.consecutiveSlowResponses < SLOW_RESPONSE_THRESHOLD) {
+                return false
+            }
+            if (++record.skippedRequests > PROBE_INTERVAL) {
+                record.skippedRequests = 0
+                return false
+            }
+            return true
+        }
+    }
+
+    private fun getRecord(userHandle: UserHandle): LatencyRecord =
+        synchronized(perUserRecords) {
+            perUserRecords[userHandle.identifier]
+                ?: LatencyRecord().also { perUserRecords.put(userHandle.identifier, it) }
+        }
+
+    /** A ring buffer of the latest latency samples. */
+    private class LatencyRecord {
+        private val samples = LongArray(WINDOW_SIZE)
+        private var next = 0
+        var size = 0
+            private set
+
+        var consecutiveSlowResponses = 0
+        var skippedRequests = 0
+
+        fun add(latencyMs: Long) {
+            samples[next] = latencyMs
+            next = (next + 1) % samples.size
+            size = minOf(size + 1, samples.size)
+        }
+
+        fun percentile(fraction: Double): Long {
+            val sorted = samples.copyOf(size).apply { sort() }
+            val idx = (ceil(fraction * size).toInt() - 1).coerceIn(0, size - 1)
+            return sorted[idx]
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.shortcuts;
+
+import android.app.prediction.AppTarget;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.pm.ShortcutInfo;
+import android.os.Bundle;
+import android.service.chooser.ChooserTarget;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+
+import com.android.intentresolver.chooser.DisplayResolveInfo;
+import com.android.intentresolver.chooser.SelectableTargetInfo;
+import com.android.intentresolver.chooser.TargetInfo;
+
+import java.util.Objects;
+
+/**
+ * A scored direct share shortcut; a lightweight substitute of a {@link ChooserTarget} that is used
+ * through the direct share target selection. A {@link TargetInfo} is only created for the
+ * candidates that get selected, see {@link #toTargetInfo}.
+ */
+public final class ShortcutCandidate {
+    private final ComponentName mComponentName;
+    @Nullable
+    private final CharSequence mTitle;
+    private final float mScore;
+    private final ShortcutInfo mShortcutInfo;
+    @Nullable
+    private final AppTarget mAppTarget;
+
+    /**
+     * Creates a candidate for a shortcut. The shortcut's icon is to be loaded later, if the
+     * candidate is selected to be shown.
+     */
+    public ShortcutCandidate(
+            ShortcutInfo shortcutInfo,
+            ComponentName componentName,
+            float score,
+            @Nullable AppTarget appTarget) {
+        mComponentName = componentName;
+        mTitle = shortcutInfo.getLabel();
+        mScore = score;
+        mShortcutInfo = shortcutInfo;
+        mAppTarget = appTarget;
+    }
+
+    public ComponentName getComponentName() {
+        return mComponentName;
+    }
+
+    @Nullable
+    public CharSequence getTitle() {
+        return mTitle;
+    }
+
+    public float getScore() {
+        return mScore;
+    }
+
+    public ShortcutInfo getShortcutInfo() {
+        return mShortcutInfo;
+    }
+
+    @Nullable
+    public AppTarget getAppTarget() {
+        return mAppTarget;
+    }
+
+    public boolean isPinned() {
+        return mShortcutInfo.isPinned();
+    }
+
+    /**
+     * Whether the target created for this candidate would be similar to the given target, see
+     * {@link TargetInfo#isSimilar}.
+     */
+    public boolean isSimilar(@Nullable TargetInfo other) {
+        return other != null
+                && other.isChooserTargetInfo()
+                && Objects.equals(mComponentName, other.getChooserTargetComponentName())
+                && TextUtils.equals(mTitle, other.getDisplayLabel())
+                && other.getExtendedInfo() == null;
+    }
+
+    /** Creates a {@link SelectableTargetInfo} for this candidate. */
+    public TargetInfo toTargetInfo(
+            DisplayResolveInfo sourceInfo, float modifiedScore, Intent referrerFillInIntent) {
+        return SelectableTargetInfo.newSelectableTargetInfo(
+                sourceInfo,
+                /* backupResolveInfo = */ null,
+                sourceInfo.getResolvedIntent(),
+                mComponentName,
+                mTitle,
+                /* chooserTargetIcon = */ null,
+                createIntentExtras(),
+                modifiedScore,
+                mShortcutInfo,
+                mAppTarget,
+                referrerFillInIntent);
+    }
+
+    private Bundle createIntentExtras() {
+        Bundle extras = new Bundle();
+        extras.putString(Intent.EXTRA_SHORTCUT_ID, mShortcutInfo.getId());
+        return extras;
+    }
+}
@@ -23,12 +23,11 @@ import android.content.Context
 import android.content.IntentFilter
 import android.content.pm.ApplicationInfo
 import android.content.pm.PackageManager
-import android.content.pm.ShortcutInfo
 import android.content.pm.ShortcutManager
 import android.content.pm.ShortcutManager.ShareShortcutInfo
+import android.os.SystemClock
 import android.os.UserHandle
 import android.os.UserManager
-import android.service.chooser.ChooserTarget
 import android.text.TextUtils
 import android.util.Log
 import androidx.annotation.MainThread
@@ -38,9 +37,12 @@ import androidx.annotation.WorkerThread
 import com.android.intentresolver.Flags.fixShortcutLoaderJobLeak
 import com.android.intentresolver.Flags.fixShortcutsFlashing
 import com.android.intentresolver.chooser.DisplayResolveInfo
+import com.android.intentresolver.data.repository.UserScopedContext
+import com.android.intentresolver.data.repository.UserScopedContextImpl
 import com.android.intentresolver.measurements.Tracer
 import com.android.intentresolver.measurements.runTracing
 import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicLong
 import java.util.concurrent.atomic.AtomicReference
 import java.util.function.Consumer
 import kotlinx.coroutines.CoroutineDispatcher
@@ -76,15 +78,20 @@ constructor(
     private val appPredictor: AppPredictorProxy?,
     private val userHandle: UserHandle,
     private val isPersonalProfile: Boolean,
-    private val targetIntentFilter: IntentFilter?,
+    targetIntentFilter: IntentFilter?,
     private val dispatcher: CoroutineDispatcher,
     private val callback: Consumer<Result>,
+    private val latencyTracker: AppPredictorLatencyTracker = AppPredictorLatencyTracker(),
+    private val userScopedContext: UserScopedContext = UserScopedContextImpl(context),
 ) {
     private val scope =
         if (fixShortcutLoaderJobLeak()) parentScope.createChildScope() else parentScope
     private val shortcutToChooserTargetConverter = ShortcutToChooserTargetConverter()
     private val userManager = context.getSystemService(Context.USER_SERVICE) as UserManager
+    @Volatile private var targetIntentFilter = targetIntentFilter
     private val appPredictorWatchdog = AtomicReference<Job?>(null)
+    /** The start time of the timed out AppPredictor query, to measure its late response. */
+    private val timedOutQueryStartTime = AtomicLong(-1L)
     private val appPredictorCallback =
         ScopedAppTargetListCallback(scope) { onAppPredictorCallback(it) }.toAppPredictorCallback()
 
@@ -109,6 +116,8 @@ constructor(
         userHandle: UserHandle,
         targetIntentFilter: IntentFilter?,
         callback: Consumer<Result>,
+        latencyTracker: AppPredictorLatencyTracker,
+        userScopedContext: UserScopedContext,
     ) : this(
         context,
         scope,
@@ -118,6 +127,8 @@ constructor(
         targetIntentFilter,
         Dispatchers.IO,
         callback,
+        latencyTracker,
+        userScopedContext,
     )
 
     init {
@@ -159,6 +170,16 @@ constructor(
         scope.launch(dispatcher) { loadShortcuts() }
     }
 
+    /**
+     * Update the target intent filter and [reset] the loader. Allows to reuse the loader, along
+     * with its AppPredictor session, for an updated target intent.
+     */
+    @OpenForTesting
+    open fun reset(targetIntentFilter: IntentFilter?) {
+        this.targetIntentFilter = targetIntentFilter
+        reset()
+    }
+
     /**
      * Update resolved application targets; as soon as shortcuts are loaded, they will be filtered
      * against the targets and the is delivered to the client through the [callback].
@@ -188,17 +209,22 @@ constructor(
 
     @WorkerThread
     private fun queryDirectShareTargets(skipAppPredictionService: Boolean) {
-        if (!skipAppPredictionService && appPredictor != null) {
+        if (
+            !skipAppPredictionService &&
+                appPredictor != null &&
+                !shouldSkipSlowAppPredictor()
+        ) {
             try {
                 Log.d(TAG, "[$id] query AppPredictor for user $userHandle")
 
                 val watchdogJob =
                     if (fixShortcutsFlashing()) {
+                        val timeoutMs = latencyTracker.getResponseTimeout(userHandle)
+                        val queryStartTime = SystemClock.elapsedRealtime()
                         scope
                             .launch(start = CoroutineStart.LAZY) {
-                                delay(APP_PREDICTOR_RESPONSE_TIMEOUT_MS)
-                                Log.w(TAG, "AppPredictor response timeout for user: $userHandle")
-                                appPredictorCallback.onTargetsAvailable(emptyList())
+                                delay(timeoutMs)
+                                onAppPredictorTimeout(timeoutMs, queryStartTime)
                             }
                             .also { job ->
                                 appPredictorWatchdog.getAndSet(job)?.cancel()
@@ -225,6 +251,7 @@ constructor(
             }
         }
         // Default to just querying ShortcutManager if AppPredictor not present.
+        val targetIntentFilter = targetIntentFilter
         if (targetIntentFilter == null) {
             Log.d(TAG, "[$id] skip querying ShortcutManager for $userHandle")
             sendShareShortcutInfoList(
@@ -245,26 +272,55 @@ constructor(
 
     @WorkerThread
     private fun queryShortcutManager(targetIntentFilter: IntentFilter): List<ShareShortcutInfo> {
-        val selectedProfileContext = context.createContextAsUser(userHandle, 0 /* flags */)
+        val selectedProfileContext = userScopedContext.forUser(userHandle)
         val sm =
             selectedProfileContext.getSystemService(Context.SHORTCUT_SERVICE) as ShortcutManager?
-        val pm = context.createContextAsUser(userHandle, 0 /* flags */).packageManager
+        val pm = selectedProfileContext.packageManager
         return sm?.getShareTargets(targetIntentFilter)?.filter {
             pm.isPackageEnabled(it.targetComponent.packageName)
         } ?: emptyList()
     }
 
+    private fun shouldSkipSlowAppPredictor(): Boolean =
+        latencyTracker.shouldSkipAppPredictor(userHandle).also { skip ->
+            if (skip) {
+                Log.d(TAG, "[$id] skip slow AppPredictor for user $userHandle")
+            }
+        }
+
     @WorkerThread
     private fun onAppPredictorCallback(appPredictorTargets: List<AppTarget>) {
         appPredictorWatchdog.get()?.cancel()
-        endAppPredictorQueryTrace(userHandle)
+        val duration = endAppPredictorQueryTrace(userHandle)
+        val timedOutQueryStartTime = timedOutQueryStartTime.getAndSet(-1L)
+        if (duration >= 0) {
+            latencyTracker.onResponse(userHandle, duration)
+        } else if (timedOutQueryStartTime >= 0) {
+            // a late response, its query trace has ended on the timeout
+            latencyTracker.onResponse(
+                userHandle,
+                SystemClock.elapsedRealtime() - timedOutQueryStartTime,
+            )
+        }
         Log.d(TAG, "[$id] receive app targets from AppPredictor")
+        onAppPredictorTargets(appPredictorTargets)
+    }
+
+    private fun onAppPredictorTimeout(timeoutMs: Long, queryStartTime: Long) {
+        Log.w(TAG, "AppPredictor response timeout for user: $userHandle")
+        endAppPredictorQueryTrace(userHandle)
+        timedOutQueryStartTime.set(queryStartTime)
+        latencyTracker.onTimeout(userHandle, timeoutMs)
+        onAppPredictorTargets(emptyList())
+    }
+
+    private fun onAppPredictorTargets(appPredictorTargets: List<AppTarget>) {
         if (appPredictorTargets.isEmpty() && shouldQueryDirectShareTargets()) {
             // APS may be disabled, so try querying targets ourselves.
             queryDirectShareTargets(true)
             return
         }
-        val pm = context.createContextAsUser(userHandle, 0).packageManager
+        val pm = userScopedContext.forUser(userHandle).packageManager
         val pair = appPredictorTargets.toShortcuts(pm)
         sendShareShortcutInfoList(pair.shortcuts, true, pair.appTargets)
     }
@@ -308,8 +364,6 @@ constructor(
                     appPredictorTargets.size
             )
         }
-        val directShareAppTargetCache = HashMap<ChooserTarget, AppTarget>()
-        val directShareShortcutInfoCache = HashMap<ChooserTarget, ShortcutInfo>()
         // Match ShareShortcutInfos with DisplayResolveInfos to be able to use the old code path
         // for direct share targets. After ShareSheet is refactored we should use the
         // ShareShortcutInfos directly.
@@ -318,24 +372,16 @@ constructor(
             val matchingShortcuts =
                 shortcuts.filter { it.targetComponent == displayResolveInfo.resolvedComponentName }
             if (matchingShortcuts.isEmpty()) continue
-            val chooserTargets =
-                shortcutToChooserTargetConverter.convertToChooserTarget(
+            val candidates =
+                shortcutToChooserTargetConverter.convertToCandidates(
                     matchingShortcuts,
                     shortcuts,
                     appPredictorTargets,
-                    directShareAppTargetCache,
-                    directShareShortcutInfoCache,
                 )
-            val resultRecord = ShortcutResultInfo(displayResolveInfo, chooserTargets)
+            val resultRecord = ShortcutResultInfo(displayResolveInfo, candidates)
             resultRecords.add(resultRecord)
         }
-        return Result(
-            isFromAppPredictor,
-            appTargets,
-            resultRecords.toTypedArray(),
-            directShareAppTargetCache,
-            directShareShortcutInfoCache,
-        )
+        return Result(isFromAppPredictor, appTargets, resultRecords.toTypedArray())
     }
 
     /**
@@ -367,19 +413,18 @@ constructor(
         val appTargets: Array<DisplayResolveInfo>,
         /** Shortcuts grouped by app target. */
         val shortcutsByApp: Array<ShortcutResultInfo>,
-        val directShareAppTargetCache: Map<ChooserTarget, AppTarget>,
-        val directShareShortcutInfoCache: Map<ChooserTarget, ShortcutInfo>,
     )
 
-    private fun endAppPredictorQueryTrace(userHandle: UserHandle) {
+    private fun endAppPredictorQueryTrace(userHandle: UserHandle): Long {
         val duration = Tracer.endAppPredictorQueryTrace(userHandle)
         Log.d(TAG, "[$id] AppPredictor query duration for user $userHandle: $duration ms")
+        return duration
     }
 
     /** Shortcuts grouped by app. */
     class ShortcutResultInfo(
         val appTarget: DisplayResolveInfo,
-        val shortcuts: List<ChooserTarget?>,
+        val shortcuts: List<ShortcutCandidate>,
     )
 
     private class ShortcutsAppTargetsPair(
@@ -405,6 +450,7 @@ constructor(
     }
 
     companion object {
+        /** The maximum AppPredictor response timeout, see [AppPredictorLatencyTracker]. */
         @VisibleForTesting const val APP_PREDICTOR_RESPONSE_TIMEOUT_MS = 2_000L
         private const val TAG = "ShortcutLoader"
 
@@ -17,11 +17,8 @@
 package com.android.intentresolver.shortcuts;
 
 import android.app.prediction.AppTarget;
-import android.content.Intent;
 import android.content.pm.ShortcutInfo;
 import android.content.pm.ShortcutManager;
-import android.os.Bundle;
-import android.service.chooser.ChooserTarget;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -30,30 +27,23 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 
 class ShortcutToChooserTargetConverter {
 
     /**
-     * Converts a list of ShareShortcutInfos to ChooserTargets.
+     * Converts a list of ShareShortcutInfos to ShortcutCandidates.
      * @param matchingShortcuts List of shortcuts, all from the same package, that match the current
      *                         share intent filter.
      * @param allShortcuts List of all the shortcuts from all the packages on the device that are
      *                    returned for the current sharing action.
      * @param allAppTargets List of AppTargets. Null if the results are not from prediction service.
-     * @param directShareAppTargetCache An optional map to store mapping for the new ChooserTarget
-     *  instances back to original allAppTargets.
-     * @param directShareShortcutInfoCache An optional map to store mapping from the new
-     *  ChooserTarget instances back to the original matchingShortcuts' {@code getShortcutInfo()}
-     * @return A list of ChooserTargets sorted by score in descending order.
+     * @return A list of ShortcutCandidates sorted by score in descending order.
      */
     @NonNull
-    public List<ChooserTarget> convertToChooserTarget(
+    public List<ShortcutCandidate> convertToCandidates(
             @NonNull List<ShortcutManager.ShareShortcutInfo> matchingShortcuts,
             @NonNull List<ShortcutManager.ShareShortcutInfo> allShortcuts,
-            @Nullable List<AppTarget> allAppTargets,
-            @Nullable Map<ChooserTarget, AppTarget> directShareAppTargetCache,
-            @Nullable Map<ChooserTarget, ShortcutInfo> directShareShortcutInfoCache) {
+            @Nullable List<AppTarget> allAppTargets) {
         // If |appTargets| is not null, results are from AppPredictionService and already sorted.
         final boolean isFromAppPredictor = allAppTargets != null;
         // A set of distinct scores for the matched shortcuts. We use index of a rank in the sorted
@@ -69,7 +59,7 @@ class ShortcutToChooserTargetConverter {
             Collections.sort(scoreList);
         }
 
-        List<ChooserTarget> chooserTargetList = new ArrayList<>(matchingShortcuts.size());
+        List<ShortcutCandidate> candidates = new ArrayList<>(matchingShortcuts.size());
         for (int i = 0; i < matchingShortcuts.size(); i++) {
             ShortcutInfo shortcutInfo = matchingShortcuts.get(i).getShortcutInfo();
             int indexInAllShortcuts = allShortcuts.indexOf(matchingShortcuts.get(i));
@@ -84,27 +74,17 @@ class ShortcutToChooserTargetConverter {
                 score = Math.max(1.0f - (0.01f * rankIndex), 0.0f);
             }
 
-            Bundle extras = new Bundle();
-            extras.putString(Intent.EXTRA_SHORTCUT_ID, shortcutInfo.getId());
-
-            ChooserTarget chooserTarget = new ChooserTarget(
-                    shortcutInfo.getLabel(),
-                    null, // Icon will be loaded later if this target is selected to be shown.
-                    score, matchingShortcuts.get(i).getTargetComponent().clone(), extras);
-
-            chooserTargetList.add(chooserTarget);
-            if (directShareAppTargetCache != null && allAppTargets != null) {
-                directShareAppTargetCache.put(chooserTarget,
-                        allAppTargets.get(indexInAllShortcuts));
-            }
-            if (directShareShortcutInfoCache != null) {
-                directShareShortcutInfoCache.put(chooserTarget, shortcutInfo);
-            }
+            candidates.add(new ShortcutCandidate(
+                    shortcutInfo,
+                    matchingShortcuts.get(i).getTargetComponent(),
+                    score,
+                    isFromAppPredictor ? allAppTargets.get(indexInAllShortcuts) : null));
         }
-        // Sort ChooserTargets by score in descending order
-        Comparator<ChooserTarget> byScore =
-                (ChooserTarget a, ChooserTarget b) -> -Float.compare(a.getScore(), b.getScore());
-        Collections.sort(chooserTargetList, byScore);
-        return chooserTargetList;
+        // Sort candidates by score in descending order
+        Comparator<ShortcutCandidate> byScore =
+                (ShortcutCandidate a, ShortcutCandidate b) ->
+                        -Float.compare(a.getScore(), b.getScore());
+        Collections.sort(candidates, byScore);
+        return candidates;
     }
 }
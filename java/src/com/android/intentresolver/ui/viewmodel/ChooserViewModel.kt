@@ -24,6 +24,7 @@ import androidx.lifecycle.viewModelScope
 import com.android.intentresolver.Flags.saveShareouselState
 import com.android.intentresolver.contentpreview.ImageLoader
 import com.android.intentresolver.contentpreview.PreviewDataProvider
+import com.android.intentresolver.contentpreview.payloadtoggle.domain.cursor.PayloadToggle
 import com.android.intentresolver.contentpreview.payloadtoggle.domain.interactor.FetchPreviewsInteractor
 import com.android.intentresolver.contentpreview.payloadtoggle.domain.interactor.ProcessTargetIntentUpdatesInteractor
 import com.android.intentresolver.contentpreview.payloadtoggle.ui.viewmodel.ShareouselViewModel
@@ -67,12 +68,13 @@ constructor(
     private val chooserRequestRepository: Lazy<ChooserRequestRepository>,
     private val contentResolver: ContentInterface,
     val imageLoader: ImageLoader,
+    @PayloadToggle private val payloadToggleImageLoader: Lazy<ImageLoader>,
 ) : ViewModel() {
 
     /** Parcelable-only references provided from the creating Activity */
     val activityModel: ActivityModel = activityModelRepository.value
 
-    val shareouselViewModel: ShareouselViewModel by lazy {
+    private val shareouselViewModelDelegate = lazy {
         // TODO: consolidate this logic, this would require a consolidated preview view model but
         //  for now just postpone starting the payload selection preview machinery until it's needed
         viewModelScope.launch(bgDispatcher) { processUpdatesInteractor.get().activate() }
@@ -80,6 +82,16 @@ constructor(
         shareouselViewModelProvider.get()
     }
 
+    val shareouselViewModel: ShareouselViewModel by shareouselViewModelDelegate
+
+    /** Shrinks the preview image caches, see [android.content.ComponentCallbacks2.onTrimMemory] */
+    fun onTrimMemory(level: Int) {
+        imageLoader.onTrimMemory(level)
+        if (shareouselViewModelDelegate.isInitialized()) {
+            payloadToggleImageLoader.get().onTrimMemory(level)
+        }
+    }
+
     /**
      * A [StateFlow] of [ChooserRequest].
      *
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.util
+
+import android.os.SystemClock
+import androidx.annotation.GuardedBy
+import androidx.annotation.VisibleForTesting
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+
+/** A request latency this many times the baseline latency is considered a congestion signal. */
+private const val LATENCY_SPIKE_FACTOR = 2
+/** How quickly the baseline latency follows latencies above it (as a fraction denominator). */
+private const val BASELINE_DRIFT = 16
+
+/**
+ * Limits the number of concurrently running operations against a shared resource (e.g. a content
+ * provider) with an additive-increase/multiplicative-decrease policy.
+ *
+ * The limit grows by one after a limit's worth of operations completed without a congestion signal
+ * and is halved on a congestion signal: an operation failure or a latency spike, i.e. a latency
+ * well above the lowest latency seen so far. Only operations started after the last decrease can
+ * decrease the limit again, so that a single congestion episode is only reacted to once.
+ *
+ * Operations of different kinds (e.g. a metadata query and an image decode) share the limit but
+ * have unrelated latencies; each operation class is thus compared against its own baseline.
+ */
+class AdaptiveConcurrencyLimiter
+@VisibleForTesting
+constructor(
+    initialLimit: Int,
+    private val minLimit: Int,
+    private val maxLimit: Int,
+    private val clock: () -> Long,
+) {
+    constructor(
+        initialLimit: Int,
+        minLimit: Int = 1,
+        maxLimit: Int = initialLimit * 4,
+    ) : this(initialLimit, minLimit, maxLimit, SystemClock::uptimeMillis)
+
+    private val lock = Any()
+    @GuardedBy("lock") private var currentLimit = initialLimit.coerceIn(minLimit, maxLimit)
+    @GuardedBy("lock") private var inFlight = 0
+    @GuardedBy("lock") private val waiters = ArrayDeque<CompletableDeferred<Unit>>()
+    /**
+     * The lowest latency observed per operation class, slowly drifting up towards the observed
+     * latencies.
+     */
+    @GuardedBy("lock") private val baselineLatencies = HashMap<Any, Long>()
+    @GuardedBy("lock") private var successCount = 0
+    /** Incremented on each limit decrease; operations are tagged with it when started. */
+    @GuardedBy("lock") private var epoch = 0
+
+    /** The current concurrency limit. */
+    val limit: Int
+        get() = synchronized(lock) { currentLimit }
+
+    /**
+     * Runs the [block] once the number of running operations is below the current limit. The
+     * [block] outcome and latency, compared to the previous latencies of the [operationClass],
+     * adjust the limit; a [block] failure is reported as a congestion signal and rethrown.
+     */
+    suspend fun <T> withPermit(operationClass: Any = Unit, block: suspend () -> T): T {
+        acquire()
+        val startEpoch = synchronized(lock) { epoch }
+        val startTime = clock()
+        val result =
+            try {
+                block()
+            } catch (e: CancellationException) {
+                release()
+                throw e
+            } catch (e: Throwable) {
+                release { onCongestion(startEpoch) }
+                throw e
+            }
+        val latency = clock() - startTime
+        release { onSuccess(operationClass, startEpoch, latency) }
+        return result
+    }
+
+    private suspend fun acquire() {
+        val waiter =
+            synchronized(lock) {
+                if (inFlight < currentLimit && waiters.isEmpty()) {
+                    inFlight++
+                    return
+                }
+                CompletableDeferred<Unit>().also { waiters.addLast(it) }
+            }
+        try {
+            waiter.await()
+        } catch (e: CancellationException) {
+            synchronized(lock) {
+                // a waiter that is no longer queued has already been granted a permit
+                if (!waiters.remove(waiter)) {
+                    inFlight--
+                    grantPermits()
+                }
+            }
+            throw e
+        }
+    }
+
+    private inline fun release(update: () -> Unit = {}) {
+        synchronized(lock) {
+            inFlight--
+            update()
+            grantPermits()
+        }
+    }
+
+    @GuardedBy("lock")
+    private fun onSuccess(operationClass: Any, startEpoch: Int, latency: Long) {
+        val previousBaseline = baselineLatencies[operationClass]
+        val baselineLatency =
+            if (previousBaseline == null || latency < previousBaseline) {
+                latency
+            } else {
+                previousBaseline + (latency - previousBaseline) / BASELINE_DRIFT
+            }
+        baselineLatencies[operationClass] = baselineLatency
+        // allow some slack for the fastest operations, where clock granularity dominates
+        if (latency > (baselineLatency + 1) * LATENCY_SPIKE_FACTOR) {
+            onCongestion(startEpoch)
+        } else if (++successCount >= currentLimit) {
+            successCount = 0
+            currentLimit = (currentLimit + 1).coerceAtMost(maxLimit)
+        }
+    }
+
+    @GuardedBy("lock")
+    private fun onCongestion(startEpoch: Int) {
+        successCount = 0
+        if (startEpoch == epoch) {
+            epoch++
+            currentLimit = (currentLimit / 2).coerceAtLeast(minLimit)
+        }
+    }
+
+    @GuardedBy("lock")
+    private fun grantPermits() {
+        while (inFlight < currentLimit) {
+            val waiter = waiters.removeFirstOrNull() ?: break
+            inFlight++
+            waiter.complete(Unit)
+        }
+    }
+}
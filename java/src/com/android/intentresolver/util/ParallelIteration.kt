@@ -16,9 +16,15 @@
 
 package com.android.intentresolver.util
 
+import kotlinx.coroutines.Deferred
 import kotlinx.coroutines.async
 import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
 import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.yield
 
@@ -69,3 +75,33 @@ private suspend fun <A, B> Iterable<A>.mapParallelIndexed(block: suspend (Int, A
             }
             .awaitAll()
     }
+
+/**
+ * Like [mapParallel] but emits the results as a [Flow] in the original order, each one as soon as
+ * it and all the preceding results are ready. At most [parallelism] [block] invocations run at a
+ * time and only a bounded number of results wait for the preceding ones.
+ */
+fun <A, B> Iterable<A>.mapParallelOrdered(parallelism: Int, block: suspend (A) -> B): Flow<B> =
+    channelFlow {
+        val permits = Semaphore(parallelism)
+        // The reorder buffer: pending results in the original order, completed or not.
+        val results = Channel<Deferred<B>>(capacity = parallelism)
+        launch {
+            for (item in this@mapParallelOrdered) {
+                permits.acquire()
+                results.send(
+                    async {
+                        try {
+                            block(item)
+                        } finally {
+                            permits.release()
+                        }
+                    }
+                )
+            }
+            results.close()
+        }
+        for (result in results) {
+            send(result.await())
+        }
+    }
@@ -42,13 +42,21 @@ import androidx.recyclerview.widget.RecyclerView
 import com.android.intentresolver.R
 import com.android.intentresolver.util.throttle
 import com.android.intentresolver.widget.ImagePreviewView.TransitionElementStatusCallback
+import kotlin.math.abs
+import kotlinx.coroutines.CompletableDeferred
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.cancel
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.catch
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.onCompletion
 import kotlinx.coroutines.flow.takeWhile
+import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.joinAll
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.suspendCancellableCoroutine
@@ -56,12 +64,15 @@ import kotlinx.coroutines.suspendCancellableCoroutine
 private const val TRANSITION_NAME = "screenshot_preview_image"
 private const val PLURALS_COUNT = "count"
 private const val ADAPTER_UPDATE_INTERVAL_MS = 150L
+private const val FIRST_BLOCK_TIMEOUT_MS = 1_000L
 private const val MIN_ASPECT_RATIO = 0.4f
 private const val MIN_ASPECT_RATIO_STRING = "2:5"
 private const val MAX_ASPECT_RATIO = 2.5f
 private const val MAX_ASPECT_RATIO_STRING = "5:2"
+private const val ASPECT_RATIO_TOLERANCE = 0.01f
 
 private typealias CachingImageLoader = suspend (Uri, Size, Boolean) -> Bitmap?
+private typealias ProgressiveImageLoader = (Uri, Size) -> Flow<Bitmap?>
 
 class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
     constructor(context: Context) : this(context, null)
@@ -117,7 +128,26 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
             }
         val itemAnimator = ItemAnimator()
         super.setItemAnimator(itemAnimator)
-        super.setAdapter(Adapter(context, itemAnimator.getAddDuration(), editButtonRoleDescription))
+        super.setAdapter(
+            Adapter(
+                context,
+                itemAnimator.getAddDuration(),
+                editButtonRoleDescription,
+                this::updatePreviewSize,
+            )
+        )
+        addOnScrollListener(
+            object : OnScrollListener() {
+                override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+                    prefetchPreviews()
+                }
+            }
+        )
+    }
+
+    companion object {
+        /** How many previews past the last visible one are loaded ahead of scrolling. */
+        const val PREVIEW_LOAD_WINDOW_SIZE = 20
     }
 
     private var batchLoader: BatchPreviewLoader? = null
@@ -200,6 +230,14 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
         previewAdapter.imageLoader = imageLoader
     }
 
+    /**
+     * Sets a loader that may provide low-resolution preview images before the full-size ones; if
+     * set, it is used to load the displayed images instead of the [setImageLoader] one.
+     */
+    fun setProgressiveImageLoader(imageLoader: ProgressiveImageLoader?) {
+        previewAdapter.progressiveImageLoader = imageLoader
+    }
+
     fun setLoading(totalItemCount: Int) {
         previewAdapter.reset(totalItemCount)
     }
@@ -221,6 +259,7 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
                     }
                     previewAdapter.markLoaded()
                 },
+                windowSize = PREVIEW_LOAD_WINDOW_SIZE,
             )
         maybeLoadAspectRatios()
     }
@@ -231,6 +270,15 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
         }
     }
 
+    /** Lets the previews near the viewport load ahead of scrolling to them. */
+    private fun prefetchPreviews() {
+        val lastVisiblePosition =
+            (layoutManager as LinearLayoutManager).findLastVisibleItemPosition()
+        if (lastVisiblePosition != NO_POSITION) {
+            batchLoader?.prefetchUpTo(lastVisiblePosition)
+        }
+    }
+
     var onNoPreviewCallback: Runnable? = null
 
     private fun getMaxWidth(): Int =
@@ -285,12 +333,15 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
         val uri: Uri,
         val editAction: Runnable?,
         internal var aspectRatioString: String,
+        /** The preview image size, if known from the metadata, to lay the preview out with. */
+        val size: Size?,
     ) {
         constructor(
             type: PreviewType,
             uri: Uri,
             editAction: Runnable?,
-        ) : this(type, uri, editAction, "1:1")
+            size: Size? = null,
+        ) : this(type, uri, editAction, "1:1", size)
     }
 
     enum class PreviewType {
@@ -303,6 +354,7 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
         private val context: Context,
         private val fadeInDurationMs: Long,
         private val editButtonRoleDescription: CharSequence?,
+        private val previewSizeUpdater: (Preview, Int, Int) -> Int,
     ) : RecyclerView.Adapter<ViewHolder>() {
         private val previews = ArrayList<Preview>()
         private val imagePreviewDescription =
@@ -312,6 +364,7 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
         private val filePreviewDescription =
             context.resources.getString(R.string.file_preview_a11y_description)
         var imageLoader: CachingImageLoader? = null
+        var progressiveImageLoader: ProgressiveImageLoader? = null
         private var firstImagePos = -1
         private var totalItemCount: Int = 0
 
@@ -410,10 +463,12 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
                     vh.bind(
                         previews[position],
                         imageLoader ?: error("ImageLoader is missing"),
+                        progressiveImageLoader,
                         previewSize,
                         fadeInDurationMs,
                         isSharedTransitionElement = position == firstImagePos,
                         editButtonRoleDescription,
+                        previewSizeUpdater,
                         previewReadyCallback =
                             if (
                                 position == firstImagePos && transitionStatusElementCallback != null
@@ -463,10 +518,12 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
         fun bind(
             preview: Preview,
             imageLoader: CachingImageLoader,
+            progressiveImageLoader: ProgressiveImageLoader?,
             previewSize: Size,
             fadeInDurationMs: Long,
             isSharedTransitionElement: Boolean,
             editButtonRoleDescription: CharSequence?,
+            previewSizeUpdater: (Preview, Int, Int) -> Int,
             previewReadyCallback: ((String) -> Unit)?,
         ) {
             image.setImageDrawable(null)
@@ -510,7 +567,16 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
                 }
             }
             resetScope().launch {
-                loadImage(preview, previewSize, imageLoader)
+                if (progressiveImageLoader != null) {
+                    loadImageProgressively(
+                        preview,
+                        previewSize,
+                        progressiveImageLoader,
+                        previewSizeUpdater,
+                    )
+                } else {
+                    loadImage(preview, previewSize, imageLoader, previewSizeUpdater)
+                }
                 if (preview.type == PreviewType.Image && previewReadyCallback != null) {
                     image.waitForPreDraw()
                     previewReadyCallback(TRANSITION_NAME)
@@ -524,6 +590,7 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
             preview: Preview,
             previewSize: Size,
             imageLoader: CachingImageLoader,
+            previewSizeUpdater: (Preview, Int, Int) -> Int,
         ) {
             val bitmap =
                 runCatching {
@@ -533,6 +600,64 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
                     }
                     .getOrNull()
             image.setImageBitmap(bitmap)
+            bitmap?.let { updateAspectRatio(preview, it, previewSizeUpdater) }
+        }
+
+        /**
+         * Returns once the first image is shown; the image keeps being updated until the full-size
+         * one is loaded.
+         */
+        private suspend fun CoroutineScope.loadImageProgressively(
+            preview: Preview,
+            previewSize: Size,
+            imageLoader: ProgressiveImageLoader,
+            previewSizeUpdater: (Preview, Int, Int) -> Int,
+        ) {
+            val isShown = CompletableDeferred<Unit>()
+            launch {
+                var lastBitmap: Bitmap? = null
+                var isFailed = false
+                imageLoader(preview.uri, previewSize)
+                    .catch { isFailed = true }
+                    .onCompletion { isShown.complete(Unit) }
+                    .collect { bitmap ->
+                        // a failed full-size load does not hide an already shown image
+                        if (bitmap != null || !isShown.isCompleted) {
+                            image.setImageBitmap(bitmap)
+                        }
+                        lastBitmap = bitmap
+                        isShown.complete(Unit)
+                    }
+                // only the full-size image, the last one, has a precise aspect ratio
+                if (!isFailed) {
+                    lastBitmap?.let { updateAspectRatio(preview, it, previewSizeUpdater) }
+                }
+            }
+            isShown.await()
+        }
+
+        /**
+         * Re-measures the preview if the aspect ratio of its full-size image differs from the laid
+         * out one, e.g. due to an EXIF rotation the metadata size misses or a first block timeout.
+         */
+        private fun updateAspectRatio(
+            preview: Preview,
+            bitmap: Bitmap,
+            previewSizeUpdater: (Preview, Int, Int) -> Int,
+        ) {
+            if (bitmap.width <= 0 || bitmap.height <= 0) return
+            val params = image.layoutParams as? ConstraintLayout.LayoutParams ?: return
+            previewSizeUpdater(preview, bitmap.width, bitmap.height)
+            val laidOutAspectRatio = params.dimensionRatio?.toAspectRatio()
+            val aspectRatio = preview.aspectRatioString.toAspectRatio()
+            if (
+                laidOutAspectRatio == null ||
+                    aspectRatio == null ||
+                    abs(laidOutAspectRatio - aspectRatio) > ASPECT_RATIO_TOLERANCE
+            ) {
+                params.dimensionRatio = preview.aspectRatioString
+                image.requestLayout()
+            }
         }
 
         private suspend fun fadeInPreview(durationMs: Long) =
@@ -569,6 +694,8 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
         override fun unbind() {
             scope?.cancel()
             scope = null
+            // the preview is off-screen, let its bitmap go
+            image.setImageDrawable(null)
         }
     }
 
@@ -679,8 +806,21 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
         val totalItemCount: Int,
         private val onUpdate: (List<Preview>) -> Unit,
         private val onCompletion: () -> Unit,
+        /**
+         * If set, only the previews within this distance past the position requested with
+         * [prefetchUpTo] (or past the first block) are collected and loaded.
+         */
+        private val windowSize: Int? = null,
     ) {
         private var scope: CoroutineScope = createScope()
+        /** The exclusive end of the previews that can be collected and loaded. */
+        private val loadWindowEnd = MutableStateFlow(windowSize ?: Int.MAX_VALUE)
+
+        /** Extends the loading window to cover the [windowSize] previews past the [position]. */
+        fun prefetchUpTo(position: Int) {
+            val windowSize = windowSize ?: return
+            loadWindowEnd.update { maxOf(it, position + 1 + windowSize) }
+        }
 
         private fun createScope() = CoroutineScope(Dispatchers.Main.immediate)
 
@@ -721,49 +861,81 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
 
             // Collects [previews] flow and loads aspect ratios, emits updates into [reportFlow]
             // when a next sequential block of preview aspect ratios is loaded: initially emits when
-            // enough preview elements is loaded to fill the viewport.
+            // enough preview elements is loaded to fill the viewport. Previews with a known size
+            // are laid out right away, their images are loaded once they are bound.
             scope.launch {
                 var blockWidth = 0
                 var isFirstBlock = true
 
+                suspend fun reportProcessedPreviews() {
+                    while (blockEnd < previewInfos.size && previewInfos[blockEnd].width >= 0) {
+                        blockWidth += previewInfos[blockEnd].width
+                        blockEnd++
+                    }
+                    if (isFirstBlock && blockWidth >= maxWidth) {
+                        isFirstBlock = false
+                    }
+                    if (!isFirstBlock) {
+                        reportFlow.emit(updateEvent)
+                    } else if (windowSize != null && blockEnd >= loadWindowEnd.value) {
+                        // the window is too small to fill the viewport
+                        loadWindowEnd.value = blockEnd + windowSize
+                    }
+                }
+
+                // A slow image should not hold up the initial viewport indefinitely: once the
+                // timeout expires, the previews that are still loading are laid out as squares.
+                val firstBlockTimeoutJob = launch {
+                    delay(FIRST_BLOCK_TIMEOUT_MS)
+                    if (!isFirstBlock) return@launch
+                    isFirstBlock = false
+                    for (info in previewInfos) {
+                        if (info.width < 0) {
+                            info.width = previewSizeUpdater(info.preview, 0, 0)
+                        }
+                    }
+                    reportProcessedPreviews()
+                }
+
                 val jobs = ArrayList<Job>()
                 previews.collect { preview ->
                     val i = previewInfos.size
+                    loadWindowEnd.first { i < it }
                     val pair = PreviewWidthInfo(preview)
                     previewInfos.add(pair)
 
                     val job = launch {
+                        val size = preview.size
                         pair.width =
-                            runCatching {
-                                    // TODO: decide on adding a timeout. The worst case I can
-                                    //  imagine is one of the first images never loads so we never
-                                    //  fill the initial viewport and does not show the previews at
-                                    //  all.
-                                    imageLoader(preview.uri, previewSize, isFirstBlock)?.let {
-                                        bitmap ->
-                                        previewSizeUpdater(preview, bitmap.width, bitmap.height)
-                                    } ?: 0
+                            if (size != null) {
+                                previewSizeUpdater(preview, size.width, size.height)
+                            } else {
+                                val bitmap =
+                                    runCatching {
+                                            imageLoader(preview.uri, previewSize, isFirstBlock)
+                                        }
+                                        .getOrNull()
+                                // already laid out on the first block timeout; the preview is
+                                // re-measured once it is bound or its bound image is loaded
+                                if (pair.width >= 0) {
+                                    bitmap?.let { previewSizeUpdater(preview, it.width, it.height) }
+                                    return@launch
                                 }
-                                .getOrDefault(0)
+                                bitmap?.let { previewSizeUpdater(preview, it.width, it.height) }
+                                    ?: 0
+                            }
 
                         if (i == blockEnd) {
-                            while (
-                                blockEnd < previewInfos.size && previewInfos[blockEnd].width >= 0
-                            ) {
-                                blockWidth += previewInfos[blockEnd].width
-                                blockEnd++
-                            }
-                            if (isFirstBlock && blockWidth >= maxWidth) {
-                                isFirstBlock = false
-                            }
+                            reportProcessedPreviews()
                             if (!isFirstBlock) {
-                                reportFlow.emit(updateEvent)
+                                firstBlockTimeoutJob.cancel()
                             }
                         }
                     }
                     jobs.add(job)
                 }
                 jobs.joinAll()
+                firstBlockTimeoutJob.cancel()
                 // in case all previews have failed to load
                 reportFlow.emit(updateEvent)
                 reportFlow.emit(completedEvent)
@@ -777,3 +949,10 @@ class ScrollableImagePreviewView : RecyclerView, ImagePreviewView {
         var width: Int = -1
     }
 }
+
+/** Parses a "width:height" aspect ratio string. */
+private fun String.toAspectRatio(): Float? {
+    val width = substringBefore(':').toFloatOrNull() ?: return null
+    val height = substringAfter(':', "").toFloatOrNull()?.takeIf { it > 0 } ?: return null
+    return width / height
+}
@@ -123,6 +123,7 @@ import com.android.intentresolver.contentpreview.ImageLoader;
 import com.android.intentresolver.contentpreview.ImageLoaderModule;
 import com.android.intentresolver.contentpreview.PreviewCacheSize;
 import com.android.intentresolver.contentpreview.PreviewMaxConcurrency;
+import com.android.intentresolver.contentpreview.ProgressivePreviews;
 import com.android.intentresolver.contentpreview.ThumbnailLoader;
 import com.android.intentresolver.contentpreview.ThumbnailSize;
 import com.android.intentresolver.data.repository.FakeUserRepository;
@@ -140,6 +141,7 @@ import com.android.intentresolver.platform.GlobalSettings;
 import com.android.intentresolver.platform.ImageEditor;
 import com.android.intentresolver.platform.ImageEditorModule;
 import com.android.intentresolver.shared.model.User;
+import com.android.intentresolver.shortcuts.ShortcutCandidate;
 import com.android.intentresolver.shortcuts.ShortcutLoader;
 import com.android.internal.config.sysui.SystemUiDeviceConfigFlags;
 
@@ -164,9 +166,7 @@ import org.mockito.Mockito;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -289,6 +289,10 @@ public class ChooserActivityTest {
     @ThumbnailSize
     int mPreviewThumbnailSize = 500;
 
+    @BindValue
+    @ProgressivePreviews
+    boolean mProgressivePreviews = false;
+
     @BindValue
     ThumbnailLoader mThumbnailLoader = new FakeThumbnailLoader();
 
@@ -1551,11 +1555,9 @@ public class ChooserActivityTest {
                 new ShortcutLoader.ShortcutResultInfo[] {
                         new ShortcutLoader.ShortcutResultInfo(
                                 appTargets.getValue()[0],
-                                serviceTargets
+                                toShortcutCandidates(serviceTargets)
                         )
-                },
-                new HashMap<>(),
-                new HashMap<>()
+                }
         );
         activity.getMainExecutor().execute(() -> shortcutLoaders.get(0).second.accept(result));
         waitForIdle();
@@ -1627,11 +1629,9 @@ public class ChooserActivityTest {
                 new ShortcutLoader.ShortcutResultInfo[] {
                         new ShortcutLoader.ShortcutResultInfo(
                                 appTargets.getValue()[0],
-                                serviceTargets
+                                toShortcutCandidates(serviceTargets)
                         )
-                },
-                new HashMap<>(),
-                new HashMap<>()
+                }
         );
         activity.getMainExecutor().execute(() -> shortcutLoaders.get(0).second.accept(result));
         waitForIdle();
@@ -1704,11 +1704,9 @@ public class ChooserActivityTest {
                 new ShortcutLoader.ShortcutResultInfo[] {
                         new ShortcutLoader.ShortcutResultInfo(
                                 appTargets.getValue()[0],
-                                serviceTargets
+                                toShortcutCandidates(serviceTargets)
                         )
-                },
-                new HashMap<>(),
-                new HashMap<>()
+                }
         );
         activity.getMainExecutor().execute(() -> shortcutLoaders.get(0).second.accept(result));
         waitForIdle();
@@ -1775,11 +1773,9 @@ public class ChooserActivityTest {
                 new ShortcutLoader.ShortcutResultInfo[] {
                         new ShortcutLoader.ShortcutResultInfo(
                                 appTargets.getValue()[0],
-                                serviceTargets
+                                toShortcutCandidates(serviceTargets)
                         )
-                },
-                new HashMap<>(),
-                new HashMap<>()
+                }
         );
         activity.getMainExecutor().execute(() -> shortcutLoaders.get(0).second.accept(result));
         waitForIdle();
@@ -1858,9 +1854,7 @@ public class ChooserActivityTest {
         ShortcutLoader.Result result = new ShortcutLoader.Result(
                 true,
                 appTargets.getValue(),
-                new ShortcutLoader.ShortcutResultInfo[0],
-                new HashMap<>(),
-                new HashMap<>());
+                new ShortcutLoader.ShortcutResultInfo[0]);
         activity.getMainExecutor().execute(() -> shortcutLoaders.get(0).second.accept(result));
         waitForIdle();
 
@@ -2036,8 +2030,6 @@ public class ChooserActivityTest {
         ChooserWrapperActivity activity =
                 mActivityRule.launchActivity(Intent.createChooser(sendIntent, null));
         // Insert the direct share target
-        Map<ChooserTarget, ShortcutInfo> directShareToShortcutInfos = new HashMap<>();
-        directShareToShortcutInfos.put(serviceTargets.get(0), null);
         InstrumentationRegistry.getInstrumentation().runOnMainSync(
                 () -> activity.getAdapter().addServiceResults(
                         activity.createTestDisplayResolveInfo(sendIntent,
@@ -2047,7 +2039,6 @@ public class ChooserActivityTest {
                                 sendIntent),
                         serviceTargets,
                         TARGET_TYPE_CHOOSER_TARGET,
-                        directShareToShortcutInfos,
                         /* directShareToAppTargets */ null)
         );
 
@@ -2406,11 +2397,9 @@ public class ChooserActivityTest {
                 new ShortcutLoader.ShortcutResultInfo[] {
                         new ShortcutLoader.ShortcutResultInfo(
                                 appTargets.getValue()[0],
-                                serviceTargets
+                                toShortcutCandidates(serviceTargets)
                         )
-                },
-                new HashMap<>(),
-                new HashMap<>()
+                }
         );
         activity.getMainExecutor().execute(() -> shortcutLoaders.get(0).second.accept(result));
         waitForIdle();
@@ -2476,11 +2465,9 @@ public class ChooserActivityTest {
                 new ShortcutLoader.ShortcutResultInfo[] {
                         new ShortcutLoader.ShortcutResultInfo(
                                 appTargets.getValue()[0],
-                                serviceTargets
+                                toShortcutCandidates(serviceTargets)
                         )
-                },
-                new HashMap<>(),
-                new HashMap<>()
+                }
         );
         activity.getMainExecutor().execute(() -> shortcutLoaders.get(0).second.accept(result));
         waitForIdle();
@@ -2991,6 +2978,23 @@ public class ChooserActivityTest {
         return targets;
     }
 
+    private static List<ShortcutCandidate> toShortcutCandidates(List<ChooserTarget> targets) {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        List<ShortcutCandidate> candidates = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            ChooserTarget target = targets.get(i);
+            ShortcutInfo shortcutInfo = new ShortcutInfo.Builder(context, "shortcut" + i)
+                    .setShortLabel(target.getTitle())
+                    .setLongLabel(target.getTitle())
+                    .setActivity(target.getComponentName())
+                    .setRank(i)
+                    .build();
+            candidates.add(new ShortcutCandidate(
+                    shortcutInfo, target.getComponentName(), target.getScore(), null));
+        }
+        return candidates;
+    }
+
     private void waitForIdle() {
         InstrumentationRegistry.getInstrumentation().waitForIdleSync();
     }
@@ -38,6 +38,7 @@ import com.android.intentresolver.chooser.SelectableTargetInfo;
 import com.android.intentresolver.chooser.TargetInfo;
 import com.android.intentresolver.emptystate.CrossProfileIntentsChecker;
 import com.android.intentresolver.icons.LabelInfo;
+import com.android.intentresolver.icons.LoadPriority;
 import com.android.intentresolver.icons.TargetDataLoader;
 
 import java.util.List;
@@ -205,5 +206,16 @@ public class ResolverWrapperActivity extends ResolverActivity {
         public void getOrLoadLabel(@NonNull DisplayResolveInfo info) {
             mTargetDataLoader.getOrLoadLabel(info);
         }
+
+        @Override
+        public void setIconLoadPriority(
+                @NonNull TargetInfo info, @NonNull LoadPriority priority) {
+            mTargetDataLoader.setIconLoadPriority(info, priority);
+        }
+
+        @Override
+        public void cancelIconLoad(@NonNull TargetInfo info) {
+            mTargetDataLoader.cancelIconLoad(info);
+        }
     }
 }
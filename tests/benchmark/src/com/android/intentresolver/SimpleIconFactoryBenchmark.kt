@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver
+
+import android.graphics.Bitmap
+import android.graphics.Color
+import android.graphics.drawable.BitmapDrawable
+import android.graphics.drawable.Drawable
+import android.os.Debug
+import android.os.Process
+import android.os.SystemClock
+import android.util.Log
+import android.view.ContextThemeWrapper
+import androidx.test.platform.app.InstrumentationRegistry
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+private const val TAG = "SimpleIconFactoryBenchmark"
+private const val WARMUP_ICONS = 50
+private const val MEASURED_ICONS = 500
+
+/**
+ * Compares the icon rendering throughput and the Java heap allocations per icon with and without
+ * the reuse of [SimpleIconFactory] scratch buffers. Results are logged under the [TAG] tag.
+ */
+class SimpleIconFactoryBenchmark {
+    private val context =
+        ContextThemeWrapper(
+            InstrumentationRegistry.getInstrumentation().targetContext,
+            R.style.Theme_DeviceDefault_Chooser,
+        )
+    private val appIcon: Drawable =
+        requireNotNull(context.packageManager.getApplicationIcon(context.applicationInfo))
+    private val shortcutIcon =
+        BitmapDrawable(
+            context.resources,
+            Bitmap.createBitmap(192, 192, Bitmap.Config.ARGB_8888).apply {
+                eraseColor(Color.BLUE)
+            },
+        )
+
+    @Before
+    fun setUp() {
+        SimpleIconFactory.setPoolEnabled(false)
+    }
+
+    @After
+    fun tearDown() {
+        SimpleIconFactory.setPoolEnabled(true)
+        SimpleIconFactory.setScratchBuffersEnabled(true)
+    }
+
+    @Test
+    fun appIcons_freshAllocations() = measure("app icons, fresh allocations", false, ::appIcon)
+
+    @Test
+    fun appIcons_scratchBuffers() = measure("app icons, scratch buffers", true, ::appIcon)
+
+    @Test
+    fun directShareIcons_freshAllocations() =
+        measure("direct share icons, fresh allocations", false, ::directShareIcon)
+
+    @Test
+    fun directShareIcons_scratchBuffers() =
+        measure("direct share icons, scratch buffers", true, ::directShareIcon)
+
+    private fun appIcon(factory: SimpleIconFactory): Bitmap =
+        factory.createUserBadgedIconBitmap(appIcon, Process.myUserHandle())
+
+    private fun directShareIcon(factory: SimpleIconFactory): Bitmap =
+        factory.createAppBadgedIconBitmap(shortcutIcon, appIcon(factory))
+
+    private fun measure(
+        name: String,
+        scratchBuffersEnabled: Boolean,
+        render: (SimpleIconFactory) -> Bitmap,
+    ) {
+        SimpleIconFactory.setScratchBuffersEnabled(scratchBuffersEnabled)
+        SimpleIconFactory.obtain(context).use { factory ->
+            repeat(WARMUP_ICONS) { render(factory) }
+
+            val startBytes = allocatedBytes()
+            val startTime = SystemClock.elapsedRealtimeNanos()
+            repeat(MEASURED_ICONS) { assertThat(render(factory)).isNotNull() }
+            val elapsedNanos = SystemClock.elapsedRealtimeNanos() - startTime
+            val bytesPerIcon = (allocatedBytes() - startBytes) / MEASURED_ICONS
+
+            val iconsPerSecond = MEASURED_ICONS * 1_000_000_000L / elapsedNanos
+            Log.i(TAG, "$name: $iconsPerSecond icons/s, $bytesPerIcon bytes allocated per icon")
+        }
+    }
+
+    private fun allocatedBytes(): Long =
+        Debug.getRuntimeStat("art.gc.bytes-allocated")?.toLongOrNull() ?: 0
+}
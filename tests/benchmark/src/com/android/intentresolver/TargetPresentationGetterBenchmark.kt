@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver
+
+import android.app.ActivityManager
+import android.content.Intent
+import android.content.pm.PackageManager
+import android.content.pm.ResolveInfo
+import android.os.Process
+import android.os.SystemClock
+import android.util.Log
+import android.view.ContextThemeWrapper
+import androidx.test.platform.app.InstrumentationRegistry
+import com.google.common.truth.Truth.assertThat
+import org.junit.Assume.assumeTrue
+import org.junit.Test
+
+private const val TAG = "TargetPresentationGetterBenchmark"
+private const val MIN_ACTIVITIES_PER_PACKAGE = 2
+private const val ROUNDS = 5
+
+/**
+ * Compares the time to load the labels, sub-labels and icons of all share activities of the apps
+ * that export several of them, with a [TargetPresentationGetter.Factory] per Chooser session
+ * (sharing the package resources between the activities) and a factory per target. Results are
+ * logged under the [TAG] tag.
+ */
+class TargetPresentationGetterBenchmark {
+    private val context =
+        ContextThemeWrapper(
+            InstrumentationRegistry.getInstrumentation().targetContext,
+            R.style.Theme_DeviceDefault_Chooser,
+        )
+    private val packageManager = context.packageManager
+    private val iconDpi =
+        context.getSystemService(ActivityManager::class.java)!!.launcherLargeIconDensity
+
+    @Test
+    fun multiActivityApps_sharedFactory() {
+        val targets = queryMultiActivityTargets()
+        measure("shared factory", targets) { createFactory() }
+    }
+
+    @Test
+    fun multiActivityApps_factoryPerTarget() {
+        val targets = queryMultiActivityTargets()
+        measure("factory per target", targets, perTarget = true) { createFactory() }
+    }
+
+    private fun createFactory() =
+        TargetPresentationGetter.Factory(
+            { SimpleIconFactory.obtain(context) },
+            packageManager,
+            iconDpi,
+        )
+
+    private fun queryMultiActivityTargets(): List<ResolveInfo> {
+        val intent =
+            Intent(Intent.ACTION_SEND).apply {
+                type = "text/plain"
+                addCategory(Intent.CATEGORY_DEFAULT)
+            }
+        val targets =
+            packageManager
+                .queryIntentActivities(intent, PackageManager.ResolveInfoFlags.of(0))
+                .groupBy { it.activityInfo.packageName }
+                .values
+                .filter { it.size >= MIN_ACTIVITIES_PER_PACKAGE }
+                .flatten()
+        assumeTrue("No apps with several share activities installed", targets.isNotEmpty())
+        return targets
+    }
+
+    private fun measure(
+        name: String,
+        targets: List<ResolveInfo>,
+        perTarget: Boolean = false,
+        factoryProvider: () -> TargetPresentationGetter.Factory,
+    ) {
+        val user = Process.myUserHandle()
+        var bestNanos = Long.MAX_VALUE
+        repeat(ROUNDS) {
+            val startTime = SystemClock.elapsedRealtimeNanos()
+            var sessionFactory: TargetPresentationGetter.Factory? = null
+            for (target in targets) {
+                val factory =
+                    if (perTarget) {
+                        factoryProvider()
+                    } else {
+                        sessionFactory ?: factoryProvider().also { sessionFactory = it }
+                    }
+                val getter = factory.makePresentationGetter(target)
+                getter.getLabel()
+                getter.getSubLabel()
+                assertThat(getter.getIconBitmap(user)).isNotNull()
+            }
+            bestNanos = minOf(bestNanos, SystemClock.elapsedRealtimeNanos() - startTime)
+        }
+        val packageCount = targets.distinctBy { it.activityInfo.packageName }.size
+        Log.i(
+            TAG,
+            "$name: ${targets.size} activities of $packageCount packages in " +
+                "${bestNanos / 1_000}us, ${bestNanos / targets.size / 1_000}us per activity",
+        )
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import android.graphics.Bitmap
+import android.os.Debug
+import android.os.Process
+import android.util.Log
+import android.view.ContextThemeWrapper
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.intentresolver.R
+import com.android.intentresolver.SimpleIconFactory
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+private const val TAG = "IconStorageModeBenchmark"
+private const val TARGET_COUNT = 300
+
+/**
+ * Measures the Java and native heap taken by the icons of a [TARGET_COUNT] target grid, held in
+ * each [IconStorageMode]. Results are logged under the [TAG] tag.
+ */
+class IconStorageModeBenchmark {
+    private val context =
+        ContextThemeWrapper(
+            InstrumentationRegistry.getInstrumentation().targetContext,
+            R.style.Theme_DeviceDefault_Chooser,
+        )
+
+    @Test
+    fun softwareIcons() = measure(IconStorageMode.SOFTWARE)
+
+    @Test
+    fun hardwareIcons() = measure(IconStorageMode.HARDWARE)
+
+    private fun measure(mode: IconStorageMode) {
+        val appIcon = requireNotNull(context.packageManager.getApplicationIcon(context.packageName))
+        val before = HeapUsage.measure()
+        val icons =
+            SimpleIconFactory.obtain(context).use { factory ->
+                List(TARGET_COUNT) {
+                    mode.toStoredIcon(
+                        factory.createUserBadgedIconBitmap(appIcon, Process.myUserHandle())
+                    )
+                }
+            }
+        val after = HeapUsage.measure()
+
+        assertThat(icons.map { it.config }).containsNoneOf(*otherConfigs(mode))
+        Log.i(
+            TAG,
+            "$mode, $TARGET_COUNT icons: " +
+                "Java heap +${(after.javaBytes - before.javaBytes) / 1024}KiB, " +
+                "native heap +${(after.nativeBytes - before.nativeBytes) / 1024}KiB",
+        )
+        // keeps the icons reachable until measured
+        assertThat(icons).hasSize(TARGET_COUNT)
+    }
+
+    private fun otherConfigs(mode: IconStorageMode): Array<Bitmap.Config> =
+        IconStorageMode.values().map { it.config }.filter { it != mode.config }.toTypedArray()
+
+    private class HeapUsage(val javaBytes: Long, val nativeBytes: Long) {
+        companion object {
+            fun measure(): HeapUsage {
+                val runtime = Runtime.getRuntime()
+                runtime.gc()
+                System.runFinalization()
+                runtime.gc()
+                return HeapUsage(
+                    runtime.totalMemory() - runtime.freeMemory(),
+                    Debug.getNativeHeapAllocatedSize(),
+                )
+            }
+        }
+    }
+}
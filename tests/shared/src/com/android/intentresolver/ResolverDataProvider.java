@@ -185,12 +185,23 @@ public class ResolverDataProvider {
         MockContext ctx = new MockContext() {
             @Override
             public PackageManager getPackageManager() {
+                Context ctx = this;
                 return new MockPackageManager() {
                     @Override
                     public int checkPermission(String permName, String pkgName) {
                         if (hasOverridePermission) return PERMISSION_GRANTED;
                         return PERMISSION_DENIED;
                     }
+
+                    @Override
+                    public Resources getResourcesForApplication(ApplicationInfo app) {
+                        return ctx.getResources();
+                    }
+
+                    @Override
+                    public Resources getResourcesForApplication(String packageName) {
+                        return ctx.getResources();
+                    }
                 };
             }
 
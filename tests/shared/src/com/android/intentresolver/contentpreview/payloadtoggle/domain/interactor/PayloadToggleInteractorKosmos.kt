@@ -34,12 +34,16 @@ import com.android.intentresolver.data.repository.chooserRequestRepository
 import com.android.intentresolver.inject.contentUris
 import com.android.intentresolver.logging.eventLog
 import com.android.intentresolver.packageManager
+import com.android.intentresolver.util.AdaptiveConcurrencyLimiter
 import com.android.systemui.kosmos.Kosmos
 import com.android.systemui.kosmos.Kosmos.Fixture
 
 var Kosmos.focusedItemIndex: Int by Fixture { 0 }
 var Kosmos.pageSize: Int by Fixture { 16 }
 var Kosmos.maxLoadedPages: Int by Fixture { 3 }
+var Kosmos.previewLoadLimiter: AdaptiveConcurrencyLimiter by Fixture {
+    AdaptiveConcurrencyLimiter(initialLimit = 4)
+}
 
 val Kosmos.chooserRequestInteractor
     get() = ChooserRequestInteractor(chooserRequestRepository)
@@ -53,6 +57,7 @@ val Kosmos.cursorPreviewsInteractor
             uriMetadataReader = uriMetadataReader,
             pageSize = pageSize,
             maxLoadedPages = maxLoadedPages,
+            loadLimiter = previewLoadLimiter,
         )
 
 val Kosmos.customActionsInteractor
@@ -75,6 +80,7 @@ val Kosmos.fetchPreviewsInteractor
             focusedItemIdx = focusedItemIndex,
             selectedItems = contentUris,
             uriMetadataReader = uriMetadataReader,
+            loadLimiter = previewLoadLimiter,
             cursorResolver = payloadToggleCursorResolver,
         )
 
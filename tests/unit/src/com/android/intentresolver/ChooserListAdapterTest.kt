@@ -33,6 +33,7 @@ import com.android.intentresolver.chooser.SelectableTargetInfo
 import com.android.intentresolver.chooser.TargetInfo
 import com.android.intentresolver.icons.TargetDataLoader
 import com.android.intentresolver.logging.EventLogImpl
+import com.android.intentresolver.shortcuts.ShortcutCandidate
 import com.android.intentresolver.widget.BadgeTextView
 import com.android.internal.R
 import com.google.common.truth.Truth.assertThat
@@ -42,8 +43,10 @@ import org.junit.runner.RunWith
 import org.mockito.kotlin.any
 import org.mockito.kotlin.doReturn
 import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
 import org.mockito.kotlin.times
 import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
 
 @RunWith(AndroidJUnit4::class)
 class ChooserListAdapterTest {
@@ -174,12 +177,66 @@ class ChooserListAdapterTest {
         assertThat(view.contentDescription).isEqualTo("$appLabel. Pinned")
     }
 
+    @Test
+    fun completeServiceTargetLoading_directShareIconsArePrefetched() {
+        whenever(resolverListController.getScore(any<DisplayResolveInfo>())).thenReturn(1f)
+        val testSubject = createSendAdapter(maxRankedTargets = 4)
+        val appTarget = createDisplayResolveInfo()
+        val componentName = ComponentName("pkg", "Class")
+        val candidates =
+            listOf(
+                ShortcutCandidate(
+                    createShortcutInfo("id-1", componentName, 1),
+                    componentName,
+                    0.9f,
+                    /* appTarget = */ null,
+                ),
+                ShortcutCandidate(
+                    createShortcutInfo("id-2", componentName, 1),
+                    componentName,
+                    0.8f,
+                    /* appTarget = */ null,
+                ),
+            )
+
+        testSubject.addShortcutResults(
+            appTarget,
+            candidates.toMutableList(),
+            ChooserActivity.TARGET_TYPE_SHORTCUTS_FROM_SHORTCUT_MANAGER,
+        )
+        verify(mTargetDataLoader, never()).getOrLoadDirectShareIcon(any(), any(), any())
+
+        testSubject.completeServiceTargetLoading()
+
+        verify(mTargetDataLoader, times(2)).getOrLoadDirectShareIcon(any(), any(), any())
+    }
+
     @Test
     fun handlePackagesChanged_invokesCallback() {
         testSubject.handlePackagesChanged()
         verify(mPackageChangeCallback, times(1)).beforeHandlingPackagesChanged()
     }
 
+    private fun createSendAdapter(maxRankedTargets: Int) =
+        ChooserListAdapter(
+            context,
+            emptyList(),
+            emptyArray(),
+            emptyList(),
+            false,
+            resolverListController,
+            userHandle,
+            Intent(Intent.ACTION_SEND),
+            Intent(),
+            mock(),
+            packageManager,
+            mEventLog,
+            maxRankedTargets,
+            null,
+            mTargetDataLoader,
+            mPackageChangeCallback,
+        )
+
     private fun createSelectableTargetInfo(isPinned: Boolean = false): TargetInfo {
         val shortcutInfo =
             createShortcutInfo("id-1", ComponentName("pkg", "Class"), 1).apply {
@@ -21,15 +21,19 @@ import android.content.Context
 import android.content.Intent
 import android.content.pm.PackageManager
 import android.content.pm.ResolveInfo
+import android.database.DataSetObserver
 import android.os.UserHandle
 import android.os.UserManager
+import android.view.Choreographer
 import android.view.LayoutInflater
 import com.android.intentresolver.ResolverDataProvider.createActivityInfo
 import com.android.intentresolver.ResolverListAdapter.ResolverListCommunicator
+import com.android.intentresolver.chooser.TargetInfo
 import com.android.intentresolver.icons.TargetDataLoader
 import com.android.intentresolver.util.TestExecutor
 import com.google.common.truth.Truth.assertThat
 import com.google.common.truth.Truth.assertWithMessage
+import java.util.concurrent.Executor
 import org.junit.Test
 import org.mockito.kotlin.any
 import org.mockito.kotlin.doAnswer
@@ -1035,6 +1039,113 @@ class ResolverListAdapterTest {
         verify(communicator, never()).onPostListReady(eq(testSubject), eq(doPostProcessing), any())
     }
 
+    @Test
+    fun notifyTargetChanged_severalChangesInOneFrame_listenerAndObserversNotifiedOnce() {
+        val testSubject = createFrameTestAdapter()
+        val listener = mock<ResolverListAdapter.TargetsChangedListener>()
+        val observer = mock<DataSetObserver>()
+        testSubject.setTargetsChangedListener(listener)
+        testSubject.registerDataSetObserver(observer)
+        val targetOne = mock<TargetInfo>()
+        val targetTwo = mock<TargetInfo>()
+
+        testSubject.onTargetChanged(targetOne)
+        testSubject.onTargetChanged(targetTwo)
+        testSubject.onTargetChanged(targetOne)
+
+        assertThat(testSubject.frameCallbacks).hasSize(1)
+        verify(listener, never()).onTargetsChanged(any())
+        verify(observer, never()).onChanged()
+
+        testSubject.runFrame()
+
+        val inOrder = inOrder(listener, observer)
+        inOrder.verify(listener).onTargetsChanged(eq(setOf(targetOne, targetTwo)))
+        inOrder.verify(observer).onChanged()
+        assertThat(testSubject.frameCallbacks).isEmpty()
+    }
+
+    @Test
+    fun notifyTargetChanged_changesInSeparateFrames_dispatchedSeparately() {
+        val testSubject = createFrameTestAdapter()
+        val listener = mock<ResolverListAdapter.TargetsChangedListener>()
+        testSubject.setTargetsChangedListener(listener)
+        val targetOne = mock<TargetInfo>()
+        val targetTwo = mock<TargetInfo>()
+
+        testSubject.onTargetChanged(targetOne)
+        testSubject.runFrame()
+        testSubject.onTargetChanged(targetTwo)
+        testSubject.runFrame()
+
+        val inOrder = inOrder(listener)
+        inOrder.verify(listener).onTargetsChanged(eq(setOf(targetOne)))
+        inOrder.verify(listener).onTargetsChanged(eq(setOf(targetTwo)))
+    }
+
+    @Test
+    fun notifyTargetChanged_withListener_observersSeeChangedTargetsDispatch() {
+        val testSubject = createFrameTestAdapter()
+        testSubject.setTargetsChangedListener {}
+        val dispatchingStates = ArrayList<Boolean>()
+        testSubject.registerDataSetObserver(
+            object : DataSetObserver() {
+                override fun onChanged() {
+                    dispatchingStates.add(testSubject.isDispatchingChangedTargets)
+                }
+            }
+        )
+
+        testSubject.onTargetChanged(mock<TargetInfo>())
+        testSubject.runFrame()
+        testSubject.notifyDataSetChanged()
+
+        assertThat(dispatchingStates).containsExactly(true, false).inOrder()
+        assertThat(testSubject.isDispatchingChangedTargets).isFalse()
+    }
+
+    @Test
+    fun notifyTargetChanged_withoutListener_observersNotified() {
+        val testSubject = createFrameTestAdapter()
+        val observer = mock<DataSetObserver>()
+        testSubject.registerDataSetObserver(observer)
+
+        testSubject.onTargetChanged(mock<TargetInfo>())
+        testSubject.onTargetChanged(mock<TargetInfo>())
+        testSubject.runFrame()
+
+        verify(observer).onChanged()
+    }
+
+    @Test
+    fun notifyTargetChanged_destroyedBeforeFrame_pendingChangesDropped() {
+        val testSubject = createFrameTestAdapter()
+        val listener = mock<ResolverListAdapter.TargetsChangedListener>()
+        val observer = mock<DataSetObserver>()
+        testSubject.setTargetsChangedListener(listener)
+        testSubject.registerDataSetObserver(observer)
+
+        testSubject.onTargetChanged(mock<TargetInfo>())
+        testSubject.onDestroy()
+
+        assertThat(testSubject.frameCallbacks).isEmpty()
+        verify(listener, never()).onTargetsChanged(any())
+        verify(observer, never()).onChanged()
+    }
+
+    private fun createFrameTestAdapter() =
+        FrameTestResolverListAdapter(
+            context,
+            payloadIntents,
+            mock<ResolverListController>(),
+            userHandle,
+            targetIntent,
+            resolverListCommunicator,
+            targetDataLoader,
+            backgroundExecutor,
+            immediateExecutor,
+        )
+
     private fun createResolvedComponents(
         vararg components: ComponentName
     ): List<ResolvedComponentInfo> {
@@ -1064,3 +1175,51 @@ class ResolverListAdapterTest {
             nonLocalizedLabel = label
         }
 }
+
+/** Runs the frame callbacks on demand instead of on the [android.view.Choreographer]. */
+private class FrameTestResolverListAdapter(
+    context: Context,
+    payloadIntents: List<Intent>,
+    resolverListController: ResolverListController,
+    userHandle: UserHandle,
+    targetIntent: Intent,
+    resolverListCommunicator: ResolverListCommunicator,
+    targetDataLoader: TargetDataLoader,
+    bgExecutor: Executor,
+    callbackExecutor: Executor,
+) :
+    ResolverListAdapter(
+        context,
+        payloadIntents,
+        /*initialIntents=*/ null,
+        /*rList=*/ null,
+        /*filterLastUsed=*/ true,
+        resolverListController,
+        userHandle,
+        targetIntent,
+        resolverListCommunicator,
+        /*initialIntentsUserSpace=*/ userHandle,
+        targetDataLoader,
+        bgExecutor,
+        callbackExecutor,
+    ) {
+    val frameCallbacks = ArrayList<Choreographer.FrameCallback>()
+
+    override fun postFrameCallback(callback: Choreographer.FrameCallback) {
+        frameCallbacks.add(callback)
+    }
+
+    override fun removeFrameCallback(callback: Choreographer.FrameCallback) {
+        frameCallbacks.remove(callback)
+    }
+
+    fun onTargetChanged(info: TargetInfo) {
+        notifyTargetChanged(info)
+    }
+
+    fun runFrame() {
+        val callbacks = frameCallbacks.toList()
+        frameCallbacks.clear()
+        callbacks.forEach { it.doFrame(/* frameTimeNanos= */ 0) }
+    }
+}
@@ -29,6 +29,7 @@ import androidx.test.platform.app.InstrumentationRegistry
 import com.android.intentresolver.Flags.FLAG_REBUILD_ADAPTERS_ON_TARGET_PINNING
 import com.android.intentresolver.chooser.DisplayResolveInfo
 import com.android.intentresolver.chooser.TargetInfo
+import com.android.intentresolver.shortcuts.ShortcutCandidate
 import com.google.common.truth.Correspondence
 import com.google.common.truth.Truth.assertThat
 import com.google.common.truth.Truth.assertWithMessage
@@ -106,16 +107,11 @@ class ShortcutSelectionLogicTest {
             )
 
         val isUpdated =
-            testSubject.addServiceResults(
+            testSubject.addShortcutResults(
                 /* origTarget = */ baseDisplayInfo,
                 /* origTargetScore = */ 0.1f,
-                /* targets = */ listOf(sc1, sc2),
-                /* isShortcutResult = */ true,
-                /* directShareToShortcutInfos = */ emptyMap(),
-                /* directShareToAppTargets = */ emptyMap(),
-                /* userContext = */ mock(),
-                /* targetIntent = */ mock(),
-                /* refererFillInIntent = */ mock(),
+                /* candidates = */ listOf(sc1, sc2).map { it.toCandidate() }.toMutableList(),
+                /* referrerFillInIntent = */ mock(),
                 /* maxRankedTargets = */ 4,
                 /* serviceTargets = */ serviceResults,
             )
@@ -140,16 +136,11 @@ class ShortcutSelectionLogicTest {
             )
 
         val isUpdated =
-            testSubject.addServiceResults(
+            testSubject.addShortcutResults(
                 /* origTarget = */ baseDisplayInfo,
                 /* origTargetScore = */ 0.1f,
-                /* targets = */ listOf(sc1, sc2),
-                /* isShortcutResult = */ true,
-                /* directShareToShortcutInfos = */ emptyMap(),
-                /* directShareToAppTargets = */ emptyMap(),
-                /* userContext = */ mock(),
-                /* targetIntent = */ mock(),
-                /* refererFillInIntent = */ mock(),
+                /* candidates = */ listOf(sc1, sc2).map { it.toCandidate() }.toMutableList(),
+                /* referrerFillInIntent = */ mock(),
                 /* maxRankedTargets = */ 4,
                 /* serviceTargets = */ serviceResults,
             )
@@ -174,16 +165,11 @@ class ShortcutSelectionLogicTest {
             )
 
         val isUpdated =
-            testSubject.addServiceResults(
+            testSubject.addShortcutResults(
                 /* origTarget = */ baseDisplayInfo,
                 /* origTargetScore = */ 0.1f,
-                /* targets = */ listOf(sc1, sc2),
-                /* isShortcutResult = */ true,
-                /* directShareToShortcutInfos = */ emptyMap(),
-                /* directShareToAppTargets = */ emptyMap(),
-                /* userContext = */ mock(),
-                /* targetIntent = */ mock(),
-                /* refererFillInIntent = */ mock(),
+                /* candidates = */ listOf(sc1, sc2).map { it.toCandidate() }.toMutableList(),
+                /* referrerFillInIntent = */ mock(),
                 /* maxRankedTargets = */ 1,
                 /* serviceTargets = */ serviceResults,
             )
@@ -209,29 +195,19 @@ class ShortcutSelectionLogicTest {
                 /* applySharingAppLimits = */ true,
             )
 
-        testSubject.addServiceResults(
+        testSubject.addShortcutResults(
             /* origTarget = */ baseDisplayInfo,
             /* origTargetScore = */ 0.1f,
-            /* targets = */ listOf(pkgAsc1, pkgAsc2),
-            /* isShortcutResult = */ true,
-            /* directShareToShortcutInfos = */ emptyMap(),
-            /* directShareToAppTargets = */ emptyMap(),
-            /* userContext = */ mock(),
-            /* targetIntent = */ mock(),
-            /* refererFillInIntent = */ mock(),
+            /* candidates = */ listOf(pkgAsc1, pkgAsc2).map { it.toCandidate() }.toMutableList(),
+            /* referrerFillInIntent = */ mock(),
             /* maxRankedTargets = */ 4,
             /* serviceTargets = */ serviceResults,
         )
-        testSubject.addServiceResults(
+        testSubject.addShortcutResults(
             /* origTarget = */ otherBaseDisplayInfo,
             /* origTargetScore = */ 0.2f,
-            /* targets = */ listOf(pkgBsc1, pkgBsc2),
-            /* isShortcutResult = */ true,
-            /* directShareToShortcutInfos = */ emptyMap(),
-            /* directShareToAppTargets = */ emptyMap(),
-            /* userContext = */ mock(),
-            /* targetIntent = */ mock(),
-            /* refererFillInIntent = */ mock(),
+            /* candidates = */ listOf(pkgBsc1, pkgBsc2).map { it.toCandidate() }.toMutableList(),
+            /* referrerFillInIntent = */ mock(),
             /* maxRankedTargets = */ 4,
             /* serviceTargets = */ serviceResults,
         )
@@ -255,21 +231,14 @@ class ShortcutSelectionLogicTest {
             )
 
         val isUpdated =
-            testSubject.addServiceResults(
+            testSubject.addShortcutResults(
                 /* origTarget = */ baseDisplayInfo,
                 /* origTargetScore = */ 0.1f,
-                /* targets = */ listOf(sc1, sc2),
-                /* isShortcutResult = */ true,
-                /* directShareToShortcutInfos = */ mapOf(
-                    sc1 to
-                        createShortcutInfo(PACKAGE_A.shortcutId(1), sc1.componentName, 1).apply {
-                            addFlags(ShortcutInfo.FLAG_PINNED)
-                        }
+                /* candidates = */ mutableListOf(
+                    sc1.toCandidate(isPinned = true),
+                    sc2.toCandidate(),
                 ),
-                /* directShareToAppTargets = */ emptyMap(),
-                /* userContext = */ mock(),
-                /* targetIntent = */ mock(),
-                /* refererFillInIntent = */ mock(),
+                /* referrerFillInIntent = */ mock(),
                 /* maxRankedTargets = */ 4,
                 /* serviceTargets = */ serviceResults,
             )
@@ -299,8 +268,6 @@ class ShortcutSelectionLogicTest {
             /* origTarget = */ baseDisplayInfo,
             /* origTargetScore = */ 0f,
             /* targets = */ listOf(sc1, sc2, sc3),
-            /* isShortcutResult = */ false,
-            /* directShareToShortcutInfos = */ emptyMap(),
             /* directShareToAppTargets = */ emptyMap(),
             /* userContext = */ context,
             /* targetIntent = */ mock(),
@@ -318,7 +285,7 @@ class ShortcutSelectionLogicTest {
 
     @Test
     @EnableFlags(FLAG_REBUILD_ADAPTERS_ON_TARGET_PINNING)
-    fun addServiceResults_sameShortcutWithDifferentPinnedStatus_shortcutUpdated() {
+    fun addShortcutResults_sameShortcutWithDifferentPinnedStatus_shortcutUpdated() {
         val serviceResults = ArrayList<TargetInfo>()
         val sc1 =
             createChooserTarget(
@@ -340,37 +307,20 @@ class ShortcutSelectionLogicTest {
                 /* applySharingAppLimits = */ false,
             )
 
-        testSubject.addServiceResults(
+        testSubject.addShortcutResults(
             /* origTarget = */ baseDisplayInfo,
             /* origTargetScore = */ 0.1f,
-            /* targets = */ listOf(sc1),
-            /* isShortcutResult = */ true,
-            /* directShareToShortcutInfos = */ mapOf(
-                sc1 to createShortcutInfo(PACKAGE_A.shortcutId(1), sc1.componentName, 1)
-            ),
-            /* directShareToAppTargets = */ emptyMap(),
-            /* userContext = */ mock(),
-            /* targetIntent = */ mock(),
-            /* refererFillInIntent = */ mock(),
+            /* candidates = */ mutableListOf(sc1.toCandidate()),
+            /* referrerFillInIntent = */ mock(),
             /* maxRankedTargets = */ 4,
             /* serviceTargets = */ serviceResults,
         )
         val isUpdated =
-            testSubject.addServiceResults(
+            testSubject.addShortcutResults(
                 /* origTarget = */ baseDisplayInfo,
                 /* origTargetScore = */ 0.1f,
-                /* targets = */ listOf(sc1),
-                /* isShortcutResult = */ true,
-                /* directShareToShortcutInfos = */ mapOf(
-                    sc1 to
-                        createShortcutInfo(PACKAGE_A.shortcutId(1), sc1.componentName, 1).apply {
-                            addFlags(ShortcutInfo.FLAG_PINNED)
-                        }
-                ),
-                /* directShareToAppTargets = */ emptyMap(),
-                /* userContext = */ mock(),
-                /* targetIntent = */ mock(),
-                /* refererFillInIntent = */ mock(),
+                /* candidates = */ mutableListOf(sc1.toCandidate(isPinned = true)),
+                /* referrerFillInIntent = */ mock(),
                 /* maxRankedTargets = */ 4,
                 /* serviceTargets = */ serviceResults,
             )
@@ -384,5 +334,88 @@ class ShortcutSelectionLogicTest {
         assertThat(serviceResults[0].isPinned).isTrue()
     }
 
+    @Test
+    fun addShortcutResults_perPackageLimit_topCandidatesSelected() {
+        val serviceResults = ArrayList<TargetInfo>()
+        val sc1 = packageTargets[PACKAGE_A, 0]
+        val sc2 = packageTargets[PACKAGE_A, 1]
+        val sc3 = packageTargets[PACKAGE_A, 2]
+        val testSubject =
+            ShortcutSelectionLogic(
+                /* maxShortcutTargetsPerApp = */ 2,
+                /* applySharingAppLimits = */ true,
+            )
+
+        val isUpdated =
+            testSubject.addShortcutResults(
+                /* origTarget = */ baseDisplayInfo,
+                /* origTargetScore = */ 0.1f,
+                /* candidates = */ listOf(sc1, sc2, sc3).map { it.toCandidate() }.toMutableList(),
+                /* referrerFillInIntent = */ mock(),
+                /* maxRankedTargets = */ 4,
+                /* serviceTargets = */ serviceResults,
+            )
+
+        assertWithMessage("Updates are expected").that(isUpdated).isTrue()
+        assertWithMessage("Two top scored shortcuts are expected")
+            .that(serviceResults)
+            .comparingElementsUsing(targetInfoChooserTargetCorrespondence)
+            .containsExactly(sc3, sc2)
+            .inOrder()
+    }
+
+    @Test
+    fun addShortcutResults_duplicateCandidate_notAdded() {
+        val serviceResults = ArrayList<TargetInfo>()
+        val sc1 = packageTargets[PACKAGE_A, 0]
+        val testSubject =
+            ShortcutSelectionLogic(
+                /* maxShortcutTargetsPerApp = */ 1,
+                /* applySharingAppLimits = */ false,
+            )
+
+        testSubject.addShortcutResults(
+            /* origTarget = */ baseDisplayInfo,
+            /* origTargetScore = */ 0.1f,
+            /* candidates = */ mutableListOf(sc1.toCandidate()),
+            /* referrerFillInIntent = */ mock(),
+            /* maxRankedTargets = */ 4,
+            /* serviceTargets = */ serviceResults,
+        )
+        val isUpdated =
+            testSubject.addShortcutResults(
+                /* origTarget = */ baseDisplayInfo,
+                /* origTargetScore = */ 0.1f,
+                /* candidates = */ mutableListOf(sc1.toCandidate()),
+                /* referrerFillInIntent = */ mock(),
+                /* maxRankedTargets = */ 4,
+                /* serviceTargets = */ serviceResults,
+            )
+
+        assertWithMessage("No updates are expected").that(isUpdated).isFalse()
+        assertWithMessage("The shortcut is expected to be added once")
+            .that(serviceResults)
+            .comparingElementsUsing(targetInfoChooserTargetCorrespondence)
+            .containsExactly(sc1)
+    }
+
+    /** Creates a candidate for a shortcut with the target's component, title, and score. */
+    private fun ChooserTarget.toCandidate(isPinned: Boolean = false): ShortcutCandidate {
+        val context = mock<Context> { on { packageName } doReturn componentName.packageName }
+        val shortcutInfo =
+            ShortcutInfo.Builder(context, intentExtras.getString(Intent.EXTRA_SHORTCUT_ID)!!)
+                .setShortLabel(title)
+                .setLongLabel(title)
+                .setActivity(componentName)
+                .setRank(1)
+                .build()
+                .apply {
+                    if (isPinned) {
+                        addFlags(ShortcutInfo.FLAG_PINNED)
+                    }
+                }
+        return ShortcutCandidate(shortcutInfo, componentName, score, /* appTarget = */ null)
+    }
+
     private fun String.shortcutId(id: Int) = "$this.$id"
 }
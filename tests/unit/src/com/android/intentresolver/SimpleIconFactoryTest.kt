@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver
+
+import android.graphics.Bitmap
+import android.graphics.Color
+import android.graphics.drawable.AdaptiveIconDrawable
+import android.graphics.drawable.BitmapDrawable
+import android.graphics.drawable.ColorDrawable
+import android.graphics.drawable.Drawable
+import android.os.Process
+import android.view.ContextThemeWrapper
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.google.common.truth.Truth.assertThat
+import com.google.common.truth.Truth.assertWithMessage
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class SimpleIconFactoryTest {
+    private val context =
+        ContextThemeWrapper(
+            InstrumentationRegistry.getInstrumentation().targetContext,
+            R.style.Theme_DeviceDefault_Chooser,
+        )
+    private val adaptiveIcon =
+        AdaptiveIconDrawable(ColorDrawable(Color.YELLOW), ColorDrawable(Color.MAGENTA))
+    private val legacyIcon = createBitmapDrawable(width = 96, height = 96, Color.GREEN)
+    private val shortcutIcon = createBitmapDrawable(width = 192, height = 128, Color.BLUE)
+
+    @Before
+    fun setUp() {
+        SimpleIconFactory.setPoolEnabled(false)
+    }
+
+    @After
+    fun tearDown() {
+        SimpleIconFactory.setPoolEnabled(true)
+        SimpleIconFactory.setScratchBuffersEnabled(true)
+    }
+
+    @Test
+    fun createUserBadgedIconBitmap_scratchBuffers_sameAsFreshAllocations() {
+        val expected = render(scratchBuffersEnabled = false, ::userBadgedIcon)
+        val actual = render(scratchBuffersEnabled = true, ::userBadgedIcon)
+
+        assertSameBitmaps(actual, expected)
+    }
+
+    @Test
+    fun createAppBadgedIconBitmap_scratchBuffers_sameAsFreshAllocations() {
+        val expected = render(scratchBuffersEnabled = false, ::appBadgedIcon)
+        val actual = render(scratchBuffersEnabled = true, ::appBadgedIcon)
+
+        assertSameBitmaps(actual, expected)
+    }
+
+    @Test
+    fun trimPool_pooledInstancesDropped() {
+        SimpleIconFactory.setPoolEnabled(true)
+        val factory = SimpleIconFactory.obtain(context)
+        factory.recycle()
+
+        SimpleIconFactory.trimPool()
+
+        SimpleIconFactory.obtain(context).use { assertThat(it).isNotSameInstanceAs(factory) }
+    }
+
+    private fun userBadgedIcon(factory: SimpleIconFactory, icon: Drawable): Bitmap =
+        factory.createUserBadgedIconBitmap(icon, Process.myUserHandle())
+
+    private fun appBadgedIcon(factory: SimpleIconFactory, appIcon: Drawable): Bitmap =
+        factory.createAppBadgedIconBitmap(shortcutIcon, userBadgedIcon(factory, appIcon))
+
+    /** Renders with a single factory so the later icons reuse the scratch buffers, if enabled. */
+    private fun render(
+        scratchBuffersEnabled: Boolean,
+        renderIcon: (SimpleIconFactory, Drawable) -> Bitmap,
+    ): List<Bitmap> {
+        SimpleIconFactory.setScratchBuffersEnabled(scratchBuffersEnabled)
+        return SimpleIconFactory.obtain(context).use { factory ->
+            listOf(adaptiveIcon, legacyIcon, adaptiveIcon).map { renderIcon(factory, it) }
+        }
+    }
+
+    private fun assertSameBitmaps(actual: List<Bitmap>, expected: List<Bitmap>) {
+        assertThat(actual).hasSize(expected.size)
+        actual.zip(expected).forEachIndexed { i, (actualBitmap, expectedBitmap) ->
+            assertWithMessage("icon #%s", i).that(actualBitmap.sameAs(expectedBitmap)).isTrue()
+        }
+    }
+
+    private fun createBitmapDrawable(width: Int, height: Int, color: Int) =
+        BitmapDrawable(
+            context.resources,
+            Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888).apply {
+                eraseColor(color)
+            },
+        )
+}
@@ -16,8 +16,18 @@
 
 package com.android.intentresolver
 
+import android.content.pm.ActivityInfo
+import android.content.pm.ApplicationInfo
+import android.content.pm.PackageManager
+import android.content.res.Resources
 import com.google.common.truth.Truth.assertThat
 import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
 
 /**
  * Unit tests for the various implementations of {@link TargetPresentationGetter}.
@@ -233,4 +243,44 @@ class TargetPresentationGetterTest {
         // With the substitute permission, empty sublabels get converted to nulls.
         assertThat(presentationGetter.getSubLabel()).isNull()
     }
+
+    @Test
+    fun testActivitiesOfOnePackage_shareResourceLoad() {
+        val resources =
+            mock<Resources> {
+                on { getString(1) } doReturn "app_label"
+                on { getString(2) } doReturn "first_activity"
+                on { getString(3) } doReturn "second_activity"
+            }
+        val packageManager =
+            mock<PackageManager> {
+                on { getResourcesForApplication(any<ApplicationInfo>()) } doReturn resources
+                on { checkPermission(any(), any()) } doReturn PackageManager.PERMISSION_DENIED
+            }
+        val appInfo =
+            ApplicationInfo().apply {
+                packageName = "org.pkg"
+                labelRes = 1
+            }
+        val factory =
+            TargetPresentationGetter.Factory({ error("No icons expected") }, packageManager, 100)
+
+        val getters =
+            listOf(2, 3).map { activityLabelRes ->
+                factory.makePresentationGetter(
+                    ActivityInfo().apply {
+                        packageName = appInfo.packageName
+                        labelRes = activityLabelRes
+                        applicationInfo = appInfo
+                    }
+                )
+            }
+
+        assertThat(getters.map { it.getLabel() }).containsExactly("app_label", "app_label")
+        assertThat(getters.map { it.getSubLabel() })
+            .containsExactly("first_activity", "second_activity")
+            .inOrder()
+        verify(packageManager, times(1)).getResourcesForApplication(any<ApplicationInfo>())
+        verify(packageManager, times(1)).checkPermission(any(), eq(appInfo.packageName))
+    }
 }
@@ -65,6 +65,7 @@ class CachingImagePreviewImageLoaderTest {
             thumbnailLoader = fakeThumbnailLoader,
             cacheSize = testCacheSize,
             maxConcurrency = testMaxConcurrency,
+            thumbnailSize = previewSize.width,
         )
 
     @Test
@@ -277,4 +278,75 @@ class CachingImagePreviewImageLoaderTest {
             // Assert
             assertThat(fakeThumbnailLoader.invokeCalls).containsExactly(testUris[0])
         }
+
+    @Test
+    fun invoke_cached_smallerSizeUsesTheCachedImage() =
+        testScope.runTest {
+            // Arrange
+            val requestedSizes = mutableListOf<Size>()
+            fakeThumbnailLoader.fakeInvoke[testUris[0]] = { size ->
+                requestedSizes.add(size)
+                testBitmap
+            }
+
+            // Act
+            imageLoader.invoke(testUris[0], previewSize, caching = true)
+            imageLoader.invoke(testUris[0], Size(100, 100), caching = true)
+            runCurrent()
+
+            // Assert
+            assertThat(requestedSizes).containsExactly(previewSize)
+        }
+
+    @Test
+    fun invoke_cached_largerSizeLoadsTheImageAgain() =
+        testScope.runTest {
+            // Arrange
+            val smallSize = Size(100, 100)
+            val requestedSizes = mutableListOf<Size>()
+            fakeThumbnailLoader.fakeInvoke[testUris[0]] = { size ->
+                requestedSizes.add(size)
+                testBitmap
+            }
+
+            // Act
+            imageLoader.invoke(testUris[0], smallSize, caching = true)
+            imageLoader.invoke(testUris[0], previewSize, caching = true)
+            imageLoader.invoke(testUris[0], smallSize, caching = true)
+            runCurrent()
+
+            // Assert
+            assertThat(requestedSizes).containsExactly(smallSize, previewSize).inOrder()
+        }
+
+    @Test
+    fun invoke_cached_largerSizeKeepsTheLoadedImageUntilReplaced() =
+        testScope.runTest {
+            // Arrange
+            val smallSize = Size(100, 100)
+            val smallBitmap = Bitmap.createBitmap(1, 1, Bitmap.Config.ALPHA_8)
+            fakeThumbnailLoader.fakeInvoke[testUris[0]] = { size ->
+                if (size == smallSize) {
+                    smallBitmap
+                } else {
+                    delay(testJobTime)
+                    testBitmap
+                }
+            }
+            imageLoader.invoke(testUris[0], smallSize, caching = true)
+            runCurrent()
+
+            // Act
+            var result: Bitmap? = null
+            imageLoader.loadImage(testScope, testUris[0], previewSize) { result = it }
+            runCurrent()
+            val cachedWhileLoading = imageLoader.getCachedBitmap(testUris[0])
+            advanceTimeBy(testJobTime)
+            runCurrent()
+
+            // Assert
+            assertThat(cachedWhileLoading).isSameInstanceAs(smallBitmap)
+            assertThat(result).isSameInstanceAs(testBitmap)
+            assertThat(imageLoader.getCachedBitmap(testUris[0])).isSameInstanceAs(testBitmap)
+        }
 }
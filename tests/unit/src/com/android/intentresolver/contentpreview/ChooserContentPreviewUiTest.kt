@@ -37,6 +37,8 @@ import org.junit.Test
 import org.mockito.Mockito.never
 import org.mockito.Mockito.times
 import org.mockito.Mockito.verify
+import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.eq
 import org.mockito.kotlin.mock
 import org.mockito.kotlin.whenever
 
@@ -61,7 +63,11 @@ class ChooserContentPreviewUiTest {
     private val transitionCallback = mock<ImagePreviewView.TransitionElementStatusCallback>()
     @get:Rule val checkFlagsRule: CheckFlagsRule = DeviceFlagsValueProvider.createCheckFlagsRule()
 
-    private fun createContentPreviewUi(action: String, sharedText: CharSequence? = null) =
+    private fun createContentPreviewUi(
+        action: String,
+        sharedText: CharSequence? = null,
+        resolvePreviewTypeAsync: Boolean = false,
+    ) =
         ChooserContentPreviewUi(
             testScope,
             previewData,
@@ -77,6 +83,7 @@ class ChooserContentPreviewUiTest {
             headlineGenerator,
             ContentTypeHint.NONE,
             testMetadataText,
+            resolvePreviewTypeAsync,
         )
 
     @Test
@@ -124,11 +131,13 @@ class ChooserContentPreviewUiTest {
         whenever(previewData.firstFileInfo)
             .thenReturn(FileInfo.Builder(uri).withPreviewUri(uri).withMimeType("image/png").build())
         whenever(previewData.imagePreviewFileInfoFlow).thenReturn(MutableSharedFlow())
+        whenever(previewData.mimeTypeFileInfoFlow).thenReturn(MutableSharedFlow())
         val testSubject = createContentPreviewUi(action = Intent.ACTION_SEND)
         assertThat(testSubject.preferredContentPreview)
             .isEqualTo(ContentPreviewType.CONTENT_PREVIEW_IMAGE)
         assertThat(testSubject.mContentPreviewUi).isInstanceOf(UnifiedContentPreviewUi::class.java)
         verify(previewData, times(1)).imagePreviewFileInfoFlow
+        verify(previewData, times(1)).mimeTypeFileInfoFlow
         verify(transitionCallback, never()).onAllTransitionElementsReady()
     }
 
@@ -148,4 +157,99 @@ class ChooserContentPreviewUiTest {
         assertThat(testSubject.preferredContentPreview)
             .isEqualTo(ContentPreviewType.CONTENT_PREVIEW_PAYLOAD_SELECTION)
     }
+
+    @Test
+    fun test_asyncUnresolvedFilePreviewType_usePendingPreviewUiUntilResolved() {
+        whenever(previewData.isPreviewTypeResolved).thenReturn(false)
+        val testSubject =
+            createContentPreviewUi(action = Intent.ACTION_SEND, resolvePreviewTypeAsync = true)
+
+        assertThat(testSubject.mContentPreviewUi).isInstanceOf(PendingContentPreviewUi::class.java)
+        verify(transitionCallback, never()).onAllTransitionElementsReady()
+        verify(previewData, never()).previewType
+
+        val typeCallback = argumentCaptor<Consumer<Int>>()
+        verify(previewData).resolvePreviewType(eq(testScope), typeCallback.capture())
+        typeCallback.firstValue.accept(ContentPreviewType.CONTENT_PREVIEW_FILE)
+
+        val pendingPreviewUi = testSubject.mContentPreviewUi as PendingContentPreviewUi
+        assertThat(pendingPreviewUi.contentPreviewUi)
+            .isInstanceOf(FileContentPreviewUi::class.java)
+        assertThat(testSubject.preferredContentPreview)
+            .isEqualTo(ContentPreviewType.CONTENT_PREVIEW_FILE)
+        verify(transitionCallback, times(1)).onAllTransitionElementsReady()
+    }
+
+    @Test
+    fun test_asyncUnresolvedImagePreviewType_useImagePreviewUiOnceResolved() {
+        val uri = Uri.parse("content://org.pkg.app/img.png")
+        whenever(previewData.isPreviewTypeResolved).thenReturn(false)
+        whenever(previewData.uriCount).thenReturn(2)
+        whenever(previewData.imagePreviewFileInfoFlow).thenReturn(MutableSharedFlow())
+        whenever(previewData.mimeTypeFileInfoFlow).thenReturn(MutableSharedFlow())
+        val testSubject =
+            createContentPreviewUi(action = Intent.ACTION_SEND, resolvePreviewTypeAsync = true)
+
+        val typeCallback = argumentCaptor<Consumer<Int>>()
+        verify(previewData).resolvePreviewType(eq(testScope), typeCallback.capture())
+        typeCallback.firstValue.accept(ContentPreviewType.CONTENT_PREVIEW_IMAGE)
+        val fileInfoCallback = argumentCaptor<Consumer<FileInfo?>>()
+        verify(previewData).resolveFirstFileInfo(eq(testScope), fileInfoCallback.capture())
+        fileInfoCallback.firstValue.accept(
+            FileInfo.Builder(uri).withPreviewUri(uri).withMimeType("image/png").build()
+        )
+
+        val pendingPreviewUi = testSubject.mContentPreviewUi as PendingContentPreviewUi
+        assertThat(pendingPreviewUi.contentPreviewUi)
+            .isInstanceOf(UnifiedContentPreviewUi::class.java)
+        assertThat(testSubject.preferredContentPreview)
+            .isEqualTo(ContentPreviewType.CONTENT_PREVIEW_IMAGE)
+        verify(previewData, never()).firstFileInfo
+        verify(transitionCallback, never()).onAllTransitionElementsReady()
+    }
+
+    @Test
+    fun test_asyncUnresolvedPreviewType_resolvedTypeIsDeliveredOnceResolved() {
+        val uri = Uri.parse("content://org.pkg.app/img.png")
+        whenever(previewData.isPreviewTypeResolved).thenReturn(false)
+        whenever(previewData.uriCount).thenReturn(2)
+        whenever(previewData.imagePreviewFileInfoFlow).thenReturn(MutableSharedFlow())
+        whenever(previewData.mimeTypeFileInfoFlow).thenReturn(MutableSharedFlow())
+        val testSubject =
+            createContentPreviewUi(action = Intent.ACTION_SEND, resolvePreviewTypeAsync = true)
+        val deliveredTypes = ArrayList<Int>()
+
+        testSubject.getPreferredContentPreview { deliveredTypes.add(it) }
+        assertThat(deliveredTypes).isEmpty()
+
+        val typeCallback = argumentCaptor<Consumer<Int>>()
+        verify(previewData).resolvePreviewType(eq(testScope), typeCallback.capture())
+        typeCallback.firstValue.accept(ContentPreviewType.CONTENT_PREVIEW_IMAGE)
+        assertThat(deliveredTypes).isEmpty()
+
+        val fileInfoCallback = argumentCaptor<Consumer<FileInfo?>>()
+        verify(previewData).resolveFirstFileInfo(eq(testScope), fileInfoCallback.capture())
+        fileInfoCallback.firstValue.accept(
+            FileInfo.Builder(uri).withPreviewUri(uri).withMimeType("image/png").build()
+        )
+        assertThat(deliveredTypes).containsExactly(ContentPreviewType.CONTENT_PREVIEW_IMAGE)
+
+        testSubject.getPreferredContentPreview { deliveredTypes.add(it) }
+        assertThat(deliveredTypes)
+            .containsExactly(
+                ContentPreviewType.CONTENT_PREVIEW_IMAGE,
+                ContentPreviewType.CONTENT_PREVIEW_IMAGE,
+            )
+    }
+
+    @Test
+    fun test_syncPreviewType_typeIsDeliveredImmediately() {
+        whenever(previewData.previewType).thenReturn(ContentPreviewType.CONTENT_PREVIEW_FILE)
+        val testSubject = createContentPreviewUi(action = Intent.ACTION_SEND)
+        val deliveredTypes = ArrayList<Int>()
+
+        testSubject.getPreferredContentPreview { deliveredTypes.add(it) }
+
+        assertThat(deliveredTypes).containsExactly(ContentPreviewType.CONTENT_PREVIEW_FILE)
+    }
 }
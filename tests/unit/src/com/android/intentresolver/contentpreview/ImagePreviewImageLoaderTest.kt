@@ -16,6 +16,7 @@
 
 package com.android.intentresolver.contentpreview
 
+import android.content.ComponentCallbacks2
 import android.content.ContentResolver
 import android.graphics.Bitmap
 import android.net.Uri
@@ -53,6 +54,7 @@ import org.mockito.kotlin.anyOrNull
 import org.mockito.kotlin.doAnswer
 import org.mockito.kotlin.doReturn
 import org.mockito.kotlin.doThrow
+import org.mockito.kotlin.eq
 import org.mockito.kotlin.mock
 import org.mockito.kotlin.never
 import org.mockito.kotlin.times
@@ -84,11 +86,11 @@ class ImagePreviewImageLoaderTest {
         scope.runTest {
             testSubject.prePopulate(listOf(uriOne to previewSize, uriTwo to previewSize))
 
-            verify(contentResolver, times(1)).loadThumbnail(uriOne, imageSize, null)
-            verify(contentResolver, never()).loadThumbnail(uriTwo, imageSize, null)
+            verify(contentResolver, times(1)).loadThumbnail(eq(uriOne), eq(imageSize), any())
+            verify(contentResolver, never()).loadThumbnail(eq(uriTwo), eq(imageSize), any())
 
             testSubject(uriOne, previewSize)
-            verify(contentResolver, times(1)).loadThumbnail(uriOne, imageSize, null)
+            verify(contentResolver, times(1)).loadThumbnail(eq(uriOne), eq(imageSize), any())
         }
 
     @Test
@@ -100,6 +102,39 @@ class ImagePreviewImageLoaderTest {
             verify(contentResolver, times(1)).loadThumbnail(any(), any(), anyOrNull())
         }
 
+    @Test
+    fun invoke_smallerSizeRequested_returnsCachedImage() =
+        scope.runTest {
+            val smallSize = Size(100, 100)
+            testSubject(uriOne, imageSize)
+            testSubject(uriOne, smallSize)
+
+            verify(contentResolver, times(1)).loadThumbnail(eq(uriOne), eq(imageSize), any())
+            verify(contentResolver, never()).loadThumbnail(eq(uriOne), eq(smallSize), any())
+        }
+
+    @Test
+    fun invoke_largerSizeRequested_loadsImageAgain() =
+        scope.runTest {
+            val smallSize = Size(100, 100)
+            testSubject(uriOne, smallSize)
+            testSubject(uriOne, previewSize)
+            testSubject(uriOne, smallSize)
+
+            verify(contentResolver, times(1)).loadThumbnail(eq(uriOne), eq(smallSize), any())
+            verify(contentResolver, times(1)).loadThumbnail(eq(uriOne), eq(imageSize), any())
+        }
+
+    @Test
+    fun onTrimMemory_background_dropsCachedImages() =
+        scope.runTest {
+            testSubject(uriOne, previewSize)
+            testSubject.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND)
+            testSubject(uriOne, previewSize)
+
+            verify(contentResolver, times(2)).loadThumbnail(eq(uriOne), eq(imageSize), any())
+        }
+
     @Test
     fun invoke_whenInstructed_doesNotCache() =
         scope.runTest {
@@ -137,8 +172,8 @@ class ImagePreviewImageLoaderTest {
             testSubject(uriTwo, previewSize)
             testSubject(uriOne, previewSize)
 
-            verify(contentResolver, times(2)).loadThumbnail(uriOne, imageSize, null)
-            verify(contentResolver, times(1)).loadThumbnail(uriTwo, imageSize, null)
+            verify(contentResolver, times(2)).loadThumbnail(eq(uriOne), eq(imageSize), any())
+            verify(contentResolver, times(1)).loadThumbnail(eq(uriTwo), eq(imageSize), any())
         }
 
     @Test
@@ -148,7 +183,7 @@ class ImagePreviewImageLoaderTest {
             testSubject(uriOne, previewSize)
             testSubject(uriOne, previewSize)
 
-            verify(contentResolver, times(2)).loadThumbnail(uriOne, imageSize, null)
+            verify(contentResolver, times(2)).loadThumbnail(eq(uriOne), eq(imageSize), any())
         }
 
     @Test(expected = CancellationException::class)
@@ -206,7 +241,7 @@ class ImagePreviewImageLoaderTest {
             }
             testSubject(uriOne, previewSize, true)
 
-            verify(contentResolver, times(1)).loadThumbnail(uriOne, imageSize, null)
+            verify(contentResolver, times(1)).loadThumbnail(eq(uriOne), eq(imageSize), any())
         }
 
     @Test
@@ -247,7 +282,7 @@ class ImagePreviewImageLoaderTest {
                 )
             testSubject(uriOne, previewSize, false)
 
-            verify(contentResolver, times(1)).loadThumbnail(uriOne, imageSize, null)
+            verify(contentResolver, times(1)).loadThumbnail(eq(uriOne), eq(imageSize), any())
             assertThat(acquireCount.get()).isEqualTo(1)
             assertThat(releaseCount.get()).isEqualTo(1)
         }
@@ -289,10 +324,55 @@ class ImagePreviewImageLoaderTest {
 
             semaphoreDeferred.complete(Unit)
 
-            verify(contentResolver, times(1)).loadThumbnail(uriOne, imageSize, null)
+            verify(contentResolver, times(1)).loadThumbnail(eq(uriOne), eq(imageSize), any())
             assertThat(releaseCount.get()).isEqualTo(1)
         }
 
+    @Test
+    fun invoke_allRequestsCancelled_loadIsCancelled() =
+        scope.runTest {
+            val semaphore = Semaphore(1).apply { acquire() }
+            val testSubject =
+                ImagePreviewImageLoader(
+                    CoroutineScope(coroutineContext + dispatcher),
+                    imageSize.width,
+                    contentResolver,
+                    cacheSize = 1,
+                    semaphore,
+                )
+            val request1 = launch(start = UNDISPATCHED) { testSubject(uriOne, previewSize) }
+            val request2 = launch(start = UNDISPATCHED) { testSubject(uriOne, previewSize) }
+
+            request1.cancel()
+            request2.cancel()
+            semaphore.release()
+
+            verify(contentResolver, never()).loadThumbnail(any(), any(), anyOrNull())
+            assertThat(semaphore.availablePermits).isEqualTo(1)
+        }
+
+    @Test
+    fun invoke_someRequestsCancelled_loadIsNotCancelled() =
+        scope.runTest {
+            val semaphore = Semaphore(1).apply { acquire() }
+            val testSubject =
+                ImagePreviewImageLoader(
+                    CoroutineScope(coroutineContext + dispatcher),
+                    imageSize.width,
+                    contentResolver,
+                    cacheSize = 1,
+                    semaphore,
+                )
+            val request1 = launch(start = UNDISPATCHED) { testSubject(uriOne, previewSize) }
+            val request2 = async(start = UNDISPATCHED) { testSubject(uriOne, previewSize) }
+
+            request1.cancel()
+            semaphore.release()
+
+            assertThat(request2.await()).isSameInstanceAs(bitmap)
+            verify(contentResolver, times(1)).loadThumbnail(eq(uriOne), eq(imageSize), any())
+        }
+
     @Test
     fun invoke_multipleSimultaneousCalls_limitOnNumberOfSimultaneousOutgoingCallsIsRespected() =
         scope.runTest {
@@ -26,12 +26,15 @@ import android.platform.test.flag.junit.FlagsParameterization
 import android.platform.test.flag.junit.SetFlagsRule
 import android.provider.DocumentsContract
 import android.provider.Downloads
+import android.provider.MediaStore.MediaColumns
 import android.provider.OpenableColumns
+import android.util.Size
 import com.android.intentresolver.Flags.FLAG_INDIVIDUAL_METADATA_TITLE_READ
 import com.google.common.truth.Truth.assertThat
 import kotlin.coroutines.EmptyCoroutineContext
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.take
 import kotlinx.coroutines.flow.toList
 import kotlinx.coroutines.test.TestScope
 import kotlinx.coroutines.test.UnconfinedTestDispatcher
@@ -142,6 +145,38 @@ class PreviewDataProviderTest(flags: FlagsParameterization) {
         verify(contentResolver, times(1)).getType(any())
     }
 
+    @Test
+    fun test_sendSingleImage_resolvesAsynchronouslyToImagePreviewUi() =
+        testScope.runTest {
+            val uri = Uri.parse("content://org.pkg.app/image.png")
+            val targetIntent =
+                Intent(Intent.ACTION_SEND).apply { putExtra(Intent.EXTRA_STREAM, uri) }
+            whenever(contentResolver.getType(uri)).thenReturn("image/png")
+            val testSubject = createDataProvider(targetIntent)
+
+            assertThat(testSubject.resolvePreviewType())
+                .isEqualTo(ContentPreviewType.CONTENT_PREVIEW_IMAGE)
+            assertThat(testSubject.isPreviewTypeResolved).isTrue()
+            assertThat(testSubject.resolveFirstFileInfo()?.mimeType).isEqualTo("image/png")
+            assertThat(testSubject.previewType).isEqualTo(ContentPreviewType.CONTENT_PREVIEW_IMAGE)
+            verify(contentResolver, times(1)).getType(any())
+        }
+
+    @Test
+    fun test_sendSingleImage_firstFileInfoIsReadOnce() =
+        testScope.runTest {
+            val uri = Uri.parse("content://org.pkg.app/image.png")
+            val targetIntent =
+                Intent(Intent.ACTION_SEND).apply { putExtra(Intent.EXTRA_STREAM, uri) }
+            whenever(contentResolver.getType(uri)).thenReturn("image/png")
+            val testSubject = createDataProvider(targetIntent)
+
+            val fileInfo = testSubject.resolveFirstFileInfo()
+
+            assertThat(testSubject.resolveFirstFileInfo()).isSameInstanceAs(fileInfo)
+            assertThat(testSubject.firstFileInfo).isSameInstanceAs(fileInfo)
+        }
+
     @Test
     fun test_sendSingleFile_resolvesToFilePreviewUi() =
         testScope.runTest {
@@ -490,6 +525,92 @@ class PreviewDataProviderTest(flags: FlagsParameterization) {
             verify(contentResolver, times(1)).getStreamTypes(uri2, "*/*")
         }
 
+    @Test
+    fun test_imagePreviewFileInfoFlow_mediaStoreImageSizeIsRead() =
+        testScope.runTest {
+            val uri1 = Uri.parse("content://media/external/images/media/1")
+            val uri2 = Uri.parse("content://media/external/file/2")
+            val targetIntent =
+                Intent(Intent.ACTION_SEND_MULTIPLE).apply {
+                    putExtra(Intent.EXTRA_STREAM, arrayListOf(uri1, uri2))
+                }
+            whenever(contentResolver.getType(uri1)).thenReturn("image/png")
+            whenever(contentResolver.getType(uri2)).thenReturn("application/pdf")
+            val sizeColumns = arrayOf(MediaColumns.WIDTH, MediaColumns.HEIGHT)
+            whenever(contentResolver.query(eq(uri1), anyOrNull(), anyOrNull(), anyOrNull()))
+                .thenReturn(MatrixCursor(sizeColumns).apply { addRow(arrayOf(300, 200)) })
+            whenever(contentResolver.query(eq(uri2), anyOrNull(), anyOrNull(), anyOrNull()))
+                .thenReturn(MatrixCursor(sizeColumns).apply { addRow(arrayOf(300, 200)) })
+            val testSubject = createDataProvider(targetIntent)
+
+            val fileInfoList = testSubject.imagePreviewFileInfoFlow.toList()
+
+            assertThat(fileInfoList.map { it.previewSize })
+                .containsExactly(Size(300, 200), null)
+                .inOrder()
+            verify(contentResolver, times(1)).query(eq(uri1), anyOrNull(), anyOrNull(), anyOrNull())
+        }
+
+    @Test
+    fun test_imagePreviewFileInfoFlow_nonMediaStoreImageSizeIsNotQueried() =
+        testScope.runTest {
+            val uri = Uri.parse("content://org.pkg.app/image.png")
+            val targetIntent =
+                Intent(Intent.ACTION_SEND).apply { putExtra(Intent.EXTRA_STREAM, uri) }
+            whenever(contentResolver.getType(uri)).thenReturn("image/png")
+            val testSubject = createDataProvider(targetIntent)
+
+            val fileInfoList = testSubject.imagePreviewFileInfoFlow.toList()
+
+            assertThat(fileInfoList.map { it.previewSize }).containsExactly(null)
+            verify(contentResolver, never()).query(eq(uri), anyOrNull(), anyOrNull(), anyOrNull())
+        }
+
+    @Test
+    fun test_imagePreviewFileInfoFlow_metadataIsReadOnlyAheadOfCollector() =
+        testScope.runTest {
+            val uris = List(20) { Uri.parse("content://org.pkg.app/test-$it.pdf") }
+            val targetIntent =
+                Intent(Intent.ACTION_SEND_MULTIPLE).apply {
+                    putExtra(Intent.EXTRA_STREAM, ArrayList(uris))
+                }
+            whenever(contentResolver.getType(any())).thenReturn("application/pdf")
+            val testSubject = createDataProvider(targetIntent)
+
+            val fileInfoList = testSubject.imagePreviewFileInfoFlow.take(2).toList()
+
+            assertThat(fileInfoList.map { it.uri })
+                .containsExactlyElementsIn(uris.take(2))
+                .inOrder()
+            verify(contentResolver, never()).getType(uris.last())
+            verify(contentResolver, never())
+                .query(eq(uris.last()), anyOrNull(), anyOrNull(), anyOrNull())
+        }
+
+    @Test
+    fun test_mimeTypeFileInfoFlow_onlyTypesAreRead() =
+        testScope.runTest {
+            val uri1 = Uri.parse("content://org.pkg.app/image.png")
+            val uri2 = Uri.parse("content://org.pkg.app/test.pdf")
+            val targetIntent =
+                Intent(Intent.ACTION_SEND_MULTIPLE).apply {
+                    putExtra(Intent.EXTRA_STREAM, arrayListOf(uri1, uri2))
+                }
+            whenever(contentResolver.getType(uri1)).thenReturn("image/png")
+            whenever(contentResolver.getType(uri2)).thenReturn("application/pdf")
+            val testSubject = createDataProvider(targetIntent)
+
+            val fileInfoList = testSubject.mimeTypeFileInfoFlow.toList()
+
+            assertThat(fileInfoList.map { it.uri }).containsExactly(uri1, uri2).inOrder()
+            assertThat(fileInfoList.map { it.mimeType })
+                .containsExactly("image/png", "application/pdf")
+                .inOrder()
+            assertThat(fileInfoList.map { it.previewUri }).containsExactly(null, null)
+            verify(contentResolver, never()).getStreamTypes(any(), any())
+            verify(contentResolver, never()).query(any(), anyOrNull(), anyOrNull(), anyOrNull())
+        }
+
     @Test
     fun sendImageWithAdditionalContentUri_showPayloadTogglingUi() {
         val uri = Uri.parse("content://org.pkg.app/image.png")
@@ -29,6 +29,8 @@ import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.async
 import kotlinx.coroutines.awaitCancellation
 import kotlinx.coroutines.cancel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.toList
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.test.StandardTestDispatcher
 import kotlinx.coroutines.test.TestScope
@@ -488,6 +490,86 @@ class PreviewImageLoaderTest {
             }
             testSubject(uri, Size(200, 200))
         }
+
+    @Test
+    fun test_progressiveImageRequest_preliminaryImageEmittedFirst() =
+        scope.runTest {
+            val uri = createUri(0)
+            val thumbnailLoader =
+                FakeThumbnailLoader().apply {
+                    fakeInvoke[uri] = { size ->
+                        if (size.width > 100) {
+                            // full-size images take longer to load
+                            delay(100)
+                        }
+                        createBitmap(size.width, size.height)
+                    }
+                }
+            val testSubject =
+                PreviewImageLoader(
+                    backgroundScope,
+                    cacheSize = 1,
+                    defaultPreviewSize = 100,
+                    thumbnailLoader = thumbnailLoader,
+                    bgDispatcher = StandardTestDispatcher(scope.testScheduler),
+                    progressive = true,
+                )
+
+            val bitmaps = testSubject.loadProgressively(uri, Size(200, 160)).toList()
+
+            assertThat(bitmaps.map { it?.width to it?.height })
+                .containsExactly(25 to 20, 200 to 160)
+                .inOrder()
+            assertThat(testSubject.loadProgressively(uri, Size(200, 160)).toList())
+                .containsExactly(bitmaps.last())
+        }
+
+    @Test
+    fun test_progressiveImageRequest_quickLoad_noPreliminaryImage() =
+        scope.runTest {
+            val uri = createUri(0)
+            val thumbnailLoader =
+                FakeThumbnailLoader().apply {
+                    fakeInvoke[uri] = { size -> createBitmap(size.width, size.height) }
+                }
+            val testSubject =
+                PreviewImageLoader(
+                    backgroundScope,
+                    cacheSize = 1,
+                    defaultPreviewSize = 100,
+                    thumbnailLoader = thumbnailLoader,
+                    bgDispatcher = StandardTestDispatcher(scope.testScheduler),
+                    progressive = true,
+                )
+
+            val bitmaps = testSubject.loadProgressively(uri, Size(200, 160)).toList()
+
+            assertThat(bitmaps.map { it?.width to it?.height }).containsExactly(200 to 160)
+            assertThat(thumbnailLoader.invokeCalls).containsExactly(uri)
+        }
+
+    @Test
+    fun test_nonProgressiveImageRequest_onlyRequestedImageEmitted() =
+        scope.runTest {
+            val uri = createUri(0)
+            val thumbnailLoader =
+                FakeThumbnailLoader().apply {
+                    fakeInvoke[uri] = { size -> createBitmap(size.width, size.height) }
+                }
+            val testSubject =
+                PreviewImageLoader(
+                    backgroundScope,
+                    cacheSize = 1,
+                    defaultPreviewSize = 100,
+                    thumbnailLoader = thumbnailLoader,
+                    bgDispatcher = StandardTestDispatcher(scope.testScheduler),
+                )
+
+            val bitmaps = testSubject.loadProgressively(uri, Size(200, 160)).toList()
+
+            assertThat(bitmaps).hasSize(1)
+            assertThat(thumbnailLoader.invokeCalls).hasSize(1)
+        }
 }
 
 private fun createUri(id: Int) = Uri.parse("content://org.pkg.app/image-$id.png")
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.contentpreview
+
+import android.content.ContentResolver
+import android.graphics.Bitmap
+import android.net.Uri
+import android.os.CancellationSignal
+import android.os.OperationCanceledException
+import android.util.Size
+import com.google.common.truth.Truth.assertThat
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit.SECONDS
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.async
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withContext
+import org.junit.After
+import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.mock
+
+class ThumbnailLoaderTest {
+    private val uri = Uri.parse("content://org.pkg.app/image.png")
+    private val size = Size(100, 100)
+    private val callStarted = CountDownLatch(1)
+    private val signalCancelled = CountDownLatch(1)
+    private val stuckContentResolver =
+        mock<ContentResolver> {
+            on { loadThumbnail(any(), any(), any()) } doAnswer
+                { invocation ->
+                    invocation
+                        .getArgument<CancellationSignal>(2)
+                        .setOnCancelListener { signalCancelled.countDown() }
+                    callStarted.countDown()
+                    signalCancelled.await(5, SECONDS)
+                    throw OperationCanceledException()
+                }
+        }
+    private val executor = Executors.newCachedThreadPool()
+    private val dispatcher = executor.asCoroutineDispatcher()
+
+    @After
+    fun tearDown() {
+        executor.shutdownNow()
+    }
+
+    @Test
+    fun loadThumbnailCancellable_providerIsStuck_loadTimesOut() = runBlocking {
+        val result =
+            withContext(dispatcher) {
+                stuckContentResolver.loadThumbnailCancellable(uri, size, timeoutMs = 100)
+            }
+
+        assertThat(result).isNull()
+        assertThat(signalCancelled.count).isEqualTo(0)
+    }
+
+    @Test
+    fun loadThumbnailCancellable_callerIsCancelled_providerCallIsCancelled() = runBlocking {
+        val result =
+            async(dispatcher) {
+                stuckContentResolver.loadThumbnailCancellable(uri, size, timeoutMs = 60_000)
+            }
+        assertThat(callStarted.await(5, SECONDS)).isTrue()
+
+        result.cancel()
+
+        assertThat(signalCancelled.await(5, SECONDS)).isTrue()
+    }
+
+    @Test
+    fun loadThumbnailCancellable_providerResponds_bitmapIsReturned() = runBlocking {
+        val bitmap = Bitmap.createBitmap(size.width, size.height, Bitmap.Config.ARGB_8888)
+        val contentResolver =
+            mock<ContentResolver> { on { loadThumbnail(any(), any(), any()) } doAnswer { bitmap } }
+
+        assertThat(contentResolver.loadThumbnailCancellable(uri, size)).isSameInstanceAs(bitmap)
+    }
+}
@@ -168,6 +168,8 @@ class UnifiedContentPreviewUiTest {
         testScope.runTest {
             val endMarker = FileInfo.Builder(Uri.EMPTY).build()
             val emptySourceFlow = MutableSharedFlow<FileInfo>(replay = 1)
+            val fileInfoFlow =
+                files?.let { it.asFlow() } ?: emptySourceFlow.takeWhile { it !== endMarker }
             val testSubject =
                 UnifiedContentPreviewUi(
                     testScope,
@@ -180,7 +182,8 @@ class UnifiedContentPreviewUiTest {
                         override fun onTransitionElementReady(name: String) = Unit
                         override fun onAllTransitionElementsReady() = Unit
                     },
-                    files?.let { it.asFlow() } ?: emptySourceFlow.takeWhile { it !== endMarker },
+                    fileInfoFlow,
+                    fileInfoFlow,
                     /*itemCount=*/ 2,
                     headlineGenerator,
                     testMetadataText,
@@ -21,12 +21,17 @@ import android.database.MatrixCursor
 import android.media.MediaMetadata
 import android.net.Uri
 import android.provider.DocumentsContract
+import android.provider.MediaStore.MediaColumns
+import android.util.Size
 import com.google.common.truth.Truth.assertWithMessage
 import org.junit.Test
 import org.mockito.kotlin.any
 import org.mockito.kotlin.anyOrNull
+import org.mockito.kotlin.argThat
 import org.mockito.kotlin.eq
 import org.mockito.kotlin.mock
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
 import org.mockito.kotlin.whenever
 
 class UriMetadataReaderTest {
@@ -66,7 +71,7 @@ class UriMetadataReaderTest {
         val mimeType = "application/pdf"
         whenever(contentResolver.getType(uri)).thenReturn(mimeType)
         val columns = arrayOf(DocumentsContract.Document.COLUMN_FLAGS)
-        whenever(contentResolver.query(eq(uri), eq(columns), anyOrNull(), anyOrNull()))
+        whenever(contentResolver.query(eq(uri), any(), anyOrNull(), anyOrNull()))
             .thenReturn(
                 MatrixCursor(columns).apply {
                     addRow(arrayOf(DocumentsContract.Document.FLAG_SUPPORTS_THUMBNAIL))
@@ -81,13 +86,73 @@ class UriMetadataReaderTest {
         }
     }
 
+    @Test
+    fun testMediaStoreFileUriWithThumbnailSupport_metadataIsReadInOneQuery() {
+        val uri = Uri.parse("content://media/external/file/1")
+        val mimeType = "application/pdf"
+        whenever(contentResolver.getType(uri)).thenReturn(mimeType)
+        val columns =
+            arrayOf(
+                DocumentsContract.Document.COLUMN_FLAGS,
+                MediaColumns.WIDTH,
+                MediaColumns.HEIGHT,
+            )
+        whenever(contentResolver.query(eq(uri), any(), anyOrNull(), anyOrNull()))
+            .thenReturn(
+                MatrixCursor(columns).apply {
+                    addRow(arrayOf(DocumentsContract.Document.FLAG_SUPPORTS_THUMBNAIL, 100, 50))
+                }
+            )
+        val testSubject = UriMetadataReaderImpl(contentResolver, DefaultMimeTypeClassifier)
+
+        testSubject.getMetadata(uri).let { fileInfo ->
+            assertWithMessage("Wrong preview URI").that(fileInfo.previewUri).isEqualTo(uri)
+            assertWithMessage("Wrong preview size")
+                .that(fileInfo.previewSize)
+                .isEqualTo(Size(100, 50))
+        }
+        verify(contentResolver, times(1))
+            .query(
+                eq(uri),
+                argThat { contains(MediaColumns.WIDTH) && contains(MediaColumns.HEIGHT) },
+                anyOrNull(),
+                anyOrNull(),
+            )
+    }
+
+    @Test
+    fun testFileUriWithThumbnailSupport_sizeIsNotRequested() {
+        val mimeType = "application/pdf"
+        whenever(contentResolver.getType(uri)).thenReturn(mimeType)
+        val columns = arrayOf(DocumentsContract.Document.COLUMN_FLAGS)
+        whenever(contentResolver.query(eq(uri), any(), anyOrNull(), anyOrNull()))
+            .thenReturn(
+                MatrixCursor(columns).apply {
+                    addRow(arrayOf(DocumentsContract.Document.FLAG_SUPPORTS_THUMBNAIL))
+                }
+            )
+        val testSubject = UriMetadataReaderImpl(contentResolver, DefaultMimeTypeClassifier)
+
+        testSubject.getMetadata(uri).let { fileInfo ->
+            assertWithMessage("Wrong preview URI").that(fileInfo.previewUri).isEqualTo(uri)
+            assertWithMessage("Wrong preview size").that(fileInfo.previewSize).isNull()
+        }
+        verify(contentResolver, times(1))
+            .query(
+                eq(uri),
+                argThat { !contains(MediaColumns.WIDTH) && !contains(MediaColumns.HEIGHT) },
+                anyOrNull(),
+                anyOrNull(),
+            )
+    }
+
     @Test
     fun testFileUriWithPreviewUri() {
         val mimeType = "application/pdf"
         val previewUri = uri.buildUpon().appendQueryParameter("preview", null).build()
         whenever(contentResolver.getType(uri)).thenReturn(mimeType)
         val columns = arrayOf(MediaMetadata.METADATA_KEY_DISPLAY_ICON_URI)
-        whenever(contentResolver.query(eq(uri), eq(columns), anyOrNull(), anyOrNull()))
+        whenever(contentResolver.query(eq(uri), any(), anyOrNull(), anyOrNull()))
             .thenReturn(MatrixCursor(columns).apply { addRow(arrayOf(previewUri.toString())) })
         val testSubject = UriMetadataReaderImpl(contentResolver, DefaultMimeTypeClassifier)
 
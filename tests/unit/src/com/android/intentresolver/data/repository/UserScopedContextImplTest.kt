@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.data.repository
+
+import android.content.Context
+import android.os.UserHandle
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
+
+class UserScopedContextImplTest {
+    private val currentUser = UserHandle.of(0)
+    private val workUser = UserHandle.of(10)
+    private val context =
+        mock<Context> {
+            on { user } doReturn currentUser
+            on { createContextAsUser(any(), any()) } doAnswer { mock<Context>() }
+        }
+
+    private val testSubject = UserScopedContextImpl(context)
+
+    @Test
+    fun forUser_currentUser_returnsTheContextItself() {
+        assertThat(testSubject.forUser(currentUser)).isSameInstanceAs(context)
+        verify(context, never()).createContextAsUser(any(), any())
+    }
+
+    @Test
+    fun forUser_otherUser_contextIsCreatedOnce() {
+        val first = testSubject.forUser(workUser)
+        val second = testSubject.forUser(workUser)
+
+        assertThat(second).isSameInstanceAs(first)
+        verify(context, times(1)).createContextAsUser(eq(workUser), any())
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.grid
+
+import android.app.ActivityManager
+import android.database.DataSetObserver
+import androidx.recyclerview.widget.RecyclerView
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.intentresolver.ChooserListAdapter
+import com.android.intentresolver.ResolverListAdapter.TargetsChangedListener
+import com.android.intentresolver.chooser.TargetInfo
+import com.google.common.truth.Truth.assertThat
+import org.junit.Assume.assumeFalse
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.kotlin.any
+import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+
+private const val MAX_TARGETS_PER_ROW = 4
+private const val SERVICE_TARGET_COUNT = 2
+private const val CALLER_TARGET_COUNT = 1
+private const val RANKED_TARGET_COUNT = 5
+private const val ALPHA_TARGET_COUNT = 3
+
+@RunWith(AndroidJUnit4::class)
+class ChooserGridAdapterTest {
+    private val context = InstrumentationRegistry.getInstrumentation().context
+    private val targets =
+        List(
+            SERVICE_TARGET_COUNT + CALLER_TARGET_COUNT + RANKED_TARGET_COUNT + ALPHA_TARGET_COUNT
+        ) {
+            mock<TargetInfo>()
+        }
+    private val listAdapter =
+        mock<ChooserListAdapter> {
+            on { serviceTargetCount } doReturn SERVICE_TARGET_COUNT
+            on { callerTargetCount } doReturn CALLER_TARGET_COUNT
+            on { rankedTargetCount } doReturn RANKED_TARGET_COUNT
+            on { alphaTargetCount } doReturn ALPHA_TARGET_COUNT
+            on { getItem(any()) } doAnswer { targets[it.arguments[0] as Int] }
+        }
+    private val dataObserver = RecordingAdapterDataObserver()
+
+    @Test
+    fun getItemPosition_withContentPreview_mapsEveryRowType() {
+        assumeFalse(ActivityManager.isLowRamDeviceStatic())
+        val testSubject = createTestSubject(shouldShowContentPreview = true)
+
+        val positions = List(targets.size) { testSubject.getItemPosition(it) }
+
+        // Service row, two caller and ranked rows, the a-z label row, then a row per alpha target.
+        assertThat(positions).containsExactly(0, 0, 1, 1, 1, 1, 2, 2, 4, 5, 6).inOrder()
+        assertThat(testSubject.itemCount).isEqualTo(8)
+    }
+
+    @Test
+    fun getItemPosition_withoutContentPreview_serviceTargetsNotShown() {
+        val testSubject = createTestSubject(shouldShowContentPreview = false)
+
+        val positions = List(targets.size) { testSubject.getItemPosition(it) }
+
+        assertThat(positions).containsExactly(-1, -1, 0, 0, 0, 0, 1, 1, 3, 4, 5).inOrder()
+    }
+
+    @Test
+    fun getItemPosition_matchesListPositionOfShownRows() {
+        val testSubject = createTestSubject(shouldShowContentPreview = false)
+
+        for (listPosition in SERVICE_TARGET_COUNT until targets.size) {
+            val row = testSubject.getItemPosition(listPosition)
+            val rowStart = testSubject.getListPosition(row)
+            assertThat(listPosition - rowStart).isIn(0 until MAX_TARGETS_PER_ROW)
+        }
+    }
+
+    @Test
+    fun onTargetsChanged_severalTargets_oneRangeChangeCoveringTheirRows() {
+        createTestSubject(shouldShowContentPreview = false)
+
+        captureTargetsChangedListener().onTargetsChanged(setOf(targets[3], targets[6], targets[9]))
+
+        assertThat(dataObserver.rangeChanges).containsExactly(0 to 5)
+        assertThat(dataObserver.changeCount).isEqualTo(0)
+    }
+
+    @Test
+    fun onTargetsChanged_hiddenTargetsOnly_nothingNotified() {
+        createTestSubject(shouldShowContentPreview = false)
+
+        captureTargetsChangedListener().onTargetsChanged(setOf(targets[0], mock<TargetInfo>()))
+
+        assertThat(dataObserver.rangeChanges).isEmpty()
+        assertThat(dataObserver.changeCount).isEqualTo(0)
+    }
+
+    @Test
+    fun wrappedAdapterDataSetChanged_dispatchingChangedTargets_noFullRebind() {
+        createTestSubject(shouldShowContentPreview = false)
+        val observer = captureDataSetObserver()
+
+        whenever(listAdapter.isDispatchingChangedTargets).thenReturn(true)
+        observer.onChanged()
+
+        assertThat(dataObserver.changeCount).isEqualTo(0)
+
+        whenever(listAdapter.isDispatchingChangedTargets).thenReturn(false)
+        observer.onChanged()
+
+        assertThat(dataObserver.changeCount).isEqualTo(1)
+    }
+
+    private fun createTestSubject(shouldShowContentPreview: Boolean) =
+        ChooserGridAdapter(
+                context,
+                mock(),
+                listAdapter,
+                shouldShowContentPreview,
+                MAX_TARGETS_PER_ROW,
+                mock(),
+            )
+            .also { it.registerAdapterDataObserver(dataObserver) }
+
+    private fun captureTargetsChangedListener(): TargetsChangedListener {
+        val captor = argumentCaptor<TargetsChangedListener>()
+        verify(listAdapter).setTargetsChangedListener(captor.capture())
+        return captor.firstValue
+    }
+
+    private fun captureDataSetObserver(): DataSetObserver {
+        val captor = argumentCaptor<DataSetObserver>()
+        verify(listAdapter).registerDataSetObserver(captor.capture())
+        return captor.firstValue
+    }
+}
+
+private class RecordingAdapterDataObserver : RecyclerView.AdapterDataObserver() {
+    val rangeChanges = ArrayList<Pair<Int, Int>>()
+    var changeCount = 0
+
+    override fun onChanged() {
+        changeCount++
+    }
+
+    override fun onItemRangeChanged(positionStart: Int, itemCount: Int) {
+        rangeChanges.add(positionStart to itemCount)
+    }
+}
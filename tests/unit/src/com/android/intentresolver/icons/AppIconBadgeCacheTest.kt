@@ -0,0 +1,93 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import android.content.ComponentName
+import android.content.Context
+import android.content.pm.ActivityInfo
+import android.content.pm.PackageManager
+import android.graphics.Bitmap
+import android.os.UserHandle
+import com.android.intentresolver.TargetPresentationGetter
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.doThrow
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
+
+class AppIconBadgeCacheTest {
+    private val user = UserHandle.of(0)
+    private val component = ComponentName("org.package", "org.package.Activity")
+    private val missingComponent = ComponentName("org.package", "org.package.MissingActivity")
+    private val activityInfo =
+        ActivityInfo().apply {
+            packageName = component.packageName
+            name = component.className
+        }
+    private val packageManager =
+        mock<PackageManager> {
+            on { getActivityInfo(eq(component), any<Int>()) } doReturn activityInfo
+            on { getActivityInfo(eq(missingComponent), any<Int>()) } doThrow
+                PackageManager.NameNotFoundException()
+        }
+    private val userContext =
+        mock<Context> {
+            on { user } doReturn this@AppIconBadgeCacheTest.user
+            on { packageManager } doReturn packageManager
+        }
+    private val presentationGetter =
+        mock<TargetPresentationGetter> {
+            on { getIconBitmap(null) } doReturn
+                Bitmap.createBitmap(48, 48, Bitmap.Config.ARGB_8888)
+        }
+    private val presentationFactory =
+        mock<TargetPresentationGetter.Factory> {
+            on { makePresentationGetter(any<ActivityInfo>()) } doReturn presentationGetter
+        }
+    private val testSubject =
+        AppIconBadgeCache(IconMemoryCache(maxBytes = 1024 * 1024), presentationFactory)
+
+    @Test
+    fun activityInfo_isLookedUpOnce() {
+        assertThat(testSubject.getActivityInfo(userContext, component))
+            .isSameInstanceAs(activityInfo)
+        assertThat(testSubject.getActivityInfo(userContext, component))
+            .isSameInstanceAs(activityInfo)
+
+        verify(packageManager, times(1)).getActivityInfo(eq(component), any<Int>())
+    }
+
+    @Test
+    fun missingActivity_isLookedUpOnce() {
+        assertThat(testSubject.getActivityInfo(userContext, missingComponent)).isNull()
+        assertThat(testSubject.getActivityInfo(userContext, missingComponent)).isNull()
+
+        verify(packageManager, times(1)).getActivityInfo(eq(missingComponent), any<Int>())
+    }
+
+    @Test
+    fun appIcon_isRenderedOnce() {
+        val icon = testSubject.getAppIcon(user, activityInfo)
+
+        assertThat(testSubject.getAppIcon(user, activityInfo)).isSameInstanceAs(icon)
+        verify(presentationGetter, times(1)).getIconBitmap(null)
+    }
+}
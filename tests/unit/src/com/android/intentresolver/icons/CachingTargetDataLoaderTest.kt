@@ -19,6 +19,7 @@ package com.android.intentresolver.icons
 import android.content.ComponentName
 import android.content.Context
 import android.content.Intent
+import android.content.pm.PackageManager
 import android.content.pm.ShortcutInfo
 import android.graphics.Bitmap
 import android.graphics.Color
@@ -31,17 +32,31 @@ import com.android.intentresolver.ResolverDataProvider.createResolveInfo
 import com.android.intentresolver.chooser.DisplayResolveInfo
 import com.android.intentresolver.chooser.SelectableTargetInfo
 import com.android.intentresolver.chooser.TargetInfo
+import com.android.intentresolver.data.repository.UserScopedContext
+import com.google.common.truth.Truth.assertThat
 import java.util.function.Consumer
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.emptyFlow
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.runTest
+import org.junit.Rule
 import org.junit.Test
+import org.junit.rules.TemporaryFolder
 import org.mockito.kotlin.any
 import org.mockito.kotlin.doAnswer
 import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.doThrow
 import org.mockito.kotlin.eq
 import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
 import org.mockito.kotlin.verify
 import org.mockito.kotlin.whenever
 
+@OptIn(ExperimentalCoroutinesApi::class)
 class CachingTargetDataLoaderTest {
+    @get:Rule val tempFolder = TemporaryFolder()
+
     private val context = mock<Context>()
     private val userHandle = UserHandle.of(1)
 
@@ -182,6 +197,133 @@ class CachingTargetDataLoaderTest {
             1 * { getOrLoadAppTargetIcon(eq(hoverBitmapTargetInfo), eq(userHandle), any()) }
         }
     }
+
+    @Test
+    fun concurrentAppIconRequests_shareSingleLoad() {
+        val resolveInfo = createResolveInfo(1, userHandle.identifier)
+        val targetInfo1 =
+            DisplayResolveInfo.newDisplayResolveInfo(Intent(), resolveInfo, Intent())
+                as DisplayResolveInfo
+        val targetInfo2 =
+            DisplayResolveInfo.newDisplayResolveInfo(Intent(), resolveInfo, Intent())
+                as DisplayResolveInfo
+        val callbacks = ArrayList<Consumer<Drawable>>()
+        val targetDataLoader = mock<TargetDataLoader>()
+        doAnswer {
+                callbacks.add(it.arguments[2] as Consumer<Drawable>)
+                null
+            }
+            .whenever(targetDataLoader)
+            .getOrLoadAppTargetIcon(any(), eq(userHandle), any())
+        val testSubject = CachingTargetDataLoader(context, targetDataLoader)
+        val results1 = ArrayList<Drawable>()
+        val results2 = ArrayList<Drawable>()
+
+        testSubject.getOrLoadAppTargetIcon(targetInfo1, userHandle, results1::add)
+        testSubject.getOrLoadAppTargetIcon(targetInfo2, userHandle, results2::add)
+        callbacks.single().accept(BitmapDrawable(createBitmap()))
+
+        verify(targetDataLoader) {
+            1 * { getOrLoadAppTargetIcon(any(), eq(userHandle), any()) }
+        }
+        assertThat(results1).hasSize(1)
+        assertThat(results2).hasSize(1)
+        assertThat(results1[0]).isNotSameInstanceAs(results2[0])
+        assertThat((results2[0] as BitmapDrawable).bitmap)
+            .isSameInstanceAs((results1[0] as BitmapDrawable).bitmap)
+    }
+
+    @Test
+    fun cancelledIconRequest_sharedLoadIsNotCancelled() {
+        val resolveInfo = createResolveInfo(1, userHandle.identifier)
+        val targetInfo1 =
+            DisplayResolveInfo.newDisplayResolveInfo(Intent(), resolveInfo, Intent())
+                as DisplayResolveInfo
+        val targetInfo2 =
+            DisplayResolveInfo.newDisplayResolveInfo(Intent(), resolveInfo, Intent())
+                as DisplayResolveInfo
+        val callbacks = ArrayList<Consumer<Drawable>>()
+        val targetDataLoader = mock<TargetDataLoader>()
+        doAnswer {
+                callbacks.add(it.arguments[2] as Consumer<Drawable>)
+                null
+            }
+            .whenever(targetDataLoader)
+            .getOrLoadAppTargetIcon(any(), eq(userHandle), any())
+        val testSubject = CachingTargetDataLoader(context, targetDataLoader)
+        val results1 = ArrayList<Drawable>()
+        val results2 = ArrayList<Drawable>()
+
+        testSubject.getOrLoadAppTargetIcon(targetInfo1, userHandle, results1::add)
+        testSubject.getOrLoadAppTargetIcon(targetInfo2, userHandle, results2::add)
+        testSubject.cancelIconLoad(targetInfo1)
+        callbacks.single().accept(BitmapDrawable(createBitmap()))
+
+        verify(targetDataLoader, never()).cancelIconLoad(any())
+        assertThat(results1).isEmpty()
+        assertThat(results2).hasSize(1)
+    }
+
+    @Test
+    fun cancelledIconRequest_diskCacheMiss_iconIsNotLoaded() {
+        val dispatcher = StandardTestDispatcher()
+        TestScope(dispatcher).runTest {
+            val resolveInfo = createResolveInfo(1, userHandle.identifier)
+            val targetInfo =
+                DisplayResolveInfo.newDisplayResolveInfo(Intent(), resolveInfo, Intent())
+                    as DisplayResolveInfo
+            val packageManager =
+                mock<PackageManager> {
+                    on { getPackageInfo(any<String>(), any<PackageManager.PackageInfoFlags>()) }
+                        .doThrow(PackageManager.NameNotFoundException())
+                }
+            val userContext = mock<Context> { on { packageManager } doReturn packageManager }
+            val targetDataLoader = mock<TargetDataLoader>()
+            val testSubject =
+                CachingTargetDataLoader(
+                    context,
+                    targetDataLoader,
+                    iconDiskCache =
+                        IconDiskCache(tempFolder.root, emptyFlow(), backgroundScope, dispatcher),
+                    userScopedContext = UserScopedContext { userContext },
+                    scope = backgroundScope,
+                )
+
+            testSubject.getOrLoadAppTargetIcon(targetInfo, userHandle) {}
+            testSubject.cancelIconLoad(targetInfo)
+            advanceUntilIdle()
+
+            verify(targetDataLoader, never()).getOrLoadAppTargetIcon(any(), any(), any())
+        }
+    }
+
+    @Test
+    fun concurrentLabelRequests_shareSingleLoad() {
+        val resolveInfo = createResolveInfo(1, userHandle.identifier)
+        val targetInfo1 =
+            DisplayResolveInfo.newDisplayResolveInfo(Intent(), resolveInfo, Intent())
+                as DisplayResolveInfo
+        val targetInfo2 =
+            DisplayResolveInfo.newDisplayResolveInfo(Intent(), resolveInfo, Intent())
+                as DisplayResolveInfo
+        val callbacks = ArrayList<Consumer<LabelInfo>>()
+        val targetDataLoader = mock<TargetDataLoader>()
+        doAnswer {
+                callbacks.add(it.arguments[1] as Consumer<LabelInfo>)
+                null
+            }
+            .whenever(targetDataLoader)
+            .loadLabel(any(), any())
+        val testSubject = CachingTargetDataLoader(context, targetDataLoader)
+        val results = ArrayList<LabelInfo>()
+
+        testSubject.loadLabel(targetInfo1, results::add)
+        testSubject.loadLabel(targetInfo2, results::add)
+        val label = LabelInfo("label", "sublabel")
+        callbacks.single().accept(label)
+
+        assertThat(results).containsExactly(label, label)
+    }
 }
 
 private fun createBitmap() = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888)
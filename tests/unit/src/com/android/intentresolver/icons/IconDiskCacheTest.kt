@@ -0,0 +1,133 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import android.content.ComponentName
+import android.content.Context
+import android.content.pm.PackageInfo
+import android.content.pm.PackageManager
+import android.content.res.Configuration
+import android.content.res.Resources
+import android.graphics.Bitmap
+import android.graphics.Color
+import android.os.UserHandle
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.runTest
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.mock
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class IconDiskCacheTest {
+    @get:Rule val tempFolder = TemporaryFolder()
+
+    private val dispatcher = StandardTestDispatcher()
+    private val scope = TestScope(dispatcher)
+    private val component = ComponentName("org.package", "org.package.Activity")
+    private val user = UserHandle.of(0)
+    private val packageChanges = MutableSharedFlow<PackageChange>()
+    private var lastUpdateTime = 1L
+    private val packageManager =
+        mock<PackageManager> {
+            on { getPackageInfo(eq(component.packageName), any<PackageManager.PackageInfoFlags>()) }
+                .doAnswer { PackageInfo().also { info -> info.lastUpdateTime = lastUpdateTime } }
+        }
+    private val resources =
+        mock<Resources> {
+            on { configuration } doReturn
+                Configuration().apply {
+                    densityDpi = 480
+                    uiMode = Configuration.UI_MODE_NIGHT_NO
+                }
+        }
+    private val userContext =
+        mock<Context> {
+            on { user } doReturn this@IconDiskCacheTest.user
+            on { packageManager } doReturn packageManager
+            on { resources } doReturn resources
+        }
+
+    @Test
+    fun storedIcon_isRestoredByAnotherInstance() =
+        scope.runTest {
+            val icon = createBitmap()
+            createTestSubject().put(userContext, component, icon)
+            advanceUntilIdle()
+
+            val restored = createTestSubject().get(userContext, component)
+
+            assertThat(restored).isNotNull()
+            assertThat(restored!!.sameAs(icon)).isTrue()
+        }
+
+    @Test
+    fun packageUpdated_storedIconIsNotReturned() =
+        scope.runTest {
+            val testSubject = createTestSubject()
+            testSubject.put(userContext, component, createBitmap())
+            advanceUntilIdle()
+
+            lastUpdateTime = 2L
+
+            assertThat(testSubject.get(userContext, component)).isNull()
+        }
+
+    @Test
+    fun packageChanged_storedIconIsDropped() =
+        scope.runTest {
+            val testSubject = createTestSubject()
+            testSubject.put(userContext, component, createBitmap())
+            advanceUntilIdle()
+
+            packageChanges.emit(PackageChange(component.packageName, user))
+            advanceUntilIdle()
+
+            assertThat(testSubject.get(userContext, component)).isNull()
+            assertThat(createTestSubject().get(userContext, component)).isNull()
+        }
+
+    @Test
+    fun hardwareIcon_isStoredAndRestoredInRequestedConfig() =
+        scope.runTest {
+            val icon = createBitmap()
+            createTestSubject()
+                .put(userContext, component, icon.copy(Bitmap.Config.HARDWARE, false))
+            advanceUntilIdle()
+
+            val restored =
+                createTestSubject().get(userContext, component, Bitmap.Config.HARDWARE)
+
+            assertThat(restored).isNotNull()
+            assertThat(restored!!.config).isEqualTo(Bitmap.Config.HARDWARE)
+            assertThat(restored.copy(Bitmap.Config.ARGB_8888, false).sameAs(icon)).isTrue()
+        }
+
+    private fun TestScope.createTestSubject() =
+        IconDiskCache(tempFolder.root, packageChanges, backgroundScope, dispatcher)
+}
+
+private fun createBitmap() =
+    Bitmap.createBitmap(48, 48, Bitmap.Config.ARGB_8888).apply { eraseColor(Color.RED) }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import android.content.ComponentCallbacks2
+import android.content.ComponentName
+import android.content.res.Configuration
+import android.graphics.Bitmap
+import android.os.UserHandle
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class IconMemoryCacheTest {
+    private val user = UserHandle.of(0)
+    private val component1 = ComponentName("org.package1", "org.package1.Activity")
+    private val component2 = ComponentName("org.package2", "org.package2.Activity")
+    private val component3 = ComponentName("org.package3", "org.package3.Activity")
+    private val iconBytes = createIcon().allocationByteCount
+
+    @Test
+    fun cacheIsBoundedByIconSize() {
+        val testSubject = IconMemoryCache(maxBytes = 2 * iconBytes)
+
+        testSubject.put(user, component1, createIcon())
+        testSubject.put(user, component2, createIcon())
+        testSubject.put(user, component3, createIcon())
+
+        assertThat(testSubject.get(user, component1)).isNull()
+        assertThat(testSubject.get(user, component2)).isNotNull()
+        assertThat(testSubject.get(user, component3)).isNotNull()
+    }
+
+    @Test
+    fun iconsAreKeyedByUserAndQualifier() {
+        val testSubject = IconMemoryCache(maxBytes = 4 * iconBytes)
+
+        testSubject.put(user, component1, createIcon())
+
+        assertThat(testSubject.get(user, component1)).isNotNull()
+        assertThat(testSubject.get(UserHandle.of(10), component1)).isNull()
+        assertThat(testSubject.get(user, component1, qualifier = "shortcut")).isNull()
+    }
+
+    @Test
+    fun moderateMemoryPressure_cacheIsTrimmed() {
+        val testSubject = IconMemoryCache(maxBytes = 2 * iconBytes)
+        testSubject.put(user, component1, createIcon())
+        testSubject.put(user, component2, createIcon())
+
+        testSubject.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN)
+
+        assertThat(testSubject.get(user, component1)).isNull()
+        assertThat(testSubject.get(user, component2)).isNotNull()
+    }
+
+    @Test
+    fun backgroundMemoryPressure_cacheIsCleared() {
+        val testSubject = IconMemoryCache(maxBytes = 2 * iconBytes)
+        testSubject.put(user, component1, createIcon())
+        testSubject.put(user, component2, createIcon())
+
+        testSubject.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND)
+
+        assertThat(testSubject.get(user, component1)).isNull()
+        assertThat(testSubject.get(user, component2)).isNull()
+    }
+
+    @Test
+    fun packageInvalidated_packageIconsAreDropped() {
+        val testSubject = IconMemoryCache(maxBytes = 4 * iconBytes)
+        testSubject.put(user, component1, createIcon())
+        testSubject.put(user, component1, createIcon(), qualifier = "shortcut")
+        testSubject.put(user, component2, createIcon())
+
+        testSubject.invalidate(component1.packageName, user = null)
+
+        assertThat(testSubject.get(user, component1)).isNull()
+        assertThat(testSubject.get(user, component1, qualifier = "shortcut")).isNull()
+        assertThat(testSubject.get(user, component2)).isNotNull()
+    }
+
+    @Test
+    fun densityChanged_cacheIsCleared() {
+        val testSubject = IconMemoryCache(maxBytes = 4 * iconBytes)
+        testSubject.onConfigurationChanged(Configuration().apply { densityDpi = 480 })
+        testSubject.put(user, component1, createIcon())
+
+        testSubject.onConfigurationChanged(Configuration().apply { densityDpi = 480 })
+        assertThat(testSubject.get(user, component1)).isNotNull()
+
+        testSubject.onConfigurationChanged(Configuration().apply { densityDpi = 320 })
+        assertThat(testSubject.get(user, component1)).isNull()
+    }
+}
+
+private fun createIcon() = Bitmap.createBitmap(48, 48, Bitmap.Config.ARGB_8888)
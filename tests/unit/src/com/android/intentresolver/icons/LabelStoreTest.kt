@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import android.content.ComponentName
+import android.os.LocaleList
+import com.android.intentresolver.ResolverDataProvider.createResolveInfo
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.runTest
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class LabelStoreTest {
+    @get:Rule val tempFolder = TemporaryFolder()
+
+    private val dispatcher = StandardTestDispatcher()
+    private val scope = TestScope(dispatcher)
+    private val component = ComponentName("org.package", "org.package.Activity")
+    private val resolveInfo =
+        createResolveInfo(component, 0).apply { activityInfo.applicationInfo.longVersionCode = 1 }
+    private val locales = LocaleList.forLanguageTags("en-US")
+    private val packageChanges = MutableSharedFlow<PackageChange>()
+    private val label = LabelInfo("label", "sublabel")
+
+    @Test
+    fun storedLabel_isRestoredByAnotherInstance() =
+        scope.runTest {
+            createTestSubject().put(resolveInfo, locales, label)
+            advanceUntilIdle()
+
+            assertThat(createTestSubject().get(resolveInfo, locales)).isEqualTo(label)
+        }
+
+    @Test
+    fun packageVersionChanged_storedLabelIsNotReturned() =
+        scope.runTest {
+            val testSubject = createTestSubject()
+            testSubject.put(resolveInfo, locales, label)
+
+            resolveInfo.activityInfo.applicationInfo.longVersionCode = 2
+
+            assertThat(testSubject.get(resolveInfo, locales)).isNull()
+        }
+
+    @Test
+    fun localeChanged_storedLabelIsNotReturned() =
+        scope.runTest {
+            val testSubject = createTestSubject()
+            testSubject.put(resolveInfo, locales, label)
+
+            assertThat(testSubject.get(resolveInfo, LocaleList.forLanguageTags("de-DE"))).isNull()
+        }
+
+    @Test
+    fun filterLabelDiffers_storedLabelIsNotReturned() =
+        scope.runTest {
+            val testSubject = createTestSubject()
+            testSubject.put(resolveInfo, locales, label)
+
+            val otherFilterInfo =
+                createResolveInfo(component, 0).apply {
+                    activityInfo.applicationInfo.longVersionCode = 1
+                    nonLocalizedLabel = "filter label"
+                }
+
+            assertThat(testSubject.get(otherFilterInfo, locales)).isNull()
+        }
+
+    @Test
+    fun packageChanged_storedLabelIsDropped() =
+        scope.runTest {
+            val testSubject = createTestSubject()
+            testSubject.put(resolveInfo, locales, label)
+            advanceUntilIdle()
+
+            packageChanges.emit(PackageChange(component.packageName, resolveInfo.userHandle))
+            advanceUntilIdle()
+
+            assertThat(testSubject.get(resolveInfo, locales)).isNull()
+            assertThat(createTestSubject().get(resolveInfo, locales)).isNull()
+        }
+
+    private fun TestScope.createTestSubject() =
+        LabelStore(tempFolder.root, packageChanges, backgroundScope, dispatcher)
+}
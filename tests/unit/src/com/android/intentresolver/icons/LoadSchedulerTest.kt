@@ -0,0 +1,151 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.runTest
+import org.junit.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class LoadSchedulerTest {
+    private val dispatcher = StandardTestDispatcher()
+    private val scope = TestScope(dispatcher)
+    private val loaded = ArrayList<String>()
+    private val delivered = ArrayList<String?>()
+
+    @Test
+    fun requestsAreLoadedInPriorityOrder() =
+        scope.runTest {
+            val testSubject = LoadScheduler(backgroundScope, dispatcher, maxParallelLoads = 1)
+
+            testSubject.schedule("a", LoadPriority.OFF_SCREEN)
+            testSubject.schedule("b", LoadPriority.VISIBLE)
+            testSubject.schedule("c", LoadPriority.DIRECT_SHARE)
+            testSubject.schedule("d", LoadPriority.VISIBLE)
+            advanceUntilIdle()
+
+            assertThat(loaded).containsExactly("b", "d", "c", "a").inOrder()
+            assertThat(delivered).containsExactly("b", "d", "c", "a").inOrder()
+        }
+
+    @Test
+    fun priorityChanged_requestIsReordered() =
+        scope.runTest {
+            val testSubject = LoadScheduler(backgroundScope, dispatcher, maxParallelLoads = 1)
+
+            testSubject.schedule("a", LoadPriority.VISIBLE)
+            testSubject.schedule("b", LoadPriority.VISIBLE)
+            testSubject.setPriority("a", LoadPriority.OFF_SCREEN)
+            advanceUntilIdle()
+
+            assertThat(loaded).containsExactly("b", "a").inOrder()
+        }
+
+    @Test
+    fun cancelledRequest_isNotLoadedNorDelivered() =
+        scope.runTest {
+            val testSubject = LoadScheduler(backgroundScope, dispatcher, maxParallelLoads = 1)
+
+            testSubject.schedule("a", LoadPriority.VISIBLE)
+            testSubject.schedule("b", LoadPriority.VISIBLE)
+            testSubject.cancel("a")
+            advanceUntilIdle()
+
+            assertThat(loaded).containsExactly("b")
+            assertThat(delivered).containsExactly("b")
+        }
+
+    @Test
+    fun requestCancelledWhileLoading_isNotDelivered() =
+        scope.runTest {
+            val testSubject = LoadScheduler(backgroundScope, dispatcher, maxParallelLoads = 1)
+
+            testSubject.schedule(
+                "a",
+                LoadPriority.VISIBLE,
+                load = {
+                    loaded.add("a")
+                    testSubject.cancel("a")
+                    "a"
+                },
+                callback = { delivered.add(it) },
+            )
+            advanceUntilIdle()
+
+            assertThat(loaded).containsExactly("a")
+            assertThat(delivered).isEmpty()
+        }
+
+    @Test
+    fun scopeCancelledWhileLoading_pendingRequestsAreDropped() =
+        scope.runTest {
+            val schedulerScope = CoroutineScope(coroutineContext + Job())
+            val testSubject = LoadScheduler(schedulerScope, dispatcher, maxParallelLoads = 1)
+
+            testSubject.schedule(
+                "a",
+                LoadPriority.VISIBLE,
+                load = {
+                    loaded.add("a")
+                    schedulerScope.cancel()
+                    "a"
+                },
+                callback = { delivered.add(it) },
+            )
+            testSubject.schedule("b", LoadPriority.VISIBLE)
+            testSubject.schedule("c", LoadPriority.VISIBLE)
+            advanceUntilIdle()
+
+            assertThat(loaded).containsExactly("a")
+            assertThat(delivered).isEmpty()
+        }
+
+    @Test
+    fun failedLoad_nullIsDeliveredAndNextRequestIsLoaded() =
+        scope.runTest {
+            val testSubject = LoadScheduler(backgroundScope, dispatcher, maxParallelLoads = 1)
+
+            testSubject.schedule<String>(
+                "a",
+                LoadPriority.VISIBLE,
+                load = { error("test") },
+                callback = { delivered.add(it) },
+            )
+            testSubject.schedule("b", LoadPriority.VISIBLE)
+            advanceUntilIdle()
+
+            assertThat(loaded).containsExactly("b")
+            assertThat(delivered).containsExactly(null, "b").inOrder()
+        }
+
+    private fun LoadScheduler.schedule(key: String, priority: LoadPriority) =
+        schedule(
+            key,
+            priority,
+            load = {
+                loaded.add(key)
+                key
+            },
+            callback = { delivered.add(it) },
+        )
+}
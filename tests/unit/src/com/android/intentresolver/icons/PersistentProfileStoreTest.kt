@@ -0,0 +1,177 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.icons
+
+import android.os.UserHandle
+import com.google.common.truth.Truth.assertThat
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.runTest
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class PersistentProfileStoreTest {
+    @get:Rule val tempFolder = TemporaryFolder()
+
+    private val dispatcher = StandardTestDispatcher()
+    private val scope = TestScope(dispatcher)
+    private val user = UserHandle.of(0)
+    private val packageChanges = MutableSharedFlow<PackageChange>()
+
+    @Test
+    fun moreEntriesThanMax_leastRecentlyUsedAreDropped() =
+        scope.runTest {
+            val testSubject = createTestSubject(maxEntries = 2)
+            testSubject.put(user, "org.package.a", "a")
+            testSubject.put(user, "org.package.b", "b")
+            testSubject.get(user, "org.package.a") { true }
+
+            testSubject.put(user, "org.package.c", "c")
+            advanceUntilIdle()
+
+            val restored = createTestSubject(maxEntries = 2)
+            assertThat(restored.get(user, "org.package.a") { true }).isEqualTo("a")
+            assertThat(restored.get(user, "org.package.b") { true }).isNull()
+            assertThat(restored.get(user, "org.package.c") { true }).isEqualTo("c")
+        }
+
+    @Test
+    fun invalidEntry_isDropped() =
+        scope.runTest {
+            val testSubject = createTestSubject()
+            testSubject.put(user, "org.package.a", "a")
+
+            assertThat(testSubject.get(user, "org.package.a") { false }).isNull()
+            assertThat(testSubject.get(user, "org.package.a") { true }).isNull()
+        }
+
+    @Test
+    fun fileOfAnotherVersion_isDiscarded() =
+        scope.runTest {
+            createTestSubject().put(user, "org.package.a", "a")
+            advanceUntilIdle()
+
+            val testSubject = createTestSubject(codec = TestCodec(fileVersion = 2))
+
+            assertThat(testSubject.get(user, "org.package.a") { true }).isNull()
+            assertThat(File(tempFolder.root, "test_${user.identifier}.bin").exists()).isFalse()
+        }
+
+    @Test
+    fun blob_isServedBeforeAndAfterWriting() =
+        scope.runTest {
+            val testSubject = createTestSubject()
+            testSubject.put(user, "org.package.a", "a", byteArrayOf(1, 2, 3))
+
+            assertThat(testSubject.getBlob(user, "org.package.a") { true })
+                .isEqualTo(byteArrayOf(1, 2, 3))
+            advanceUntilIdle()
+            assertThat(testSubject.getBlob(user, "org.package.a") { true })
+                .isEqualTo(byteArrayOf(1, 2, 3))
+        }
+
+    @Test
+    fun storedBlobs_areKeptWhenTheFileIsRewritten() =
+        scope.runTest {
+            createTestSubject().put(user, "org.package.a", "a", byteArrayOf(1, 2, 3))
+            advanceUntilIdle()
+
+            createTestSubject().put(user, "org.package.b", "b", byteArrayOf(4, 5))
+            advanceUntilIdle()
+
+            val restored = createTestSubject()
+            assertThat(restored.get(user, "org.package.a") { true }).isEqualTo("a")
+            assertThat(restored.getBlob(user, "org.package.a") { true })
+                .isEqualTo(byteArrayOf(1, 2, 3))
+            assertThat(restored.getBlob(user, "org.package.b") { true })
+                .isEqualTo(byteArrayOf(4, 5))
+        }
+
+    @Test
+    fun entryWithoutBlob_hasNoBlob() =
+        scope.runTest {
+            createTestSubject().put(user, "org.package.a", "a")
+            advanceUntilIdle()
+
+            val restored = createTestSubject()
+            assertThat(restored.get(user, "org.package.a") { true }).isEqualTo("a")
+            assertThat(restored.getBlob(user, "org.package.a") { true }).isNull()
+        }
+
+    @Test
+    fun entryPutWhileWriting_isWrittenAfterwards() =
+        scope.runTest {
+            lateinit var testSubject: PersistentProfileStore<String, String>
+            var isWriting = false
+            val codec =
+                TestCodec(
+                    onWrite = {
+                        if (!isWriting) {
+                            isWriting = true
+                            testSubject.put(user, "org.package.b", "b")
+                        }
+                    }
+                )
+            testSubject = createTestSubject(codec = codec)
+            testSubject.put(user, "org.package.a", "a")
+            advanceUntilIdle()
+
+            val restored = createTestSubject()
+            assertThat(restored.get(user, "org.package.a") { true }).isEqualTo("a")
+            assertThat(restored.get(user, "org.package.b") { true }).isEqualTo("b")
+        }
+
+    private fun TestScope.createTestSubject(
+        maxEntries: Int = 10,
+        codec: TestCodec = TestCodec(),
+    ) =
+        PersistentProfileStore(
+            tempFolder.root,
+            codec,
+            maxEntries,
+            packageChanges,
+            backgroundScope,
+            dispatcher,
+        )
+
+    /** Stores the values keyed by package names. */
+    private class TestCodec(
+        override val fileVersion: Int = 1,
+        private val onWrite: () -> Unit = {},
+    ) : PersistentProfileStore.EntryCodec<String, String> {
+        override val name = "test"
+        override val fileMagic = 0x54455354 // "TEST"
+
+        override fun packageName(key: String): String = key
+
+        override fun read(input: DataInputStream): Pair<String, String> =
+            input.readUTF() to input.readUTF()
+
+        override fun write(output: DataOutputStream, key: String, value: String) {
+            onWrite()
+            output.writeUTF(key)
+            output.writeUTF(value)
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.shortcuts
+
+import android.os.UserHandle
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class AppPredictorLatencyTrackerTest {
+    private val user = UserHandle.of(0)
+    private val otherUser = UserHandle.of(10)
+    private val testSubject = AppPredictorLatencyTracker(minTimeoutMs = 500, maxTimeoutMs = 2_000)
+
+    @Test
+    fun test_notEnoughSamples_maxTimeoutIsUsed() {
+        repeat(2) { testSubject.onResponse(user, 100) }
+
+        assertThat(testSubject.getResponseTimeout(user)).isEqualTo(2_000)
+    }
+
+    @Test
+    fun test_fastResponses_timeoutIsClampedToMin() {
+        repeat(10) { testSubject.onResponse(user, 50) }
+
+        assertThat(testSubject.getResponseTimeout(user)).isEqualTo(500)
+    }
+
+    @Test
+    fun test_timeoutFollowsHighPercentileOfLatencies() {
+        repeat(9) { testSubject.onResponse(user, 400) }
+        testSubject.onResponse(user, 1_000)
+
+        assertThat(testSubject.getResponseTimeout(user)).isEqualTo(600)
+
+        repeat(2) { testSubject.onResponse(user, 1_000) }
+
+        assertThat(testSubject.getResponseTimeout(user)).isEqualTo(1_500)
+    }
+
+    @Test
+    fun test_slowResponses_timeoutIsClampedToMax() {
+        repeat(10) { testSubject.onResponse(user, 1_900) }
+
+        assertThat(testSubject.getResponseTimeout(user)).isEqualTo(2_000)
+    }
+
+    @Test
+    fun test_latenciesAreTrackedPerProfile() {
+        repeat(10) { testSubject.onResponse(user, 50) }
+
+        assertThat(testSubject.getResponseTimeout(otherUser)).isEqualTo(2_000)
+    }
+
+    @Test
+    fun test_consecutiveTimeouts_appPredictorIsSkippedAndPeriodicallyProbed() {
+        repeat(3) { testSubject.onTimeout(user, 2_000) }
+
+        val skipped = List(5) { testSubject.shouldSkipAppPredictor(user) }
+
+        assertThat(skipped).containsExactly(true, true, true, true, false).inOrder()
+        assertThat(testSubject.shouldSkipAppPredictor(otherUser)).isFalse()
+    }
+
+    @Test
+    fun test_timelyResponse_appPredictorIsNoLongerSkipped() {
+        repeat(3) { testSubject.onTimeout(user, 2_000) }
+        assertThat(testSubject.shouldSkipAppPredictor(user)).isTrue()
+
+        testSubject.onResponse(user, 300)
+
+        assertThat(testSubject.shouldSkipAppPredictor(user)).isFalse()
+    }
+
+    @Test
+    fun test_shortenedTimeouts_appPredictorIsNotSkipped() {
+        repeat(10) { testSubject.onResponse(user, 300) }
+
+        repeat(3) { testSubject.onTimeout(user, 500) }
+
+        assertThat(testSubject.shouldSkipAppPredictor(user)).isFalse()
+    }
+
+    @Test
+    fun test_timeoutsAreNotLatencySamples() {
+        repeat(10) { testSubject.onResponse(user, 1_000) }
+
+        repeat(10) { testSubject.onTimeout(user, 500) }
+
+        assertThat(testSubject.getResponseTimeout(user)).isEqualTo(1_500)
+    }
+}
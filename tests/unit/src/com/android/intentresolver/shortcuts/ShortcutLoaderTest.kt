@@ -143,14 +143,14 @@ class ShortcutLoaderTest {
             assertEquals("Wrong app target", appTarget, result.shortcutsByApp[0].appTarget)
             for (shortcut in result.shortcutsByApp[0].shortcuts) {
                 assertEquals(
-                    "Wrong AppTarget in the cache",
+                    "Wrong AppTarget",
                     matchingAppTarget,
-                    result.directShareAppTargetCache[shortcut]
+                    shortcut.appTarget
                 )
                 assertEquals(
-                    "Wrong ShortcutInfo in the cache",
+                    "Wrong ShortcutInfo",
                     matchingShortcutInfo,
-                    result.directShareShortcutInfoCache[shortcut]
+                    shortcut.shortcutInfo
                 )
             }
         }
@@ -197,13 +197,13 @@ class ShortcutLoaderTest {
             assertEquals("Wrong app target", appTarget, result.shortcutsByApp[0].appTarget)
             for (shortcut in result.shortcutsByApp[0].shortcuts) {
                 assertTrue(
-                    "AppTargets are not expected the cache of a ShortcutManager result",
-                    result.directShareAppTargetCache.isEmpty()
+                    "AppTargets are not expected in a ShortcutManager result",
+                    shortcut.appTarget == null
                 )
                 assertEquals(
-                    "Wrong ShortcutInfo in the cache",
+                    "Wrong ShortcutInfo",
                     matchingShortcutInfo,
-                    result.directShareShortcutInfoCache[shortcut]
+                    shortcut.shortcutInfo
                 )
             }
         }
@@ -256,13 +256,13 @@ class ShortcutLoaderTest {
             assertEquals("Wrong app target", appTarget, result.shortcutsByApp[0].appTarget)
             for (shortcut in result.shortcutsByApp[0].shortcuts) {
                 assertTrue(
-                    "AppTargets are not expected the cache of a ShortcutManager result",
-                    result.directShareAppTargetCache.isEmpty()
+                    "AppTargets are not expected in a ShortcutManager result",
+                    shortcut.appTarget == null
                 )
                 assertEquals(
-                    "Wrong ShortcutInfo in the cache",
+                    "Wrong ShortcutInfo",
                     matchingShortcutInfo,
-                    result.directShareShortcutInfoCache[shortcut]
+                    shortcut.shortcutInfo
                 )
             }
         }
@@ -313,13 +313,13 @@ class ShortcutLoaderTest {
             assertEquals("Wrong app target", appTarget, result.shortcutsByApp[0].appTarget)
             for (shortcut in result.shortcutsByApp[0].shortcuts) {
                 assertTrue(
-                    "AppTargets are not expected the cache of a ShortcutManager result",
-                    result.directShareAppTargetCache.isEmpty()
+                    "AppTargets are not expected in a ShortcutManager result",
+                    shortcut.appTarget == null
                 )
                 assertEquals(
-                    "Wrong ShortcutInfo in the cache",
+                    "Wrong ShortcutInfo",
                     matchingShortcutInfo,
-                    result.directShareShortcutInfoCache[shortcut]
+                    shortcut.shortcutInfo
                 )
             }
         }
@@ -449,14 +449,12 @@ class ShortcutLoaderTest {
                 .that(appTarget)
                 .isEqualTo(result.shortcutsByApp[0].appTarget)
             for (shortcut in result.shortcutsByApp[0].shortcuts) {
-                assertWithMessage(
-                        "AppTargets are not expected the cache of a ShortcutManager result"
-                    )
-                    .that(result.directShareAppTargetCache)
-                    .isEmpty()
-                assertWithMessage("Wrong ShortcutInfo in the cache")
+                assertWithMessage("AppTargets are not expected in a ShortcutManager result")
+                    .that(shortcut.appTarget)
+                    .isNull()
+                assertWithMessage("Wrong ShortcutInfo")
                     .that(matchingShortcutInfo)
-                    .isEqualTo(result.directShareShortcutInfoCache[shortcut])
+                    .isEqualTo(shortcut.shortcutInfo)
             }
         }
     }
@@ -519,6 +517,37 @@ class ShortcutLoaderTest {
             verify(callback, times(1)).accept(any())
         }
 
+    @Test
+    fun test_resetWithNewIntentFilter_shortcutsReloadedWithNewFilter() =
+        scope.runTest {
+            val newIntentFilter = mock<IntentFilter>()
+            val shortcutManager =
+                mock<ShortcutManager> {
+                    on { getShareTargets(any()) } doReturn
+                        listOf(ShortcutManager.ShareShortcutInfo(matchingShortcutInfo, componentName))
+                }
+            whenever(context.getSystemService(Context.SHORTCUT_SERVICE)).thenReturn(shortcutManager)
+            val testSubject =
+                ShortcutLoader(
+                    context,
+                    backgroundScope,
+                    null,
+                    UserHandle.of(0),
+                    true,
+                    intentFilter,
+                    dispatcher,
+                    callback
+                )
+
+            verify(shortcutManager, times(1)).getShareTargets(intentFilter)
+
+            testSubject.reset(newIntentFilter)
+            testSubject.updateAppTargets(appTargets)
+
+            verify(shortcutManager, times(1)).getShareTargets(newIntentFilter)
+            verify(callback, times(1)).accept(any())
+        }
+
     @Test
     fun test_OnScopeCancellation_unsubscribeFromAppPredictor() {
         scope.runTest {
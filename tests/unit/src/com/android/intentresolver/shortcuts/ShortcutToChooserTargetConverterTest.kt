@@ -16,12 +16,8 @@
 
 package com.android.intentresolver.shortcuts
 
-import android.app.prediction.AppTarget
 import android.content.ComponentName
-import android.content.Intent
-import android.content.pm.ShortcutInfo
 import android.content.pm.ShortcutManager.ShareShortcutInfo
-import android.service.chooser.ChooserTarget
 import com.android.intentresolver.createAppTarget
 import com.android.intentresolver.createShareShortcutInfo
 import org.junit.Assert.assertEquals
@@ -47,79 +43,50 @@ class ShortcutToChooserTargetConverterTest {
         }
 
     @Test
-    fun testConvertToChooserTarget_predictionService() {
+    fun testConvertToCandidates_predictionService() {
         val appTargets = shortcuts.map { createAppTarget(it.shortcutInfo) }
         val expectedOrderAllShortcuts = intArrayOf(0, 1, 2, 3)
         val expectedScoreAllShortcuts = floatArrayOf(1.0f, 0.99f, 0.98f, 0.97f)
-        val appTargetCache = HashMap<ChooserTarget, AppTarget>()
-        val shortcutInfoCache = HashMap<ChooserTarget, ShortcutInfo>()
-
-        var chooserTargets =
-            testSubject.convertToChooserTarget(
-                shortcuts,
-                shortcuts,
-                appTargets,
-                appTargetCache,
-                shortcutInfoCache,
-            )
 
-        assertCorrectShortcutToChooserTargetConversion(
+        var candidates = testSubject.convertToCandidates(shortcuts, shortcuts, appTargets)
+
+        assertCorrectShortcutToCandidateConversion(
             shortcuts,
-            chooserTargets,
+            candidates,
             expectedOrderAllShortcuts,
             expectedScoreAllShortcuts,
         )
-        assertAppTargetCache(chooserTargets, appTargetCache)
-        assertShortcutInfoCache(chooserTargets, shortcutInfoCache)
+        assertAppTargets(candidates)
 
         val subset = shortcuts.subList(1, shortcuts.size)
         val expectedOrderSubset = intArrayOf(1, 2, 3)
         val expectedScoreSubset = floatArrayOf(0.99f, 0.98f, 0.97f)
-        appTargetCache.clear()
-        shortcutInfoCache.clear()
-
-        chooserTargets =
-            testSubject.convertToChooserTarget(
-                subset,
-                shortcuts,
-                appTargets,
-                appTargetCache,
-                shortcutInfoCache,
-            )
 
-        assertCorrectShortcutToChooserTargetConversion(
+        candidates = testSubject.convertToCandidates(subset, shortcuts, appTargets)
+
+        assertCorrectShortcutToCandidateConversion(
             shortcuts,
-            chooserTargets,
+            candidates,
             expectedOrderSubset,
             expectedScoreSubset,
         )
-        assertAppTargetCache(chooserTargets, appTargetCache)
-        assertShortcutInfoCache(chooserTargets, shortcutInfoCache)
+        assertAppTargets(candidates)
     }
 
     @Test
-    fun testConvertToChooserTarget_shortcutManager() {
+    fun testConvertToCandidates_shortcutManager() {
         val testSubject = ShortcutToChooserTargetConverter()
         val expectedOrderAllShortcuts = intArrayOf(2, 0, 3, 1)
         val expectedScoreAllShortcuts = floatArrayOf(1.0f, 0.99f, 0.99f, 0.98f)
-        val shortcutInfoCache = HashMap<ChooserTarget, ShortcutInfo>()
-
-        var chooserTargets =
-            testSubject.convertToChooserTarget(
-                shortcuts,
-                shortcuts,
-                null,
-                null,
-                shortcutInfoCache,
-            )
 
-        assertCorrectShortcutToChooserTargetConversion(
+        var candidates = testSubject.convertToCandidates(shortcuts, shortcuts, null)
+
+        assertCorrectShortcutToCandidateConversion(
             shortcuts,
-            chooserTargets,
+            candidates,
             expectedOrderAllShortcuts,
-            expectedScoreAllShortcuts
+            expectedScoreAllShortcuts,
         )
-        assertShortcutInfoCache(chooserTargets, shortcutInfoCache)
 
         val subset: MutableList<ShareShortcutInfo> = java.util.ArrayList()
         subset.add(shortcuts[1])
@@ -127,61 +94,38 @@ class ShortcutToChooserTargetConverterTest {
         subset.add(shortcuts[3])
         val expectedOrderSubset = intArrayOf(2, 3, 1)
         val expectedScoreSubset = floatArrayOf(1.0f, 0.99f, 0.98f)
-        shortcutInfoCache.clear()
-
-        chooserTargets =
-            testSubject.convertToChooserTarget(
-                subset,
-                shortcuts,
-                null,
-                null,
-                shortcutInfoCache,
-            )
 
-        assertCorrectShortcutToChooserTargetConversion(
+        candidates = testSubject.convertToCandidates(subset, shortcuts, null)
+
+        assertCorrectShortcutToCandidateConversion(
             shortcuts,
-            chooserTargets,
+            candidates,
             expectedOrderSubset,
-            expectedScoreSubset
+            expectedScoreSubset,
         )
-        assertShortcutInfoCache(chooserTargets, shortcutInfoCache)
     }
 
-    private fun assertCorrectShortcutToChooserTargetConversion(
+    private fun assertCorrectShortcutToCandidateConversion(
         shortcuts: List<ShareShortcutInfo>,
-        chooserTargets: List<ChooserTarget>,
+        candidates: List<ShortcutCandidate>,
         expectedOrder: IntArray,
         expectedScores: FloatArray,
     ) {
-        assertEquals("Unexpected ChooserTarget count", expectedOrder.size, chooserTargets.size)
-        for (i in chooserTargets.indices) {
-            val ct = chooserTargets[i]
+        assertEquals("Unexpected candidate count", expectedOrder.size, candidates.size)
+        for (i in candidates.indices) {
+            val candidate = candidates[i]
             val si = shortcuts[expectedOrder[i]].shortcutInfo
             val cn = shortcuts[expectedOrder[i]].targetComponent
-            assertEquals(si.id, ct.intentExtras.getString(Intent.EXTRA_SHORTCUT_ID))
-            assertEquals(si.label, ct.title)
-            assertEquals(expectedScores[i], ct.score)
-            assertEquals(cn, ct.componentName)
+            assertEquals(si.id, candidate.shortcutInfo?.id)
+            assertEquals(si.label, candidate.title)
+            assertEquals(expectedScores[i], candidate.score)
+            assertEquals(cn, candidate.componentName)
         }
     }
 
-    private fun assertAppTargetCache(
-        chooserTargets: List<ChooserTarget>,
-        cache: Map<ChooserTarget, AppTarget>
-    ) {
-        for (ct in chooserTargets) {
-            val target = cache[ct]
-            assertNotNull("AppTarget is missing", target)
-        }
-    }
-
-    private fun assertShortcutInfoCache(
-        chooserTargets: List<ChooserTarget>,
-        cache: Map<ChooserTarget, ShortcutInfo>
-    ) {
-        for (ct in chooserTargets) {
-            val si = cache[ct]
-            assertNotNull("AppTarget is missing", si)
+    private fun assertAppTargets(candidates: List<ShortcutCandidate>) {
+        for (candidate in candidates) {
+            assertNotNull("AppTarget is missing", candidate.appTarget)
         }
     }
 }
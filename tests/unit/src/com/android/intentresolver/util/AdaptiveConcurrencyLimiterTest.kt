@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.util
+
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.runTest
+import org.junit.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    fun flatLatency_limitGrows() = runTest {
+        val testSubject = createTestSubject(initialLimit = 2)
+
+        repeat(2) { testSubject.withPermit { delay(10) } }
+
+        assertThat(testSubject.limit).isEqualTo(3)
+    }
+
+    @Test
+    fun limitDoesNotGrowAboveMax() = runTest {
+        val testSubject = createTestSubject(initialLimit = 2, maxLimit = 2)
+
+        repeat(10) { testSubject.withPermit { delay(10) } }
+
+        assertThat(testSubject.limit).isEqualTo(2)
+    }
+
+    @Test
+    fun failure_limitIsHalvedAndFailureRethrown() = runTest {
+        val testSubject = createTestSubject(initialLimit = 4)
+
+        val result = runCatching { testSubject.withPermit { error("test") } }
+
+        assertThat(result.exceptionOrNull()).isInstanceOf(IllegalStateException::class.java)
+        assertThat(testSubject.limit).isEqualTo(2)
+    }
+
+    @Test
+    fun latencySpike_limitIsHalved() = runTest {
+        val testSubject = createTestSubject(initialLimit = 4)
+
+        testSubject.withPermit { delay(10) }
+        testSubject.withPermit { delay(100) }
+
+        assertThat(testSubject.limit).isEqualTo(2)
+    }
+
+    @Test
+    fun interleavedShortAndLongOperations_limitDoesNotCollapse() = runTest {
+        val testSubject = createTestSubject(initialLimit = 4)
+
+        repeat(20) {
+            testSubject.withPermit(operationClass = "metadata") { delay(2) }
+            testSubject.withPermit(operationClass = "thumbnail") { delay(40) }
+        }
+
+        assertThat(testSubject.limit).isGreaterThan(4)
+    }
+
+    @Test
+    fun latencySpikeWithinOperationClass_limitIsHalved() = runTest {
+        val testSubject = createTestSubject(initialLimit = 4)
+
+        testSubject.withPermit(operationClass = "metadata") { delay(2) }
+        testSubject.withPermit(operationClass = "thumbnail") { delay(40) }
+        testSubject.withPermit(operationClass = "thumbnail") { delay(400) }
+
+        assertThat(testSubject.limit).isEqualTo(2)
+    }
+
+    @Test
+    fun concurrentFailures_limitIsHalvedOnce() = runTest {
+        val testSubject = createTestSubject(initialLimit = 8)
+
+        List(4) {
+                async {
+                    runCatching {
+                        testSubject.withPermit {
+                            delay(10)
+                            error("test")
+                        }
+                    }
+                }
+            }
+            .awaitAll()
+
+        assertThat(testSubject.limit).isEqualTo(4)
+    }
+
+    @Test
+    fun runningOperationsAreLimited() = runTest {
+        val testSubject = createTestSubject(initialLimit = 2, maxLimit = 2)
+        var running = 0
+        var maxRunning = 0
+
+        List(6) {
+                async {
+                    testSubject.withPermit {
+                        running++
+                        maxRunning = maxOf(maxRunning, running)
+                        delay(10)
+                        running--
+                    }
+                }
+            }
+            .awaitAll()
+
+        assertThat(maxRunning).isEqualTo(2)
+    }
+
+    private fun TestScope.createTestSubject(initialLimit: Int, maxLimit: Int = initialLimit * 4) =
+        AdaptiveConcurrencyLimiter(
+            initialLimit = initialLimit,
+            minLimit = 1,
+            maxLimit = maxLimit,
+            clock = { testScheduler.currentTime },
+        )
+}
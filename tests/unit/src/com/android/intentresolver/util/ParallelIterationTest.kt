@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.intentresolver.util
+
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.collect
+import kotlinx.coroutines.flow.onEach
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.test.runTest
+import org.junit.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class ParallelIterationTest {
+
+    @Test
+    fun mapParallelOrdered_resultsAreEmittedInOriginalOrder() = runTest {
+        val result =
+            (1..5)
+                .mapParallelOrdered(parallelism = 3) {
+                    // later items complete first
+                    delay((6 - it) * 10L)
+                    it * 2
+                }
+                .toList()
+
+        assertThat(result).containsExactly(2, 4, 6, 8, 10).inOrder()
+    }
+
+    @Test
+    fun mapParallelOrdered_resultIsEmittedOnceAllPrecedingResultsAreReady() = runTest {
+        val emissionTimes = ArrayList<Long>()
+
+        listOf(10L, 30L, 20L)
+            .mapParallelOrdered(parallelism = 3) { delay(it) }
+            .onEach { emissionTimes.add(currentTime) }
+            .collect()
+
+        assertThat(emissionTimes).containsExactly(10L, 30L, 30L).inOrder()
+    }
+
+    @Test
+    fun mapParallelOrdered_parallelismIsLimited() = runTest {
+        var running = 0
+        var maxRunning = 0
+
+        (1..10)
+            .mapParallelOrdered(parallelism = 3) {
+                running++
+                maxRunning = maxOf(maxRunning, running)
+                delay(10)
+                running--
+            }
+            .collect()
+
+        assertThat(maxRunning).isEqualTo(3)
+    }
+}
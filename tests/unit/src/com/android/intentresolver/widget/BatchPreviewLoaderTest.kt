@@ -30,9 +30,11 @@ import kotlinx.coroutines.CompletableDeferred
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.awaitCancellation
 import kotlinx.coroutines.cancel
 import kotlinx.coroutines.flow.MutableSharedFlow
 import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.test.UnconfinedTestDispatcher
 import kotlinx.coroutines.test.resetMain
@@ -40,7 +42,9 @@ import kotlinx.coroutines.test.setMain
 import org.junit.After
 import org.junit.Before
 import org.junit.Test
+import org.mockito.Mockito.anyList
 import org.mockito.Mockito.atLeast
+import org.mockito.Mockito.never
 import org.mockito.Mockito.times
 import org.mockito.Mockito.verify
 
@@ -181,6 +185,133 @@ class BatchPreviewLoaderTest {
         assertThat(list).containsExactly(*expectedUris).inOrder()
     }
 
+    @Test
+    fun test_previewSizesKnown_previewsUpdatedWithoutLoadingImages() {
+        val loadedUris = ArrayList<Uri>()
+        val uriOne = createUri(1)
+        val uriTwo = createUri(2)
+        val testSubject =
+            BatchPreviewLoader(
+                { uri, _, _ ->
+                    loadedUris.add(uri)
+                    null
+                },
+                flowOf(
+                    Preview(PreviewType.Image, uriOne, editAction = null, Size(300, 200)),
+                    Preview(PreviewType.Image, uriTwo, editAction = null, Size(200, 300)),
+                ),
+                previewSize,
+                totalItemCount = 2,
+                onUpdate,
+                onCompletion
+            )
+        val sizes = ArrayList<Size>()
+        testSubject.loadAspectRatios(200) { _, width, height ->
+            sizes.add(Size(width, height))
+            100
+        }
+        dispatcher.scheduler.advanceUntilIdle()
+
+        verify(onCompletion, times(1)).invoke()
+        val list = withArgCaptor { verify(onUpdate, times(1)).invoke(capture()) }.map { it.uri }
+        assertThat(list).containsExactly(uriOne, uriTwo).inOrder()
+        assertThat(sizes).containsExactly(Size(300, 200), Size(200, 300)).inOrder()
+        assertThat(loadedUris).isEmpty()
+    }
+
+    @Test
+    fun test_firstImageNeverLoads_previewsUpdatedAfterTimeout() {
+        val bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888)
+        val uriOne = createUri(1)
+        val uriTwo = createUri(2)
+        val testSubject =
+            BatchPreviewLoader(
+                { uri, _, _ -> if (uri == uriOne) awaitCancellation() else bitmap },
+                previews(uriOne, uriTwo),
+                previewSize,
+                totalItemCount = 2,
+                onUpdate,
+                onCompletion
+            )
+        testSubject.loadAspectRatios(200) { _, _, _ -> 100 }
+        dispatcher.scheduler.runCurrent()
+
+        verify(onUpdate, never()).invoke(anyList())
+
+        dispatcher.scheduler.advanceUntilIdle()
+
+        val list = withArgCaptor { verify(onUpdate, times(1)).invoke(capture()) }.map { it.uri }
+        assertThat(list).containsExactly(uriOne, uriTwo).inOrder()
+        testSubject.cancel()
+    }
+
+    @Test
+    fun test_windowedLoading_previewsLoadedOnlyUpToPrefetchedPosition() {
+        val bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888)
+        val loadedUris = ArrayList<Uri>()
+        val uris = Array(10) { createUri(it) }
+        val testSubject =
+            BatchPreviewLoader(
+                { uri, _, _ ->
+                    loadedUris.add(uri)
+                    bitmap
+                },
+                previews(*uris),
+                previewSize,
+                uris.size,
+                onUpdate,
+                onCompletion,
+                windowSize = 2,
+            )
+        testSubject.loadAspectRatios(200) { _, _, _ -> 100 }
+        dispatcher.scheduler.advanceUntilIdle()
+
+        assertThat(loadedUris).containsExactlyElementsIn(uris.take(2)).inOrder()
+        verify(onCompletion, never()).invoke()
+
+        testSubject.prefetchUpTo(3)
+        dispatcher.scheduler.advanceUntilIdle()
+
+        assertThat(loadedUris).containsExactlyElementsIn(uris.take(6)).inOrder()
+        verify(onCompletion, never()).invoke()
+
+        testSubject.prefetchUpTo(uris.size - 1)
+        dispatcher.scheduler.advanceUntilIdle()
+
+        verify(onCompletion, times(1)).invoke()
+        val list =
+            captureMany { verify(onUpdate, atLeast(1)).invoke(capture()) }
+                .fold(ArrayList<Preview>()) { acc, update -> acc.apply { addAll(update) } }
+                .map { it.uri }
+        assertThat(list).containsExactly(*uris).inOrder()
+    }
+
+    @Test
+    fun test_windowedLoading_windowIsExtendedToFillViewport() {
+        val bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888)
+        val loadedUris = ArrayList<Uri>()
+        val uris = Array(10) { createUri(it) }
+        val testSubject =
+            BatchPreviewLoader(
+                { uri, _, _ ->
+                    loadedUris.add(uri)
+                    bitmap
+                },
+                previews(*uris),
+                previewSize,
+                uris.size,
+                onUpdate,
+                onCompletion,
+                windowSize = 2,
+            )
+        testSubject.loadAspectRatios(500) { _, _, _ -> 100 }
+        dispatcher.scheduler.advanceUntilIdle()
+
+        assertThat(loadedUris).containsExactlyElementsIn(uris.take(6)).inOrder()
+        val list = withArgCaptor { verify(onUpdate, times(1)).invoke(capture()) }.map { it.uri }
+        assertThat(list).containsExactlyElementsIn(uris.take(6)).inOrder()
+    }
+
     private fun createUri(idx: Int): Uri = Uri.parse("content://org.pkg.app/image-$idx.png")
 
     private fun fail(uri: Uri) = uri to false